@@ -0,0 +1,111 @@
+package daos;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dtos.TicketDTO;
+import entities.User;
+import support.TestDatabase;
+
+/**
+ * <p>Measures the DAO queries run by almost every requisition, against an in-memory database.</p>
+ * <p>The persistence context is cleared after each query, as each requisition has its own one in the application server.</p>
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoBenchmark {
+	
+	@Param({"1000"})
+	public int amountOfUsers;
+	
+	@Param({"100"})
+	public int amountOfFlights;
+	
+	@Param({"10"})
+	public int ticketsPerUser;
+	
+	private SessionFactory sessionFactory;
+	private EntityManager entityManager;
+	private UserDAO userDAO;
+	private TicketDAO ticketDAO;
+	private int counter;
+	
+	@Setup
+	public void setUp() {
+		sessionFactory = TestDatabase.create();
+		entityManager = sessionFactory.createEntityManager();
+		TestDatabase.seed(entityManager, amountOfUsers, amountOfFlights, ticketsPerUser);
+		TestDatabase.seedSeatMaps(entityManager);
+		
+		userDAO = new UserDAO();
+		userDAO.entityManager = entityManager;
+		ticketDAO = new TicketDAO();
+		ticketDAO.entityManager = entityManager;
+	}
+	
+	@TearDown
+	public void tearDown() {
+		entityManager.close();
+		sessionFactory.close();
+	}
+	
+	/**
+	 * Gets the next position of the data set, so each call looks for a different row.
+	 * 
+	 * @param amount the size of the data set
+	 * @return a position between 0 and <code>amount - 1</code>
+	 */
+	private int next(int amount) {
+		counter = (counter + 1) % amount;
+		
+		return counter;
+	}
+	
+	@Benchmark
+	public Optional<User> findByToken() {
+		Optional<User> user = userDAO.findByToken("token-" + next(amountOfUsers));
+		entityManager.clear();
+		
+		return user;
+	}
+	
+	@Benchmark
+	public Optional<byte[]> findSeatMap() {
+		Optional<byte[]> seats = ticketDAO.findSeatMap(next(amountOfFlights) + 1);
+		entityManager.clear();
+		
+		return seats;
+	}
+	
+	@Benchmark
+	public List<TicketDTO> findTicketsByUserIdFirstPage() {
+		List<TicketDTO> tickets = ticketDAO.findTicketsByUserId(next(amountOfUsers) + 1, GenericDAO.DEFAULT_PAGE_SIZE, null);
+		entityManager.clear();
+		
+		return tickets;
+	}
+}
@@ -0,0 +1,102 @@
+package dtos;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+
+import enums.Role;
+
+/**
+ * <p>Measures the JSON serialisation of the DTOs.</p>
+ * <p>Jackson is what the application server uses to write the responses and Gson is what the exports use to write their rows.</p>
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+	
+	private ObjectMapper objectMapper;
+	private Gson gson;
+	private FlightDTO flightDTO;
+	private TicketDTO ticketDTO;
+	private UserDTO userDTO;
+	
+	@Setup
+	public void setUp() {
+		objectMapper = new ObjectMapper();
+		gson = new Gson();
+		
+		flightDTO = new FlightDTO();
+		flightDTO.setId(1);
+		flightDTO.setCode("RDJ_1");
+		flightDTO.setDestination("Rio de Janeiro");
+		flightDTO.setDepartTime("2030-01-01 10:30:00.0");
+		flightDTO.setTotalSeats(180);
+		flightDTO.setFreeSeats(42);
+		
+		ticketDTO = new TicketDTO();
+		ticketDTO.setId(1);
+		ticketDTO.setIdUser(1);
+		ticketDTO.setUserName("Benchmark Client");
+		ticketDTO.setIdFlight(1);
+		ticketDTO.setFlightCode("RDJ_1");
+		ticketDTO.setFlightDestination("Rio de Janeiro");
+		ticketDTO.setFlightDepartTime("2030-01-01 10:30:00.0");
+		
+		userDTO = new UserDTO();
+		userDTO.setId(1);
+		userDTO.setName("Benchmark Client");
+		userDTO.setUsername("client");
+		userDTO.setToken("token-0");
+		userDTO.setRole(Role.CLIENT);
+	}
+	
+	@Benchmark
+	public String flightWithJackson() throws JsonProcessingException {
+		return objectMapper.writeValueAsString(flightDTO);
+	}
+	
+	@Benchmark
+	public String ticketWithJackson() throws JsonProcessingException {
+		return objectMapper.writeValueAsString(ticketDTO);
+	}
+	
+	@Benchmark
+	public String userWithJackson() throws JsonProcessingException {
+		return objectMapper.writeValueAsString(userDTO);
+	}
+	
+	@Benchmark
+	public String flightWithGson() {
+		return gson.toJson(flightDTO);
+	}
+	
+	@Benchmark
+	public String ticketWithGson() {
+		return gson.toJson(ticketDTO);
+	}
+	
+	@Benchmark
+	public String userWithGson() {
+		return gson.toJson(userDTO);
+	}
+}
@@ -0,0 +1,90 @@
+package mappers;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dtos.FlightDTO;
+import dtos.UserDTO;
+import entities.Flight;
+import entities.User;
+import enums.Role;
+
+/**
+ * Measures the switch of flights and users between Entity and DTO formats.
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperBenchmark {
+	
+	private FlightMapper flightMapper;
+	private UserMapper userMapper;
+	private Flight flight;
+	private FlightDTO flightDTO;
+	private User user;
+	private UserDTO userDTO;
+	
+	@Setup
+	public void setUp() {
+		flightMapper = new FlightMapper();
+		userMapper = new UserMapper();
+		
+		flight = new Flight();
+		flight.setId(1);
+		flight.setCode("RDJ_1");
+		flight.setDestination("Rio de Janeiro");
+		flight.setDepartTime(Timestamp.valueOf(LocalDateTime.of(2030, 1, 1, 10, 30)));
+		flight.setTotalSeats(180);
+		
+		flightDTO = flightMapper.toDTO(flight);
+		
+		user = new User();
+		user.setId(1);
+		user.setName("Benchmark Client");
+		user.setUsername("client");
+		user.setPassword("password");
+		user.setToken("token-0");
+		user.setRole(Role.CLIENT);
+		user.setIsDeleted(false);
+		
+		userDTO = userMapper.toDTO(user);
+	}
+	
+	@Benchmark
+	public FlightDTO flightToDTO() {
+		return flightMapper.toDTO(flight);
+	}
+	
+	@Benchmark
+	public Flight flightToEntity() {
+		return flightMapper.toEntity(flightDTO);
+	}
+	
+	@Benchmark
+	public UserDTO userToDTO() {
+		return userMapper.toDTO(user);
+	}
+	
+	@Benchmark
+	public User userToEntity() {
+		return userMapper.toEntity(userDTO);
+	}
+}
@@ -0,0 +1,109 @@
+package services;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import daos.FlightDAO;
+import daos.SequenceDAO;
+import support.TestDatabase;
+
+/**
+ * <p>Measures the flight code generation.</p>
+ * <p>The code suffixes come from the code allocator backed by the in-memory database, 
+ * so one in each block of codes also pays for the reservation of a new block.</p>
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlightServiceBenchmark {
+	
+	@Param({"Lisboa", "Rio de Janeiro", "Santa Cruz das Flores"})
+	public String destination;
+	
+	private SessionFactory sessionFactory;
+	private EntityManager entityManager;
+	private FlightService flightService;
+	
+	@Setup
+	public void setUp() {
+		sessionFactory = TestDatabase.create();
+		entityManager = sessionFactory.createEntityManager();
+		TestDatabase.seed(entityManager, 10, 100, 1);
+		
+		EntityManager daoEntityManager = entityManager;
+		FlightDAO flightDAO = new FlightDAO() {
+			private static final long serialVersionUID = 1L;
+			
+			{
+				entityManager = daoEntityManager;
+			}
+		};
+		// Fora do servidor não há transação gerida pelo container, então cada bloco abre a sua
+		SequenceDAO sequenceDAO = new SequenceDAO() {
+			private static final long serialVersionUID = 1L;
+			
+			{
+				entityManager = daoEntityManager;
+			}
+			
+			@Override
+			public Long reserveBlock(String name, int blockSize) {
+				entityManager.getTransaction().begin();
+				try {
+					return super.reserveBlock(name, blockSize);
+				} finally {
+					entityManager.getTransaction().commit();
+				}
+			}
+		};
+		
+		FlightCodeAllocator flightCodeAllocator = new FlightCodeAllocator();
+		TestDatabase.inject(flightCodeAllocator, "flightDAO", flightDAO);
+		TestDatabase.inject(flightCodeAllocator, "sequenceDAO", sequenceDAO);
+		
+		// A sequência é criada no arranque, como faz o warm-up depois do deploy
+		entityManager.getTransaction().begin();
+		flightCodeAllocator.seed();
+		entityManager.getTransaction().commit();
+		
+		flightService = new FlightService();
+		TestDatabase.inject(flightService, "flightCodeAllocator", flightCodeAllocator);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		entityManager.close();
+		sessionFactory.close();
+	}
+	
+	@Benchmark
+	public String getThreeFirstLetters() {
+		return flightService.getThreeFirstLetters(destination);
+	}
+	
+	@Benchmark
+	public String generateCode() {
+		return flightService.generateCode(destination);
+	}
+}
@@ -0,0 +1,425 @@
+package loadtest;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+/**
+ * <p>Replays the requests of the Postman collection in <code>requests/</code> against a running deployment, at a fixed rate,
+ * and reports the throughput and the latency quantiles of each request.</p>
+ * <p>The requests are sent open loop: request <code>i</code> is scheduled at <code>i / rate</code> seconds, whatever the responses of the
+ * previous ones, and its latency counts from that instant. A server that stalls therefore shows the whole stall in the quantiles,
+ * instead of the few requests that happened to be waiting for it.</p>
+ * <p>Before the run, every <code>*_username</code> of the environment is signed in with <code>common_password</code> and the token
+ * answered is kept in the matching <code>*_token</code> variable. The ids answered by the creation of flights and tickets are kept in
+ * <code>flight_id</code> and <code>ticket_id</code>, so the purchases and cancellations use them.</p>
+ * <p>Options are given as <code>name=value</code> arguments:</p>
+ * <ul>
+ * 	<li><code>requests</code>: the folder with the collection and the environment, <code>requests</code> by default</li>
+ * 	<li><code>base-url</code>: the address of the deployment, the <code>base_url</code> of the environment by default</li>
+ * 	<li><code>rate</code>: requests per second, 50 by default</li>
+ * 	<li><code>concurrency</code>: threads sending the requests, 16 by default</li>
+ * 	<li><code>warm-up</code> and <code>duration</code>: seconds run before measuring and measured, 10 and 60 by default</li>
+ * 	<li><code>timeout</code>: seconds to wait for each response, 10 by default</li>
+ * 	<li><code>mix</code>: weights of the requests, like <code>flight/all:3,ticket/create:1</code></li>
+ * 	<li><code>output</code>: the JSON file of the report, <code>target/load-replay-result.json</code> by default</li>
+ * 	<li><code>var.NAME</code>: the value of a variable, taking the place of the one in the environment</li>
+ * </ul>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public final class LoadReplay {
+	/**
+	 * Requests replayed when no mix is given: mostly listings, with some sign ins, creations, purchases and cancellations.
+	 * The sign up, sign out, user creation, update and deletion are left out, since repeating them only makes errors or logs users out.
+	 */
+	private static final String DEFAULT_MIX = "flight/flights-with-available-seats:40,flight/all:15,user/all:10,ticket/by-user-id:10,"
+			+ "user/by-id:5,user/sign-in:5,flight/create:5,ticket/create:8,ticket/cancel-by-id:2";
+
+	/**
+	 * Bodies used in the place of the ones of the collection: the ticket purchase has none and the flight creation departs in the past.
+	 */
+	private static final Map<String, String> DEFAULT_BODIES = Map.of(
+			"flight/create", "{\"destination\": \"{{destination}}\", \"totalSeats\": {{total_seats}}, \"departTime\": \"{{depart_time}}\"}",
+			"ticket/create", "{\"idFlight\": {{flight_id}}, \"idUser\": {{user_id}}}");
+
+	/**
+	 * Member of the created object kept in a variable after each request, indexed by request.
+	 */
+	private static final Map<String, String[]> CAPTURES = Map.of(
+			"flight/create", new String[] {"id", "flight_id"},
+			"ticket/create", new String[] {"id", "ticket_id"});
+
+	private static final String SIGN_IN = "user/sign-in";
+	private static final String USERNAME_SUFFIX = "_username";
+	private static final String TOKEN_SUFFIX = "_token";
+
+	private final Map<String, RequestTemplate> requests;
+	private final Map<String, String> variables;
+	private final HttpClient httpClient;
+	private final Duration timeout;
+
+	/**
+	 * Requests of the mix and their cumulative weights, so a request is picked with one binary search.
+	 */
+	private final RequestTemplate[] mix;
+	private final int[] cumulativeWeights;
+
+	private final Map<String, RequestStatistics> statistics = new LinkedHashMap<>();
+
+	/**
+	 * Sequence of the next request to be sent.
+	 */
+	private final AtomicLong nextSequence = new AtomicLong();
+
+	private LoadReplay(Map<String, RequestTemplate> requests, Map<String, String> variables, Duration timeout, String mixOption) {
+		this.requests = requests;
+		this.variables = variables;
+		this.timeout = timeout;
+		this.httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(timeout).build();
+
+		List<RequestTemplate> mixRequests = new ArrayList<>();
+		List<Integer> weights = new ArrayList<>();
+
+		for (String entryElement : mixOption.split(",")) {
+			String[] entry = entryElement.trim().split(":");
+			RequestTemplate request = requests.get(entry[0].trim());
+			int weight = entry.length > 1 ? Integer.parseInt(entry[1].trim()) : 1;
+
+			if (request == null) {
+				throw new IllegalArgumentException("Request not found in the collection: " + entry[0].trim() + ", the requests are " + requests.keySet());
+			}
+
+			if (weight > 0) {
+				mixRequests.add(request);
+				weights.add(weight);
+				statistics.put(request.getKey(), new RequestStatistics());
+			}
+		}
+
+		if (mixRequests.isEmpty()) {
+			throw new IllegalArgumentException("The mix has no request with a positive weight");
+		}
+
+		this.mix = mixRequests.toArray(new RequestTemplate[0]);
+		this.cumulativeWeights = new int[weights.size()];
+
+		for (int index = 0, sum = 0; index < weights.size(); index++) {
+			sum += weights.get(index);
+			cumulativeWeights[index] = sum;
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Map<String, String> options = new HashMap<>();
+
+		for (String argumentElement : args) {
+			int separator = argumentElement.indexOf('=');
+
+			if (separator <= 0) {
+				throw new IllegalArgumentException("Options must be written as name=value: " + argumentElement);
+			}
+
+			options.put(argumentElement.substring(0, separator), argumentElement.substring(separator + 1));
+		}
+
+		Path requestsFolder = Paths.get(options.getOrDefault("requests", "requests"));
+		Map<String, RequestTemplate> requests = PostmanCollection.readRequests(findFile(requestsFolder, ".postman_collection.json"));
+		Path environment = findFile(requestsFolder, ".postman_environment.json");
+		Map<String, String> variables = new ConcurrentHashMap<>(PostmanCollection.readVariables(environment));
+
+		// Os voos criados partem daqui a um mês e têm lugares para muitas compras
+		variables.put("depart_time", LocalDateTime.now().plusMonths(1).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+		variables.put("total_seats", "500");
+		options.forEach((name, value) -> {
+			if (name.startsWith("var.")) {
+				variables.put(name.substring("var.".length()), value);
+			}
+		});
+		if (options.containsKey("base-url")) {
+			variables.put("base_url", options.get("base-url"));
+		}
+
+		DEFAULT_BODIES.forEach((key, body) -> requests.computeIfPresent(key, (keyElement, request) -> request.withBody(body)));
+
+		double rate = Double.parseDouble(options.getOrDefault("rate", "50"));
+		int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "16"));
+		long warmUp = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warm-up", "10")));
+		long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "60")));
+		Duration timeout = Duration.ofSeconds(Long.parseLong(options.getOrDefault("timeout", "10")));
+		Path output = Paths.get(options.getOrDefault("output", "target/load-replay-result.json"));
+
+		if (rate <= 0.0 || concurrency <= 0 || duration <= 0L || warmUp < 0L) {
+			throw new IllegalArgumentException("rate, concurrency and duration must be greater than zero and warm-up must not be negative");
+		}
+
+		LoadReplay loadReplay = new LoadReplay(requests, variables, timeout, options.getOrDefault("mix", DEFAULT_MIX));
+
+		System.out.println("Replaying " + requests.size() + " requests of the collection against " + variables.get("base_url")
+				+ " at " + rate + " requests per second with " + concurrency + " threads");
+
+		loadReplay.signIn();
+		loadReplay.run(rate, concurrency, warmUp, duration);
+		loadReplay.report(TimeUnit.NANOSECONDS.toMillis(duration) / 1000.0, output);
+	}
+
+	/**
+	 * Signs in every user of the environment, keeping their new tokens, so the requests of the collection are authorised.
+	 */
+	private void signIn() {
+		RequestTemplate signIn = requests.get(SIGN_IN);
+		String usernameVariable = signIn == null ? null : signIn.getHeaderVariable("username");
+
+		if (usernameVariable == null) {
+			System.out.println("The collection has no sign in with a username variable, the tokens of the environment are used");
+			return;
+		}
+
+		for (String nameElement : new ArrayList<>(variables.keySet())) {
+			String username = variables.get(nameElement);
+
+			if (!nameElement.endsWith(USERNAME_SUFFIX) || username.isBlank()) {
+				continue;
+			}
+
+			Map<String, String> signInVariables = new HashMap<>(variables);
+			signInVariables.put(usernameVariable, username);
+
+			try {
+				HttpResponse<String> response = httpClient.send(signIn.toHttpRequest(signInVariables, timeout), HttpResponse.BodyHandlers.ofString());
+				String token = response.headers().firstValue("token").orElse(null);
+				String prefix = nameElement.substring(0, nameElement.length() - USERNAME_SUFFIX.length());
+
+				if (token != null) {
+					variables.put(prefix + TOKEN_SUFFIX, token);
+				}
+				System.out.println("Sign in of " + username + ": " + response.statusCode() + (token == null ? ", no token" : ""));
+			} catch (IOException ioException) {
+				throw new IllegalStateException("The deployment at " + variables.get("base_url") + " does not answer", ioException);
+			} catch (InterruptedException interruptedException) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Sends the requests at the given rate until the warm-up and the measured time are over.
+	 *
+	 * @param rate		  requests per second
+	 * @param concurrency amount of threads sending the requests
+	 * @param warmUp	  time run before measuring, in nanoseconds
+	 * @param duration	  time measured, in nanoseconds
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	private void run(double rate, int concurrency, long warmUp, long duration) throws InterruptedException {
+		long interval = Math.max((long) (TimeUnit.SECONDS.toNanos(1L) / rate), 1L);
+		long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100L);
+		long measureFrom = start + warmUp;
+		long end = measureFrom + duration;
+		List<Thread> threads = new ArrayList<>();
+
+		for (int index = 0; index < concurrency; index++) {
+			Thread thread = new Thread(() -> work(start, interval, measureFrom, end), "load-replay-" + index);
+
+			thread.start();
+			threads.add(thread);
+		}
+
+		for (Thread threadElement : threads) {
+			threadElement.join();
+		}
+	}
+
+	/**
+	 * Takes the next scheduled request, waits for its instant and sends it, until the schedule is over.
+	 *
+	 * @param start		  the instant of the first request
+	 * @param interval	  the time between two scheduled requests, in nanoseconds
+	 * @param measureFrom the instant from which the requests are recorded
+	 * @param end		  the instant from which no request is scheduled
+	 */
+	private void work(long start, long interval, long measureFrom, long end) {
+		while (true) {
+			long scheduledAt = start + nextSequence.getAndIncrement() * interval;
+
+			if (scheduledAt - end >= 0L) {
+				return;
+			}
+
+			// Um atraso não adia o horário dos pedidos seguintes, que são enviados logo que houver uma thread livre
+			for (long wait = scheduledAt - System.nanoTime(); wait > 0L; wait = scheduledAt - System.nanoTime()) {
+				LockSupport.parkNanos(wait);
+			}
+
+			RequestTemplate request = pick();
+			long sentAt = System.nanoTime();
+			int status = send(request);
+			long answeredAt = System.nanoTime();
+
+			if (scheduledAt - measureFrom >= 0L) {
+				statistics.get(request.getKey()).record(status, answeredAt - scheduledAt, answeredAt - sentAt);
+			}
+		}
+	}
+
+	/**
+	 * Picks a request of the mix, in proportion to its weight.
+	 *
+	 * @return the request
+	 */
+	private RequestTemplate pick() {
+		int target = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		int low = 0;
+		int high = cumulativeWeights.length - 1;
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+
+			if (cumulativeWeights[middle] > target) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+
+		return mix[low];
+	}
+
+	/**
+	 * Sends one request and keeps the token or the id it answers.
+	 *
+	 * @param request the request
+	 * @return the status of the response, or 0 if there was none
+	 */
+	private int send(RequestTemplate request) {
+		try {
+			HttpRequest httpRequest = request.toHttpRequest(variables, timeout);
+			HttpResponse<String> response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
+
+			if (response.statusCode() / 100 == 2) {
+				capture(request, response);
+			}
+
+			return response.statusCode();
+		} catch (IOException | IllegalArgumentException exception) {
+			return 0;
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+			return 0;
+		}
+	}
+
+	/**
+	 * Keeps the token answered by a sign in and the id answered by a creation in their variables.
+	 *
+	 * @param request  the request sent
+	 * @param response the successful response
+	 */
+	private void capture(RequestTemplate request, HttpResponse<String> response) {
+		String usernameVariable = request.getHeaderVariable("username");
+		String token = response.headers().firstValue("token").orElse(null);
+
+		if (token != null && usernameVariable != null && usernameVariable.endsWith(USERNAME_SUFFIX)) {
+			variables.put(usernameVariable.substring(0, usernameVariable.length() - USERNAME_SUFFIX.length()) + TOKEN_SUFFIX, token);
+		}
+
+		String[] capture = CAPTURES.get(request.getKey());
+
+		if (capture == null) {
+			return;
+		}
+
+		try {
+			JsonElement body = JsonParser.parseString(response.body());
+
+			if (body.isJsonObject() && body.getAsJsonObject().has(capture[0])) {
+				variables.put(capture[1], body.getAsJsonObject().get(capture[0]).getAsString());
+			}
+		} catch (RuntimeException runtimeException) {
+			// Uma resposta que não é JSON não muda as variáveis
+		}
+	}
+
+	/**
+	 * Prints the report of each request and writes all of them in JSON.
+	 *
+	 * @param seconds the time measured, in seconds
+	 * @param output  the JSON file
+	 * @throws IOException if the file could not be written
+	 */
+	@SuppressWarnings("unchecked")
+	private void report(double seconds, Path output) throws IOException {
+		Map<String, Object> report = new LinkedHashMap<>();
+		long total = 0L;
+
+		System.out.println();
+		System.out.println(String.format("%-38s %8s %9s %8s %9s %9s %9s %9s %9s %12s", "request", "count", "req/s", "failed",
+				"p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "svc p99 ms"));
+
+		for (Map.Entry<String, RequestStatistics> statisticsElement : statistics.entrySet()) {
+			Map<String, Object> requestReport = statisticsElement.getValue().toReport(seconds);
+			Map<String, Double> latency = (Map<String, Double>) requestReport.get("latencyMilliseconds");
+			Map<String, Double> serviceTime = (Map<String, Double>) requestReport.get("serviceTimeMilliseconds");
+
+			report.put(statisticsElement.getKey(), requestReport);
+			total += statisticsElement.getValue().getCount();
+
+			System.out.println(String.format("%-38s %8d %9.1f %8d %9.1f %9.1f %9.1f %9.1f %9.1f %12.1f  %s", statisticsElement.getKey(),
+					requestReport.get("requests"), requestReport.get("throughput"), requestReport.get("failures"), latency.get("p50"),
+					latency.get("p90"), latency.get("p99"), latency.get("p99.9"), latency.get("max"), serviceTime.get("p99"),
+					requestReport.get("statuses")));
+		}
+
+		System.out.println(String.format("%-38s %8d %9.1f", "total", total, total / seconds));
+
+		if (output.getParent() != null) {
+			Files.createDirectories(output.getParent());
+		}
+		try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+			new GsonBuilder().setPrettyPrinting().create().toJson(report, writer);
+		}
+
+		System.out.println("Report written to " + output.toAbsolutePath());
+	}
+
+	/**
+	 * Finds the only file of the given folder whose name ends with the given suffix.
+	 *
+	 * @param folder the folder
+	 * @param suffix the end of the name, like <code>.postman_collection.json</code>
+	 * @return the file
+	 * @throws IOException if the folder could not be read or has no such file
+	 */
+	private static Path findFile(Path folder, String suffix) throws IOException {
+		try (Stream<Path> files = Files.list(folder)) {
+			return files.filter(fileElement -> fileElement.getFileName().toString().endsWith(suffix)).sorted().findFirst()
+					.orElseThrow(() -> new IOException("No " + suffix + " file in " + folder.toAbsolutePath()));
+		}
+	}
+}
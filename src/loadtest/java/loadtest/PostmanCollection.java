@@ -0,0 +1,126 @@
+package loadtest;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Reads the requests of a Postman collection (schema 2.1) and the variables of a Postman environment.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+final class PostmanCollection {
+	private PostmanCollection() {
+	}
+
+	/**
+	 * Reads the requests of the given collection, folder by folder.
+	 *
+	 * @param collection the collection file
+	 * @return the requests indexed by their key, in the order of the collection
+	 * @throws IOException if the file could not be read
+	 */
+	static Map<String, RequestTemplate> readRequests(Path collection) throws IOException {
+		Map<String, RequestTemplate> requests = new LinkedHashMap<>();
+
+		try (Reader reader = Files.newBufferedReader(collection, StandardCharsets.UTF_8)) {
+			readItems(JsonParser.parseReader(reader).getAsJsonObject().getAsJsonArray("item"), "", requests);
+		}
+
+		return requests;
+	}
+
+	/**
+	 * Reads the enabled variables of the given environment. A variable without value is read as empty.
+	 *
+	 * @param environment the environment file
+	 * @return the values indexed by the name of the variables
+	 * @throws IOException if the file could not be read
+	 */
+	static Map<String, String> readVariables(Path environment) throws IOException {
+		Map<String, String> variables = new HashMap<>();
+
+		try (Reader reader = Files.newBufferedReader(environment, StandardCharsets.UTF_8)) {
+			JsonArray values = JsonParser.parseReader(reader).getAsJsonObject().getAsJsonArray("values");
+
+			for (JsonElement valueElement : values) {
+				JsonObject variable = valueElement.getAsJsonObject();
+
+				if (variable.has("enabled") && !variable.get("enabled").getAsBoolean()) {
+					continue;
+				}
+
+				variables.put(variable.get("key").getAsString(), getString(variable, "value"));
+			}
+		}
+
+		return variables;
+	}
+
+	/**
+	 * Reads the requests of a list of items, going into the folders.
+	 *
+	 * @param items	   the items of a folder or of the collection
+	 * @param folder   the path of the folder, empty for the collection
+	 * @param requests where the requests are added
+	 */
+	private static void readItems(JsonArray items, String folder, Map<String, RequestTemplate> requests) {
+		if (items == null) {
+			return;
+		}
+
+		for (JsonElement itemElement : items) {
+			JsonObject item = itemElement.getAsJsonObject();
+			String name = getString(item, "name");
+
+			if (item.has("item")) {
+				readItems(item.getAsJsonArray("item"), folder.isEmpty() ? name : folder + "/" + name, requests);
+				continue;
+			}
+
+			JsonObject request = item.getAsJsonObject("request");
+			Map<String, String> headers = new LinkedHashMap<>();
+
+			if (request.has("header")) {
+				for (JsonElement headerElement : request.getAsJsonArray("header")) {
+					JsonObject header = headerElement.getAsJsonObject();
+
+					if (!header.has("disabled") || !header.get("disabled").getAsBoolean()) {
+						headers.put(getString(header, "key"), getString(header, "value"));
+					}
+				}
+			}
+
+			JsonElement url = request.get("url");
+			String rawUrl = url.isJsonObject() ? getString(url.getAsJsonObject(), "raw") : url.getAsString();
+			String body = request.has("body") && request.get("body").isJsonObject() ? getString(request.getAsJsonObject("body"), "raw") : "";
+			String key = RequestTemplate.toKey(folder, name);
+
+			requests.put(key, new RequestTemplate(key, getString(request, "method"), rawUrl, headers, body));
+		}
+	}
+
+	/**
+	 * Gets a text member of the given object.
+	 *
+	 * @param object the object
+	 * @param member the name of the member
+	 * @return the text, or empty if the member is absent or null
+	 */
+	private static String getString(JsonObject object, String member) {
+		JsonElement element = object.get(member);
+
+		return element == null || element.isJsonNull() ? "" : element.getAsString();
+	}
+}
@@ -0,0 +1,99 @@
+package loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import metrics.LatencyHistogram;
+
+/**
+ * <p>Latencies and statuses of the requests of one key.</p>
+ * <p>The latency is measured from the instant the request should have been sent, as scheduled by the rate, so the time a request waited
+ * because the server was slow to answer the previous ones is counted (coordinated omission correction). The service time, measured from
+ * the instant it was really sent, is kept apart to show how much of the latency was spent waiting.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+final class RequestStatistics {
+	/**
+	 * Quantiles reported, with their names.
+	 */
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999, 1.0};
+	private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p99.9", "max"};
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LatencyHistogram serviceTime = new LatencyHistogram();
+
+	/**
+	 * Amount of responses of each status, 0 standing for the requests that got no response.
+	 */
+	private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+	/**
+	 * Amount of requests that got no response or a status other than 2xx and 3xx.
+	 */
+	private final LongAdder failures = new LongAdder();
+
+	/**
+	 * Records one request.
+	 *
+	 * @param status	  the status of the response, 0 if there was none
+	 * @param latency	  the time since the request should have been sent, in nanoseconds
+	 * @param serviceTime the time since the request was sent, in nanoseconds
+	 */
+	void record(int status, long latency, long serviceTime) {
+		this.latency.record(latency);
+		this.serviceTime.record(serviceTime);
+		statuses.computeIfAbsent(status, statusElement -> new LongAdder()).increment();
+
+		if (status < 200 || status >= 400) {
+			failures.increment();
+		}
+	}
+
+	long getCount() {
+		return latency.getCount();
+	}
+
+	/**
+	 * Gets the amount of requests, the throughput, the statuses and the quantiles of the latency and of the service time, in milliseconds.
+	 *
+	 * @param seconds the time measured, in seconds
+	 * @return the report, in the order it is printed
+	 */
+	Map<String, Object> toReport(double seconds) {
+		Map<String, Object> report = new LinkedHashMap<>();
+		Map<String, Long> statusesReport = new TreeMap<>();
+
+		statuses.forEach((status, amount) -> statusesReport.put(String.valueOf(status), amount.sum()));
+
+		report.put("requests", latency.getCount());
+		report.put("throughput", latency.getCount() / seconds);
+		report.put("failures", failures.sum());
+		report.put("statuses", statusesReport);
+		report.put("latencyMilliseconds", toMilliseconds(latency));
+		report.put("serviceTimeMilliseconds", toMilliseconds(serviceTime));
+
+		return report;
+	}
+
+	/**
+	 * Gets the reported quantiles of the given histogram.
+	 *
+	 * @param histogram the histogram
+	 * @return the quantiles, in milliseconds, indexed by name
+	 */
+	private static Map<String, Double> toMilliseconds(LatencyHistogram histogram) {
+		Map<String, Double> quantiles = new LinkedHashMap<>();
+
+		for (int index = 0; index < QUANTILES.length; index++) {
+			quantiles.put(QUANTILE_NAMES[index], histogram.getQuantile(QUANTILES[index]) / (double) TimeUnit.MILLISECONDS.toNanos(1L));
+		}
+
+		return quantiles;
+	}
+}
@@ -0,0 +1,125 @@
+package loadtest;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>One request of the Postman collection, with its <code>{{variables}}</code> still to be resolved.</p>
+ * <p>Each request is known by a key made of its folder and name, without accents, spaces nor case, like <code>ticket/cancel-by-id</code>.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+final class RequestTemplate {
+	/**
+	 * A variable written as in Postman, like <code>{{base_url}}</code>.
+	 */
+	private static final Pattern VARIABLE = Pattern.compile("\\{\\{([^{}]+)\\}\\}");
+
+	private final String key;
+	private final String method;
+	private final String url;
+	private final Map<String, String> headers;
+	private final String body;
+
+	RequestTemplate(String key, String method, String url, Map<String, String> headers, String body) {
+		this.key = key;
+		this.method = method;
+		this.url = url;
+		this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+		this.body = body == null ? "" : body;
+	}
+
+	/**
+	 * Makes the key of a request from its folder and name.
+	 *
+	 * @param folder the folders of the request, separated by slashes, or empty
+	 * @param name	 the name of the request
+	 * @return the key, like <code>flight/flights-with-available-seats</code>
+	 */
+	static String toKey(String folder, String name) {
+		String path = folder.isEmpty() ? name : folder + "/" + name;
+		String withoutAccents = Normalizer.normalize(path, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+
+		return withoutAccents.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9/]+", "-").replaceAll("-?/-?", "/").replaceAll("^-|-$", "");
+	}
+
+	/**
+	 * Replaces the variables of the given text by their values. The unknown variables are kept as they are.
+	 *
+	 * @param text		the text, possibly with variables
+	 * @param variables the values of the variables
+	 * @return the text with the known variables replaced
+	 */
+	static String resolve(String text, Map<String, String> variables) {
+		Matcher matcher = VARIABLE.matcher(text);
+		StringBuffer resolved = new StringBuffer(text.length());
+
+		while (matcher.find()) {
+			String value = variables.get(matcher.group(1).trim());
+			matcher.appendReplacement(resolved, Matcher.quoteReplacement(value == null ? matcher.group() : value));
+		}
+		matcher.appendTail(resolved);
+
+		return resolved.toString();
+	}
+
+	String getKey() {
+		return key;
+	}
+
+	/**
+	 * Gets the variable used whole as the value of the given header, like <code>employee1_username</code> for <code>{{employee1_username}}</code>.
+	 *
+	 * @param headerName the name of the header
+	 * @return the name of the variable, or null if the header is absent or not a single variable
+	 */
+	String getHeaderVariable(String headerName) {
+		String value = headers.get(headerName);
+		Matcher matcher = value == null ? null : VARIABLE.matcher(value.trim());
+
+		return matcher != null && matcher.matches() ? matcher.group(1).trim() : null;
+	}
+
+	/**
+	 * Makes a copy of this request with another body.
+	 *
+	 * @param newBody the body, possibly with variables
+	 * @return the copy
+	 */
+	RequestTemplate withBody(String newBody) {
+		return new RequestTemplate(key, method, url, headers, newBody);
+	}
+
+	/**
+	 * Builds the HTTP request, replacing the variables by their current values.
+	 *
+	 * @param variables the values of the variables
+	 * @param timeout	the time to wait for the response
+	 * @return the request
+	 */
+	HttpRequest toHttpRequest(Map<String, String> variables, Duration timeout) {
+		String resolvedBody = resolve(body, variables);
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(resolve(url, variables))).timeout(timeout);
+
+		headers.forEach((name, value) -> builder.header(name, resolve(value, variables)));
+
+		if (resolvedBody.isBlank()) {
+			return builder.method(method, HttpRequest.BodyPublishers.noBody()).build();
+		}
+
+		if (!headers.containsKey("Content-Type")) {
+			builder.header("Content-Type", "application/json");
+		}
+
+		return builder.method(method, HttpRequest.BodyPublishers.ofString(resolvedBody)).build();
+	}
+}
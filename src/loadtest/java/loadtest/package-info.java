@@ -0,0 +1,4 @@
+/**
+ * Contains the load generator that replays the requests of the bundled Postman collection against a running deployment.
+ */
+package loadtest;
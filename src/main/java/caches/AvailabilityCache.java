@@ -0,0 +1,201 @@
+package caches;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+
+import dtos.FlightDTO;
+import dtos.PageDTO;
+
+/**
+ * <p>Application wide cache of the pages of available flights, already written to JSON.</p>
+ * <p>Each page is kept with the inventory version it was computed for. The version is bumped whenever a flight is created or a seat is taken or freed,
+ * which makes every cached page stale at once. A page also expires when its first flight departs, since from then on it would list a departed flight.</p>
+ * <p>Each page has a strong ETag, made of the version and a checksum of its JSON, so a client polling the same page gets a 304 without any work.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@ApplicationScoped
+public class AvailabilityCache implements Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 *
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Maximum amount of cached pages. When it is reached, the cache is emptied.
+	 */
+	private static final int MAX_ENTRIES = Integer.getInteger("cia-aerea.availability-cache.max-entries", 256);
+
+	/**
+	 * Writes the pages the same way as the JSON provider of JAX-RS.
+	 */
+	private static final Jsonb JSONB = JsonbBuilder.create();
+
+	/**
+	 * Version of the flights and seats inventory, bumped on each change.
+	 */
+	private final AtomicLong version = new AtomicLong();
+
+	/**
+	 * Cached pages indexed by the parameters of the requisition.
+	 */
+	private final Map<String, Page> pagesByKey = new ConcurrentHashMap<>();
+
+	/**
+	 * Bumps the inventory version, making all cached pages stale. Called after each creation of a flight and each taken or freed seat.
+	 */
+	public void bump() {
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Gets the current inventory version, to be read before computing a page that will be cached.
+	 *
+	 * @return the version
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Gets the cached page for the given parameters, if it is still valid.
+	 *
+	 * @param key the parameters of the requisition, made by {@link #keyOf(int, String, Long, Long)}
+	 * @return the page, or null if it is not cached, it was computed for an older version or its first flight departed
+	 */
+	public Page get(String key) {
+		Page page = pagesByKey.get(key);
+
+		if (page == null || page.version != version.get() || System.currentTimeMillis() >= page.validUntil) {
+			return null;
+		}
+
+		return page;
+	}
+
+	/**
+	 * Writes the given page to JSON and caches it.
+	 *
+	 * @param key		  the parameters of the requisition, made by {@link #keyOf(int, String, Long, Long)}
+	 * @param version	  the inventory version read before the page was computed
+	 * @param flightsPage the page of available flights
+	 * @return the cached page
+	 */
+	public Page put(String key, long version, PageDTO<FlightDTO> flightsPage) {
+		byte[] body = JSONB.toJson(flightsPage.getItems()).getBytes(StandardCharsets.UTF_8);
+		CRC32 checksum = new CRC32();
+		checksum.update(body, 0, body.length);
+
+		// A página deixa de valer quando o seu primeiro voo, o que parte mais cedo, partir
+		long validUntil = flightsPage.getItems().isEmpty() ? Long.MAX_VALUE : Timestamp.valueOf(flightsPage.getItems().get(0).getDepartTime()).getTime();
+		Page page = new Page(version, validUntil, body, "\"" + Long.toHexString(version) + "-" + Long.toHexString(checksum.getValue()) + "\"",
+				flightsPage.getNextCursor());
+
+		if (pagesByKey.size() >= MAX_ENTRIES) {
+			pagesByKey.clear();
+		}
+		pagesByKey.put(key, page);
+
+		return page;
+	}
+
+	/**
+	 * Gets the key of the page asked with the given parameters.
+	 *
+	 * @param pageSize the maximum amount of flights in the page
+	 * @param cursor   the cursor of the previous page, or null
+	 * @param from	   the beginning of the departure window, or null
+	 * @param to	   the end of the departure window, or null
+	 * @return the key
+	 */
+	public static String keyOf(int pageSize, String cursor, Long from, Long to) {
+		return pageSize + "|" + cursor + "|" + from + "|" + to;
+	}
+
+	/**
+	 * Page of available flights written to JSON, with its ETag.
+	 *
+	 * @author Wanderley Drumond
+	 *
+	 */
+	public static final class Page implements Serializable {
+		/**
+		 * <p>The serial version identifier for this class.<p>
+		 *
+		 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+		 */
+		private static final long serialVersionUID = 1L;
+
+		private final long version;
+		private final long validUntil;
+		private final byte[] body;
+		private final String eTag;
+		private final String nextCursor;
+
+		Page(long version, long validUntil, byte[] body, String eTag, String nextCursor) {
+			this.version = version;
+			this.validUntil = validUntil;
+			this.body = body;
+			this.eTag = eTag;
+			this.nextCursor = nextCursor;
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		public String getNextCursor() {
+			return nextCursor;
+		}
+
+		/**
+		 * <p>Finds the ETag of this page among the ones the client already has.</p>
+		 * <p>The ETag given by the compression interceptor to the compressed form of the page also matches.</p>
+		 *
+		 * @param ifNoneMatch the <code>If-None-Match</code> header of the requisition, or null
+		 * @return
+		 * 		  <ul>
+		 * 			<li>the ETag found, to be sent back with the 304</li>
+		 * 			<li>the ETag of this page, if the header is <code>*</code></li>
+		 * 			<li>null, if the header is absent or lists none of them</li>
+		 * 		  </ul>
+		 */
+		public String findMatch(String ifNoneMatch) {
+			if (ifNoneMatch == null) {
+				return null;
+			}
+
+			String eTagPrefix = eTag.substring(0, eTag.length() - 1) + "-";
+
+			for (String eTagElement : ifNoneMatch.split(",")) {
+				String candidate = eTagElement.trim();
+
+				if (candidate.equals("*")) {
+					return eTag;
+				}
+
+				if (candidate.equals(eTag) || (candidate.startsWith(eTagPrefix) && candidate.endsWith("\"") && candidate.indexOf('-', eTagPrefix.length()) < 0)) {
+					return candidate;
+				}
+			}
+
+			return null;
+		}
+	}
+}
@@ -0,0 +1,240 @@
+package caches;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.inject.Inject;
+
+import daos.FlightDAO;
+import daos.GenericDAO;
+import dtos.FlightDTO;
+
+/**
+ * <p>Application wide index of the flights that have not departed yet, ordered by departure time.</p>
+ * <p>A time window is a range read of a skip list, O(log n + k), and a sweep run every minute drops the flights that already departed,
+ * so the index only shrinks as time goes by. The reads also start at the current instant, so a departed flight is never returned between two sweeps.</p>
+ * <p>The index is loaded from the database the first time it is needed and from then on is kept up to date by <code>FlightService.create()</code>.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class DepartureIndex {
+	/**
+	 * Separates the departure instant from the flight primary key inside a cursor.
+	 */
+	private static final char CURSOR_SEPARATOR = '_';
+
+	/**
+	 * Object that contains all methods to manipulates database regarding flights table.
+	 */
+	@Inject
+	private FlightDAO flightDAO;
+
+	/**
+	 * Flights that have not departed yet, ordered by departure instant and primary key.
+	 */
+	private final NavigableMap<Departure, FlightDTO> flightsByDeparture = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Whether the flights already saved in the database were loaded.
+	 */
+	private volatile boolean isLoaded;
+
+	/**
+	 * Adds the given flight to the index, unless it has already departed.
+	 *
+	 * @param flightDTO the flight, with its id and depart time
+	 */
+	public void add(FlightDTO flightDTO) {
+		if (flightDTO == null || flightDTO.getId() == null || flightDTO.getDepartTime() == null) {
+			return;
+		}
+
+		long departTime = Timestamp.valueOf(flightDTO.getDepartTime()).getTime();
+
+		if (departTime > System.currentTimeMillis()) {
+			flightsByDeparture.put(new Departure(departTime, flightDTO.getId()), flightDTO);
+		}
+	}
+
+	/**
+	 * <p>Finds the flights that depart inside the given window, in order of departure.</p>
+	 * <p>The returned collection is a live view of the index, read lazily: only the flights actually iterated are visited.</p>
+	 *
+	 * @param from		  the beginning of the window, in milliseconds, inclusive, or null for now
+	 * @param to		  the end of the window, in milliseconds, exclusive, or null for no end
+	 * @param afterCursor the cursor of the last flight of the previous page, or null for the first page
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the flights found, possibly none</li>
+	 * 			<li>null, if the index could not be loaded from the database</li>
+	 * 		  </ul>
+	 */
+	public Collection<FlightDTO> findDepartingBetween(Long from, Long to, String afterCursor) {
+		if (!load()) {
+			return null;
+		}
+
+		// Nunca devolve voos que já partiram, mesmo que a varredura ainda não os tenha retirado
+		Departure lower = new Departure(Math.max(from == null ? 0L : from, System.currentTimeMillis() + 1L), Integer.MIN_VALUE);
+		Departure upper = new Departure(to == null ? Long.MAX_VALUE : to, Integer.MIN_VALUE);
+		Departure after = parseCursor(afterCursor);
+		boolean isLowerInclusive = true;
+
+		if (after != null && after.compareTo(lower) >= 0) {
+			lower = after;
+			isLowerInclusive = false;
+		}
+
+		if (lower.compareTo(upper) >= 0) {
+			return Collections.emptyList();
+		}
+
+		return flightsByDeparture.subMap(lower, isLowerInclusive, upper, false).values();
+	}
+
+	/**
+	 * Gets the cursor that points to the given flight, to be used as the <code>Next-Cursor</code> of a page ordered by departure.
+	 *
+	 * @param flightDTO the last flight of the page
+	 * @return the departure instant in milliseconds and the primary key of the flight
+	 */
+	public static String cursorOf(FlightDTO flightDTO) {
+		return Timestamp.valueOf(flightDTO.getDepartTime()).getTime() + String.valueOf(CURSOR_SEPARATOR) + flightDTO.getId();
+	}
+
+	/**
+	 * Checks if the given text was made by {@link #cursorOf(FlightDTO)}.
+	 *
+	 * @param cursor the cursor informed in the requisition
+	 * @return true if the cursor can be read
+	 */
+	public static boolean isValidCursor(String cursor) {
+		return parseCursor(cursor) != null;
+	}
+
+	/**
+	 * Drops the flights that already departed. Runs every minute.
+	 */
+	@Schedule(hour = "*", minute = "*", persistent = false)
+	public void sweep() {
+		flightsByDeparture.headMap(new Departure(System.currentTimeMillis(), Integer.MAX_VALUE), true).clear();
+	}
+
+	/**
+	 * Gets the amount of flights in the index.
+	 *
+	 * @return the amount of flights that have not departed yet, as of the last sweep
+	 */
+	public int size() {
+		return flightsByDeparture.size();
+	}
+
+	/**
+	 * Loads, once, the flights that have not departed yet from the database, reading them a page at a time.
+	 *
+	 * @return true if the index is loaded
+	 */
+	public boolean load() {
+		if (isLoaded) {
+			return true;
+		}
+
+		synchronized (this) {
+			if (isLoaded) {
+				return true;
+			}
+
+			try {
+				Timestamp now = new Timestamp(System.currentTimeMillis());
+				Integer afterId = null;
+				List<FlightDTO> flightsFound;
+
+				do {
+					flightsFound = flightDAO.findDTOPageDepartingAfter(GenericDAO.MAX_PAGE_SIZE, afterId, now);
+
+					for (int index = 0; index < Math.min(flightsFound.size(), GenericDAO.MAX_PAGE_SIZE); index++) {
+						add(flightsFound.get(index));
+						afterId = flightsFound.get(index).getId();
+					}
+				} while (flightsFound.size() > GenericDAO.MAX_PAGE_SIZE);
+
+				isLoaded = true;
+
+				return true;
+			} catch (Exception exception) {
+				System.err.println("Catch " + exception.getClass().getName() + " load() in DepartureIndex");
+				exception.printStackTrace();
+
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Reads a cursor made by {@link #cursorOf(FlightDTO)}.
+	 *
+	 * @param cursor the cursor, or null
+	 * @return the position of the flight in the index, or null if the cursor is absent or cannot be read
+	 */
+	private static Departure parseCursor(String cursor) {
+		if (cursor == null) {
+			return null;
+		}
+
+		int separator = cursor.indexOf(CURSOR_SEPARATOR);
+
+		if (separator <= 0) {
+			return null;
+		}
+
+		try {
+			return new Departure(Long.parseLong(cursor.substring(0, separator)), Integer.parseInt(cursor.substring(separator + 1)));
+		} catch (NumberFormatException numberFormatException) {
+			return null;
+		}
+	}
+
+	/**
+	 * Position of a flight in the index: its departure instant, then its primary key to tell apart flights that depart together.
+	 *
+	 * @author Wanderley Drumond
+	 *
+	 */
+	private static final class Departure implements Comparable<Departure> {
+		private final long departTime;
+		private final int idFlight;
+
+		Departure(long departTime, int idFlight) {
+			this.departTime = departTime;
+			this.idFlight = idFlight;
+		}
+
+		@Override
+		public int compareTo(Departure other) {
+			int byDepartTime = Long.compare(departTime, other.departTime);
+
+			return byDepartTime != 0 ? byDepartTime : Integer.compare(idFlight, other.idFlight);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Departure && compareTo((Departure) other) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(departTime) * 31 + idFlight;
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package caches;
+
+import java.io.Serializable;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import daos.FlightDAO;
+import daos.GenericDAO;
+import dtos.FlightDTO;
+
+/**
+ * <p>Application wide search index of the flights by destination and by code.</p>
+ * <p>Keeps a sorted dictionary whose keys are the destinations, each of their words and the codes, in lower case and without accents,
+ * so "sao" finds "São Paulo" and "paulo" finds it as well. A prefix search is a range read of the dictionary and never touches the database.</p>
+ * <p>The index is loaded from the database the first time it is needed and from then on is kept up to date by <code>FlightService.create()</code>.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@ApplicationScoped
+public class FlightSearchIndex implements Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 *
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Separates the searchable text from the flight primary key inside a key, sorting before any character of the text.
+	 */
+	private static final char KEY_SEPARATOR = '\u0000';
+
+	/**
+	 * Accents and other combining marks left apart by the Unicode decomposition.
+	 */
+	private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+	/**
+	 * Spaces, hyphens and other characters that separate the words of a destination.
+	 */
+	private static final Pattern WORD_SEPARATORS = Pattern.compile("[\\s\\-'’]+");
+
+	/**
+	 * Object that contains all methods to manipulates database regarding flights table.
+	 */
+	@Inject
+	private FlightDAO flightDAO;
+
+	/**
+	 * Flights indexed by their normalised destination, destination words and code, each followed by the flight primary key.
+	 */
+	private final NavigableMap<String, FlightDTO> flightsByText = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Flights indexed by their code in upper case.
+	 */
+	private final Map<String, FlightDTO> flightsByCode = new ConcurrentHashMap<>();
+
+	/**
+	 * Whether the flights already saved in the database were loaded.
+	 */
+	private volatile boolean isLoaded;
+
+	/**
+	 * Adds the given flight to the index.
+	 *
+	 * @param flightDTO the flight, with its id, code and destination
+	 */
+	public void add(FlightDTO flightDTO) {
+		if (flightDTO == null || flightDTO.getId() == null || flightDTO.getCode() == null) {
+			return;
+		}
+
+		String keySuffix = KEY_SEPARATOR + String.valueOf(flightDTO.getId());
+
+		flightsByCode.put(flightDTO.getCode().toUpperCase(Locale.ROOT), flightDTO);
+		flightsByText.put(normalise(flightDTO.getCode()) + keySuffix, flightDTO);
+
+		if (flightDTO.getDestination() != null) {
+			String destination = normalise(flightDTO.getDestination());
+
+			flightsByText.put(destination + keySuffix, flightDTO);
+
+			for (String wordElement : WORD_SEPARATORS.split(destination)) {
+				if (!wordElement.isEmpty()) {
+					flightsByText.put(wordElement + keySuffix, flightDTO);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the flights whose destination, any word of the destination or code starts with the given text, ignoring case and accents.
+	 *
+	 * @param query the beginning of the destination or code
+	 * @param limit the maximum amount of flights found
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the flights found, in alphabetical order of the matched text, each one once</li>
+	 * 			<li>null, if the index could not be loaded from the database</li>
+	 * 		  </ul>
+	 */
+	public List<FlightDTO> search(String query, int limit) {
+		if (!load()) {
+			return null;
+		}
+
+		String prefix = normalise(query);
+		Map<Integer, FlightDTO> flightsFound = new LinkedHashMap<>();
+
+		// Todas as chaves que começam pelo prefixo ficam entre o prefixo e o prefixo seguido do maior carácter
+		for (FlightDTO flightElement : flightsByText.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values()) {
+			flightsFound.putIfAbsent(flightElement.getId(), flightElement);
+
+			if (flightsFound.size() >= limit) {
+				break;
+			}
+		}
+
+		return new ArrayList<>(flightsFound.values());
+	}
+
+	/**
+	 * Finds the flight that owns the given code, ignoring case.
+	 *
+	 * @param code the flight code
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the flight, if it exists</li>
+	 * 			<li>a new flight DTO with id equal to -1, if the index could not be loaded from the database</li>
+	 * 			<li>null, if no flight has the given code</li>
+	 * 		  </ul>
+	 */
+	public FlightDTO findByCode(String code) {
+		if (!load()) {
+			FlightDTO expendableFlightDTO = new FlightDTO();
+
+			expendableFlightDTO.setId(-1);
+
+			return expendableFlightDTO;
+		}
+
+		return code == null ? null : flightsByCode.get(code.trim().toUpperCase(Locale.ROOT));
+	}
+
+	/**
+	 * Gets the amount of flights in the index.
+	 *
+	 * @return the amount of flights
+	 */
+	public int size() {
+		return flightsByCode.size();
+	}
+
+	/**
+	 * Loads all flights from the database, once, reading them a page at a time.
+	 *
+	 * @return true if the index is loaded
+	 */
+	public boolean load() {
+		if (isLoaded) {
+			return true;
+		}
+
+		synchronized (this) {
+			if (isLoaded) {
+				return true;
+			}
+
+			try {
+				Integer afterId = null;
+				List<FlightDTO> flightsFound;
+
+				do {
+					flightsFound = flightDAO.findDTOPage(GenericDAO.MAX_PAGE_SIZE, afterId);
+
+					for (int index = 0; index < Math.min(flightsFound.size(), GenericDAO.MAX_PAGE_SIZE); index++) {
+						add(flightsFound.get(index));
+						afterId = flightsFound.get(index).getId();
+					}
+				} while (flightsFound.size() > GenericDAO.MAX_PAGE_SIZE);
+
+				isLoaded = true;
+
+				return true;
+			} catch (Exception exception) {
+				System.err.println("Catch " + exception.getClass().getName() + " load() in FlightSearchIndex");
+				exception.printStackTrace();
+
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Puts the given text in the form kept by the index: without accents, in lower case and with single spaces.
+	 *
+	 * @param text the text to be normalised
+	 * @return the normalised text
+	 */
+	static String normalise(String text) {
+		String decomposed = Normalizer.normalize(text.trim(), Normalizer.Form.NFD);
+
+		return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+	}
+}
@@ -0,0 +1,236 @@
+package caches;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import daos.FlightDAO;
+import daos.TicketDAO;
+import dtos.FlightDTO;
+import entities.Flight;
+
+/**
+ * <p>Application wide ledger of the seat map of each flight.</p>
+ * <p>Each flight seat map is seeded from the database the first time it is needed and from then on is only changed in memory,
+ * so a seat is claimed with a compare-and-set on its bit instead of counting all the tickets of the flight.
+ * The database keeps its own copy in the <code>flight_seat_maps</code> table, changed in the same transaction as the tickets,
+ * which stays the final word on each seat.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@ApplicationScoped
+public class SeatLedger implements Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 *
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Object that contains all methods to manipulates database regarding flights table.
+	 */
+	@Inject
+	private FlightDAO flightDAO;
+
+	/**
+	 * Object that contains all methods to manipulates database regarding tickets table.
+	 */
+	@Inject
+	private TicketDAO ticketDAO;
+
+	/**
+	 * Seat maps indexed by flight primary key.
+	 */
+	private final Map<Integer, SeatMap> seatMapsByFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * Claims one seat in the given flight.
+	 *
+	 * @param idFlight   primary key of the flight
+	 * @param seatNumber the seat chosen by the passenger, or null for the free seat with the lowest number
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the number of the seat claimed</li>
+	 * 			<li>0, if the chosen seat does not exist or is occupied or, when no seat was chosen, if the flight is full</li>
+	 * 			<li>-1, if the seat map of the flight could not be read</li>
+	 * 		  </ul>
+	 */
+	public int claim(Integer idFlight, Integer seatNumber) {
+		SeatMap seatMap = getSeatMap(idFlight);
+
+		if (seatMap == null) {
+			return -1;
+		}
+
+		if (seatNumber == null) {
+			return seatMap.claimFirstFree();
+		}
+
+		return seatMap.claim(seatNumber) ? seatNumber : 0;
+	}
+
+	/**
+	 * <p>Claims the given amount of seats in the given flight, all at once: either all of them are claimed or none is.</p>
+	 * <p>The seats are claimed in one step under the claim lock of the flight seat map, so a concurrent claim never finds them taken
+	 * by a group that is then given up.</p>
+	 *
+	 * @param idFlight		 primary key of the flight
+	 * @param amountOfSeats amount of seats to claim
+	 * @return the numbers of the seats claimed, or null if the flight does not have that many free seats or its seat map could not be read
+	 */
+	public int[] claim(Integer idFlight, int amountOfSeats) {
+		SeatMap seatMap = getSeatMap(idFlight);
+
+		return seatMap == null ? null : seatMap.claimFirstFree(amountOfSeats);
+	}
+
+	/**
+	 * <p>Gives back one seat of the given flight.</p>
+	 * <p>Called when a ticket is cancelled.</p>
+	 *
+	 * @param idFlight   primary key of the flight
+	 * @param seatNumber the seat to give back
+	 */
+	public void release(Integer idFlight, Integer seatNumber) {
+		SeatMap seatMap = seatMapsByFlight.get(idFlight);
+
+		if (seatMap != null && seatNumber != null) {
+			seatMap.release(seatNumber);
+		}
+	}
+
+	/**
+	 * <p>Discards the seat map of the given flight, so it is seeded again from the database the next time it is needed.</p>
+	 * <p>Called when the tickets of claimed seats could not be saved, which gives those seats back as well.</p>
+	 *
+	 * @param idFlight primary key of the flight
+	 */
+	public void invalidate(Integer idFlight) {
+		seatMapsByFlight.remove(idFlight);
+	}
+
+	/**
+	 * Gets the amount of occupied seats of the given flight.
+	 *
+	 * @param idFlight primary key of the flight
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the amount of occupied seats</li>
+	 * 			<li>null, if the seat map could not be read</li>
+	 * 		  </ul>
+	 */
+	public Long getOccupiedSeats(Integer idFlight) {
+		SeatMap seatMap = getSeatMap(idFlight);
+
+		return seatMap == null ? null : (long) seatMap.countOccupied();
+	}
+
+	/**
+	 * <p>Gets the amount of occupied seats of each of the given flights.</p>
+	 * <p>The seat maps that are not in memory yet are read all at once, with a single query, and kept in the ledger.
+	 * Only the flights that have no seat map saved yet are seeded one by one.</p>
+	 *
+	 * @param flights the flights, with their amount of seats
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the amount of occupied seats indexed by flight primary key, without the flights whose seat map could not be read</li>
+	 * 			<li>null, if the seat maps could not be read</li>
+	 * 		  </ul>
+	 */
+	public Map<Integer, Long> getOccupiedSeats(Collection<FlightDTO> flights) {
+		List<Integer> idFlightsNotLoaded = flights.stream().map(FlightDTO::getId)
+				.filter(idFlight -> !seatMapsByFlight.containsKey(idFlight)).collect(Collectors.toList());
+
+		Map<Integer, byte[]> seatsByFlight = ticketDAO.findSeatMaps(idFlightsNotLoaded);
+
+		if (seatsByFlight == null) {
+			return null;
+		}
+
+		Map<Integer, Long> occupiedSeatsByFlight = new HashMap<>();
+
+		for (FlightDTO flightElement : flights) {
+			SeatMap seatMap = seatMapsByFlight.get(flightElement.getId());
+
+			if (seatMap == null && seatsByFlight.containsKey(flightElement.getId())) {
+				seatMap = SeatMap.fromBytes(seatsByFlight.get(flightElement.getId()), flightElement.getTotalSeats());
+				SeatMap previousSeatMap = seatMapsByFlight.putIfAbsent(flightElement.getId(), seatMap);
+
+				seatMap = previousSeatMap == null ? seatMap : previousSeatMap;
+			} else if (seatMap == null) {
+				seatMap = getSeatMap(flightElement.getId());
+			}
+
+			if (seatMap != null) {
+				occupiedSeatsByFlight.put(flightElement.getId(), (long) seatMap.countOccupied());
+			}
+		}
+
+		return occupiedSeatsByFlight;
+	}
+
+	/**
+	 * <p>Gets the seat map of the given flight, seeding it from the database if it is not in memory yet.</p>
+	 * <p>The database is read outside the map, so a slow read holds no lock of the map. Two requisitions may read the same flight at once;
+	 * the first one to keep its seat map wins and the other one uses it.</p>
+	 *
+	 * @param idFlight primary key of the flight
+	 * @return the seat map, or null if the flight is not found or the database read failed
+	 */
+	public SeatMap getSeatMap(Integer idFlight) {
+		if (idFlight == null) {
+			return null;
+		}
+
+		SeatMap seatMap = seatMapsByFlight.get(idFlight);
+
+		if (seatMap != null) {
+			return seatMap;
+		}
+
+		seatMap = load(idFlight);
+
+		if (seatMap == null) {
+			return null;
+		}
+
+		SeatMap previousSeatMap = seatMapsByFlight.putIfAbsent(idFlight, seatMap);
+
+		return previousSeatMap == null ? seatMap : previousSeatMap;
+	}
+
+	/**
+	 * Reads the seat map of the given flight from the database.
+	 *
+	 * @param idFlight primary key of the flight
+	 * @return the seat map, or null if the flight is not found or the database read failed
+	 */
+	private SeatMap load(Integer idFlight) {
+		Optional<Flight> flight = flightDAO.find(idFlight);
+
+		if (flight == null || flight.isEmpty()) {
+			return null;
+		}
+
+		Optional<byte[]> seats = ticketDAO.findSeatMap(idFlight);
+
+		if (seats == null) {
+			return null;
+		}
+
+		// Voos criados antes do mapa de lugares: numera os tickets existentes e grava o mapa
+		byte[] bytes = seats.isPresent() ? seats.get() : ticketDAO.initializeSeatMap(idFlight);
+
+		return bytes == null ? null : SeatMap.fromBytes(bytes, flight.get().getTotalSeats());
+	}
+}
@@ -0,0 +1,321 @@
+package caches;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>Bitmap of the seats of one flight: the seat <code>n</code> is the bit <code>n - 1</code>, set when the seat is occupied.</p>
+ * <p>One seat is claimed with a compare-and-set on its word, so single claims only wait on each other when they race for the same word.
+ * A claim of several seats holds the claim lock alone, so no other claim sees its seats half taken.</p>
+ * <p>Its persisted form is a byte array with the seats in the same order, the lowest bit of the first byte being the seat 1,
+ * so a flight with 300 seats is kept in 38 bytes and its free seats are counted with a population count instead of a ticket query.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public final class SeatMap {
+	/**
+	 * Amount of seats in each word of the in-memory bitmap.
+	 */
+	private static final int SEATS_PER_WORD = Long.SIZE;
+
+	/**
+	 * Amount of seats of the flight.
+	 */
+	private final int totalSeats;
+
+	/**
+	 * The occupied seats, 64 per word.
+	 */
+	private final AtomicLongArray words;
+
+	/**
+	 * Shared by the claims of one seat and held alone by the claims of several seats. Releasing a seat does not take it.
+	 */
+	private final ReentrantReadWriteLock claimLock = new ReentrantReadWriteLock();
+
+	/**
+	 * Creates a seat map with all seats free.
+	 *
+	 * @param totalSeats amount of seats of the flight
+	 */
+	public SeatMap(int totalSeats) {
+		this.totalSeats = totalSeats;
+		this.words = new AtomicLongArray((totalSeats + SEATS_PER_WORD - 1) / SEATS_PER_WORD);
+	}
+
+	/**
+	 * Creates a seat map from its persisted form.
+	 *
+	 * @param bytes		 the persisted bitmap
+	 * @param totalSeats amount of seats of the flight
+	 * @return the seat map, with the occupied seats of the bitmap
+	 */
+	public static SeatMap fromBytes(byte[] bytes, int totalSeats) {
+		SeatMap seatMap = new SeatMap(totalSeats);
+
+		for (int seatNumber = 1; seatNumber <= totalSeats; seatNumber++) {
+			if (isOccupied(bytes, seatNumber)) {
+				seatMap.claim(seatNumber);
+			}
+		}
+
+		return seatMap;
+	}
+
+	/**
+	 * Creates the persisted form of a flight with all seats free.
+	 *
+	 * @param totalSeats amount of seats of the flight
+	 * @return the bitmap, one bit per seat
+	 */
+	public static byte[] emptyBytes(int totalSeats) {
+		return new byte[(totalSeats + Byte.SIZE - 1) / Byte.SIZE];
+	}
+
+	/**
+	 * Counts the occupied seats of a persisted bitmap.
+	 *
+	 * @param bytes the persisted bitmap
+	 * @return the amount of bits set
+	 */
+	public static int countOccupied(byte[] bytes) {
+		int occupiedSeats = 0;
+
+		for (byte byteElement : bytes) {
+			occupiedSeats += Integer.bitCount(byteElement & 0xFF);
+		}
+
+		return occupiedSeats;
+	}
+
+	/**
+	 * Checks if the given seat is occupied in a persisted bitmap.
+	 *
+	 * @param bytes		 the persisted bitmap
+	 * @param seatNumber the seat, starting at 1
+	 * @return true if the seat exists in the bitmap and its bit is set
+	 */
+	public static boolean isOccupied(byte[] bytes, int seatNumber) {
+		int bit = seatNumber - 1;
+
+		return bit >= 0 && bit / Byte.SIZE < bytes.length && (bytes[bit / Byte.SIZE] & (1 << (bit % Byte.SIZE))) != 0;
+	}
+
+	/**
+	 * Sets the bit of the given seat in a persisted bitmap.
+	 *
+	 * @param bytes		 the persisted bitmap, changed in place
+	 * @param seatNumber the seat, starting at 1
+	 * @return false if the seat does not exist in the bitmap or was already occupied
+	 */
+	public static boolean occupy(byte[] bytes, int seatNumber) {
+		int bit = seatNumber - 1;
+
+		if (bit < 0 || bit / Byte.SIZE >= bytes.length || isOccupied(bytes, seatNumber)) {
+			return false;
+		}
+
+		bytes[bit / Byte.SIZE] |= 1 << (bit % Byte.SIZE);
+
+		return true;
+	}
+
+	/**
+	 * Clears the bit of the given seat in a persisted bitmap.
+	 *
+	 * @param bytes		 the persisted bitmap, changed in place
+	 * @param seatNumber the seat, starting at 1
+	 */
+	public static void free(byte[] bytes, int seatNumber) {
+		int bit = seatNumber - 1;
+
+		if (bit >= 0 && bit / Byte.SIZE < bytes.length) {
+			bytes[bit / Byte.SIZE] &= ~(1 << (bit % Byte.SIZE));
+		}
+	}
+
+	public int getTotalSeats() {
+		return totalSeats;
+	}
+
+	/**
+	 * Occupies the given seat, with a compare-and-set on its word.
+	 *
+	 * @param seatNumber the seat, starting at 1
+	 * @return
+	 * 		  <ul>
+	 * 			<li>true, if the seat was free and is now occupied by the caller</li>
+	 * 			<li>false, if the seat does not exist or is already occupied</li>
+	 * 		  </ul>
+	 */
+	public boolean claim(int seatNumber) {
+		if (seatNumber < 1 || seatNumber > totalSeats) {
+			return false;
+		}
+
+		claimLock.readLock().lock();
+
+		try {
+			return occupy(seatNumber);
+		} finally {
+			claimLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Occupies the free seat with the lowest number.
+	 *
+	 * @return the seat occupied, or 0 if the flight is full
+	 */
+	public int claimFirstFree() {
+		claimLock.readLock().lock();
+
+		try {
+			return occupyFirstFree();
+		} finally {
+			claimLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * <p>Occupies the given amount of free seats with the lowest numbers, all at once: either all of them are claimed or none is.</p>
+	 * <p>The free seats are counted and claimed holding the claim lock alone, so no other claim runs in between and, as a release only frees seats,
+	 * every seat counted as free is still free when it is claimed. The seats of the group are never seen as occupied by a claim that then fails.</p>
+	 *
+	 * @param amountOfSeats amount of seats to claim
+	 * @return the numbers of the seats claimed, or null if the flight does not have that many free seats
+	 */
+	public int[] claimFirstFree(int amountOfSeats) {
+		claimLock.writeLock().lock();
+
+		try {
+			if (totalSeats - countOccupied() < amountOfSeats) {
+				return null;
+			}
+
+			int[] seatNumbers = new int[amountOfSeats];
+
+			for (int index = 0; index < amountOfSeats; index++) {
+				seatNumbers[index] = occupyFirstFree();
+			}
+
+			return seatNumbers;
+		} finally {
+			claimLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Sets the bit of the given seat with a compare-and-set on its word.
+	 *
+	 * @param seatNumber the seat, starting at 1 and not after the last seat
+	 * @return false if the seat was already occupied
+	 */
+	private boolean occupy(int seatNumber) {
+		int wordIndex = (seatNumber - 1) / SEATS_PER_WORD;
+		long mask = 1L << ((seatNumber - 1) % SEATS_PER_WORD);
+
+		while (true) {
+			long word = words.get(wordIndex);
+
+			if ((word & mask) != 0L) {
+				return false;
+			}
+
+			if (words.compareAndSet(wordIndex, word, word | mask)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Sets the bit of the free seat with the lowest number with a compare-and-set on its word.
+	 *
+	 * @return the seat occupied, or 0 if the flight is full
+	 */
+	private int occupyFirstFree() {
+		for (int wordIndex = 0; wordIndex < words.length(); wordIndex++) {
+			while (true) {
+				long word = words.get(wordIndex);
+				long freeSeats = ~word & getValidSeatsMask(wordIndex);
+
+				if (freeSeats == 0L) {
+					break;
+				}
+
+				int bit = Long.numberOfTrailingZeros(freeSeats);
+
+				if (words.compareAndSet(wordIndex, word, word | (1L << bit))) {
+					return wordIndex * SEATS_PER_WORD + bit + 1;
+				}
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Frees the given seat.
+	 *
+	 * @param seatNumber the seat, starting at 1
+	 */
+	public void release(int seatNumber) {
+		if (seatNumber < 1 || seatNumber > totalSeats) {
+			return;
+		}
+
+		int wordIndex = (seatNumber - 1) / SEATS_PER_WORD;
+		long mask = 1L << ((seatNumber - 1) % SEATS_PER_WORD);
+
+		while (true) {
+			long word = words.get(wordIndex);
+
+			if ((word & mask) == 0L || words.compareAndSet(wordIndex, word, word & ~mask)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Counts the occupied seats.
+	 *
+	 * @return the amount of bits set
+	 */
+	public int countOccupied() {
+		int occupiedSeats = 0;
+
+		for (int wordIndex = 0; wordIndex < words.length(); wordIndex++) {
+			occupiedSeats += Long.bitCount(words.get(wordIndex));
+		}
+
+		return occupiedSeats;
+	}
+
+	/**
+	 * Writes the seat map in its persisted form.
+	 *
+	 * @return the bitmap, one bit per seat
+	 */
+	public byte[] toBytes() {
+		byte[] bytes = emptyBytes(totalSeats);
+
+		for (int index = 0; index < bytes.length; index++) {
+			bytes[index] = (byte) (words.get(index / Long.BYTES) >>> ((index % Long.BYTES) * Byte.SIZE));
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Gets the bits of the given word that correspond to existing seats.
+	 *
+	 * @param wordIndex the position of the word
+	 * @return all bits set, except the ones after the last seat in the last word
+	 */
+	private long getValidSeatsMask(int wordIndex) {
+		int seatsInWord = Math.min(totalSeats - wordIndex * SEATS_PER_WORD, SEATS_PER_WORD);
+
+		return seatsInWord == SEATS_PER_WORD ? -1L : (1L << seatsInWord) - 1L;
+	}
+}
@@ -0,0 +1,420 @@
+package caches;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import enums.Role;
+import lombok.Getter;
+
+/**
+ * <p>Application wide cache that keeps the logged users already resolved by their token.</p>
+ * <p>Avoids querying the users table each time a requisition needs to know who is the logged user and which role he has.</p>
+ * <p>Entries expire after being idle for a while or after a maximum lifetime, whichever happens first. The sessions are split in segments
+ * by token, each one kept in access order, so the least recently used session of a full segment is dropped without scanning,
+ * and the tokens of each user are indexed, so the sessions of a user are dropped without scanning either.</p>
+ * <p>A session read from the database while the same token or user is invalidated is not kept: each lookup takes a stamp before reading
+ * the database (see {@link #beginLookup()}) and each invalidation, made after the database is changed, marks its token and user as
+ * invalidated after every stamp already taken.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@ApplicationScoped
+public class SessionCache implements Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 *
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Maximum amount of sessions kept in memory.
+	 */
+	private static final int MAX_ENTRIES = Integer.getInteger("cia-aerea.session-cache.max-entries", 10000);
+
+	/**
+	 * Time, in milliseconds, that a session can stay unused before being discarded.
+	 */
+	private static final long IDLE_TIMEOUT = Long.getLong("cia-aerea.session-cache.idle-timeout-seconds", 900L) * 1000L;
+
+	/**
+	 * Time, in milliseconds, that a session can stay in memory since it was resolved from database.
+	 */
+	private static final long TIME_TO_LIVE = Long.getLong("cia-aerea.session-cache.time-to-live-seconds", 3600L) * 1000L;
+
+	/**
+	 * Amount of segments, each one with its own lock and its own share of <code>MAX_ENTRIES</code>.
+	 */
+	private static final int SEGMENTS = 16;
+
+	/**
+	 * Amount of invalidation stamps kept for the tokens and for the users. Two tokens or users that share a stamp only make
+	 * a concurrent lookup of the other one not be kept.
+	 */
+	private static final int STRIPES = 1024;
+
+	/**
+	 * Sessions indexed by token, split by the hash of the token.
+	 */
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	/**
+	 * Tokens of the cached sessions of each user.
+	 */
+	private final Map<Integer, Set<String>> tokensByUser = new ConcurrentHashMap<>();
+
+	/**
+	 * Source of the lookup and invalidation stamps, always growing.
+	 */
+	private final AtomicLong stamps = new AtomicLong();
+
+	/**
+	 * Stamp of the last invalidation of the tokens and of the users of each stripe.
+	 */
+	private final AtomicLongArray tokenInvalidations = new AtomicLongArray(STRIPES);
+	private final AtomicLongArray userInvalidations = new AtomicLongArray(STRIPES);
+
+	/**
+	 * Amount of lookups answered by the cache.
+	 */
+	private final LongAdder hits = new LongAdder();
+
+	/**
+	 * Amount of lookups that had to go to the database.
+	 */
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Amount of sessions discarded by expiration or lack of space.
+	 */
+	private final LongAdder evictions = new LongAdder();
+
+	public SessionCache() {
+		for (int index = 0; index < SEGMENTS; index++) {
+			segments[index] = new Segment(Math.max(1, MAX_ENTRIES / SEGMENTS));
+		}
+	}
+
+	/**
+	 * Gets the session that owns the given token.
+	 *
+	 * @param token logged user identifier key
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the session, if it is cached and not expired</li>
+	 * 			<li>null, otherwise</li>
+	 * 		  </ul>
+	 */
+	public Session get(String token) {
+		if (token == null) {
+			misses.increment();
+			return null;
+		}
+
+		Segment segment = segmentOf(token);
+		long now = System.currentTimeMillis();
+		Session session;
+		boolean isExpired = false;
+
+		synchronized (segment) {
+			session = segment.get(token);
+
+			if (session != null && session.isExpired(now)) {
+				segment.remove(token);
+				isExpired = true;
+			}
+		}
+
+		if (session == null) {
+			misses.increment();
+			return null;
+		}
+
+		if (isExpired) {
+			unindex(token, session.getUserId());
+			evictions.increment();
+			misses.increment();
+			return null;
+		}
+
+		session.lastAccess = now;
+		hits.increment();
+
+		return session;
+	}
+
+	/**
+	 * Takes the stamp of a lookup, before the session is read from the database.
+	 *
+	 * @return the stamp, to be given to {@link #put(String, Integer, Role, long)}
+	 */
+	public long beginLookup() {
+		return stamps.get();
+	}
+
+	/**
+	 * Keeps the given user data associated with the given token, unless the token or the user were invalidated since the lookup began.
+	 *
+	 * @param token		  logged user identifier key
+	 * @param userId	  primary key of the logged user
+	 * @param role		  role of the logged user
+	 * @param lookupStamp the stamp taken before the user was read from the database
+	 * @return the session, kept or not, or null if token or user id were not informed
+	 */
+	public Session put(String token, Integer userId, Role role, long lookupStamp) {
+		if (token == null || userId == null) {
+			return null;
+		}
+
+		Session session = new Session(userId, role, System.currentTimeMillis());
+
+		if (isInvalidatedSince(token, userId, lookupStamp)) {
+			return session;
+		}
+
+		Segment segment = segmentOf(token);
+		Session previousSession;
+
+		index(token, userId);
+		synchronized (segment) {
+			previousSession = segment.put(token, session);
+		}
+
+		if (previousSession != null && !previousSession.getUserId().equals(userId)) {
+			unindex(token, previousSession.getUserId());
+		}
+
+		// Uma invalidação feita entre a verificação e a inserção não encontrou a sessão, por isso é retirada aqui
+		if (isInvalidatedSince(token, userId, lookupStamp)) {
+			discard(token, session);
+		}
+
+		return session;
+	}
+
+	/**
+	 * Discards the session that owns the given token. Must be called after the token is changed in the database.
+	 *
+	 * @param token logged user identifier key
+	 */
+	public void invalidate(String token) {
+		if (token == null) {
+			return;
+		}
+
+		tokenInvalidations.accumulateAndGet(stripeOf(token.hashCode()), stamps.incrementAndGet(), Math::max);
+
+		Segment segment = segmentOf(token);
+		Session session;
+
+		synchronized (segment) {
+			session = segment.remove(token);
+		}
+
+		if (session != null) {
+			unindex(token, session.getUserId());
+		}
+	}
+
+	/**
+	 * Discards all sessions from the given user. Must be called after the user is changed in the database.
+	 *
+	 * @param userId primary key of the user
+	 */
+	public void invalidateUser(Integer userId) {
+		if (userId == null) {
+			return;
+		}
+
+		userInvalidations.accumulateAndGet(stripeOf(userId.hashCode()), stamps.incrementAndGet(), Math::max);
+
+		Set<String> tokens = tokensByUser.remove(userId);
+
+		if (tokens == null) {
+			return;
+		}
+
+		for (String tokenElement : tokens) {
+			Segment segment = segmentOf(tokenElement);
+
+			synchronized (segment) {
+				Session session = segment.get(tokenElement);
+
+				if (session != null && session.getUserId().equals(userId)) {
+					segment.remove(tokenElement);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the usage counters of the cache.
+	 *
+	 * @return the amount of hits, misses, evictions and the current size
+	 */
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> statistics = new LinkedHashMap<>();
+		long size = 0L;
+
+		for (Segment segmentElement : segments) {
+			synchronized (segmentElement) {
+				size += segmentElement.size();
+			}
+		}
+
+		statistics.put("hits", hits.sum());
+		statistics.put("misses", misses.sum());
+		statistics.put("evictions", evictions.sum());
+		statistics.put("size", size);
+
+		return statistics;
+	}
+
+	/**
+	 * Tells if the given token or user were invalidated after the given stamp.
+	 *
+	 * @param token		  logged user identifier key
+	 * @param userId	  primary key of the logged user
+	 * @param lookupStamp the stamp taken before the user was read from the database
+	 * @return true if the session read may be stale
+	 */
+	private boolean isInvalidatedSince(String token, Integer userId, long lookupStamp) {
+		return tokenInvalidations.get(stripeOf(token.hashCode())) > lookupStamp || userInvalidations.get(stripeOf(userId.hashCode())) > lookupStamp;
+	}
+
+	/**
+	 * Removes the given session, if it is still the one of its token.
+	 *
+	 * @param token	  logged user identifier key
+	 * @param session the session to be removed
+	 */
+	private void discard(String token, Session session) {
+		Segment segment = segmentOf(token);
+		boolean isRemoved;
+
+		synchronized (segment) {
+			isRemoved = segment.remove(token, session);
+		}
+
+		if (isRemoved) {
+			unindex(token, session.getUserId());
+		}
+	}
+
+	private void index(String token, Integer userId) {
+		tokensByUser.compute(userId, (userIdElement, tokens) -> {
+			Set<String> userTokens = tokens == null ? ConcurrentHashMap.newKeySet() : tokens;
+			userTokens.add(token);
+
+			return userTokens;
+		});
+	}
+
+	private void unindex(String token, Integer userId) {
+		tokensByUser.computeIfPresent(userId, (userIdElement, tokens) -> {
+			tokens.remove(token);
+
+			return tokens.isEmpty() ? null : tokens;
+		});
+	}
+
+	private Segment segmentOf(String token) {
+		return segments[spread(token.hashCode()) & (SEGMENTS - 1)];
+	}
+
+	private static int stripeOf(int hashCode) {
+		return spread(hashCode) & (STRIPES - 1);
+	}
+
+	/**
+	 * Mixes the high bits of a hash code into the low ones, which choose the segment and the stripe.
+	 *
+	 * @param hashCode the hash code
+	 * @return the mixed hash code
+	 */
+	private static int spread(int hashCode) {
+		return hashCode ^ (hashCode >>> 16);
+	}
+
+	/**
+	 * <p>Sessions of one segment, in access order: the first one is the least recently used.</p>
+	 * <p>Used only while holding its own lock.</p>
+	 *
+	 * @author Wanderley Drumond
+	 *
+	 */
+	private final class Segment extends LinkedHashMap<String, Session> {
+		/**
+		 * <p>The serial version identifier for this class.<p>
+		 *
+		 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+		 */
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75F, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+			if (size() <= capacity) {
+				return false;
+			}
+
+			unindex(eldest.getKey(), eldest.getValue().getUserId());
+			evictions.increment();
+
+			return true;
+		}
+	}
+
+	/**
+	 * Logged user information kept by the cache.
+	 *
+	 * @author Wanderley Drumond
+	 *
+	 */
+	@Getter
+	public static final class Session implements Serializable {
+		/**
+		 * <p>The serial version identifier for this class.<p>
+		 *
+		 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+		 */
+		private static final long serialVersionUID = 1L;
+
+		private final Integer userId;
+		private final Role role;
+		private final long createdAt;
+		private volatile long lastAccess;
+
+		public Session(Integer userId, Role role, long createdAt) {
+			this.userId = userId;
+			this.role = role;
+			this.createdAt = createdAt;
+			this.lastAccess = createdAt;
+		}
+
+		/**
+		 * Checks if the session is no longer valid.
+		 *
+		 * @param now current time in milliseconds
+		 * @return true if the session was idle or alive for too long
+		 */
+		boolean isExpired(long now) {
+			return now - lastAccess > IDLE_TIMEOUT || now - createdAt > TIME_TO_LIVE;
+		}
+	}
+}
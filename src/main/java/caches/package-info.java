@@ -0,0 +1,4 @@
+/**
+ * Contains all project in-memory caches and indexes.
+ */
+package caches;
@@ -0,0 +1,246 @@
+package compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+
+import enums.ContentEncoding;
+import metrics.MetricsRegistry;
+
+/**
+ * <p>Output stream that holds the first bytes of a response and compresses it only if it grows beyond the threshold.</p>
+ * <p>The response headers are sent with the first byte written to the container stream, so they can still be changed when the decision is made:
+ * a small response is written as it is and a big one gets the <code>Content-Encoding</code> header and is compressed from then on.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+final class CompressingOutputStream extends OutputStream {
+	/**
+	 * Header of a gzip member: magic number, deflate method, no flags, no modification time, no extra flags and unknown operating system.
+	 */
+	private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	/**
+	 * Size of the buffer of compressed bytes.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	private final CountingOutputStream target;
+	private final MultivaluedMap<String, Object> headers;
+	private final ContentEncoding encoding;
+	private final DeflaterPool deflaterPool;
+	private final MetricsRegistry metricsRegistry;
+
+	/**
+	 * The first bytes of the response, while its size is still below the threshold.
+	 */
+	private byte[] pending;
+	private int amountOfPendingBytes;
+
+	private Deflater deflater;
+	private DeflaterOutputStream deflaterStream;
+	private final CRC32 checksum = new CRC32();
+	private long amountOfInputBytes;
+	private long compressionNanoseconds;
+	private boolean isFinished;
+
+	/**
+	 * Creates the stream for one response.
+	 *
+	 * @param target		  the container stream
+	 * @param headers		  the response headers, not sent yet
+	 * @param encoding		  the encoding accepted by the client
+	 * @param deflaterPool	  the pool of deflaters of the encoding
+	 * @param threshold		  the size above which the response is compressed, in bytes
+	 * @param metricsRegistry the registry where the compression is counted
+	 */
+	CompressingOutputStream(OutputStream target, MultivaluedMap<String, Object> headers, ContentEncoding encoding, DeflaterPool deflaterPool,
+			int threshold, MetricsRegistry metricsRegistry) {
+		this.target = new CountingOutputStream(target);
+		this.headers = headers;
+		this.encoding = encoding;
+		this.deflaterPool = deflaterPool;
+		this.metricsRegistry = metricsRegistry;
+		this.pending = new byte[threshold];
+	}
+
+	@Override
+	public void write(int value) throws IOException {
+		write(new byte[] {(byte) value}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		if (deflaterStream != null) {
+			compress(bytes, offset, length);
+			return;
+		}
+
+		if (amountOfPendingBytes + length <= pending.length) {
+			System.arraycopy(bytes, offset, pending, amountOfPendingBytes, length);
+			amountOfPendingBytes += length;
+			return;
+		}
+
+		startCompression();
+		compress(bytes, offset, length);
+	}
+
+	/**
+	 * Sends the bytes compressed so far. While the response is below the threshold, nothing is sent, so it can still be left uncompressed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (deflaterStream != null) {
+			long start = System.nanoTime();
+			deflaterStream.flush();
+			compressionNanoseconds += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Finishes the response without closing the container stream, which is closed by the container.
+	 */
+	@Override
+	public void close() throws IOException {
+		finish();
+	}
+
+	/**
+	 * Writes the held bytes as they are, if the response stayed below the threshold, or the end of the compressed data otherwise.
+	 *
+	 * @throws IOException if the container stream could not be written
+	 */
+	void finish() throws IOException {
+		if (isFinished) {
+			return;
+		}
+		isFinished = true;
+
+		if (deflaterStream == null) {
+			target.write(pending, 0, amountOfPendingBytes);
+			pending = null;
+			return;
+		}
+
+		long start = System.nanoTime();
+		deflaterStream.finish();
+
+		if (encoding == ContentEncoding.GZIP) {
+			writeIntLittleEndian((int) checksum.getValue());
+			writeIntLittleEndian((int) amountOfInputBytes);
+		}
+		compressionNanoseconds += System.nanoTime() - start;
+
+		metricsRegistry.recordCompression(encoding, amountOfInputBytes, target.getCount(), compressionNanoseconds);
+	}
+
+	/**
+	 * Gives the deflater back to the pool, whether the response was finished or not.
+	 */
+	void release() {
+		if (deflater != null) {
+			deflaterPool.giveBack(deflater);
+			deflater = null;
+		}
+	}
+
+	/**
+	 * Marks the response as compressed and compresses the held bytes.
+	 *
+	 * @throws IOException if the container stream could not be written
+	 */
+	private void startCompression() throws IOException {
+		headers.putSingle(HttpHeaders.CONTENT_ENCODING, encoding.getHeaderName());
+		headers.remove(HttpHeaders.CONTENT_LENGTH);
+
+		// A representação comprimida tem outros bytes, logo precisa de outra ETag forte
+		Object eTag = headers.getFirst(HttpHeaders.ETAG);
+		if (eTag != null) {
+			headers.putSingle(HttpHeaders.ETAG, CompressionInterceptor.tagETag(eTag.toString(), encoding));
+		}
+
+		deflater = deflaterPool.borrow();
+
+		if (encoding == ContentEncoding.GZIP) {
+			target.write(GZIP_HEADER);
+		}
+
+		deflaterStream = new DeflaterOutputStream(target, deflater, BUFFER_SIZE, true);
+
+		compress(pending, 0, amountOfPendingBytes);
+		pending = null;
+	}
+
+	/**
+	 * Compresses the given bytes, timing the work of the deflater.
+	 *
+	 * @param bytes	 the uncompressed bytes
+	 * @param offset the position of the first byte
+	 * @param length the amount of bytes
+	 * @throws IOException if the container stream could not be written
+	 */
+	private void compress(byte[] bytes, int offset, int length) throws IOException {
+		long start = System.nanoTime();
+
+		if (encoding == ContentEncoding.GZIP) {
+			checksum.update(bytes, offset, length);
+		}
+		deflaterStream.write(bytes, offset, length);
+
+		amountOfInputBytes += length;
+		compressionNanoseconds += System.nanoTime() - start;
+	}
+
+	/**
+	 * Writes a number in the byte order of the gzip trailer.
+	 *
+	 * @param value the number
+	 * @throws IOException if the container stream could not be written
+	 */
+	private void writeIntLittleEndian(int value) throws IOException {
+		target.write(new byte[] {(byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24)});
+	}
+
+	/**
+	 * Output stream that counts the bytes written to the container stream.
+	 *
+	 * @author Wanderley Drumond
+	 *
+	 */
+	private static final class CountingOutputStream extends OutputStream {
+		private final OutputStream target;
+		private long count;
+
+		CountingOutputStream(OutputStream target) {
+			this.target = target;
+		}
+
+		long getCount() {
+			return count;
+		}
+
+		@Override
+		public void write(int value) throws IOException {
+			target.write(value);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			target.write(bytes, offset, length);
+			count += length;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			target.flush();
+		}
+	}
+}
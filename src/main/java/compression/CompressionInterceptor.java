@@ -0,0 +1,124 @@
+package compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+import javax.annotation.Priority;
+import javax.enterprise.inject.spi.CDI;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import enums.ContentEncoding;
+import metrics.MetricsRegistry;
+
+/**
+ * <p>Compresses the responses bigger than <code>cia-aerea.compression.min-bytes</code> bytes (1024 by default) with gzip or deflate,
+ * as accepted by the <code>Accept-Encoding</code> header. Smaller responses are sent as they are, since compressing them costs more than it saves.</p>
+ * <p>The deflaters are pooled, one pool per encoding, and the compressed and uncompressed sizes and the time spent compressing are recorded as metrics.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@Provider
+@Priority(Priorities.ENTITY_CODER)
+public class CompressionInterceptor implements WriterInterceptor {
+	/**
+	 * Size above which the responses are compressed, in bytes.
+	 */
+	private static final int THRESHOLD = Integer.getInteger("cia-aerea.compression.min-bytes", 1024);
+
+	/**
+	 * Compression level, from 1 (fastest) to 9 (smallest).
+	 */
+	private static final int LEVEL = Integer.getInteger("cia-aerea.compression.level", Deflater.DEFAULT_COMPRESSION);
+
+	/**
+	 * Maximum amount of idle deflaters kept by each pool.
+	 */
+	private static final int POOL_CAPACITY = Integer.getInteger("cia-aerea.compression.pool-size", Runtime.getRuntime().availableProcessors() * 2);
+
+	private static final DeflaterPool GZIP_DEFLATERS = new DeflaterPool(LEVEL, true, POOL_CAPACITY);
+	private static final DeflaterPool DEFLATE_DEFLATERS = new DeflaterPool(LEVEL, false, POOL_CAPACITY);
+
+	/**
+	 * Headers of the current requisition.
+	 */
+	@Context
+	private HttpHeaders httpHeaders;
+
+	/**
+	 * Object that records the compression metrics, resolved on the first compressed response.
+	 */
+	private volatile MetricsRegistry metricsRegistry;
+
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+		MultivaluedMap<String, Object> headers = context.getHeaders();
+
+		if (headers.containsKey(HttpHeaders.CONTENT_ENCODING)) {
+			context.proceed();
+			return;
+		}
+
+		headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+		ContentEncoding encoding = ContentEncoding.negotiate(httpHeaders.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+
+		if (encoding == null) {
+			context.proceed();
+			return;
+		}
+
+		OutputStream containerStream = context.getOutputStream();
+		CompressingOutputStream compressingStream = new CompressingOutputStream(containerStream, headers, encoding,
+				encoding == ContentEncoding.GZIP ? GZIP_DEFLATERS : DEFLATE_DEFLATERS, THRESHOLD, getMetricsRegistry());
+
+		context.setOutputStream(compressingStream);
+		try {
+			context.proceed();
+			compressingStream.finish();
+		} finally {
+			compressingStream.release();
+			context.setOutputStream(containerStream);
+		}
+	}
+
+	/**
+	 * <p>Gets the ETag of the compressed form of a response, which has other bytes and so needs another strong ETag.</p>
+	 * <p>The encoding is added inside the quotes, so <code>"1a-2b"</code> becomes <code>"1a-2b-gzip"</code>.</p>
+	 *
+	 * @param eTag	   the ETag of the uncompressed response
+	 * @param encoding the encoding of the response
+	 * @return the ETag of the compressed response, or the given one if it is not quoted
+	 */
+	public static String tagETag(String eTag, ContentEncoding encoding) {
+		if (eTag.length() < 2 || !eTag.endsWith("\"")) {
+			return eTag;
+		}
+
+		return eTag.substring(0, eTag.length() - 1) + "-" + encoding.getHeaderName() + "\"";
+	}
+
+	/**
+	 * Gets the registry of the metrics, resolving it on the first call.
+	 *
+	 * @return the registry
+	 */
+	private MetricsRegistry getMetricsRegistry() {
+		MetricsRegistry registry = metricsRegistry;
+
+		if (registry == null) {
+			registry = CDI.current().select(MetricsRegistry.class).get();
+			metricsRegistry = registry;
+		}
+
+		return registry;
+	}
+}
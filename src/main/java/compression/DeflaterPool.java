@@ -0,0 +1,67 @@
+package compression;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * <p>Pool of idle {@link Deflater} instances of one format.</p>
+ * <p>A deflater holds about 256 KB of native memory, so creating one per response costs more than compressing a small one.
+ * A borrowed deflater is reset when given back and a new one is created only when all of them are in use.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+final class DeflaterPool {
+	/**
+	 * Compression level of the deflaters, from 1 (fastest) to 9 (smallest).
+	 */
+	private final int level;
+
+	/**
+	 * Whether the deflaters write raw deflate data, without the zlib header and trailer, as gzip needs.
+	 */
+	private final boolean isRaw;
+
+	/**
+	 * The idle deflaters.
+	 */
+	private final BlockingQueue<Deflater> idleDeflaters;
+
+	/**
+	 * Creates an empty pool.
+	 *
+	 * @param level	   compression level of the deflaters
+	 * @param isRaw	   whether the deflaters write raw deflate data
+	 * @param capacity maximum amount of idle deflaters kept
+	 */
+	DeflaterPool(int level, boolean isRaw, int capacity) {
+		this.level = level;
+		this.isRaw = isRaw;
+		this.idleDeflaters = new ArrayBlockingQueue<>(capacity);
+	}
+
+	/**
+	 * Takes an idle deflater, or creates one if there is none.
+	 *
+	 * @return a deflater ready to compress a new stream
+	 */
+	Deflater borrow() {
+		Deflater deflater = idleDeflaters.poll();
+
+		return deflater == null ? new Deflater(level, isRaw) : deflater;
+	}
+
+	/**
+	 * Gives a deflater back to the pool, releasing its native memory if the pool is full.
+	 *
+	 * @param deflater the borrowed deflater
+	 */
+	void giveBack(Deflater deflater) {
+		deflater.reset();
+
+		if (!idleDeflaters.offer(deflater)) {
+			deflater.end();
+		}
+	}
+}
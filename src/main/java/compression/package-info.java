@@ -0,0 +1,4 @@
+/**
+ * Contains the compression of the responses sent to the frontend.
+ */
+package compression;
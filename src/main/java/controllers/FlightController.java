@@ -1,7 +1,11 @@
 package controllers;
 
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.CompletionStage;
 
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
@@ -9,15 +13,25 @@ import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import caches.AvailabilityCache;
+import caches.DepartureIndex;
+import daos.GenericDAO;
 import dtos.FlightDTO;
-import entities.User;
+import dtos.PageDTO;
+import dtos.SeatMapDTO;
+import enums.ExportFormat;
 import enums.Role;
+import executors.RequestExecutor;
+import security.AllowedRoles;
+import services.ExportService;
 import services.FlightService;
-import services.UserService;
 
 /**
  * Class that contains all requisition methods that refers to flight.
@@ -34,24 +48,26 @@ public class FlightController {
 	private FlightService flightService;
 	
 	/**
-	 * Object that contains all user service methods.
+	 * Object that contains all table export methods.
 	 */
 	@Inject
-	private UserService userService;
+	private ExportService exportService;
+	
+	/**
+	 * Object that runs the requisitions away from the container worker threads.
+	 */
+	@Inject
+	private RequestExecutor requestExecutor;
 	
 	/**
 	 * Creates a new flight.
 	 * 
-	 * @param token		the authorisation key of the logged user
 	 * @param flightDTO the information of the new flight to be created
 	 * @return
 	 * 		  <ul>
-	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token. (It's not logged)</li>
-	 * 			<li><strong>403 (Forbidden)</strong></li>
-	 * 				<ul>If: 
-	 * 					<li>User that owns the given token does not exists in database (impossible)</li>
-	 * 					<li>User role is CLIENT</li>
-	 * 				</ul>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token or it is not found in database. (It's not logged)</li>
+	 * 			<li><strong>403 (Forbidden)</strong> if user role is CLIENT</li>
+	 * 			<li><strong>503 (Service Unavailable)</strong> if the flight code could not be generated or the flight could not be saved</li>
 	 * 			<li><strong>201 (Created)</strong> if the flight was created successfully</li>
 	 * 		  </ul>
 	 */
@@ -59,81 +75,272 @@ public class FlightController {
 	@POST
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response create(@HeaderParam("token") String token, FlightDTO flightDTO) {
-		if (token == null || token.isBlank()) {
-			String message = "User not logged";
-			return Response.status(401).entity(message).build();
-		}
+	@AllowedRoles(value = {Role.ADMINISTRATOR, Role.EMPLOYEE}, message = "User role == CLIENT")
+	public CompletionStage<Response> create(FlightDTO flightDTO) {
+		return requestExecutor.submit("flight.create", () -> {
+			FlightDTO newFlight = flightService.create(flightDTO);
 		
-		Role loggedUserRole = userService.getRoleLoggedUser(token);
-		if (loggedUserRole == null || loggedUserRole.equals(Role.CLIENT)) {
-			String message = "User not found or user role == CLIENT";
-			return Response.status(403).entity(message).build();
-		}
+			if (newFlight == null) {
+				String message = "There where some problem with the database trying to generate the flight code or save the flight";
+				return Response.status(503).entity(message).build();
+			}
 		
-		FlightDTO newFlight = flightService.create(flightDTO);
-		return Response.status(201).entity(newFlight).build();
+			return Response.status(201).entity(newFlight).build();
+		});
 	}
 	
 	/**
-	 * Gets all flights with available seats.
+	 * <p>Gets one page of flights that have not departed yet and have available seats, in order of departure.</p>
+	 * <p>The departure window can be narrowed with <code>from</code> and <code>to</code>, written as <code>2024-05-01</code> 
+	 * or <code>2024-05-01T10:30</code>: <code>from</code> is inclusive and <code>to</code> is exclusive.</p>
+	 * <p>Each page has an <code>ETag</code>. Sending it back in <code>If-None-Match</code> gets a 304 while no flight was created and no seat was taken or freed.</p>
 	 * 
-	 * @param token the authorisation key of the logged user
+	 * @param ifNoneMatch the <code>ETag</code> of the page the client already has, absent for none
+	 * @param limit		  the maximum amount of flights in the page
+	 * @param cursor	  the <code>Next-Cursor</code> header of the previous page, absent for the first page
+	 * @param from		  the beginning of the departure window, absent for now
+	 * @param to		  the end of the departure window, absent for no end
 	 * @return
 	 * 		  <ul>
-	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token. (It's not logged)</li>
-	 * 			<li><strong>200 (OK)</strong> if requisition was successfully answered</li>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token or it is not found in database. (It's not logged)</li>
+	 * 			<li><strong>400 (Bad Request)</strong> if the limit is not greater than zero or the cursor or any of the dates cannot be read</li>
+	 * 			<li><strong>503 (Service Unavailable)</strong> if the flights could not be loaded</li>
+	 * 			<li><strong>304 (Not Modified)</strong> if the client already has the current page</li>
+	 * 			<li><strong>200 (OK)</strong> if requisition was successfully answered, with the <code>ETag</code> header 
+	 * 			and the <code>Next-Cursor</code> header if there are more flights</li>
 	 * 		  </ul>
 	 */
 	@Path("/availables")
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getAvailables(@HeaderParam("token") String token) {
-		if (token == null || token.isBlank()) {
-			String message = "User not logged";
-			return Response.status(401).entity(message).build();
-		}
+	@AllowedRoles
+	public CompletionStage<Response> getAvailables(@HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch, 
+			@QueryParam("limit") Integer limit, @QueryParam("cursor") String cursor, @QueryParam("from") String from, @QueryParam("to") String to) {
+		return requestExecutor.submit("flight.getAvailables", () -> {
+			if (limit != null && limit <= 0) {
+				String message = "Limit must be greater than zero";
+				return Response.status(400).entity(message).build();
+			}
+		
+			if (cursor != null && !DepartureIndex.isValidCursor(cursor)) {
+				String message = "Invalid cursor";
+				return Response.status(400).entity(message).build();
+			}
+		
+			Long fromInstant = toInstant(from);
+			Long toInstant = toInstant(to);
+		
+			if ((from != null && fromInstant == null) || (to != null && toInstant == null)) {
+				String message = "Dates must be written as yyyy-MM-dd or yyyy-MM-ddTHH:mm";
+				return Response.status(400).entity(message).build();
+			}
+		
+			AvailabilityCache.Page flightsFound = flightService.getAvailablesPage(GenericDAO.pageSize(limit), cursor, fromInstant, toInstant);
+		
+			if (flightsFound == null) {
+				String message = "There where some problem loading the flights";
+				return Response.status(503).entity(message).build();
+			}
+		
+			String matchedETag = flightsFound.findMatch(ifNoneMatch);
+			if (matchedETag != null) {
+				return Response.notModified().header(HttpHeaders.ETAG, matchedETag).header("Next-Cursor", flightsFound.getNextCursor()).build();
+			}
+		
+			return Response.ok(flightsFound.getBody(), MediaType.APPLICATION_JSON).header(HttpHeaders.ETAG, flightsFound.getETag())
+					.header("Next-Cursor", flightsFound.getNextCursor()).build();
+		});
+	}
+	
+	/**
+	 * <p>Finds the flights whose destination, any word of the destination or code starts with the given text.</p>
+	 * <p>Case and accents are ignored, so <code>sao</code> finds "São Paulo". Answered from memory, without querying the database.</p>
+	 * 
+	 * @param query the beginning of the destination or code
+	 * @param limit the maximum amount of flights found
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token or it is not found in database. (It's not logged)</li>
+	 * 			<li><strong>400 (Bad Request)</strong> if the text to search is missing or the limit is not greater than zero</li>
+	 * 			<li><strong>503 (Service Unavailable)</strong> if the search index could not be loaded</li>
+	 * 			<li><strong>200 (OK)</strong> with the flights found, possibly none</li>
+	 * 		  </ul>
+	 */
+	@Path("/search")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	@AllowedRoles
+	public CompletionStage<Response> search(@QueryParam("q") String query, @QueryParam("limit") Integer limit) {
+		return requestExecutor.submit("flight.search", () -> {
+			if (query == null || query.isBlank()) {
+				String message = "The text to search is mandatory";
+				return Response.status(400).entity(message).build();
+			}
+		
+			if (limit != null && limit <= 0) {
+				String message = "Limit must be greater than zero";
+				return Response.status(400).entity(message).build();
+			}
+		
+			List<FlightDTO> flightsFound = flightService.search(query, GenericDAO.pageSize(limit));
 		
-		List<FlightDTO> flightsFound = flightService.getAllAvailables();
+			if (flightsFound == null) {
+				String message = "There where some problem loading the flights to search";
+				return Response.status(503).entity(message).build();
+			}
 		
-		return Response.ok(flightsFound).build();
+			return Response.ok(flightsFound).build();
+		});
 	}
 	
 	/**
-	 * Gets all flights, crowded and with available seats.
+	 * Gets the flight that owns the given code, ignoring case. Answered from memory, without querying the database.
 	 * 
-	 * @param token the authorisation key of the logged user
+	 * @param code the flight code
 	 * @return
 	 * 		  <ul>
-	 * 			<li><strong>401 (Unauthorised)</strong> If the token is not present</li>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token or it is not found in database. (It's not logged)</li>
+	 * 			<li><strong>404 (Not Found)</strong> if no flight has the given code</li>
+	 * 			<li><strong>503 (Service Unavailable)</strong> if the search index could not be loaded</li>
+	 * 			<li><strong>200 (OK)</strong> with the flight found</li>
+	 * 		  </ul>
+	 */
+	@Path("/by-code/{code}")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	@AllowedRoles
+	public CompletionStage<Response> getByCode(@PathParam("code") String code) {
+		return requestExecutor.submit("flight.getByCode", () -> {
+			FlightDTO flightFound = flightService.getByCode(code);
+		
+			if (flightFound == null) {
+				String message = "Flight not found";
+				return Response.status(404).entity(message).build();
+			}
+		
+			if (flightFound.getId() == -1) {
+				String message = "There where some problem loading the flights to search";
+				return Response.status(503).entity(message).build();
+			}
+		
+			return Response.ok(flightFound).build();
+		});
+	}
+	
+	/**
+	 * <p>Gets the seat map of the given flight, in one small payload.</p>
+	 * <p>The occupied seats come as a bitmap encoded in Base64, one bit per seat, so the frontend can draw the seat selection.</p>
+	 * 
+	 * @param idFlight the primary key of the flight
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token or it is not found in database. (It's not logged)</li>
+	 * 			<li><strong>404 (Not Found)</strong> if the flight is not found in the database</li>
+	 * 			<li><strong>200 (OK)</strong> with the amount of seats, the amount of free seats and the bitmap of the occupied seats</li>
+	 * 		  </ul>
+	 */
+	@Path("/{id}/seat-map")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	@AllowedRoles
+	public CompletionStage<Response> getSeatMap(@PathParam("id") Integer idFlight) {
+		return requestExecutor.submit("flight.getSeatMap", () -> {
+			SeatMapDTO seatMapDTO = flightService.getSeatMap(idFlight);
+		
+			if (seatMapDTO == null) {
+				String message = "Flight not found";
+				return Response.status(404).entity(message).build();
+			}
+		
+			return Response.ok(seatMapDTO).build();
+		});
+	}
+	
+	/**
+	 * Gets one page of flights, crowded and with available seats.
+	 * 
+	 * @param limit  the maximum amount of flights in the page
+	 * @param cursor the <code>Next-Cursor</code> header of the previous page, absent for the first page
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>401 (Unauthorised)</strong> If the token is not present or the logged user is not found in the database</li>
+	 * 			<li><strong>400 (Bad Request)</strong> If the limit is not greater than zero</li>
 	 * 			<li><strong>403 (Forbidden)</strong> If user is logged as CLIENT</li>
-	 * 			<li><strong>404 (Not Found)</strong> If the logged user is not found in the database</li>
-	 * 			<li><strong>200 (OK)</strong> If the requisition is successful (with flights list)</li>
+	 * 			<li><strong>503 (Service Unavailable)</strong> If the flights could not be loaded</li>
+	 * 			<li><strong>200 (OK)</strong> If the requisition is successful (with flights list and the <code>Next-Cursor</code> header if there are more flights)</li>
 	 * 		  </ul>
 	 */
 	@Path("/all")
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getAll(@HeaderParam("token") String token) {
-		if (token == null || token.isBlank()) {
-			String message = "User not logged";
-			return Response.status(401).entity(message).build();
-		}
+	@AllowedRoles(value = {Role.ADMINISTRATOR, Role.EMPLOYEE}, message = "Client cannot see flights which don't have available seats")
+	public CompletionStage<Response> getAll(@QueryParam("limit") Integer limit, @QueryParam("cursor") Integer cursor) {
+		return requestExecutor.submit("flight.getAll", () -> {
+			if (limit != null && limit <= 0) {
+				String message = "Limit must be greater than zero";
+				return Response.status(400).entity(message).build();
+			}
 		
-		Optional<User> loggedUser = userService.getByToken(token);
+			PageDTO<FlightDTO> flightsDTO = flightService.getAll(GenericDAO.pageSize(limit), cursor);
+			
+			if (flightsDTO == null) {
+				String message = "There where some problem loading the flights";
+				return Response.status(503).entity(message).build();
+			}
+			
+			return Response.ok(flightsDTO.getItems()).header("Next-Cursor", flightsDTO.getNextCursor()).build();
+		});
+	}
+	
+	/**
+	 * <p>Exports all flights, writing them to the response while they are read from the database.</p>
+	 * <p>Made for reporting tools: the response starts right away and its memory use does not depend on the amount of flights.</p>
+	 * 
+	 * @param format <code>ndjson</code> (default) for one JSON object per line or <code>csv</code> for comma separated values
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token or it is not found in database. (It's not logged)</li>
+	 * 			<li><strong>403 (Forbidden)</strong> if user role is CLIENT</li>
+	 * 			<li><strong>400 (Bad Request)</strong> if the format is unknown</li>
+	 * 			<li><strong>200 (OK)</strong> with the flights, one per line</li>
+	 * 		  </ul>
+	 */
+	@Path("/export")
+	@GET
+	@Produces({"application/x-ndjson", "text/csv"})
+	@AllowedRoles(value = {Role.ADMINISTRATOR, Role.EMPLOYEE}, message = "User not allowed to export flights")
+	public Response export(@QueryParam("format") String format) {
 		String message;
 		
-		if (loggedUser.isEmpty()) {
-			message = "User not found in database";
-			return Response.status(404).entity(message).build();
+		ExportFormat exportFormat = ExportFormat.fromName(format);
+		if (exportFormat == null) {
+			message = "Unknown export format";
+			return Response.status(400).entity(message).build();
 		}
 		
-		if (loggedUser.isPresent() && loggedUser.get().getRole().equals(Role.CLIENT)) {
-			message = "Client cannot see flights which don't have available seats";
-			return Response.status(403).entity(message).build();
+		return Response.ok(exportService.exportFlights(exportFormat), exportFormat.getMediaType()).build();
+	}
+	
+	/**
+	 * <p>Reads a date, or a date and time, informed in a requisition.</p>
+	 * <p><code>getAvailables()</code> auxiliary method.</p>
+	 * 
+	 * @param dateTime the date as <code>yyyy-MM-dd</code>, meaning its beginning, or the date and time in ISO format
+	 * @return the instant in milliseconds, or null if the date is absent or cannot be read
+	 */
+	private Long toInstant(String dateTime) {
+		if (dateTime == null) {
+			return null;
 		}
 		
-		List<FlightDTO> flightsDTO = flightService.getAll();
-		return Response.ok(flightsDTO).build();
+		try {
+			return Timestamp.valueOf(LocalDateTime.parse(dateTime.trim())).getTime();
+		} catch (DateTimeParseException dateTimeParseException) {
+			try {
+				return Timestamp.valueOf(LocalDate.parse(dateTime.trim()).atStartOfDay()).getTime();
+			} catch (DateTimeParseException dateOnlyParseException) {
+				return null;
+			}
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package controllers;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+
+import metrics.MetricsRegistry;
+
+/**
+ * Class that contains the requisition method read by Prometheus.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@Path("/metrics")
+public class MetricsController {
+	/**
+	 * Content type of the Prometheus text exposition format.
+	 */
+	private static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+	/**
+	 * Object that keeps the latency histograms and the status counters.
+	 */
+	@Inject
+	private MetricsRegistry metricsRegistry;
+
+	/**
+	 * <p>Gets the latency quantiles of each resource, service and DAO method and the amount of responses by status code.</p>
+	 * <p>Answered right away, without going through the requisitions executor, so it can still be read when the executor is saturated.</p>
+	 *
+	 * @return <strong>200 (OK)</strong> with the metrics in Prometheus text format
+	 */
+	@GET
+	@Produces(PROMETHEUS_TEXT)
+	public Response getMetrics() {
+		return Response.ok(metricsRegistry.toPrometheusText()).build();
+	}
+}
@@ -0,0 +1,231 @@
+package controllers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import caches.SessionCache;
+import daos.GenericDAO;
+import enums.Role;
+import executors.RequestExecutor;
+import journals.BookingJournal;
+import journals.TicketEvent;
+import security.AllowedRoles;
+import security.SessionTokens;
+import services.MonitoringService;
+import startup.WarmUp;
+
+/**
+ * Class that contains all requisition methods that refers to the runtime state of the system.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@Path("/monitoring")
+public class MonitoringController {
+	/**
+	 * Message sent to the logged users that are not administrators.
+	 */
+	private static final String ONLY_ADMINISTRATORS = "Only administrators can see monitoring data";
+
+	/**
+	 * Object that keeps the logged users already resolved by their token.
+	 */
+	@Inject
+	private SessionCache sessionCache;
+
+	/**
+	 * Object that issues and verifies the signed session tokens.
+	 */
+	@Inject
+	private SessionTokens sessionTokens;
+
+	/**
+	 * Object that contains all monitoring service methods.
+	 */
+	@Inject
+	private MonitoringService monitoringService;
+
+	/**
+	 * Object that runs the requisitions away from the container worker threads.
+	 */
+	@Inject
+	private RequestExecutor requestExecutor;
+
+	/**
+	 * Object that keeps the history of the changes made to the tickets.
+	 */
+	@Inject
+	private BookingJournal bookingJournal;
+
+	/**
+	 * Object that warms the caches up after each deploy.
+	 */
+	@Inject
+	private WarmUp warmUp;
+
+	/**
+	 * <p>Tells if the application is ready to receive traffic, that is, if the warm-up run after the deploy is over.</p>
+	 * <p>Needs no token, so the load balancer can ask it before sending requisitions to this instance.</p>
+	 *
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>503 (Service Unavailable)</strong> if the warm-up is still running</li>
+	 * 			<li><strong>200 (OK)</strong> with what the warm-up loaded and how long it took</li>
+	 * 		  </ul>
+	 */
+	@Path("/readiness")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getReadiness() {
+		return Response.status(warmUp.isReady() ? 200 : 503).entity(warmUp.getReport()).build();
+	}
+
+	/**
+	 * Gets the usage counters of the logged users cache.
+	 *
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token or it is not found in database. (It's not logged)</li>
+	 * 			<li><strong>403 (Forbidden)</strong> if the logged user is not an ADMINISTRATOR</li>
+	 * 			<li><strong>200 (OK)</strong> with the amount of hits, misses, evictions and the current size</li>
+	 * 		  </ul>
+	 */
+	@Path("/session-cache")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	@AllowedRoles(value = Role.ADMINISTRATOR, message = ONLY_ADMINISTRATORS)
+	public Response getSessionCacheStatistics() {
+		return Response.ok(sessionCache.getStatistics()).build();
+	}
+
+	/**
+	 * Gets the usage counters of the signed session tokens.
+	 *
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token or it is not found in database. (It's not logged)</li>
+	 * 			<li><strong>403 (Forbidden)</strong> if the logged user is not an ADMINISTRATOR</li>
+	 * 			<li><strong>200 (OK)</strong> with whether they are enabled, the amount of tokens verified and refused and the size of the revocation list</li>
+	 * 		  </ul>
+	 */
+	@Path("/session-tokens")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	@AllowedRoles(value = Role.ADMINISTRATOR, message = ONLY_ADMINISTRATORS)
+	public Response getSessionTokensStatistics() {
+		return Response.ok(sessionTokens.getStatistics()).build();
+	}
+
+	/**
+	 * Gets the usage counters of the second-level cache of flights and users and of the flight listings query cache.
+	 *
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token or it is not found in database. (It's not logged)</li>
+	 * 			<li><strong>403 (Forbidden)</strong> if the logged user is not an ADMINISTRATOR</li>
+	 * 			<li><strong>503 (Service Unavailable)</strong> if the statistics could not be read</li>
+	 * 			<li><strong>200 (OK)</strong> with the amount of hits, misses and puts of each cache and their hit ratio</li>
+	 * 		  </ul>
+	 */
+	@Path("/second-level-cache")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	@AllowedRoles(value = Role.ADMINISTRATOR, message = ONLY_ADMINISTRATORS)
+	public Response getSecondLevelCacheStatistics() {
+		Map<String, Object> statistics = monitoringService.getSecondLevelCacheStatistics();
+		if (statistics == null) {
+			String message = "There where some problem reading the cache statistics";
+			return Response.status(503).entity(message).build();
+		}
+
+		return Response.ok(statistics).build();
+	}
+
+	/**
+	 * Gets the usage counters of the executor that runs the requisitions.
+	 *
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token or it is not found in database. (It's not logged)</li>
+	 * 			<li><strong>403 (Forbidden)</strong> if the logged user is not an ADMINISTRATOR</li>
+	 * 			<li><strong>200 (OK)</strong> with the executor kind and the amount of queued, active, completed, rejected and timed out requisitions</li>
+	 * 		  </ul>
+	 */
+	@Path("/request-executor")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	@AllowedRoles(value = Role.ADMINISTRATOR, message = ONLY_ADMINISTRATORS)
+	public Response getRequestExecutorStatistics() {
+		return Response.ok(requestExecutor.getStatistics()).build();
+	}
+
+	/**
+	 * <p>Gets the events of the booking journal, in order, starting at the given offset.</p>
+	 * <p>The offset of the next event to be read is sent in the <code>Next-Cursor</code> header, so the journal can be followed page after page.</p>
+	 *
+	 * @param from	the offset of the first event, 0 if absent
+	 * @param limit the maximum amount of events
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>400 (Bad Request)</strong> if the offset is negative or the limit is not greater than zero</li>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token or it is not found in database. (It's not logged)</li>
+	 * 			<li><strong>403 (Forbidden)</strong> if the logged user is not an ADMINISTRATOR</li>
+	 * 			<li><strong>503 (Service Unavailable)</strong> if the journal files could not be read</li>
+	 * 			<li><strong>200 (OK)</strong> with the events found, possibly none</li>
+	 * 		  </ul>
+	 */
+	@Path("/journal")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	@AllowedRoles(value = Role.ADMINISTRATOR, message = ONLY_ADMINISTRATORS)
+	public Response getJournal(@QueryParam("from") Long from, @QueryParam("limit") Integer limit) {
+		String message;
+
+		if ((from != null && from < 0L) || (limit != null && limit <= 0)) {
+			message = "Offset must not be negative and limit must be greater than zero";
+			return Response.status(400).entity(message).build();
+		}
+
+		List<TicketEvent> events = new ArrayList<>();
+		long nextOffset;
+		try {
+			nextOffset = bookingJournal.replay(from == null ? 0L : from, GenericDAO.pageSize(limit), events::add);
+		} catch (IOException ioException) {
+			System.err.println("Catch " + ioException.getClass().getName() + " getJournal() in MonitoringController");
+			ioException.printStackTrace();
+
+			message = "There where some problem reading the booking journal";
+			return Response.status(503).entity(message).build();
+		}
+
+		return Response.ok(events).header("Next-Cursor", nextOffset).build();
+	}
+
+	/**
+	 * Gets the state of the booking journal.
+	 *
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token or it is not found in database. (It's not logged)</li>
+	 * 			<li><strong>403 (Forbidden)</strong> if the logged user is not an ADMINISTRATOR</li>
+	 * 			<li><strong>200 (OK)</strong> with whether it is open, its directory, the next offset and the amount of events appended</li>
+	 * 		  </ul>
+	 */
+	@Path("/journal/statistics")
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	@AllowedRoles(value = Role.ADMINISTRATOR, message = ONLY_ADMINISTRATORS)
+	public Response getJournalStatistics() {
+		return Response.ok(bookingJournal.getStatistics()).build();
+	}
+}
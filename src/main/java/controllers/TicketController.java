@@ -1,24 +1,31 @@
 package controllers;
 
-import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.CompletionStage;
 
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
-import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
 
+import daos.GenericDAO;
+import dtos.PageDTO;
+import dtos.TicketBatchDTO;
 import dtos.TicketDTO;
-import entities.User;
+import enums.ExportFormat;
 import enums.Role;
+import executors.RequestExecutor;
+import security.AllowedRoles;
+import security.LoggedUser;
+import services.ExportService;
 import services.TicketService;
-import services.UserService;
 
 /**
  * Class that contains all requisition methods that refers to ticket.
@@ -35,21 +42,27 @@ public class TicketController {
 	private TicketService ticketService;
 	
 	/**
-	 * Object that contains all user service methods.
+	 * Object that contains all table export methods.
 	 */
 	@Inject
-	UserService userService;
+	private ExportService exportService;
+	
+	/**
+	 * Object that runs the requisitions away from the container worker threads.
+	 */
+	@Inject
+	private RequestExecutor requestExecutor;
 	
 	/**
 	 * <p>Creates a new ticket.</p>
-	 * <p>Called when a user buys a new ticket.</p>
+	 * <p>Called when a user buys a new ticket. The seat can be chosen in <code>seatNumber</code>, otherwise the first free seat is given.</p>
 	 * <ul>
 	 * 	<li>CLIENT: </li> allowed to buy a new ticket only to himself.
 	 * 	<li>EMPLOYEE and ADMINISTRATOR: </li> allowed to buy a new ticket for himself and any other user.
 	 * </ul>
 	 * 
-	 * @param token		  the authorisation key of the logged user
-	 * @param requestBody the information of the new ticket to be created
+	 * @param securityContext the security context of the requisition, with the logged user
+	 * @param requestBody	  the information of the new ticket to be created
 	 * @return
 	 * 		  <ul>
 	 * 			<li><strong>401 (UNAUTHORIZED)</strong>
@@ -62,55 +75,150 @@ public class TicketController {
 	 * 			</li>
 	 * 			<li><strong>403 (FORBIDDEN)</strong> if CLIENT tries to buy new a ticket for another user
 	 * 			</li>
+	 * 			<li><strong>404 (NOT FOUND)</strong> if the flight is not found in database</li>
 	 * 			<li><strong>400 (BAD REQUEST)</strong> if:
 	 * 				<ul>
 	 * 					<li>user who will owns the ticket/take the fight not found in database</li>
 	 * 					<li>user tries to buy a new ticket for a flight with no available seats</li>
 	 * 				</ul>
 	 * 			</li>
-	 * 			<li><strong>201 (CREATED)</strong> if new ticket was successfully created</li>
+	 * 			<li><strong>409 (CONFLICT)</strong> if the chosen seat does not exist in the flight or is already occupied</li>
+	 * 			<li><strong>503 (SERVICE UNAVAILABLE)</strong> if the ticket could not be saved in database</li>
+	 * 			<li><strong>201 (CREATED)</strong> if new ticket was successfully created, with its seat number</li>
 	 * 		  </ul>
 	 */
 	@Path("/create")
 	@POST
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response create(@HeaderParam("token") String token, TicketDTO requestBody) {
-		if (token == null || token.isBlank()) {
-			String message = "User not logged";
-			return Response.status(401).entity(message).build();
-		}
+	@AllowedRoles
+	public CompletionStage<Response> create(@Context SecurityContext securityContext, TicketDTO requestBody) {
+		LoggedUser loggedUser = LoggedUser.of(securityContext);
 		
-		TicketDTO newTicketDTO = ticketService.create(token, requestBody);
+		return requestExecutor.submit("ticket.create", () -> {
+			TicketDTO newTicketDTO = ticketService.create(loggedUser, requestBody);
 		
-		if (newTicketDTO == null) {
-			String message = "Passenger not found";
-			return Response.status(400).entity(message).build();
-		}
+			if (newTicketDTO == null) {
+				String message = "Passenger not found";
+				return Response.status(400).entity(message).build();
+			}
 		
-		if (newTicketDTO.getId() == -1) {
-			String message = "Buyer not found";
-			return Response.status(401).entity(message).build();
-		}
+			if (newTicketDTO.getId() == -1) {
+				String message = "Buyer not found";
+				return Response.status(401).entity(message).build();
+			}
 		
-		if (newTicketDTO.getId() == -2) {
-			String message = "Client cannot buy ticket for other users";
-			return Response.status(403).entity(message).build();
-		}
+			if (newTicketDTO.getId() == -2) {
+				String message = "Client cannot buy ticket for other users";
+				return Response.status(403).entity(message).build();
+			}
 		
-		if (newTicketDTO.getId() == -3) {
-			String message = "There are no available seats from this flight";
-			return Response.status(400).entity(message).build();
-		}
+			if (newTicketDTO.getId() == -3) {
+				String message = "There are no available seats from this flight";
+				return Response.status(400).entity(message).build();
+			}
+		
+			if (newTicketDTO.getId() == -4) {
+				String message = "There where some problem with the database trying to save the ticket";
+				return Response.status(503).entity(message).build();
+			}
 		
-		return Response.status(201).entity(newTicketDTO).build();
+			if (newTicketDTO.getId() == -5) {
+				String message = "The chosen seat does not exist in this flight or is already occupied";
+				return Response.status(409).entity(message).build();
+			}
+		
+			if (newTicketDTO.getId() == -6) {
+				String message = "Flight not found";
+				return Response.status(404).entity(message).build();
+			}
+		
+			return Response.status(201).entity(newTicketDTO).build();
+		});
 	}
 	
 	/**
-	 * Gets the ticket information by user's id.
+	 * <p>Creates one ticket in the given flight for each given passenger, all at once.</p>
+	 * <p>Called when an agent books a group travel. Either all tickets are created or none is.</p>
+	 * <ul>
+	 * 	<li>CLIENT: </li> allowed to buy a ticket only to himself.
+	 * 	<li>EMPLOYEE and ADMINISTRATOR: </li> allowed to buy tickets for any users.
+	 * </ul>
 	 * 
-	 * @param token the authorisation key of the logged user
-	 * @param id	the primary key of the user who owns the ticket
+	 * @param securityContext the security context of the requisition, with the logged user
+	 * @param requestBody	  the flight and the list of passengers ids
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>401 (UNAUTHORIZED)</strong> if token is null, empty or the user who will buy the tickets is not found in database</li>
+	 * 			<li><strong>403 (FORBIDDEN)</strong> if CLIENT tries to buy tickets for other users</li>
+	 * 			<li><strong>404 (NOT FOUND)</strong> if the flight is not found in database</li>
+	 * 			<li><strong>400 (BAD REQUEST)</strong> if:
+	 * 				<ul>
+	 * 					<li>the passengers list is empty, too long or has repeated passengers</li>
+	 * 					<li>any of the passengers is not found in database</li>
+	 * 					<li>the flight has not enough available seats for all passengers</li>
+	 * 				</ul>
+	 * 			</li>
+	 * 			<li><strong>503 (SERVICE UNAVAILABLE)</strong> if the tickets could not be saved in database</li>
+	 * 			<li><strong>201 (CREATED)</strong> with the created tickets</li>
+	 * 		  </ul>
+	 */
+	@Path("/batch")
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	@AllowedRoles
+	public CompletionStage<Response> createBatch(@Context SecurityContext securityContext, TicketBatchDTO requestBody) {
+		LoggedUser loggedUser = LoggedUser.of(securityContext);
+		
+		return requestExecutor.submit("ticket.createBatch", () -> {
+			TicketBatchDTO newTicketBatchDTO = ticketService.createBatch(loggedUser, requestBody);
+		
+			if (newTicketBatchDTO == null) {
+				String message = "Passenger not found";
+				return Response.status(400).entity(message).build();
+			}
+		
+			if (newTicketBatchDTO.getIdFlight() == -1) {
+				String message = "Buyer not found";
+				return Response.status(401).entity(message).build();
+			}
+		
+			if (newTicketBatchDTO.getIdFlight() == -2) {
+				String message = "Client cannot buy ticket for other users";
+				return Response.status(403).entity(message).build();
+			}
+		
+			if (newTicketBatchDTO.getIdFlight() == -3) {
+				String message = "There are not enough available seats from this flight";
+				return Response.status(400).entity(message).build();
+			}
+		
+			if (newTicketBatchDTO.getIdFlight() == -4) {
+				String message = "There where some problem with the database trying to save the tickets";
+				return Response.status(503).entity(message).build();
+			}
+		
+			if (newTicketBatchDTO.getIdFlight() == -5) {
+				String message = "Flight not found";
+				return Response.status(404).entity(message).build();
+			}
+		
+			if (newTicketBatchDTO.getIdFlight() == -6) {
+				String message = "The passengers list must have distinct passengers and cannot be empty or too long";
+				return Response.status(400).entity(message).build();
+			}
+		
+			return Response.status(201).entity(newTicketBatchDTO).build();
+		});
+	}
+	
+	/**
+	 * Gets one page of the ticket information by user's id.
+	 * 
+	 * @param id	 the primary key of the user who owns the ticket
+	 * @param limit  the maximum amount of tickets in the page
+	 * @param cursor the <code>Next-Cursor</code> header of the previous page, absent for the first page
 	 * @return
 	 * 		  <ul>
 	 * 			<li>
@@ -122,43 +230,39 @@ public class TicketController {
 	 * 					<li>user who will buy the ticket not found in database</li>
 	 * 				</ul>
 	 * 			</li>
+	 * 			<li><strong>400 (Bad Request)</strong> if the limit is not greater than zero</li>
 	 * 			<li><strong>403 (Forbidden)</strong> if logged user role is client and <code>userId</code> does not belong to him</li>
-	 * 			<li><strong>200 (OK)</strong> if requisition was successfully done. Along with data requested.</li>
+	 * 			<li><strong>503 (Service Unavailable)</strong> if the tickets could not be read from the database</li>
+	 * 			<li><strong>200 (OK)</strong> if requisition was successfully done. Along with data requested and the <code>Next-Cursor</code> header if there are more tickets.</li>
 	 * 		  </ul>
 	 */
 	@Path("/by-user/{userId}")
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getByUserId(@HeaderParam("token") String token, @PathParam("userId") String id) {
-		String message;
-		
-		if (token == null || token.isBlank()) {
-			message = "User not logged";
-			return Response.status(401).entity(message).build();
-		}
-		
-		Optional<User> loggedUser = userService.getByToken(token);
+	@AllowedRoles(value = {Role.ADMINISTRATOR, Role.EMPLOYEE}, message = "Client cannot see tickets from another user")
+	public CompletionStage<Response> getByUserId(@PathParam("userId") String id, @QueryParam("limit") Integer limit, @QueryParam("cursor") Integer cursor) {
+		return requestExecutor.submit("ticket.getByUserId", () -> {
+			if (limit != null && limit <= 0) {
+				String message = "Limit must be greater than zero";
+				return Response.status(400).entity(message).build();
+			}
 		
-		if (loggedUser.isEmpty()) {
-			message = "User not found in database";
-			return Response.status(401).entity(message).build();
-		}
-		
-		if (loggedUser.isPresent() && loggedUser.get().getRole().equals(Role.CLIENT)) {
-			message = "Client cannot see tickets from another user";
-			return Response.status(403).entity(message).build();
-		}
+			PageDTO<TicketDTO> ticketDTO = ticketService.getByUserId(Integer.parseInt(id), GenericDAO.pageSize(limit), cursor);
 		
-		List<TicketDTO> ticketDTO = ticketService.getByUserId(Integer.parseInt(id));
+			if (ticketDTO == null) {
+				String message = "There where some problem with the database trying to find the tickets";
+				return Response.status(503).entity(message).build();
+			}
 		
-		return Response.ok(ticketDTO).build();
+			return Response.ok(ticketDTO.getItems()).header("Next-Cursor", ticketDTO.getNextCursor()).build();
+		});
 	}
 	
 	/**
 	 * Sets the attribute isCanceled in <code>Ticket</code> object in database to true.
 	 * 
-	 * @param token the authorisation key of the logged user
-	 * @param id	the primary key of the ticket
+	 * @param securityContext the security context of the requisition, with the logged user
+	 * @param id			  the primary key of the ticket
 	 * @return
 	 * 		  <ul>
 	 * 			<li>
@@ -167,6 +271,7 @@ public class TicketController {
 	 * 				<ul>
 	 * 					<li>token is null</li>
 	 * 					<li>token is empty</li>
+	 * 					<li>token informed not found in database</li>
 	 * 				</ul>
 	 * 			</li>
 	 * 			<li><strong>404 (Not Found)</strong> if the informed ticked id does not exists in database</li>
@@ -185,34 +290,64 @@ public class TicketController {
 	@Path("/cancel-by/{ticketId}")
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response cancelById(@HeaderParam("token") String token, @PathParam("ticketId") String id) {
-		String message;
+	@AllowedRoles
+	public CompletionStage<Response> cancelById(@Context SecurityContext securityContext, @PathParam("ticketId") String id) {
+		LoggedUser loggedUser = LoggedUser.of(securityContext);
 		
-		if (token == null || token.isBlank()) {
-			message = "User not logged";
-			return Response.status(401).entity(message).build();
-		}
+		return requestExecutor.submit("ticket.cancelById", () -> {
+			String message;
 		
-		TicketDTO ticketDTO = ticketService.cancelById(token, Integer.parseInt(id));
+			TicketDTO ticketDTO = ticketService.cancelById(loggedUser, Integer.parseInt(id));
 		
-		switch (ticketDTO.getId()) {
-		case -1:
-			message = "Ticket not found";
-			return Response.status(404).entity(message).build();
+			switch (ticketDTO.getId()) {
+			case -1:
+				message = "Ticket not found";
+				return Response.status(404).entity(message).build();
 
-		case -2:
-			message = "Ticket already canceled";
-			return Response.status(400).entity(message).build();
+			case -2:
+				message = "Ticket already canceled";
+				return Response.status(400).entity(message).build();
 			
-		case -3:
-			message = "Is not possible to cancel this ticket. Date expired.";
-			return Response.status(400).entity(message).build();
+			case -3:
+				message = "Is not possible to cancel this ticket. Date expired.";
+				return Response.status(400).entity(message).build();
 			
-		case -4:
-			message = "Client cannot cancel ticket that belongs to another user";
+			case -4:
+				message = "Client cannot cancel ticket that belongs to another user";
+				return Response.status(400).entity(message).build();
+			}
+		
+			return Response.ok(ticketDTO).build();
+		});
+	}
+	
+	/**
+	 * <p>Exports all tickets, writing them to the response while they are read from the database.</p>
+	 * <p>Made for reporting tools: the response starts right away and its memory use does not depend on the amount of tickets.</p>
+	 * 
+	 * @param format <code>ndjson</code> (default) for one JSON object per line or <code>csv</code> for comma separated values
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token. (It's not logged)</li>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the logged user is not found</li>
+	 * 			<li><strong>403 (Forbidden)</strong> if user role is not ADMINISTRATOR</li>
+	 * 			<li><strong>400 (Bad Request)</strong> if the format is unknown</li>
+	 * 			<li><strong>200 (OK)</strong> with the tickets, one per line</li>
+	 * 		  </ul>
+	 */
+	@Path("/export")
+	@GET
+	@Produces({"application/x-ndjson", "text/csv"})
+	@AllowedRoles(value = Role.ADMINISTRATOR, message = "User not allowed to export tickets")
+	public Response export(@QueryParam("format") String format) {
+		String message;
+		
+		ExportFormat exportFormat = ExportFormat.fromName(format);
+		if (exportFormat == null) {
+			message = "Unknown export format";
 			return Response.status(400).entity(message).build();
 		}
 		
-		return Response.ok(ticketDTO).build();
+		return Response.ok(exportService.exportTickets(exportFormat), exportFormat.getMediaType()).build();
 	}
 }
\ No newline at end of file
@@ -1,8 +1,8 @@
 package controllers;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletionStage;
 
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
@@ -12,13 +12,24 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
 
+import daos.GenericDAO;
+import dtos.BulkDeleteDTO;
+import dtos.PageDTO;
 import dtos.UserDTO;
 import entities.User;
+import enums.ExportFormat;
 import enums.Role;
+import executors.RequestExecutor;
 import mappers.UserMapper;
+import security.AllowedRoles;
+import security.LoggedUser;
+import services.ExportService;
 import services.UserService;
 
 /**
@@ -40,6 +51,18 @@ public class UserController {
 	 */
 	@Inject
 	private UserMapper userMapper;
+	
+	/**
+	 * Object that contains all table export methods.
+	 */
+	@Inject
+	private ExportService exportService;
+	
+	/**
+	 * Object that runs the requisitions away from the container worker threads.
+	 */
+	@Inject
+	private RequestExecutor requestExecutor;
 
    /**
 	* Registers a new user in the system.
@@ -55,29 +78,32 @@ public class UserController {
 	@Path("/signup")
 	@POST
 	@Consumes(MediaType.APPLICATION_JSON)
-	public Response signUp(UserDTO userDTO) {
-		if (userDTO == null) {
-			return Response.status(403).build();
-		}
+	public CompletionStage<Response> signUp(UserDTO userDTO) {
+		return requestExecutor.submit("user.signUp", () -> {
+			if (userDTO == null) {
+				return Response.status(403).build();
+			}
 
-		Boolean isCreated = userService.signUp(userDTO);
+			Boolean isCreated = userService.signUp(userDTO);
 
-		if (isCreated == null) {
-			return Response.status(400).build();
-		}
+			if (isCreated == null) {
+				return Response.status(400).build();
+			}
 
-		return Response.ok(userDTO).build();
+			return Response.ok(userDTO).build();
+		});
 	}
 	
 	/**
 	 * Creates a new user in the system for a logged user.
 	 *
-	 * @param token 			 the authorization key of the logged user
+	 * @param securityContext	 the security context of the requisition, with the logged user
 	 * @param userDTOtoBeCreated the information of the new user to be created
 	 * @return a response with the created user information, with one of the following statuses:
 	 * 		<ul>
 	 *			<li><strong>200 (OK)</strong> and the created user information in the response body, if the user was created successfully</li>
-	 *			<li><strong>403 (Forbidden)</strong> if the token is missing, blank or the logged user is a client</li>
+	 *			<li><strong>401 (Unauthorized)</strong> if the token is missing, blank or not found in database</li>
+	 *			<li><strong>403 (Forbidden)</strong> if the information of the new user is missing or the logged user is a client</li>
 	 *			<li><strong>406 (Not Acceptable)</strong> if the role for the new user is missing</li>
 	 *			<li><strong>400 (Bad Request)</strong> if error occurred, preventing the user from being saved</li>
 	 * 		</ul>
@@ -86,27 +112,31 @@ public class UserController {
 	@POST
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response create(@HeaderParam("token") String token, UserDTO userDTOtoBeCreated) {
-		if (userDTOtoBeCreated.getRole() == null) {
-			return Response.status(406).build();
-		}
-		Role loggedUserRole = userService.validateLoggedUserRole(token);
+	@AllowedRoles(value = {Role.ADMINISTRATOR, Role.EMPLOYEE}, message = "Clients cannot create users")
+	public CompletionStage<Response> create(@Context SecurityContext securityContext, UserDTO userDTOtoBeCreated) {
+		LoggedUser loggedUser = LoggedUser.of(securityContext);
 		
-		if (userDTOtoBeCreated == null || token == null || token.isBlank() || loggedUserRole == null || loggedUserRole.equals(Role.CLIENT)) {
-			return Response.status(403).build();
-		}
+		return requestExecutor.submit("user.create", () -> {
+			if (userDTOtoBeCreated == null) {
+				return Response.status(403).build();
+			}
+			
+			if (userDTOtoBeCreated.getRole() == null) {
+				return Response.status(406).build();
+			}
 		
-		UserDTO userDTOCreated = userService.create(userDTOtoBeCreated, loggedUserRole);
+			UserDTO userDTOCreated = userService.create(userDTOtoBeCreated, loggedUser.getRole());
 		
-		if (userDTOCreated == null) {
-			return Response.status(400).build();
-		}
+			if (userDTOCreated == null) {
+				return Response.status(400).build();
+			}
 		
-		if (userDTOCreated.getId() == null) {
-			return Response.status(409).build();
-		}
+			if (userDTOCreated.getId() == null) {
+				return Response.status(409).build();
+			}
 		
-		return Response.status(201).entity(userDTOCreated).build();
+			return Response.status(201).entity(userDTOCreated).build();
+		});
 	}
 	
 	/**
@@ -116,25 +146,27 @@ public class UserController {
 	 * @param password the password of the user
 	 * @return a response with one of the following statuses:
 	 * 		<ul>
-	 *			<li><strong>200 (OK)</strong> if the user was signed in successfully</li>
+	 *			<li><strong>200 (OK)</strong> and the token in the <code>token</code> header, if the user was signed in successfully</li>
 	 *			<li><strong>401 (Unauthorized)</strong> if the username or password is incorrect</li>
 	 *			<li><strong>403 (Forbidden)</strong> if the username or password is missing or blank</li>
 	 * 		</ul>
 	 */
 	@Path("/signin")
 	@POST
-	public Response signIn(@HeaderParam("username") String username, @HeaderParam("password") String password) {
-		if (username == null || username.isBlank() || password == null || password.isBlank()) {
-			return Response.status(403).build();
-		}
+	public CompletionStage<Response> signIn(@HeaderParam("username") String username, @HeaderParam("password") String password) {
+		return requestExecutor.submit("user.signIn", () -> {
+			if (username == null || username.isBlank() || password == null || password.isBlank()) {
+				return Response.status(403).build();
+			}
 		
-		String token = userService.signIn(username, password);
+			String token = userService.signIn(username, password);
 		
-		if (token == null) {
-			return Response.status(401).build();
-		}
+			if (token == null) {
+				return Response.status(401).build();
+			}
 		
-		return Response.ok().build();
+			return Response.ok().header("token", token).build();
+		});
 	}
 	
 	/**
@@ -150,24 +182,26 @@ public class UserController {
 	 */
 	@Path("/signout")
 	@POST
-	public Response signOut(@HeaderParam("token") String token) {
-		if (token == null || token.isBlank()) {
-			return Response.status(403).build();
-		}
+	public CompletionStage<Response> signOut(@HeaderParam("token") String token) {
+		return requestExecutor.submit("user.signOut", () -> {
+			if (token == null || token.isBlank()) {
+				return Response.status(403).build();
+			}
 		
-		Boolean isLoggedOut = userService.signOut(token);
+			Boolean isLoggedOut = userService.signOut(token);
 		
-		if (Boolean.FALSE.equals(isLoggedOut)) {
-			return Response.status(400).build();
-		}
+			if (Boolean.FALSE.equals(isLoggedOut)) {
+				return Response.status(400).build();
+			}
 		
-		return Response.ok().build();
+			return Response.ok().build();
+		});
 	}
 	
 	/**
 	 * Updates names and / or role for the user that owns the given id, depending the privileges of the logged user.
 	 * 
-	 * @param token 			logged user identifier key
+	 * @param securityContext	the security context of the requisition, with the logged user
 	 * @param idUserToBeUpdated primary key of the user that will be updated
 	 * @param userDTO			new informations to be updated
 	 * @return
@@ -182,7 +216,8 @@ public class UserController {
 	 * 					<li>An user try to update username or password of another user</li>
 	 * 				</ul>
 	 * 			</li>
- 	 * 			<li><strong>404 (Not Found)</strong> if the logged user or the user who will be updated wasn't found in the database</li>
+ 	 * 			<li><strong>401 (Unauthorised)</strong> if the logged user wasn't found in the database</li>
+ 	 * 			<li><strong>404 (Not Found)</strong> if the user who will be updated wasn't found in the database</li>
  	 * 			<li><strong>503 (Service Unavailable)</strong> if there was some issue with the database</li> 
  	 * 			<li><strong>200 (OK)</strong> if the user was successfully updated</li>
 	 * 		  </ul>
@@ -191,85 +226,84 @@ public class UserController {
 	@POST
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response update(@HeaderParam("token") String token, @PathParam("id") Integer idUserToBeUpdated, UserDTO userDTO) {
-		String message;
-		if (token == null || token.isBlank() || idUserToBeUpdated == null) {
-			message = "No token in logged user or no id in user to be updated";
-			return Response.status(401).entity(message).build();
-		}
+	@AllowedRoles
+	public CompletionStage<Response> update(@Context SecurityContext securityContext, @PathParam("id") Integer idUserToBeUpdated, UserDTO userDTO) {
+		LoggedUser loggedUser = LoggedUser.of(securityContext);
+		
+		return requestExecutor.submit("user.update", () -> {
+			String message;
+			if (idUserToBeUpdated == null) {
+				message = "No id in user to be updated";
+				return Response.status(401).entity(message).build();
+			}
 		
-		Optional<User> loggedUser = userService.getByToken(token);
-		Optional<User> userToBeUpdated = userService.getById(userDTO.getId());
+			Optional<User> userToBeUpdated = userService.getById(userDTO.getId());
 		
-		// Se houver um utilzador logado 
-		if (loggedUser.isPresent()) {
-			// E for um cliente
-			if (loggedUser.get().getRole().equals(Role.CLIENT)) {
+			// Se o utilizador logado for um cliente
+			if (loggedUser.getRole().equals(Role.CLIENT)) {
 				// E tentar alterar dados de outro cliente 
 				if (idUserToBeUpdated != userDTO.getId()) {
 					message = "A client cannot update another user";
 					return Response.status(403).entity(message).build();
 				}
 			}
-			
-			// E se for um empregado
-			if (loggedUser.get().getRole().equals(Role.EMPLOYEE)) {
-				// E se tentar alterar dados que não sejam dele próprio ou que sejam de outro user que não seja um cliente
-				if (!userToBeUpdated.get().getRole().equals(Role.CLIENT) && userToBeUpdated.get().getId() != loggedUser.get().getId()) {
-					message = "An employee is only allowed to update their own or clients data";
-					return Response.status(403).entity(message).build();
-				}
-			}
-		}
 		
+			// Se deu algum problema na base de dados
+			if (userToBeUpdated == null) {
+				message = "There where some problem with the database trying to find the following object entity: UserToBeUpdated";
+				return Response.status(503).entity(message).build();
+			}
 		
-		// Se não achou o user na base de dados
-		if (userToBeUpdated.isEmpty() || loggedUser.isEmpty()) {
-			message = "User not found in database";
-			return Response.status(404).entity(message).build();
-		}
+			// Se não achou o user na base de dados
+			if (userToBeUpdated.isEmpty()) {
+				message = "User not found in database";
+				return Response.status(404).entity(message).build();
+			}
 		
-		// Se o cliente tentar modificar outro utilizador
-		if (loggedUser.get().getRole().equals(Role.CLIENT) && loggedUser.get().getId() != userToBeUpdated.get().getId()) {
-			message = "The logged user is a client and is trying to update another user";
-			return Response.status(403).entity(message).build();
-		}
+			// Se for um empregado e tentar alterar dados que não sejam dele próprio ou que sejam de outro user que não seja um cliente
+			if (loggedUser.getRole().equals(Role.EMPLOYEE) && !userToBeUpdated.get().getRole().equals(Role.CLIENT) 
+					&& !userToBeUpdated.get().getId().equals(loggedUser.getUserId())) {
+				message = "An employee is only allowed to update their own or clients data";
+				return Response.status(403).entity(message).build();
+			}
 		
-		// Se um funcionário ou um cliente tentar atualizar o role de um utilizador qualquer
-		if (loggedUser.get().getRole().equals(Role.CLIENT) || loggedUser.get().getRole().equals(Role.EMPLOYEE) && !userToBeUpdated.get().getRole().equals(userDTO.getRole())) {
-			message = "An employee ou a client is trying to update the role of another user";
-			return Response.status(403).entity(message).build();
-		}
+			// Se o cliente tentar modificar outro utilizador
+			if (loggedUser.getRole().equals(Role.CLIENT) && !loggedUser.getUserId().equals(userToBeUpdated.get().getId())) {
+				message = "The logged user is a client and is trying to update another user";
+				return Response.status(403).entity(message).build();
+			}
 		
-		// Se deu algum problema na base de dados
-		if (userToBeUpdated == null || loggedUser == null) {
-			message = "There where some problem with the database trying to find the following object entities: loggedUser and UserToBeUpdated";
-			return Response.status(503).entity(message).build();
-		}
+			// Se um funcionário ou um cliente tentar atualizar o role de um utilizador qualquer
+			if (loggedUser.getRole().equals(Role.CLIENT) || loggedUser.getRole().equals(Role.EMPLOYEE) && !userToBeUpdated.get().getRole().equals(userDTO.getRole())) {
+				message = "An employee ou a client is trying to update the role of another user";
+				return Response.status(403).entity(message).build();
+			}
 		
-		UserDTO userDTOToBeUpdated = userService.update(loggedUser.get(), userToBeUpdated.get(), userDTO);
+			UserDTO userDTOToBeUpdated = userService.update(loggedUser, userToBeUpdated.get(), userDTO);
 		
-		if (userDTOToBeUpdated == null) {
-			message = "There where some problem with the database trying to find the following object DTO: userDTOToBeUpdated";
-			return Response.status(503).build();
-		}
+			if (userDTOToBeUpdated == null) {
+				message = "There where some problem with the database trying to find the following object DTO: userDTOToBeUpdated";
+				return Response.status(503).build();
+			}
 		
-		if (userDTOToBeUpdated.getId() == null) {
-			message = "Is not possible to update username and password";
-			return Response.status(403).entity(message).build();
-		}
+			if (userDTOToBeUpdated.getId() == null) {
+				message = "Is not possible to update username and password";
+				return Response.status(403).entity(message).build();
+			}
 		
-		return Response.ok(userDTOToBeUpdated).build();
+			return Response.ok(userDTOToBeUpdated).build();
+		});
 	}
 	
 	/**
 	 * Gets the user that owns the given id.
 	 * 
-	 * @param token			  logged user identifier key
+	 * @param securityContext the security context of the requisition, with the logged user
 	 * @param idUserToBeFound primary that identifies the user to be found
 	 * @return
 	 * 		  <ul>
-	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token. (It's not logged)</li>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token or it is not found in database. (It's not logged)</li>
+	 * 			<li><strong>404 (Not Found)</strong> if the user to be found is not found in database</li>
 	 * 			<li><strong>400 (Bad Request)</strong> if no id for the user to be found was given</li>
 	 * 			<li><strong>200 (OK)</strong> if the requisition returned successfully the user</li>
 	 * 			<li><strong>403 (Forbidden)</strong>
@@ -283,97 +317,98 @@ public class UserController {
 	@Path("get/{id}")
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getById(@HeaderParam("token") String token, @PathParam("id") String idUserToBeFound) {
-		String message;
+	@AllowedRoles
+	public CompletionStage<Response> getById(@Context SecurityContext securityContext, @PathParam("id") String idUserToBeFound) {
+		LoggedUser loggedUser = LoggedUser.of(securityContext);
 		
-		if (token == null || token.isBlank()) {
-			message = "User not logged";
-			return Response.status(401).entity(message).build();
-		}
+		return requestExecutor.submit("user.getById", () -> {
+			String message;
 		
-		if (idUserToBeFound == null || idUserToBeFound.isBlank()) {
-			message = "User to be found id is mandatory";
-			return Response.status(400).entity(message).build();
-		}
+			if (idUserToBeFound == null || idUserToBeFound.isBlank()) {
+				message = "User to be found id is mandatory";
+				return Response.status(400).entity(message).build();
+			}
 		
-		Optional<User> loggedUser = userService.getByToken(token);
-		Optional<User> userToBeFound = userService.getById(Integer.parseInt(idUserToBeFound));
+			Optional<User> userToBeFound = userService.getById(Integer.parseInt(idUserToBeFound));
+		
+			if (userToBeFound.isEmpty()) {
+				message = "User not found in database";
+				return Response.status(404).entity(message).build();
+			}
 		
-		if (loggedUser.isPresent() && userToBeFound.isPresent()) {
-			if (loggedUser.get().getRole().equals(Role.CLIENT) && loggedUser.get().getId() != userToBeFound.get().getId()) {
+			if (loggedUser.getRole().equals(Role.CLIENT) && !loggedUser.getUserId().equals(userToBeFound.get().getId())) {
 				message = "A client is not allowed to see other users data";
 				return Response.status(403).entity(message).build();
 			}
-			
-			if (loggedUser.get().getRole().equals(Role.EMPLOYEE)) {
-				if (userToBeFound.get().getRole().equals(Role.EMPLOYEE) && userToBeFound.get().getId() != loggedUser.get().getId()) {
+		
+			if (loggedUser.getRole().equals(Role.EMPLOYEE)) {
+				if (userToBeFound.get().getRole().equals(Role.EMPLOYEE) && !userToBeFound.get().getId().equals(loggedUser.getUserId())) {
 					message = "An employee is not allowed to see other users data with role EMPLOYEE";
 					return Response.status(403).entity(message).build();
 				}
-				
+			
 				if (userToBeFound.get().getRole().equals(Role.ADMINISTRATOR)) {
 					message = "An employee is not allowed to see other users data with role ADMINISTRATOR";
 					return Response.status(403).entity(message).build();
 				}
 			}
-		} else {
-			message = "User not found in database";
-			return Response.status(401).entity(message).build();
-		}
 		
-		UserDTO userDTOFound = userMapper.toDTO(userToBeFound.get());
+			UserDTO userDTOFound = userMapper.toDTO(userToBeFound.get());
 		
-		return Response.ok(userDTOFound).build();
+			return Response.ok(userDTOFound).build();
+		});
 	}
 	
 	/**
-	 * Gets all users registered in the system according to the role privilege of the logged user.
+	 * Gets one page of the users registered in the system according to the role privilege of the logged user.
 	 * 
-	 * @param token logged user identifier key
+	 * @param securityContext the security context of the requisition, with the logged user
+	 * @param limit			  the maximum amount of users in the page
+	 * @param cursor		  the <code>Next-Cursor</code> header of the previous page, absent for the first page
 	 * @return
 	 * 		  <ul>
-	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token. (Is not logged)</li>
-	 * 			<li><strong>200 (OK)</strong> if the requisition returned successfully the users list</li>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token or it is not found in database. (Is not logged)</li>
+	 * 			<li><strong>400 (Bad Request)</strong> if the limit is not greater than zero</li>
+	 * 			<li><strong>200 (OK)</strong> if the requisition returned successfully the users list, with the <code>Next-Cursor</code> header if there are more users</li>
 	 * 			<li><strong>403 (Forbidden)</strong>if the logged user is a client</li>
 	 * 		  </ul>
 	 */
 	@Path("/all")
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response getAll(@HeaderParam("token") String token) {
-		String message;
+	@AllowedRoles
+	public CompletionStage<Response> getAll(@Context SecurityContext securityContext, @QueryParam("limit") Integer limit, @QueryParam("cursor") Integer cursor) {
+		LoggedUser loggedUser = LoggedUser.of(securityContext);
 		
-		if (token == null || token.isBlank()) {
-			message = "User not logged";
-			return Response.status(401).entity(message).build();
-		}
-		List<UserDTO> usersFound = new ArrayList<>();
-		Optional<User> loggedUser = userService.getByToken(token);
+		return requestExecutor.submit("user.getAll", () -> {
+			String message;
 		
-		if (loggedUser == null) {
-			message = "Logged user not found in database";
-			return Response.status(401).entity(message).build();
-		}
+			if (limit != null && limit <= 0) {
+				message = "Limit must be greater than zero";
+				return Response.status(400).entity(message).build();
+			}
+			PageDTO<UserDTO> usersFound;
 		
-		if (loggedUser.get().getRole().equals(Role.ADMINISTRATOR)) {
-			usersFound = userService.getAll();
-		} else {
-			usersFound = userService.getAllNonDeletedByRole(loggedUser.get().getRole());
-		}
+			if (loggedUser.getRole().equals(Role.ADMINISTRATOR)) {
+				usersFound = userService.getAll(GenericDAO.pageSize(limit), cursor);
+			} else {
+				usersFound = userService.getAllNonDeletedByRole(loggedUser.getRole(), GenericDAO.pageSize(limit), cursor);
+			}
 		
-		if (usersFound == null) {
-			message = "Clients don't have permission to see other users";
-			return Response.status(403).entity(message).build();
-		}
+			if (usersFound == null) {
+				message = "Clients don't have permission to see other users";
+				return Response.status(403).entity(message).build();
+			}
 		
-		return Response.ok(usersFound).build();
+			return Response.ok(usersFound.getItems()).header("Next-Cursor", usersFound.getNextCursor()).build();
+		});
 	}
 	
 	/**
 	 * Soft delete an user their tickets.
 	 * 
-	 * @param token logged user identifier key
-	 * @param id	primary that identifies the user to be soft deleted
+	 * @param securityContext the security context of the requisition, with the logged user
+	 * @param id			  primary that identifies the user to be soft deleted
 	 * @return
 	 * 		  <ul>
 	 * 			<li>
@@ -384,47 +419,121 @@ public class UserController {
 	 * 					<li>token informed not found in database</li>
 	 * 				</ul>
 	 * 		  	</li>
-	 * 			<li><strong>400 (Bad Request)</strong> If user to be deleted was not found in database</li>
+	 * 			<li><strong>404 (Not Found)</strong> If user to be deleted was not found in database or was already deleted</li>
 	 * 			<li><strong>403 (Forbidden)</strong>If user role is CLIENT and they are trying to delete another user</li>
+	 * 			<li><strong>400 (Bad Request)</strong> If user to be deleted has future non cancelled flights</li>
+	 * 			<li><strong>503 (Service Unavailable)</strong>If the user could not be deleted in database</li>
 	 * 			<li><strong>200 (OK)</strong>If user was soft deleted successfully</li>
 	 * 		  </ul>
 	 */
 	@Path("/delete-by/{userId}")
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)
-	public Response softDeleteById(@HeaderParam("token") String token, @PathParam("userId") String id) {
-		String message;
+	@AllowedRoles
+	public CompletionStage<Response> softDeleteById(@Context SecurityContext securityContext, @PathParam("userId") String id) {
+		LoggedUser loggedUser = LoggedUser.of(securityContext);
 		
-		if (token == null || token.isBlank()) {
-			message = "User not logged";
-			return Response.status(401).entity(message).build();
-		}
+		return requestExecutor.submit("user.softDeleteById", () -> {
+			String message;
 		
-		Optional<User> loggedUser = userService.getByToken(token);
-		Optional<User> userToDelete = userService.getById(Integer.parseInt(id));
+			Optional<User> userToDelete = userService.getById(Integer.parseInt(id));
 		
-		if (loggedUser == null) {
-			message = "User logged not found in database";
-			return Response.status(401).entity(message).build();
-		}
+			if (userToDelete.isEmpty()) {
+				message = "User to delete not found in database";
+				return Response.status(404).entity(message).build();
+			}
 		
-		if (userToDelete.isEmpty()) {
-			message = "User to delete not found in database";
-			return Response.status(404).entity(message).build();
-		}
+			if (userToDelete.get().getRole().equals(Role.CLIENT) && !userToDelete.get().getId().equals(loggedUser.getUserId())) {
+				message = "Clients cannot delete other users";
+				return Response.status(403).entity(message).build();
+			}
 		
-		if (userToDelete.get().getRole().equals(Role.CLIENT) && userToDelete.get().getId() != loggedUser.get().getId()) {
-			message = "Clients cannot delete other users";
-			return Response.status(403).entity(message).build();
-		}
+			UserDTO userDTO = userService.softDelete(userToDelete.get());
+		
+			if (userDTO == null) {
+				message = "There where some problem with the database trying to delete the user";
+				return Response.status(503).entity(message).build();
+			}
+		
+			if (userDTO.getId() != null && userDTO.getId() == -1) {
+				message = "User to delete not found in database";
+				return Response.status(404).entity(message).build();
+			}
 		
-		UserDTO userDTO = userService.softDelete(userToDelete.get());
+			if (userDTO.getId() == null) {
+				message = "User has future non canceled flights";
+				return Response.status(400).entity(message).build();
+			}
+		
+			return Response.ok(userDTO).build();
+		});
+	}
+	
+	/**
+	 * <p>Soft deletes many users and their tickets at once.</p>
+	 * <p>Users with non cancelled tickets with date in the future are not deleted, the others are deleted whatever the amount of tickets they have.</p>
+	 * 
+	 * @param requestBody the list of primary keys of the users to be soft deleted
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token or it is not found in database. (It's not logged)</li>
+	 * 			<li><strong>403 (Forbidden)</strong> if user role is not ADMINISTRATOR</li>
+	 * 			<li><strong>400 (Bad Request)</strong> if the list of users is empty</li>
+	 * 			<li><strong>503 (Service Unavailable)</strong> if the users could not be deleted in database</li>
+	 * 			<li><strong>200 (OK)</strong> with the ids of the users deleted, of the ones with future flights and of the ones not found</li>
+	 * 		  </ul>
+	 */
+	@Path("/delete-batch")
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	@AllowedRoles(value = Role.ADMINISTRATOR, message = "Only administrators can delete many users at once")
+	public CompletionStage<Response> softDeleteAll(List<Integer> requestBody) {
+		return requestExecutor.submit("user.softDeleteAll", () -> {
+			String message;
+		
+			if (requestBody == null || requestBody.isEmpty()) {
+				message = "The list of users to delete cannot be empty";
+				return Response.status(400).entity(message).build();
+			}
+		
+			BulkDeleteDTO bulkDeleteDTO = userService.softDeleteAll(requestBody);
+		
+			if (bulkDeleteDTO == null) {
+				message = "There where some problem with the database trying to delete the users";
+				return Response.status(503).entity(message).build();
+			}
+		
+			return Response.ok(bulkDeleteDTO).build();
+		});
+	}
+	
+	/**
+	 * <p>Exports all users, writing them to the response while they are read from the database.</p>
+	 * <p>Made for reporting tools: the response starts right away and its memory use does not depend on the amount of users.</p>
+	 * 
+	 * @param format <code>ndjson</code> (default) for one JSON object per line or <code>csv</code> for comma separated values
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>401 (Unauthorised)</strong> if the user does not have a token or it is not found in database. (It's not logged)</li>
+	 * 			<li><strong>403 (Forbidden)</strong> if user role is not ADMINISTRATOR</li>
+	 * 			<li><strong>400 (Bad Request)</strong> if the format is unknown</li>
+	 * 			<li><strong>200 (OK)</strong> with the users, one per line</li>
+	 * 		  </ul>
+	 */
+	@Path("/export")
+	@GET
+	@Produces({"application/x-ndjson", "text/csv"})
+	@AllowedRoles(value = Role.ADMINISTRATOR, message = "User not allowed to export users")
+	public Response export(@QueryParam("format") String format) {
+		String message;
 		
-		if (userDTO.getId() == null) {
-			message = "User has future non canceled flights";
+		ExportFormat exportFormat = ExportFormat.fromName(format);
+		if (exportFormat == null) {
+			message = "Unknown export format";
 			return Response.status(400).entity(message).build();
 		}
 		
-		return Response.ok(userDTO).build();
+		return Response.ok(exportService.exportUsers(exportFormat), exportFormat.getMediaType()).build();
 	}
 }
\ No newline at end of file
@@ -1,12 +1,22 @@
 package daos;
 
+import java.sql.Timestamp;
+import java.util.List;
+
+import javax.annotation.Resource;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Root;
 
+import caches.SeatMap;
+import dtos.FlightDTO;
 import entities.Flight;
+import entities.FlightSeatMap;
+import enums.MetricLayer;
+import metrics.Timed;
 
 /**
  * Class that makes the database communication layer role in relation with of the flights table.
@@ -14,6 +24,7 @@ import entities.Flight;
  * @author Wanderley Drumond
  *
  */
+@Timed(MetricLayer.DAO)
 @Stateless
 public class FlightDAO extends GenericDAO<Flight> {
 
@@ -23,13 +34,74 @@ public class FlightDAO extends GenericDAO<Flight> {
 	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
 	 */
 	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Query cache region of the flight listings.
+	 */
+	public static final String FLIGHT_LISTING_REGION = "flight-listing";
+	
+	/**
+	 * The context of the running transaction.
+	 */
+	@Resource
+	private SessionContext context;
 
 	public FlightDAO() {
 		super(Flight.class);
 	}
 	
+	@Override
+	protected String getQueryCacheRegion() {
+		return FLIGHT_LISTING_REGION;
+	}
+	
+	/**
+	 * <p>Creates the given flight along with its empty seat map, in the same transaction: either both are saved or none is.</p>
+	 * <p>The inserts are flushed before returning, so a failure is reported here and not only when the transaction commits.</p>
+	 * 
+	 * @param flight the flight to be inserted, with its amount of seats
+	 * @return
+	 * 		  <ul>
+	 * 			<li>true, if the flight and its seat map were saved</li>
+	 * 			<li>false, if any errors occurred, in which case the transaction is rolled back</li>
+	 * 		  </ul>
+	 */
+	public boolean persistWithSeatMap(final Flight flight) {
+		try {
+			entityManager.persist(flight);
+			
+			FlightSeatMap flightSeatMap = new FlightSeatMap();
+			flightSeatMap.setIdFlight(flight.getId());
+			flightSeatMap.setSeats(SeatMap.emptyBytes(flight.getTotalSeats()));
+			entityManager.persist(flightSeatMap);
+			entityManager.flush();
+			
+			return true;
+		} catch (Exception exception) {
+			System.err.println("Catch " + exception.getClass().getName() + " persistWithSeatMap() in FlightDAO");
+			exception.printStackTrace();
+			
+			// Nem o voo nem o mapa de lugares podem ficar gravados sozinhos
+			context.setRollbackOnly();
+			
+			return false;
+		}
+	}
+	
+	/**
+	 * Finds one page of flights ordered by primary key, selected straight into DTOs without loading the flights into the persistence context.
+	 * 
+	 * @param pageSize the maximum amount of flights in the page
+	 * @param afterId  the primary key of the last flight of the previous page, or null for the first page
+	 * @return the list of flights DTO, at most <code>pageSize + 1</code>
+	 */
+	public List<FlightDTO> findDTOPage(int pageSize, Integer afterId) {
+		return findProjectionPage(FlightDTO.class, pageSize, afterId, null, "id", "code", "destination", "departTime", "totalSeats");
+	}
+	
 	/**
-	 * Finds the biggest/newest id saved in database.
+	 * <p>Finds the biggest/newest id saved in database.</p>
+	 * <p>Only used once, to start the flight code sequence after the suffixes handed out before it existed.</p>
 	 * 
 	 * @return the biggest/newest id found
 	 */
@@ -53,4 +125,18 @@ public class FlightDAO extends GenericDAO<Flight> {
 			return null;
 		}
 	}
+
+	/**
+	 * Finds one page of the flights that depart after the given instant, ordered by primary key and selected straight into DTOs.
+	 * 
+	 * @param pageSize		 the maximum amount of flights in the page
+	 * @param afterId		 the primary key of the last flight of the previous page, or null for the first page
+	 * @param departingAfter the instant after which the flights depart
+	 * @return the list of flights DTO, at most <code>pageSize + 1</code>
+	 */
+	public List<FlightDTO> findDTOPageDepartingAfter(int pageSize, Integer afterId, Timestamp departingAfter) {
+		return findProjectionPage(FlightDTO.class, pageSize, afterId, 
+				(criteriaBuilder, flightTable) -> criteriaBuilder.greaterThan(flightTable.get("departTime"), departingAfter), 
+				"id", "code", "destination", "departTime", "totalSeats");
+	}
 }
\ No newline at end of file
@@ -1,14 +1,30 @@
 package daos;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 
 /**
  * Contains all common actions for used for for objects to interact with
@@ -25,6 +41,37 @@ public abstract class GenericDAO<T extends Serializable> implements Serializable
 	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
 	 */
 	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Amount of items in a page when the requisition does not inform one.
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 50;
+	
+	/**
+	 * Maximum amount of items in a page, whatever the requisition asks for.
+	 */
+	public static final int MAX_PAGE_SIZE = 500;
+	
+	/**
+	 * Amount of rows read by a scroll before the persistence context is cleared.
+	 */
+	protected static final int SCROLL_CHUNK_SIZE = 500;
+	
+	/**
+	 * <p>Fetch size that asks the MySQL driver to stream the rows one by one instead of loading the whole result set.</p>
+	 * <p>Only valid for forward-only, read-only result sets.</p>
+	 */
+	private static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+
+	/**
+	 * Name of the query hint that tells Hibernate to keep the result of a query in the query cache.
+	 */
+	private static final String CACHEABLE_HINT = "org.hibernate.cacheable";
+	
+	/**
+	 * Name of the query hint that tells Hibernate in which query cache region the result must be kept.
+	 */
+	private static final String CACHE_REGION_HINT = "org.hibernate.cacheRegion";
 
 	/**
 	 * Constant that will receive the class DAO object to be used.
@@ -106,14 +153,225 @@ public abstract class GenericDAO<T extends Serializable> implements Serializable
 	}
 
 	/**
-	 * Finds all results from a determined query.
+	 * <p>Finds one page of items ordered by the given attribute and then by primary key.</p>
+	 * <p>Uses keyset pagination: the query seeks directly to the items after the cursor of the previous page, 
+	 * made by {@link dtos.PageDTO#of(List, int, java.util.function.Function, java.util.function.Function)} with the sort attribute and the primary key, 
+	 * so the cost of a page does not depend on how far in the list it is. The sort attribute must not be null in any item.</p>
+	 * 
+	 * @param <K>			 the type of the sort attribute
+	 * @param pageSize		 the maximum amount of items in the page
+	 * @param sortAttribute  the name of the attribute to sort by
+	 * @param afterSortValue the value of the sort attribute of the last item of the previous page, or null for the first page
+	 * @param afterId		 the primary key of the last item of the previous page, or null for the first page
+	 * @return the result list, with at most <code>pageSize + 1</code> items so the caller knows if there is a next page
+	 */
+	public <K extends Comparable<? super K>> List<T> findPage(int pageSize, String sortAttribute, K afterSortValue, Integer afterId) {
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		final CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(CLAZZ);
+		Root<T> table = criteriaQuery.from(CLAZZ);
+		
+		criteriaQuery.select(table);
+		
+		Predicate afterCursor = afterKey(criteriaBuilder, table, sortAttribute, afterSortValue, afterId);
+		if (afterCursor != null) {
+			criteriaQuery.where(afterCursor);
+		}
+		criteriaQuery.orderBy(orderByKey(criteriaBuilder, table, sortAttribute));
+		
+		return cacheable(entityManager.createQuery(criteriaQuery)).setMaxResults(pageSize + 1).getResultList();
+	}
+	
+	/**
+	 * <p>Finds one page of items ordered by primary key, selecting only the given attributes straight into the given projection class.</p>
+	 * <p>The projection is built by its constructor, which must receive the attributes in the given order, 
+	 * so no entity is loaded into the persistence context and only the needed columns are read.</p>
+	 * 
+	 * @param <D>			  the type of the projection, usually a DTO
+	 * @param projectionClass the class of the projection
+	 * @param pageSize		  the maximum amount of items in the page
+	 * @param afterId		  the primary key of the last item of the previous page, or null for the first page
+	 * @param filter		  the function that builds the condition the items must meet, or null for all items
+	 * @param attributes	  the names of the attributes passed to the projection constructor
+	 * @return the result list, with at most <code>pageSize + 1</code> items so the caller knows if there is a next page
+	 */
+	protected <D> List<D> findProjectionPage(Class<D> projectionClass, int pageSize, Integer afterId, 
+			BiFunction<CriteriaBuilder, Root<T>, Predicate> filter, String... attributes) {
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		final CriteriaQuery<D> criteriaQuery = criteriaBuilder.createQuery(projectionClass);
+		Root<T> table = criteriaQuery.from(CLAZZ);
+		
+		Selection<?>[] columns = Arrays.stream(attributes).map(table::get).toArray(Selection<?>[]::new);
+		criteriaQuery.select(criteriaBuilder.construct(projectionClass, columns));
+		
+		List<Predicate> predicates = new ArrayList<>();
+		if (filter != null) {
+			predicates.add(filter.apply(criteriaBuilder, table));
+		}
+		Predicate afterCursor = afterKey(criteriaBuilder, table, afterId);
+		if (afterCursor != null) {
+			predicates.add(afterCursor);
+		}
+		criteriaQuery.where(predicates.toArray(new Predicate[0]));
+		criteriaQuery.orderBy(orderByKey(criteriaBuilder, table));
+		
+		return cacheable(entityManager.createQuery(criteriaQuery)).setMaxResults(pageSize + 1).getResultList();
+	}
+	
+	/**
+	 * Gets the query cache region of the listing queries of this DAO.
+	 * 
+	 * @return the region name, or null if the listings must not be cached (default)
+	 */
+	protected String getQueryCacheRegion() {
+		return null;
+	}
+	
+	/**
+	 * Marks the given listing query to be kept in the query cache region of this DAO, if it has one.
+	 * 
+	 * @param <R>   the type of the rows
+	 * @param query the query to be marked
+	 * @return the same query
+	 */
+	protected <R> TypedQuery<R> cacheable(TypedQuery<R> query) {
+		String region = getQueryCacheRegion();
+		
+		if (region != null) {
+			query.setHint(CACHEABLE_HINT, true);
+			query.setHint(CACHE_REGION_HINT, region);
+		}
+		
+		return query;
+	}
+	
+	/**
+	 * Builds the condition that keeps only the items after the given cursor, in primary key order.
+	 * 
+	 * @param criteriaBuilder the builder of the query
+	 * @param table			 the table that contains the primary key
+	 * @param afterId		 the primary key of the last item of the previous page
+	 * @return the condition, or null if there is no cursor (first page)
+	 */
+	protected Predicate afterKey(CriteriaBuilder criteriaBuilder, Path<?> table, Integer afterId) {
+		return afterKey(criteriaBuilder, table, "id", afterId, afterId);
+	}
+	
+	/**
+	 * Builds the condition that keeps only the items after the given cursor: a greater sort attribute, or the same one and a greater primary key.
 	 * 
-	 * @return the result list
+	 * @param <K>			 the type of the sort attribute
+	 * @param criteriaBuilder the builder of the query
+	 * @param table			 the table that contains the sort attribute and the primary key
+	 * @param sortAttribute	 the name of the attribute to sort by
+	 * @param afterSortValue the value of the sort attribute of the last item of the previous page
+	 * @param afterId		 the primary key of the last item of the previous page
+	 * @return the condition, or null if there is no cursor (first page)
 	 */
-	public List<T> findAll() {
-		final CriteriaQuery<T> criteriaQuery = entityManager.getCriteriaBuilder().createQuery(CLAZZ);
-		criteriaQuery.select(criteriaQuery.from(CLAZZ));
-		return entityManager.createQuery(criteriaQuery).getResultList();
+	protected <K extends Comparable<? super K>> Predicate afterKey(CriteriaBuilder criteriaBuilder, Path<?> table, String sortAttribute, 
+			K afterSortValue, Integer afterId) {
+		if (afterId == null) {
+			return null;
+		}
+		
+		Expression<Integer> id = table.get("id");
+		
+		if ("id".equals(sortAttribute)) {
+			return criteriaBuilder.greaterThan(id, afterId);
+		}
+		
+		Expression<K> sortKey = table.get(sortAttribute);
+		
+		return criteriaBuilder.or(
+				criteriaBuilder.greaterThan(sortKey, afterSortValue),
+				criteriaBuilder.and(criteriaBuilder.equal(sortKey, afterSortValue), criteriaBuilder.greaterThan(id, afterId)));
+	}
+	
+	/**
+	 * Builds the order that matches the condition built by <code>afterKey()</code> in primary key order.
+	 * 
+	 * @param criteriaBuilder the builder of the query
+	 * @param table			 the table that contains the primary key
+	 * @return the primary key, ascending
+	 */
+	protected List<Order> orderByKey(CriteriaBuilder criteriaBuilder, Path<?> table) {
+		return orderByKey(criteriaBuilder, table, "id");
+	}
+	
+	/**
+	 * Builds the order that matches the condition built by <code>afterKey()</code> with the given sort attribute.
+	 * 
+	 * @param criteriaBuilder the builder of the query
+	 * @param table			 the table that contains the sort attribute and the primary key
+	 * @param sortAttribute	 the name of the attribute to sort by
+	 * @return the sort attribute and the primary key, both ascending
+	 */
+	protected List<Order> orderByKey(CriteriaBuilder criteriaBuilder, Path<?> table, String sortAttribute) {
+		if ("id".equals(sortAttribute)) {
+			return Collections.singletonList(criteriaBuilder.asc(table.get("id")));
+		}
+		
+		return Arrays.asList(criteriaBuilder.asc(table.get(sortAttribute)), criteriaBuilder.asc(table.get("id")));
+	}
+	
+	/**
+	 * Gets a valid page size from the one asked by the requisition.
+	 * 
+	 * @param limit the page size asked, or null
+	 * @return the default page size if none was asked, otherwise the asked one limited to between 1 and the maximum page size
+	 */
+	public static int pageSize(Integer limit) {
+		if (limit == null) {
+			return DEFAULT_PAGE_SIZE;
+		}
+		
+		return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+	}
+	
+	/**
+	 * <p>Reads all items ordered by primary key, handing them to the given consumer one at a time.</p>
+	 * <p>Must be called while the consumer is able to write its output, because the rows are read while the method runs.</p>
+	 * 
+	 * @param consumer the action to be done with each item
+	 */
+	public void scrollAll(Consumer<T> consumer) {
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		final CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(CLAZZ);
+		Root<T> table = criteriaQuery.from(CLAZZ);
+		
+		criteriaQuery.select(table).orderBy(criteriaBuilder.asc(table.get("id")));
+		
+		scroll(criteriaQuery, consumer);
+	}
+	
+	/**
+	 * <p>Runs the given query with a forward-only cursor, handing each row to the given consumer.</p>
+	 * <p>The persistence context is cleared every <code>SCROLL_CHUNK_SIZE</code> rows, 
+	 * so the memory used does not depend on the amount of rows read.</p>
+	 * 
+	 * @param <R>			the type of the rows
+	 * @param criteriaQuery the query to be run
+	 * @param consumer		the action to be done with each row
+	 */
+	@SuppressWarnings("unchecked")
+	protected <R> void scroll(CriteriaQuery<R> criteriaQuery, Consumer<R> consumer) {
+		org.hibernate.query.Query<R> query = entityManager.createQuery(criteriaQuery).unwrap(org.hibernate.query.Query.class);
+		query.setFetchSize(STREAMING_FETCH_SIZE);
+		query.setReadOnly(true);
+		
+		ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+		try {
+			int amountOfRowsRead = 0;
+			
+			while (results.next()) {
+				consumer.accept((R) results.get(0));
+				
+				if (++amountOfRowsRead % SCROLL_CHUNK_SIZE == 0) {
+					entityManager.clear();
+				}
+			}
+		} finally {
+			results.close();
+		}
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,106 @@
+package daos;
+
+import javax.annotation.Resource;
+import javax.ejb.SessionContext;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.LockModeType;
+
+import entities.CodeSequence;
+import enums.MetricLayer;
+import metrics.Timed;
+
+/**
+ * Class that makes the database communication layer role in relation with of the code sequences table.
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+@Timed(MetricLayer.DAO)
+@Stateless
+public class SequenceDAO extends GenericDAO<CodeSequence> {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 * 
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * The context of the running transaction.
+	 */
+	@Resource
+	private SessionContext context;
+
+	public SequenceDAO() {
+		super(CodeSequence.class);
+	}
+	
+	/**
+	 * <p>Creates the given sequence in its own transaction.</p>
+	 * <p>The insert is flushed before returning, so when another node creates the same sequence at the same time
+	 * the duplicate key is reported here, as false, instead of failing the commit.</p>
+	 * 
+	 * @param name		   the name of the sequence
+	 * @param initialValue the first value of the sequence
+	 * @return
+	 * 		  <ul>
+	 * 			<li>true, if the sequence was created</li>
+	 * 			<li>false, if it already existed or any errors occurred, in which case the transaction is rolled back</li>
+	 * 		  </ul>
+	 */
+	@TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+	public boolean create(String name, long initialValue) {
+		try {
+			CodeSequence sequence = new CodeSequence();
+			sequence.setName(name);
+			sequence.setNextValue(initialValue);
+			entityManager.persist(sequence);
+			entityManager.flush();
+			
+			return true;
+		} catch (Exception exception) {
+			System.err.println("Catch " + exception.getClass().getName() + " create() in SequenceDAO");
+			exception.printStackTrace();
+			
+			context.setRollbackOnly();
+			
+			return false;
+		}
+	}
+	
+	/**
+	 * <p>Reserves a block of consecutive values of the given sequence.</p>
+	 * <p>The sequence row is locked until the end of its own transaction, so two nodes never get the same block.
+	 * The sequence must have been created by {@link #create(String, long)}.</p>
+	 * 
+	 * @param name	    the name of the sequence
+	 * @param blockSize the amount of values to reserve
+	 * @return
+	 * 		  <ul> If the query was:
+	 * 			<li>Well succeeded: the first value of the reserved block</li>
+	 * 			<li>Bad succeeded: null, also if the sequence does not exist</li>
+	 * 		  </ul>
+	 */
+	@TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+	public Long reserveBlock(String name, int blockSize) {
+		try {
+			CodeSequence sequence = entityManager.find(CodeSequence.class, name, LockModeType.PESSIMISTIC_WRITE);
+			
+			if (sequence == null) {
+				return null;
+			}
+			
+			Long firstValue = sequence.getNextValue();
+			sequence.setNextValue(firstValue + blockSize);
+			
+			return firstValue;
+		} catch (Exception exception) {
+			System.err.println("Catch " + exception.getClass().getName() + " reserveBlock() in SequenceDAO");
+			exception.printStackTrace();
+			
+			return null;
+		}
+	}
+}
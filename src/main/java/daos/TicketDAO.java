@@ -1,19 +1,36 @@
 package daos;
 
 import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
 
+import javax.annotation.Resource;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
+import javax.persistence.LockModeType;
+import javax.persistence.Tuple;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
 import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import caches.SeatMap;
+import dtos.TicketDTO;
 import entities.Flight;
+import entities.FlightSeatMap;
 import entities.Ticket;
 import entities.User;
+import enums.MetricLayer;
+import metrics.Timed;
 
+@Timed(MetricLayer.DAO)
 @Stateless
 public class TicketDAO extends GenericDAO<Ticket> {
 
@@ -23,45 +40,57 @@ public class TicketDAO extends GenericDAO<Ticket> {
 	 * <p>This identifier is used during deserialisation to verify that the sender and receiver of a serialised object have loaded classes for that object that are compatible with respect to serialization.<p>
 	 */
 	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * The context of the running transaction.
+	 */
+	@Resource
+	private SessionContext context;
 
 	public TicketDAO() {
 		super(Ticket.class);
 	}
 	
 	/**
-	 * Count the amount of occupied seats of the given id flight.
+	 * <p>Finds one page of tickets from the given user id, along with their passenger and flight information.</p>
+	 * <p>The columns are selected straight into the DTOs, so no ticket, user or flight is loaded into the persistence context.</p>
 	 * 
-	 * @param idFlight primary key of the flight
+	 * @param userId   primary key of the user that owns the ticket
+	 * @param pageSize the maximum amount of tickets in the page
+	 * @param afterId  the primary key of the last ticket of the previous page, or null for the first page
 	 * @return
 	 * 		  <ul> If the query was:
-	 * 			<li>Well succeeded: the amount of occupied seats</li>
+	 * 			<li>Well succeeded: the list of tickets DTO, at most <code>pageSize + 1</code></li>
 	 * 			<li>Bad succeeded: null</li>
 	 * 		  </ul>
 	 */
-	public Long countOccupiedSeatsByFlightId(Integer idFlight) {
+	public List<TicketDTO> findTicketsByUserId(int userId, int pageSize, Integer afterId) {
 		try {
-			final CriteriaQuery<Long> CRITERIA_COUNT;
-			final CriteriaQuery<Flight> CRITERIA_QUERY;
-			
+			final CriteriaQuery<TicketDTO> CRITERIA_QUERY;
 			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+			CRITERIA_QUERY = criteriaBuilder.createQuery(TicketDTO.class);
+			Root<Ticket> ticketTable = CRITERIA_QUERY.from(Ticket.class);
+			Join<Ticket, User> userTable = ticketTable.join("passenger");
+			Join<Ticket, Flight> flightTable = ticketTable.join("flightDetails");
 			
-			CRITERIA_COUNT = criteriaBuilder.createQuery(Long.class);
-			CRITERIA_QUERY = criteriaBuilder.createQuery(Flight.class);
-			
-			// Se estou contando algo o sentido é SEMPRE One -> Many
-			Root<Flight> flightTable = CRITERIA_COUNT.from(CRITERIA_QUERY.getResultType());
-			Join<Flight, Ticket> ticketTable = flightTable.join("tickets");
+			Predicate predicateUserId = criteriaBuilder.equal(userTable.get("id"), userId);
+			Predicate afterCursor = afterKey(criteriaBuilder, ticketTable, afterId);
 			
-			// Contando quantos tickets existem no voo que tem este id
-			CRITERIA_COUNT.select(criteriaBuilder.count(ticketTable)).where(
-					criteriaBuilder.and(
-							criteriaBuilder.equal(flightTable.get("id"), idFlight),
-							criteriaBuilder.equal(ticketTable.get("isCanceled"), false)));
-			Long occupiedSeats = entityManager.createQuery(CRITERIA_COUNT).getSingleResult();
+			CRITERIA_QUERY.select(criteriaBuilder.construct(TicketDTO.class,
+					ticketTable.get("id"),
+					userTable.get("id"),
+					flightTable.get("id"),
+					ticketTable.get("seatNumber"),
+					userTable.get("name"),
+					flightTable.get("code"),
+					flightTable.get("destination"),
+					flightTable.get("departTime")))
+				.where(afterCursor == null ? predicateUserId : criteriaBuilder.and(predicateUserId, afterCursor))
+				.orderBy(orderByKey(criteriaBuilder, ticketTable));
 			
-			return occupiedSeats;
+			return entityManager.createQuery(CRITERIA_QUERY).setMaxResults(pageSize + 1).getResultList();
 		} catch (Exception exception) {
-			System.err.println("Catch " + exception.getClass().getName() + " countOccupiedSeatsByFlightId() in TicketDAO");
+			System.err.println("Catch " + exception.getClass().getName() + " findTicketByUserId() in TicketDAO");
 			exception.printStackTrace();
 			
 			return null;
@@ -69,28 +98,42 @@ public class TicketDAO extends GenericDAO<Ticket> {
 	}
 
 	/**
-	 * Finds the list of tickets from the given user id.
+	 * <p>Finds the information needed to cancel the ticket that owns the given id.</p>
+	 * <p>The columns are selected straight into a tuple, so no ticket, user or flight is loaded into the persistence context.</p>
 	 * 
-	 * @param userId primary key of the user that owns the ticket
+	 * @param ticketId primary key of the ticket
 	 * @return
 	 * 		  <ul> If the query was:
-	 * 			<li>Well succeeded: the list of tickets</li>
+	 * 			<li>Well succeeded: the tuple with the aliases <code>id</code>, <code>isCanceled</code>, <code>seatNumber</code>, <code>idFlight</code>, 
+	 * 				<code>flightCode</code>, <code>flightDestination</code>, <code>flightDepartTime</code>, <code>idUser</code> and <code>userName</code>, 
+	 * 				or empty if the ticket is not found</li>
 	 * 			<li>Bad succeeded: null</li>
 	 * 		  </ul>
 	 */
-	public List<Ticket> findTicketsByUserId(int userId) {
+	public Optional<Tuple> findCancellationDetails(Integer ticketId) {
 		try {
-			final CriteriaQuery<Ticket> CRITERIA_QUERY;
+			final CriteriaQuery<Tuple> CRITERIA_QUERY;
 			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
-			CRITERIA_QUERY = criteriaBuilder.createQuery(Ticket.class);
+			CRITERIA_QUERY = criteriaBuilder.createTupleQuery();
 			Root<Ticket> ticketTable = CRITERIA_QUERY.from(Ticket.class);
 			Join<Ticket, User> userTable = ticketTable.join("passenger");
+			Join<Ticket, Flight> flightTable = ticketTable.join("flightDetails");
 			
-			CRITERIA_QUERY.select(ticketTable).where(criteriaBuilder.equal(userTable.get("id"), userId));
+			CRITERIA_QUERY.multiselect(
+					ticketTable.<Integer>get("id").alias("id"),
+					ticketTable.<Boolean>get("isCanceled").alias("isCanceled"),
+					ticketTable.<Integer>get("seatNumber").alias("seatNumber"),
+					flightTable.<Integer>get("id").alias("idFlight"),
+					flightTable.<String>get("code").alias("flightCode"),
+					flightTable.<String>get("destination").alias("flightDestination"),
+					flightTable.<Timestamp>get("departTime").alias("flightDepartTime"),
+					userTable.<Integer>get("id").alias("idUser"),
+					userTable.<String>get("name").alias("userName"))
+				.where(criteriaBuilder.equal(ticketTable.get("id"), ticketId));
 			
-			return entityManager.createQuery(CRITERIA_QUERY).getResultList();
+			return entityManager.createQuery(CRITERIA_QUERY).getResultList().stream().findFirst();
 		} catch (Exception exception) {
-			System.err.println("Catch " + exception.getClass().getName() + " findTicketByUserId() in TicketDAO");
+			System.err.println("Catch " + exception.getClass().getName() + " findCancellationDetails() in TicketDAO");
 			exception.printStackTrace();
 			
 			return null;
@@ -98,38 +141,300 @@ public class TicketDAO extends GenericDAO<Ticket> {
 	}
 
 	/**
-	 * Counts the amount of active tickets that have not yet taken place for the given user id.
+	 * Finds, in a single query, which of the given users have active tickets that have not yet taken place.
 	 * 
-	 * @param userId primary key of the user to have their tickets count
+	 * @param userIds primary keys of the users to be checked
 	 * @return
 	 * 		  <ul>
-	 * 			<li>the amount tickets, if the requisition was successfully</li>
+	 * 			<li>the primary keys of the users with future flights, if the requisition was successfully</li>
 	 * 			<li>null, if any errors occurred</li>
 	 * 		  </ul>
 	 */
-	public Integer countAllNonDeletedWithFutureFlightByUserId(Integer userId) {
+	public List<Integer> findPassengerIdsWithFutureFlight(Collection<Integer> userIds) {
 		try {
+			final CriteriaQuery<Integer> CRITERIA_QUERY;
+			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+			CRITERIA_QUERY = criteriaBuilder.createQuery(Integer.class);
+			Root<Ticket> ticketTable = CRITERIA_QUERY.from(Ticket.class);
+			Join<Ticket, Flight> flightTable = ticketTable.join("flightDetails");
+			Path<Integer> passengerId = ticketTable.get("passenger").get("id");
+			
+			CRITERIA_QUERY.select(passengerId).distinct(true).where(
+					passengerId.in(userIds),
+					criteriaBuilder.equal(ticketTable.get("isCanceled"), false),
+					criteriaBuilder.greaterThan(flightTable.get("departTime").as(Timestamp.class), criteriaBuilder.currentTimestamp()));
+			
+			return entityManager.createQuery(CRITERIA_QUERY).getResultList();
+		} catch (Exception exception) {
+			System.err.println("Catch " + exception.getClass().getName() + " findPassengerIdsWithFutureFlight() in TicketDAO");
+			exception.printStackTrace();
+			
+			return null;
+		}
+	}
+	
+	/**
+	 * <p>Cancels the ticket that owns the given id, if it is not cancelled yet, and frees its seat in the flight seat map.</p>
+	 * <p>The check and the update are done in the same statement, so a ticket is never cancelled twice.</p>
+	 * 
+	 * @param ticketId	 primary key of the ticket
+	 * @param idFlight	 primary key of the flight of the ticket
+	 * @param seatNumber number of the seat of the ticket, or null if it has none
+	 * @return
+	 * 		  <ul>
+	 * 			<li>1, if the ticket was cancelled</li>
+	 * 			<li>0, if the ticket was already cancelled</li>
+	 * 			<li>null, if any errors occurred</li>
+	 * 		  </ul>
+	 */
+	public Integer cancel(Integer ticketId, Integer idFlight, Integer seatNumber) {
+		try {
+			final CriteriaUpdate<Ticket> CRITERIA_UPDATE;
+			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+			CRITERIA_UPDATE = criteriaBuilder.createCriteriaUpdate(Ticket.class);
+			Root<Ticket> ticketTable = CRITERIA_UPDATE.from(Ticket.class);
+			
+			CRITERIA_UPDATE.set("isCanceled", true);
+			CRITERIA_UPDATE.where(
+					criteriaBuilder.equal(ticketTable.get("id"), ticketId),
+					criteriaBuilder.equal(ticketTable.get("isCanceled"), false));
+			
+			int amountOfRowsUpdated = entityManager.createQuery(CRITERIA_UPDATE).executeUpdate();
+			
+			if (amountOfRowsUpdated == 1 && seatNumber != null) {
+				FlightSeatMap flightSeatMap = entityManager.find(FlightSeatMap.class, idFlight, LockModeType.PESSIMISTIC_WRITE);
+				
+				if (flightSeatMap != null) {
+					byte[] seats = flightSeatMap.getSeats().clone();
+					
+					SeatMap.free(seats, seatNumber);
+					flightSeatMap.setSeats(seats);
+				}
+			}
+			
+			return amountOfRowsUpdated;
+		} catch (Exception exception) {
+			System.err.println("Catch " + exception.getClass().getName() + " cancel() in TicketDAO");
+			exception.printStackTrace();
+			
+			context.setRollbackOnly();
+			
+			return null;
+		}
+	}
+	
+	/**
+	 * <p>Creates all the given tickets in a single transaction: either all of them are saved or none is.</p>
+	 * <p>The inserts are flushed together at the end, grouped in JDBC batches where the id generation allows it.</p>
+	 * <p>The seats of the tickets are set in the seat map of their flight in the same transaction, with the seat map row locked,
+	 * so a seat already occupied in the database makes the whole transaction fail. The seat map must have been initialized,
+	 * as the seat ledger does before claiming any seat.</p>
+	 * 
+	 * @param tickets the tickets to be inserted
+	 * @return
+	 * 		  <ul>
+	 * 			<li>true, if all tickets were saved</li>
+	 * 			<li>false, if any errors occurred or any seat was already occupied, in which case the transaction is rolled back</li>
+	 * 		  </ul>
+	 */
+	public boolean persistAll(List<Ticket> tickets) {
+		try {
+			Map<Integer, FlightSeatMap> lockedSeatMaps = new HashMap<>();
+			Map<Integer, byte[]> seats = new HashMap<>();
+			
+			for (Ticket ticketElement : tickets) {
+				if (ticketElement.getSeatNumber() != null) {
+					Integer idFlight = ticketElement.getFlightDetails().getId();
+					
+					// Bloqueia a linha do mapa de lugares uma só vez e trabalha sobre uma cópia, gravada no fim; a linha do voo não é tocada
+					if (!lockedSeatMaps.containsKey(idFlight)) {
+						FlightSeatMap flightSeatMap = entityManager.find(FlightSeatMap.class, idFlight, LockModeType.PESSIMISTIC_WRITE);
+						
+						if (flightSeatMap == null) {
+							throw new IllegalStateException("The seat map of flight " + idFlight + " was not initialized");
+						}
+						
+						lockedSeatMaps.put(idFlight, flightSeatMap);
+						seats.put(idFlight, flightSeatMap.getSeats().clone());
+					}
+					
+					if (!SeatMap.occupy(seats.get(idFlight), ticketElement.getSeatNumber())) {
+						throw new IllegalStateException("Seat " + ticketElement.getSeatNumber() + " of flight " + idFlight + " is not available");
+					}
+				}
+				
+				entityManager.persist(ticketElement);
+			}
+			
+			lockedSeatMaps.forEach((idFlight, flightSeatMap) -> flightSeatMap.setSeats(seats.get(idFlight)));
+			entityManager.flush();
+			
+			return true;
+		} catch (Exception exception) {
+			System.err.println("Catch " + exception.getClass().getName() + " persistAll() in TicketDAO");
+			exception.printStackTrace();
+			
+			// A exceção do JPA já marca a transação para rollback, mas garante que nenhum ticket fica gravado
+			context.setRollbackOnly();
+			
+			return false;
+		}
+	}
+	
+	/**
+	 * Finds the seat map of the given flight.
+	 * 
+	 * @param idFlight primary key of the flight
+	 * @return
+	 * 		  <ul>An Optional object which has inside:
+	 * 			<li>the occupied seats, if the seat map was already saved</li>
+	 * 			<li>empty, if the flight has no seat map yet</li>
+	 * 		  </ul>
+	 * 		  or null, if any errors occurred
+	 */
+	public Optional<byte[]> findSeatMap(Integer idFlight) {
+		try {
+			FlightSeatMap flightSeatMap = entityManager.find(FlightSeatMap.class, idFlight);
+			
+			return flightSeatMap == null ? Optional.empty() : Optional.of(flightSeatMap.getSeats());
+		} catch (Exception exception) {
+			System.err.println("Catch " + exception.getClass().getName() + " findSeatMap() in TicketDAO");
+			exception.printStackTrace();
+			
+			return null;
+		}
+	}
+	
+	/**
+	 * Finds the seat maps of the given flights, in a single query.
+	 *
+	 * @param idFlights primary keys of the flights
+	 * @return
+	 * 		  <ul> If the query was:
+	 * 			<li>Well succeeded: the occupied seats indexed by flight primary key, without the flights that have no seat map yet</li>
+	 * 			<li>Bad succeeded: null</li>
+	 * 		  </ul>
+	 */
+	public Map<Integer, byte[]> findSeatMaps(Collection<Integer> idFlights) {
+		try {
+			Map<Integer, byte[]> seatsByFlight = new HashMap<>();
+			
+			if (idFlights.isEmpty()) {
+				return seatsByFlight;
+			}
+			
+			final CriteriaQuery<FlightSeatMap> CRITERIA_QUERY;
+			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+			CRITERIA_QUERY = criteriaBuilder.createQuery(FlightSeatMap.class);
+			Root<FlightSeatMap> flightSeatMapTable = CRITERIA_QUERY.from(FlightSeatMap.class);
+			
+			CRITERIA_QUERY.select(flightSeatMapTable).where(flightSeatMapTable.get("idFlight").in(idFlights));
+			
+			for (FlightSeatMap flightSeatMapElement : entityManager.createQuery(CRITERIA_QUERY).getResultList()) {
+				seatsByFlight.put(flightSeatMapElement.getIdFlight(), flightSeatMapElement.getSeats());
+			}
+			
+			return seatsByFlight;
+		} catch (Exception exception) {
+			System.err.println("Catch " + exception.getClass().getName() + " findSeatMaps() in TicketDAO");
+			exception.printStackTrace();
+
+			return null;
+		}
+	}
+
+	/**
+	 * <p>Builds and saves the seat map of a flight that does not have one, such as the flights created before the seat maps existed.</p>
+	 * <p>The active tickets that already have a seat keep it and the others get the free seats with the lowest numbers, 
+	 * in the order they were bought. Tickets beyond the amount of seats of the flight are left without seat.
+	 * The flight row is locked only to run one initialization at a time, and it is not changed.</p>
+	 * 
+	 * @param idFlight primary key of the flight
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the seat map saved, or the one saved in the meantime by another requisition</li>
+	 * 			<li>null, if the flight is not found or any errors occurred</li>
+	 * 		  </ul>
+	 */
+	public byte[] initializeSeatMap(Integer idFlight) {
+		try {
+			Flight flight = entityManager.find(Flight.class, idFlight, LockModeType.PESSIMISTIC_WRITE);
+			
+			if (flight == null) {
+				return null;
+			}
+			
+			FlightSeatMap flightSeatMap = entityManager.find(FlightSeatMap.class, idFlight);
+			
+			if (flightSeatMap != null) {
+				return flightSeatMap.getSeats();
+			}
+			
 			final CriteriaQuery<Ticket> CRITERIA_QUERY;
 			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
 			CRITERIA_QUERY = criteriaBuilder.createQuery(Ticket.class);
 			Root<Ticket> ticketTable = CRITERIA_QUERY.from(Ticket.class);
-			Join<Ticket, User> userTable = ticketTable.join("passenger");
-			Join<Ticket, Flight> flightTable = ticketTable.join("flightDetails");
 			
-			Predicate predicateTicketNonCancelled = criteriaBuilder.equal(ticketTable.get("isCanceled"), false);
-			Predicate predicateUserId = criteriaBuilder.equal(userTable.get("id"), userId);
-			Predicate predicateFlightDate = criteriaBuilder.greaterThan(flightTable.get("departTime").as(Timestamp.class), criteriaBuilder.currentTimestamp());
+			CRITERIA_QUERY.select(ticketTable).where(
+					criteriaBuilder.equal(ticketTable.get("flightDetails").get("id"), idFlight),
+					criteriaBuilder.equal(ticketTable.get("isCanceled"), false))
+				.orderBy(criteriaBuilder.asc(ticketTable.get("id")));
+			
+			List<Ticket> tickets = entityManager.createQuery(CRITERIA_QUERY).getResultList();
+			byte[] seats = SeatMap.emptyBytes(flight.getTotalSeats());
 			
-			Predicate[] predicates = {predicateTicketNonCancelled, predicateUserId, predicateFlightDate};
+			// Primeiro os tickets que já têm lugar, depois os restantes ocupam os lugares livres por ordem
+			tickets.stream().filter(ticketElement -> ticketElement.getSeatNumber() != null)
+				.forEach(ticketElement -> SeatMap.occupy(seats, ticketElement.getSeatNumber()));
 			
-			CRITERIA_QUERY.select(ticketTable).where(predicates);
+			int seatNumber = 1;
+			for (Ticket ticketElement : tickets) {
+				if (ticketElement.getSeatNumber() == null) {
+					while (seatNumber <= flight.getTotalSeats() && !SeatMap.occupy(seats, seatNumber)) {
+						seatNumber++;
+					}
+					
+					if (seatNumber > flight.getTotalSeats()) {
+						break;
+					}
+					
+					ticketElement.setSeatNumber(seatNumber);
+				}
+			}
 			
-			return entityManager.createQuery(CRITERIA_QUERY).getResultList().size();
+			flightSeatMap = new FlightSeatMap();
+			flightSeatMap.setIdFlight(idFlight);
+			flightSeatMap.setSeats(seats);
+			entityManager.persist(flightSeatMap);
+			
+			return seats;
 		} catch (Exception exception) {
-			System.err.println("Catch " + exception.getClass().getName() + " findAllNonDeletedWithFutureFlightByUserId() in TicketDAO");
+			System.err.println("Catch " + exception.getClass().getName() + " initializeSeatMap() in TicketDAO");
 			exception.printStackTrace();
 			
+			context.setRollbackOnly();
+			
 			return null;
 		}
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Reads all tickets ordered by primary key, along with their passenger and flight, handing them to the given consumer one at a time.
+	 * 
+	 * @param consumer the action to be done with each ticket
+	 */
+	public void scrollAllWithDetails(Consumer<Ticket> consumer) {
+		final CriteriaQuery<Ticket> CRITERIA_QUERY;
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CRITERIA_QUERY = criteriaBuilder.createQuery(Ticket.class);
+		Root<Ticket> ticketTable = CRITERIA_QUERY.from(Ticket.class);
+		
+		// Fetch join para não carregar o passageiro e o voo com uma query por ticket
+		ticketTable.fetch("passenger");
+		ticketTable.fetch("flightDetails");
+		
+		CRITERIA_QUERY.select(ticketTable).orderBy(criteriaBuilder.asc(ticketTable.get("id")));
+		
+		scroll(CRITERIA_QUERY, consumer);
+	}
+}
@@ -1,20 +1,36 @@
 package daos;
 
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+import javax.annotation.Resource;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.persistence.NoResultException;
+import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.persistence.criteria.Subquery;
 
+import dtos.BulkDeleteDTO;
+import dtos.TicketDTO;
+import dtos.UserDTO;
+import entities.Flight;
+import entities.Ticket;
 import entities.User;
+import enums.MetricLayer;
 import enums.Role;
+import metrics.Timed;
 
 /**
  * Class that makes the database communication layer role in relation with of the users table.
@@ -22,6 +38,7 @@ import enums.Role;
  * @author Wanderley Drumond
  *
  */
+@Timed(MetricLayer.DAO)
 @Stateless
 public class UserDAO extends GenericDAO<User> {
 	/**
@@ -30,6 +47,12 @@ public class UserDAO extends GenericDAO<User> {
 	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
 	 */
 	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * The context of the running transaction.
+	 */
+	@Resource
+	private SessionContext context;
 
 	public UserDAO() {
 		super(User.class);
@@ -68,34 +91,213 @@ public class UserDAO extends GenericDAO<User> {
 	}
 
 	/**
-	 * Finds all users non deleted in the database by the given role.
+	 * Finds one page of users ordered by primary key, selected straight into DTOs without password and token.
 	 * 
-	 * @param role from the user that is doing the search
+	 * @param pageSize the maximum amount of users in the page
+	 * @param afterId  the primary key of the last user of the previous page, or null for the first page
+	 * @return the list of users DTO, at most <code>pageSize + 1</code>
+	 */
+	public List<UserDTO> findDTOPage(int pageSize, Integer afterId) {
+		return findProjectionPage(UserDTO.class, pageSize, afterId, null, "id", "name", "username", "role");
+	}
+
+	/**
+	 * Finds one page of users non deleted in the database by the given role, selected straight into DTOs without password and token.
+	 * 
+	 * @param role	   from the user that is doing the search
+	 * @param pageSize the maximum amount of users in the page
+	 * @param afterId  the primary key of the last user of the previous page, or null for the first page
 	 * @return
 	 * 		  <ul>
-	 * 			<li>the list of users, if successful</li>
+	 * 			<li>the list of users DTO, at most <code>pageSize + 1</code>, if successful</li>
 	 * 			<li>null, if error occurred, preventing the user from being found</li>
 	 * 		  </ul>
 	 */
-	public List<User> findAllNonDeletedByRole(Role role) {
+	public List<UserDTO> findAllNonDeletedByRole(Role role, int pageSize, Integer afterId) {
+		try {
+			return findProjectionPage(UserDTO.class, pageSize, afterId, 
+					(criteriaBuilder, userTable) -> criteriaBuilder.and(
+							criteriaBuilder.equal(userTable.get("role"), role),
+							criteriaBuilder.equal(userTable.get("isDeleted"), false)),
+					"id", "name", "username", "role");
+		} catch (Exception exception) {
+			System.err.println("Catch " + exception.getClass().getName() + " findAllNonDeletedByRole() in UserDAO");
+			exception.printStackTrace();
+			
+			return null;
+		}
+	}
+
+	/**
+	 * Finds, in a single query, the users non deleted in the database among the given ids.
+	 * 
+	 * @param ids the primary keys of the users
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the list of users found, if successful</li>
+	 * 			<li>null, if error occurred, preventing the users from being found</li>
+	 * 		  </ul>
+	 */
+	public List<User> findAllNonDeletedByIds(Collection<Integer> ids) {
 		try {
 			final CriteriaQuery<User> CRITERIA_QUERY;
 			CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
 			CRITERIA_QUERY = criteriaBuilder.createQuery(User.class);
 			Root<User> userTable = CRITERIA_QUERY.from(User.class);
 			
-			CRITERIA_QUERY.select(userTable).where(criteriaBuilder
-					.and(criteriaBuilder.equal(userTable.get("role"), role), 
-						 criteriaBuilder.equal(userTable.get("isDeleted"), false)));
+			CRITERIA_QUERY.select(userTable).where(
+					criteriaBuilder.and(
+							userTable.get("id").in(ids),
+							criteriaBuilder.equal(userTable.get("isDeleted"), false)));
 			
 			return entityManager.createQuery(CRITERIA_QUERY).getResultList();
 		} catch (Exception exception) {
-			System.err.println("Catch " + exception.getClass().getName() + " findAllByToken() in UserDAO");
+			System.err.println("Catch " + exception.getClass().getName() + " findAllNonDeletedByIds() in UserDAO");
+			exception.printStackTrace();
+			
+			return null;
+		}
+	}
+
+	/**
+	 * <p>Soft deletes the given users that have no active tickets that have not yet taken place, along with all their tickets, in a single transaction.</p>
+	 * <p>The users are deleted by a single statement that does the future flights check itself, so a user who books a flight meanwhile is not deleted.
+	 * Then the tickets of the users deleted are read by a single query and deleted by a single statement. 
+	 * If any statement fails, the transaction is rolled back and nothing is deleted.</p>
+	 * 
+	 * @param ids primary keys of the users to be deleted, all of them non-deleted when checked
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the ids of the users deleted, the ids of the ones that booked a flight meanwhile and the tickets deleted, if successful</li>
+	 * 			<li>null, if any errors occurred</li>
+	 * 		  </ul>
+	 */
+	public BulkDeleteDTO softDeleteWithTicketsByIds(Collection<Integer> ids) {
+		try {
+			BulkDeleteDTO bulkDeleteDTO = new BulkDeleteDTO();
+			Set<Integer> idsDeleted = new LinkedHashSet<>(ids);
+			int amountOfUsersDeleted = softDeleteWithoutFutureFlight(idsDeleted);
+			
+			// Se algum utilizador comprou um voo entre a verificação e a atualização, não foi apagado
+			if (amountOfUsersDeleted < idsDeleted.size()) {
+				List<User> usersNotDeleted = findAllNonDeletedByIds(idsDeleted);
+				
+				if (usersNotDeleted == null) {
+					throw new IllegalStateException("The users not deleted could not be read");
+				}
+				
+				usersNotDeleted.forEach(userElement -> {
+					idsDeleted.remove(userElement.getId());
+					bulkDeleteDTO.getWithFutureFlightIds().add(userElement.getId());
+				});
+			}
+			
+			bulkDeleteDTO.getDeletedIds().addAll(idsDeleted);
+			
+			if (!idsDeleted.isEmpty()) {
+				// Os tickets são lidos antes de serem apagados, na mesma transação, para que o journal registe cada um
+				bulkDeleteDTO.getDeletedTickets().addAll(findNonDeletedTicketsByPassengerIds(idsDeleted));
+				bulkDeleteDTO.setAmountOfTicketsDeleted(softDeleteTicketsByPassengerIds(idsDeleted));
+			}
+			
+			return bulkDeleteDTO;
+		} catch (Exception exception) {
+			System.err.println("Catch " + exception.getClass().getName() + " softDeleteWithTicketsByIds() in UserDAO");
 			exception.printStackTrace();
 			
+			context.setRollbackOnly();
+			
 			return null;
 		}
 	}
+	
+	/**
+	 * Soft deletes, in a single statement, the given users that have no active tickets that have not yet taken place.
+	 * 
+	 * @param ids primary keys of the users to be deleted
+	 * @return the amount of users soft deleted
+	 */
+	private int softDeleteWithoutFutureFlight(Collection<Integer> ids) {
+		final CriteriaUpdate<User> CRITERIA_UPDATE;
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CRITERIA_UPDATE = criteriaBuilder.createCriteriaUpdate(User.class);
+		Root<User> userTable = CRITERIA_UPDATE.from(User.class);
+		
+		// Passageiros, entre os dados, com tickets não cancelados de voos futuros. A subquery não se refere à tabela atualizada,
+		// que o Hibernate não identifica por alias nos updates, para que o id de cada tabela não fique ambíguo
+		Subquery<Integer> passengersWithFutureFlight = CRITERIA_UPDATE.subquery(Integer.class);
+		Root<Ticket> ticketTable = passengersWithFutureFlight.from(Ticket.class);
+		Join<Ticket, Flight> flightTable = ticketTable.join("flightDetails");
+		passengersWithFutureFlight.select(ticketTable.get("passenger").get("id")).where(
+				ticketTable.get("passenger").get("id").in(ids),
+				criteriaBuilder.equal(ticketTable.get("isCanceled"), false),
+				criteriaBuilder.greaterThan(flightTable.get("departTime").as(Timestamp.class), criteriaBuilder.currentTimestamp()));
+		
+		CRITERIA_UPDATE.set("isDeleted", true);
+		CRITERIA_UPDATE.where(
+				userTable.get("id").in(ids),
+				criteriaBuilder.equal(userTable.get("isDeleted"), false),
+				criteriaBuilder.not(userTable.get("id").in(passengersWithFutureFlight)));
+		
+		return entityManager.createQuery(CRITERIA_UPDATE).executeUpdate();
+	}
+	
+	/**
+	 * Finds, in a single query, all non-deleted tickets of the given passengers, with only their primary key, flight, passenger and seat.
+	 * 
+	 * @param passengerIds primary keys of the users that own the tickets
+	 * @return the tickets found, in primary key order
+	 */
+	private List<TicketDTO> findNonDeletedTicketsByPassengerIds(Collection<Integer> passengerIds) {
+		final CriteriaQuery<Tuple> CRITERIA_QUERY;
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CRITERIA_QUERY = criteriaBuilder.createTupleQuery();
+		Root<Ticket> ticketTable = CRITERIA_QUERY.from(Ticket.class);
+		
+		CRITERIA_QUERY.multiselect(
+				ticketTable.<Integer>get("id").alias("id"),
+				ticketTable.get("flightDetails").<Integer>get("id").alias("idFlight"),
+				ticketTable.get("passenger").<Integer>get("id").alias("idUser"),
+				ticketTable.<Integer>get("seatNumber").alias("seatNumber"))
+			.where(
+				ticketTable.get("passenger").get("id").in(passengerIds),
+				criteriaBuilder.equal(ticketTable.get("isDeleted"), false))
+			.orderBy(criteriaBuilder.asc(ticketTable.get("id")));
+		
+		List<TicketDTO> ticketsDTO = new ArrayList<>();
+		
+		for (Tuple ticketElement : entityManager.createQuery(CRITERIA_QUERY).getResultList()) {
+			TicketDTO ticketDTO = new TicketDTO();
+			
+			ticketDTO.setId(ticketElement.get("id", Integer.class));
+			ticketDTO.setIdFlight(ticketElement.get("idFlight", Integer.class));
+			ticketDTO.setIdUser(ticketElement.get("idUser", Integer.class));
+			ticketDTO.setSeatNumber(ticketElement.get("seatNumber", Integer.class));
+			ticketsDTO.add(ticketDTO);
+		}
+		
+		return ticketsDTO;
+	}
+	
+	/**
+	 * Soft deletes, in a single statement, all non-deleted tickets of the given passengers.
+	 * 
+	 * @param passengerIds primary keys of the users that own the tickets
+	 * @return the amount of tickets soft deleted
+	 */
+	private int softDeleteTicketsByPassengerIds(Collection<Integer> passengerIds) {
+		final CriteriaUpdate<Ticket> CRITERIA_UPDATE;
+		CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+		CRITERIA_UPDATE = criteriaBuilder.createCriteriaUpdate(Ticket.class);
+		Root<Ticket> ticketTable = CRITERIA_UPDATE.from(Ticket.class);
+		
+		CRITERIA_UPDATE.set("isDeleted", true);
+		CRITERIA_UPDATE.where(
+				ticketTable.get("passenger").get("id").in(passengerIds),
+				criteriaBuilder.equal(ticketTable.get("isDeleted"), false));
+		
+		return entityManager.createQuery(CRITERIA_UPDATE).executeUpdate();
+	}
 
 	/**
 	 * Finds a user which belongs the given username and password.
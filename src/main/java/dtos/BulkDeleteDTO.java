@@ -0,0 +1,42 @@
+package dtos;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Result of a bulk soft delete that the frontend consumes: which users were deleted and why the others were not.
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+@XmlRootElement
+@NoArgsConstructor
+@Getter
+@Setter
+public class BulkDeleteDTO implements Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 * 
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private List<Integer> deletedIds = new ArrayList<>();
+	private List<Integer> withFutureFlightIds = new ArrayList<>();
+	private List<Integer> notFoundIds = new ArrayList<>();
+	private Integer amountOfTicketsDeleted = 0;
+	/**
+	 * Tickets deleted along with the users, with their flight, passenger and seat, kept for the booking journal and not sent to the frontend.
+	 */
+	@JsonIgnore
+	private List<TicketDTO> deletedTickets = new ArrayList<>();
+}
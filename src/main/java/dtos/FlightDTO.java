@@ -1,6 +1,8 @@
 package dtos;
 
 import java.io.Serializable;
+import java.sql.Timestamp;
+import java.util.Date;
 
 import javax.xml.bind.annotation.XmlRootElement;
 
@@ -28,4 +30,21 @@ public class FlightDTO implements Serializable {
 	
 	private Integer id, totalSeats, freeSeats;
 	private String code, destination, departTime;
+	
+	/**
+	 * Builds the DTO straight from the flight columns, as selected by the projection queries of <code>FlightDAO</code>.
+	 * 
+	 * @param id		  primary key of the flight
+	 * @param code		  code of the flight
+	 * @param destination destination of the flight
+	 * @param departTime  depart date and time of the flight
+	 * @param totalSeats  amount of seats of the flight
+	 */
+	public FlightDTO(Integer id, String code, String destination, Date departTime, Integer totalSeats) {
+		this.id = id;
+		this.code = code;
+		this.destination = destination;
+		this.departTime = new Timestamp(departTime.getTime()).toString();
+		this.totalSeats = totalSeats;
+	}
 }
\ No newline at end of file
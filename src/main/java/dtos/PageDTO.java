@@ -0,0 +1,116 @@
+package dtos;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One page of a list that the frontend consumes, along with the cursor to ask for the next page.
+ * 
+ * @author Wanderley Drumond
+ *
+ * @param <T> the type of the items in the page
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+public class PageDTO<T> implements Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 * 
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Separates the sort value from the primary key inside the cursor of a page sorted by an attribute other than the primary key.
+	 */
+	private static final char CURSOR_SEPARATOR = '_';
+	
+	private List<T> items;
+	private String nextCursor;
+	
+	/**
+	 * Builds a page from the rows found by a keyset query, which fetches one row more than the page size to know if there is a next page.
+	 * 
+	 * @param <T>	   the type of the items in the page
+	 * @param rows	   the rows found, at most <code>pageSize + 1</code>
+	 * @param pageSize the maximum amount of items in the page
+	 * @param idOf	   the function that gets the primary key of an item, used as cursor
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the page with all rows and no next cursor, if there are no more rows</li>
+	 * 			<li>the page with the first <code>pageSize</code> rows and the primary key of the last one as next cursor, otherwise</li>
+	 * 		  </ul>
+	 */
+	public static <T> PageDTO<T> of(List<T> rows, int pageSize, Function<T, Integer> idOf) {
+		if (rows.size() <= pageSize) {
+			return new PageDTO<>(rows, null);
+		}
+		
+		List<T> items = new ArrayList<>(rows.subList(0, pageSize));
+		
+		return new PageDTO<>(items, String.valueOf(idOf.apply(items.get(pageSize - 1))));
+	}
+	
+	/**
+	 * Builds a page sorted by an attribute other than the primary key from the rows found by a keyset query, 
+	 * which fetches one row more than the page size to know if there is a next page.
+	 * 
+	 * @param <T>		  the type of the items in the page
+	 * @param rows		  the rows found, at most <code>pageSize + 1</code>
+	 * @param pageSize	  the maximum amount of items in the page
+	 * @param sortValueOf the function that gets the sort attribute of an item
+	 * @param idOf		  the function that gets the primary key of an item
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the page with all rows and no next cursor, if there are no more rows</li>
+	 * 			<li>the page with the first <code>pageSize</code> rows and the sort value and primary key of the last one as next cursor, otherwise</li>
+	 * 		  </ul>
+	 */
+	public static <T> PageDTO<T> of(List<T> rows, int pageSize, Function<T, ?> sortValueOf, Function<T, Integer> idOf) {
+		if (rows.size() <= pageSize) {
+			return new PageDTO<>(rows, null);
+		}
+		
+		List<T> items = new ArrayList<>(rows.subList(0, pageSize));
+		T lastItem = items.get(pageSize - 1);
+		
+		return new PageDTO<>(items, String.valueOf(sortValueOf.apply(lastItem)) + CURSOR_SEPARATOR + idOf.apply(lastItem));
+	}
+	
+	/**
+	 * Gets the sort value of a cursor made by {@link #of(List, int, Function, Function)}.
+	 * 
+	 * @param cursor the cursor informed in the requisition
+	 * @return the sort value, as text, or null if the cursor cannot be read
+	 */
+	public static String sortValueOfCursor(String cursor) {
+		int separator = cursor == null ? -1 : cursor.lastIndexOf(CURSOR_SEPARATOR);
+		
+		return separator < 0 ? null : cursor.substring(0, separator);
+	}
+	
+	/**
+	 * Gets the primary key of a cursor made by {@link #of(List, int, Function, Function)}.
+	 * 
+	 * @param cursor the cursor informed in the requisition
+	 * @return the primary key, or null if the cursor cannot be read
+	 */
+	public static Integer idOfCursor(String cursor) {
+		int separator = cursor == null ? -1 : cursor.lastIndexOf(CURSOR_SEPARATOR);
+		
+		try {
+			return separator < 0 ? null : Integer.valueOf(cursor.substring(separator + 1));
+		} catch (NumberFormatException numberFormatException) {
+			return null;
+		}
+	}
+}
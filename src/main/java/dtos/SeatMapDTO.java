@@ -0,0 +1,33 @@
+package dtos;
+
+import java.io.Serializable;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * <p>Seat map of a flight that the frontend consumes.</p>
+ * <p><code>seats</code> is the bitmap of the occupied seats encoded in Base64: the seat <code>n</code> is the bit <code>(n - 1) % 8</code> 
+ * of the byte <code>(n - 1) / 8</code>, set when the seat is occupied.</p>
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+@XmlRootElement
+@NoArgsConstructor
+@Getter
+@Setter
+public class SeatMapDTO implements Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 * 
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private Integer idFlight, totalSeats, freeSeats;
+	private String seats;
+}
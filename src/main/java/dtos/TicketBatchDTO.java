@@ -0,0 +1,33 @@
+package dtos;
+
+import java.io.Serializable;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Group booking information type that the frontend consumes and produces: one flight and the passengers that will take it.
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+@XmlRootElement
+@NoArgsConstructor
+@Getter
+@Setter
+public class TicketBatchDTO implements Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 * 
+	 * <p>This identifier is used during deserialisation to verify that the sender and receiver of a serialised object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private Integer idFlight;
+	private List<Integer> idUsers;
+	private List<TicketDTO> tickets;
+}
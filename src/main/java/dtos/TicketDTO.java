@@ -1,6 +1,8 @@
 package dtos;
 
 import java.io.Serializable;
+import java.sql.Timestamp;
+import java.util.Date;
 
 import javax.xml.bind.annotation.XmlRootElement;
 
@@ -26,6 +28,30 @@ public class TicketDTO implements Serializable {
 	 */
 	private static final long serialVersionUID = 1L;
 
-	private Integer id, idUser, idFlight;
+	private Integer id, idUser, idFlight, seatNumber;
 	private String userName, flightCode, flightDestination, flightDepartTime;
+	
+	/**
+	 * Builds the DTO straight from the ticket, passenger and flight columns, as selected by the projection queries of <code>TicketDAO</code>.
+	 * 
+	 * @param id				primary key of the ticket
+	 * @param idUser			primary key of the passenger
+	 * @param idFlight			primary key of the flight
+	 * @param seatNumber		number of the seat of the ticket
+	 * @param userName			name of the passenger
+	 * @param flightCode		code of the flight
+	 * @param flightDestination destination of the flight
+	 * @param flightDepartTime	depart date and time of the flight
+	 */
+	public TicketDTO(Integer id, Integer idUser, Integer idFlight, Integer seatNumber, String userName, String flightCode, 
+			String flightDestination, Date flightDepartTime) {
+		this.id = id;
+		this.idUser = idUser;
+		this.idFlight = idFlight;
+		this.seatNumber = seatNumber;
+		this.userName = userName;
+		this.flightCode = flightCode;
+		this.flightDestination = flightDestination;
+		this.flightDepartTime = new Timestamp(flightDepartTime.getTime()).toString();
+	}
 }
\ No newline at end of file
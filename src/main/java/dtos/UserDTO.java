@@ -30,4 +30,19 @@ public class UserDTO implements Serializable {
 	private Integer id;
 	private String name, username, password, token;
 	private Role role;
+	
+	/**
+	 * Builds the DTO straight from the user columns, as selected by the projection queries of <code>UserDAO</code>, without password and token.
+	 * 
+	 * @param id	   primary key of the user
+	 * @param name	   name of the user
+	 * @param username username of the user
+	 * @param role	   role of the user
+	 */
+	public UserDTO(Integer id, String name, String username, Role role) {
+		this.id = id;
+		this.name = name;
+		this.username = username;
+		this.role = role;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package entities;
+
+import java.io.Serializable;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+
+import lombok.Data;
+
+/**
+ * <p>High-water mark of a sequence of codes handed out by the backend.</p>
+ * <p>Each application node reserves a block of values at a time by moving <code>nextValue</code> forward.</p>
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+@Entity
+@Table(name = "code_sequences")
+@Data
+public class CodeSequence implements Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 * 
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+	
+	@Id
+	private String name;
+	@NotNull
+	private Long nextValue;
+}
@@ -4,15 +4,21 @@ import java.io.Serializable;
 import java.sql.Timestamp;
 import java.util.List;
 
+import javax.persistence.Cacheable;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
+import javax.validation.constraints.Max;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import lombok.Data;
 
 /**
@@ -22,6 +28,8 @@ import lombok.Data;
  *
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "flights")
 @Data
 public class Flight implements Serializable {
@@ -36,11 +44,13 @@ public class Flight implements Serializable {
 	@GeneratedValue(strategy = GenerationType.IDENTITY)
 	private Integer id;
 	@NotBlank
+	@Column(unique = true)
 	private String code;
 	@NotBlank
 	private String destination;
 	private Timestamp departTime;
 	@NotNull
+	@Max(8192)
 	private Integer totalSeats;
 	@OneToMany(mappedBy = "flightDetails")
 	private List<Ticket> tickets;
@@ -0,0 +1,43 @@
+package entities;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+
+import lombok.Data;
+
+/**
+ * <p>Occupied seats of a flight, kept apart from the flight itself.</p>
+ * <p>Each booking and each cancellation locks and rewrites this row only, so the flight stays read-mostly in the second-level cache
+ * and its listings are not invalidated by the bookings. Not cached: the seat ledger keeps its own copy in memory.</p>
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+@Entity
+@Table(name = "flight_seat_maps")
+@Data
+public class FlightSeatMap implements Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 * 
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Primary key of the flight.
+	 */
+	@Id
+	private Integer idFlight;
+	/**
+	 * Occupied seats, one bit per seat, the lowest bit of the first byte being the seat 1.
+	 */
+	@NotNull
+	@Column(length = 1024)
+	private byte[] seats;
+}
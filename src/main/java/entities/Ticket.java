@@ -33,6 +33,7 @@ public class Ticket implements Serializable {
 	private Integer id;
 	private Boolean isCanceled;
 	private Boolean isDeleted;
+	private Integer seatNumber;
 	
 	@ManyToOne
 	private User passenger;
@@ -0,0 +1,87 @@
+package enums;
+
+/**
+ * <p>All encodings in which a response can be compressed.</p>
+ * <p>Both use the same compression: gzip wraps it with a header and a CRC32 trailer, deflate with the zlib header and an Adler-32 trailer.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public enum ContentEncoding {
+	GZIP("gzip"), DEFLATE("deflate");
+
+	/**
+	 * Name of the encoding in the <code>Accept-Encoding</code> and <code>Content-Encoding</code> headers.
+	 */
+	private final String headerName;
+
+	ContentEncoding(String headerName) {
+		this.headerName = headerName;
+	}
+
+	public String getHeaderName() {
+		return headerName;
+	}
+
+	/**
+	 * Chooses the encoding preferred by the client, giving gzip the precedence when both are equally accepted.
+	 *
+	 * @param acceptEncoding the <code>Accept-Encoding</code> header of the requisition, like <code>gzip, deflate;q=0.5</code>
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the accepted encoding with the highest weight</li>
+	 * 			<li>null, if the header is absent or accepts none of the encodings</li>
+	 * 		  </ul>
+	 */
+	public static ContentEncoding negotiate(String acceptEncoding) {
+		if (acceptEncoding == null || acceptEncoding.isBlank()) {
+			return null;
+		}
+
+		double[] weights = {-1D, -1D};
+		double anyWeight = -1D;
+
+		for (String codingElement : acceptEncoding.split(",")) {
+			String[] parameters = codingElement.split(";");
+			String name = parameters[0].trim();
+			double weight = 1D;
+
+			for (int index = 1; index < parameters.length; index++) {
+				String parameter = parameters[index].trim();
+
+				if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+					try {
+						weight = Double.parseDouble(parameter.substring(2).trim());
+					} catch (NumberFormatException numberFormatException) {
+						weight = 0D;
+					}
+				}
+			}
+
+			if (name.equals("*")) {
+				anyWeight = weight;
+			}
+
+			for (ContentEncoding encodingElement : values()) {
+				if (encodingElement.headerName.equalsIgnoreCase(name)) {
+					weights[encodingElement.ordinal()] = weight;
+				}
+			}
+		}
+
+		ContentEncoding preferred = null;
+		double preferredWeight = 0D;
+
+		for (ContentEncoding encodingElement : values()) {
+			// Uma codificação não nomeada vale o peso de "*", se houver
+			double weight = weights[encodingElement.ordinal()] < 0D ? anyWeight : weights[encodingElement.ordinal()];
+
+			if (weight > preferredWeight) {
+				preferred = encodingElement;
+				preferredWeight = weight;
+			}
+		}
+
+		return preferred;
+	}
+}
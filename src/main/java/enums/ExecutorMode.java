@@ -0,0 +1,42 @@
+package enums;
+
+/**
+ * Kinds of executor that can run the requisitions.
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+public enum ExecutorMode {
+	/**
+	 * The default executor given by the application server.
+	 */
+	MANAGED,
+	/**
+	 * A fixed amount of platform threads with a bounded queue.
+	 */
+	PLATFORM,
+	/**
+	 * A new virtual thread for each requisition, when the JDK has them.
+	 */
+	VIRTUAL;
+	
+	/**
+	 * Gets the executor kind by its name, case insensitive.
+	 * 
+	 * @param name the name of the executor kind
+	 * @return the executor kind, or MANAGED if the name is blank or unknown
+	 */
+	public static ExecutorMode fromName(String name) {
+		if (name == null || name.isBlank()) {
+			return MANAGED;
+		}
+		
+		for (ExecutorMode executorMode : values()) {
+			if (executorMode.name().equalsIgnoreCase(name.trim())) {
+				return executorMode;
+			}
+		}
+		
+		return MANAGED;
+	}
+}
@@ -0,0 +1,50 @@
+package enums;
+
+/**
+ * <p>All formats in which a table can be exported.</p>
+ * <p>Both write one row per line, so the file can be consumed while it is still being written.</p>
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+public enum ExportFormat {
+	NDJSON("application/x-ndjson"), CSV("text/csv");
+	
+	/**
+	 * Content type of the exported file.
+	 */
+	private final String mediaType;
+	
+	ExportFormat(String mediaType) {
+		this.mediaType = mediaType;
+	}
+	
+	public String getMediaType() {
+		return mediaType;
+	}
+	
+	/**
+	 * Gets the format that has the given name, ignoring case.
+	 * 
+	 * @param name the format name informed in the requisition
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>NDJSON</strong>, if no name was informed</li>
+	 * 			<li>the format with the given name, if it exists</li>
+	 * 			<li>null, otherwise</li>
+	 * 		  </ul>
+	 */
+	public static ExportFormat fromName(String name) {
+		if (name == null || name.isBlank()) {
+			return NDJSON;
+		}
+		
+		for (ExportFormat formatElement : values()) {
+			if (formatElement.name().equalsIgnoreCase(name)) {
+				return formatElement;
+			}
+		}
+		
+		return null;
+	}
+}
@@ -0,0 +1,49 @@
+package enums;
+
+/**
+ * Layers of the system whose latencies are recorded.
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+public enum MetricLayer {
+	/**
+	 * The resource methods of the controllers.
+	 */
+	ENDPOINT("cia_aerea_endpoint_duration_seconds", "Latency of the requisitions by resource method"),
+	/**
+	 * The public methods of the services.
+	 */
+	SERVICE("cia_aerea_service_duration_seconds", "Latency of the service methods"),
+	/**
+	 * The public methods of the DAOs.
+	 */
+	DAO("cia_aerea_dao_duration_seconds", "Latency of the DAO methods"),
+	/**
+	 * The compression of the responses.
+	 */
+	COMPRESSION("cia_aerea_compression_duration_seconds", "Time spent compressing each response by encoding");
+	
+	/**
+	 * Name of the metric family in Prometheus format.
+	 */
+	private final String metricName;
+	
+	/**
+	 * Description of the metric family.
+	 */
+	private final String help;
+	
+	MetricLayer(String metricName, String help) {
+		this.metricName = metricName;
+		this.help = help;
+	}
+	
+	public String getMetricName() {
+		return metricName;
+	}
+	
+	public String getHelp() {
+		return help;
+	}
+}
@@ -0,0 +1,56 @@
+package enums;
+
+/**
+ * <p>All ways of telling apart the clients counted by a rate limit rule.</p>
+ * <p><strong>USER</strong> counts the logged user the token was resolved into, never the token itself, so a made-up token is not a new client.
+ * When the requisition does not have a logged user or the header, the client is told apart by its remote address.</p>
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+public enum RateLimitKey {
+	USER(null), USERNAME("username"), ADDRESS(null);
+	
+	/**
+	 * Header that names the client, or null if it is not named by a header.
+	 */
+	private final String headerName;
+	
+	RateLimitKey(String headerName) {
+		this.headerName = headerName;
+	}
+	
+	public String getHeaderName() {
+		return headerName;
+	}
+	
+	/**
+	 * Gets the key that has the given name, ignoring case.
+	 * 
+	 * @param name the key name written in the rule
+	 * @return
+	 * 		  <ul>
+	 * 			<li><strong>ADDRESS</strong>, if no name was written</li>
+	 * 			<li><strong>USER</strong>, if the name is <code>token</code>, as the rules were written before</li>
+	 * 			<li>the key with the given name, if it exists</li>
+	 * 			<li>null, otherwise</li>
+	 * 		  </ul>
+	 */
+	public static RateLimitKey fromName(String name) {
+		if (name == null || name.isBlank()) {
+			return ADDRESS;
+		}
+		
+		if (name.trim().equalsIgnoreCase("token")) {
+			return USER;
+		}
+		
+		for (RateLimitKey keyElement : values()) {
+			if (keyElement.name().equalsIgnoreCase(name.trim())) {
+				return keyElement;
+			}
+		}
+		
+		return null;
+	}
+}
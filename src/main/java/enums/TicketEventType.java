@@ -0,0 +1,51 @@
+package enums;
+
+/**
+ * Kinds of change of a ticket written to the booking journal.
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+public enum TicketEventType {
+	/**
+	 * A ticket was bought.
+	 */
+	CREATED((byte) 1),
+	/**
+	 * A ticket was cancelled and its seat given back.
+	 */
+	CANCELED((byte) 2),
+	/**
+	 * All tickets of a passenger were soft deleted, along with the passenger.
+	 */
+	DELETED((byte) 3);
+	
+	/**
+	 * Value written to the journal records.
+	 */
+	private final byte code;
+	
+	TicketEventType(byte code) {
+		this.code = code;
+	}
+	
+	public byte getCode() {
+		return code;
+	}
+	
+	/**
+	 * Gets the kind of change written with the given value.
+	 * 
+	 * @param code the value read from a journal record
+	 * @return the kind of change, or null if the value is unknown
+	 */
+	public static TicketEventType fromCode(byte code) {
+		for (TicketEventType typeElement : values()) {
+			if (typeElement.code == code) {
+				return typeElement;
+			}
+		}
+		
+		return null;
+	}
+}
@@ -0,0 +1,309 @@
+package executors;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.control.RequestContextController;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import javax.ws.rs.core.Response;
+
+import enums.ExecutorMode;
+
+/**
+ * <p>Runs the requisitions of the controllers away from the container worker threads, which are released while the database works.</p>
+ * <p>The executor is chosen by the <code>cia-aerea.executor.mode</code> system property (see <code>ExecutorMode</code>).
+ * Each requisition has a time limit, given by the <code>cia-aerea.timeout.&lt;endpoint&gt;</code> system property 
+ * or by <code>cia-aerea.timeout.default</code>, after which it is answered with 503 (Service Unavailable).</p>
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+@ApplicationScoped
+public class RequestExecutor {
+	/**
+	 * Prefix of the system properties that set the time limit, in milliseconds, of each endpoint.
+	 */
+	private static final String TIMEOUT_PROPERTY_PREFIX = "cia-aerea.timeout.";
+	
+	/**
+	 * Time limit, in milliseconds, of the endpoints that do not have their own.
+	 */
+	private static final long DEFAULT_TIMEOUT = Long.getLong(TIMEOUT_PROPERTY_PREFIX + "default", 30000L);
+	
+	/**
+	 * Amount of threads of the bounded platform pool.
+	 */
+	private static final int POOL_SIZE = Integer.getInteger("cia-aerea.executor.pool-size", 64);
+	
+	/**
+	 * Amount of requisitions that can wait for a thread of the bounded platform pool before new ones are refused.
+	 */
+	private static final int QUEUE_CAPACITY = Integer.getInteger("cia-aerea.executor.queue-capacity", 1000);
+	
+	/**
+	 * Executor given by the application server.
+	 */
+	@Resource
+	private ManagedExecutorService managedExecutorService;
+	
+	/**
+	 * Scheduler given by the application server, which answers the requisitions that exceeded their time limit.
+	 */
+	@Resource
+	private ManagedScheduledExecutorService timeoutScheduler;
+	
+	/**
+	 * Factory given by the application server of the threads of the bounded platform pool, so they are known and stopped by it.
+	 */
+	@Resource
+	private ManagedThreadFactory managedThreadFactory;
+	
+	/**
+	 * Source of the objects that activate a request context in the executor threads, so the request scoped services can be used.
+	 */
+	@Inject
+	private Instance<RequestContextController> requestContextControllers;
+	
+	/**
+	 * Executor that runs the requisitions.
+	 */
+	private ExecutorService executorService;
+	
+	/**
+	 * Kind of the executor that runs the requisitions.
+	 */
+	private ExecutorMode mode;
+	
+	/**
+	 * Time limit of each endpoint already asked for, indexed by endpoint name.
+	 */
+	private final Map<String, Long> timeouts = new ConcurrentHashMap<>();
+	
+	/**
+	 * Amount of requisitions waiting for a thread.
+	 */
+	private final AtomicInteger queuedTasks = new AtomicInteger();
+	
+	/**
+	 * Amount of requisitions running.
+	 */
+	private final AtomicInteger activeTasks = new AtomicInteger();
+	
+	/**
+	 * Amount of requisitions finished, well succeeded or not.
+	 */
+	private final LongAdder completedTasks = new LongAdder();
+	
+	/**
+	 * Amount of requisitions refused because the executor was full.
+	 */
+	private final LongAdder rejectedTasks = new LongAdder();
+	
+	/**
+	 * Amount of requisitions answered because they exceeded their time limit.
+	 */
+	private final LongAdder timedOutTasks = new LongAdder();
+	
+	/**
+	 * Creates the executor chosen by the configuration, falling back to the bounded platform pool when the chosen one is not available.
+	 */
+	@PostConstruct
+	void start() {
+		mode = ExecutorMode.fromName(System.getProperty("cia-aerea.executor.mode"));
+		
+		if (mode.equals(ExecutorMode.VIRTUAL)) {
+			executorService = newVirtualThreadExecutor();
+		}
+		
+		if (mode.equals(ExecutorMode.MANAGED)) {
+			executorService = managedExecutorService;
+		}
+		
+		if (executorService == null) {
+			mode = ExecutorMode.PLATFORM;
+			executorService = newPlatformThreadExecutor();
+		}
+	}
+	
+	/**
+	 * Stops the executor created by this class. The ones given by the application server are stopped by it.
+	 */
+	@PreDestroy
+	void stop() {
+		if (!mode.equals(ExecutorMode.MANAGED)) {
+			executorService.shutdown();
+		}
+	}
+	
+	/**
+	 * <p>Runs the given requisition in the executor.</p>
+	 * <p>The requisition is answered with 503 (Service Unavailable) if the executor is full or if it exceeds its time limit; 
+	 * in the last case it still runs until the end, but its response is discarded.</p>
+	 * 
+	 * @param endpoint the name of the endpoint, used to find its time limit
+	 * @param task	   the requisition logic, which builds the response
+	 * @return the response, completed when the requisition finishes
+	 */
+	public CompletionStage<Response> submit(String endpoint, Supplier<Response> task) {
+		CompletableFuture<Response> response = new CompletableFuture<>();
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		
+		queuedTasks.incrementAndGet();
+		try {
+			executorService.execute(() -> run(task, response, classLoader));
+		} catch (RejectedExecutionException rejectedExecutionException) {
+			queuedTasks.decrementAndGet();
+			rejectedTasks.increment();
+			
+			String message = "The server is too busy, try again later";
+			response.complete(Response.status(503).entity(message).build());
+			
+			return response;
+		}
+		
+		ScheduledFuture<?> timer = timeoutScheduler.schedule(() -> {
+			String message = "The request took too long to be processed";
+			
+			if (response.complete(Response.status(503).entity(message).build())) {
+				timedOutTasks.increment();
+			}
+		}, getTimeout(endpoint), TimeUnit.MILLISECONDS);
+		response.whenComplete((responseElement, throwable) -> timer.cancel(false));
+		
+		return response;
+	}
+	
+	/**
+	 * Gets the usage counters of the executor.
+	 * 
+	 * @return the executor kind and the amount of queued, active, completed, rejected and timed out requisitions
+	 */
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		
+		statistics.put("mode", mode);
+		statistics.put("queuedTasks", queuedTasks.get());
+		statistics.put("activeTasks", activeTasks.get());
+		statistics.put("completedTasks", completedTasks.sum());
+		statistics.put("rejectedTasks", rejectedTasks.sum());
+		statistics.put("timedOutTasks", timedOutTasks.sum());
+		
+		if (executorService instanceof ThreadPoolExecutor) {
+			ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) executorService;
+			
+			statistics.put("poolSize", threadPoolExecutor.getPoolSize());
+			statistics.put("largestPoolSize", threadPoolExecutor.getLargestPoolSize());
+			statistics.put("queueRemainingCapacity", threadPoolExecutor.getQueue().remainingCapacity());
+		}
+		
+		return statistics;
+	}
+	
+	/**
+	 * Runs the requisition in an executor thread, inside its own request context and with the application class loader.
+	 * 
+	 * @param task		  the requisition logic
+	 * @param response	  the response to be completed
+	 * @param classLoader the class loader of the application
+	 */
+	private void run(Supplier<Response> task, CompletableFuture<Response> response, ClassLoader classLoader) {
+		queuedTasks.decrementAndGet();
+		
+		// Se a requisição já foi respondida por exceder o tempo limite enquanto esperava, nem começa
+		if (response.isDone()) {
+			completedTasks.increment();
+			return;
+		}
+		
+		activeTasks.incrementAndGet();
+		
+		Thread thread = Thread.currentThread();
+		ClassLoader previousClassLoader = thread.getContextClassLoader();
+		thread.setContextClassLoader(classLoader);
+		
+		RequestContextController requestContextController = requestContextControllers.get();
+		boolean isActivated = requestContextController.activate();
+		try {
+			response.complete(task.get());
+		} catch (Throwable throwable) {
+			response.completeExceptionally(throwable);
+		} finally {
+			if (isActivated) {
+				requestContextController.deactivate();
+			}
+			requestContextControllers.destroy(requestContextController);
+			thread.setContextClassLoader(previousClassLoader);
+			
+			activeTasks.decrementAndGet();
+			completedTasks.increment();
+		}
+	}
+	
+	/**
+	 * Gets the time limit of the given endpoint.
+	 * 
+	 * @param endpoint the name of the endpoint
+	 * @return the time limit in milliseconds
+	 */
+	private long getTimeout(String endpoint) {
+		return timeouts.computeIfAbsent(endpoint, endpointElement -> Long.getLong(TIMEOUT_PROPERTY_PREFIX + endpointElement, DEFAULT_TIMEOUT));
+	}
+	
+	/**
+	 * <p>Creates the bounded platform pool: a fixed amount of threads and a bounded queue, refusing new requisitions when both are full.</p>
+	 * <p>The threads come from the factory of the application server, which gives them the application context.</p>
+	 * 
+	 * @return the executor
+	 */
+	private ExecutorService newPlatformThreadExecutor() {
+		AtomicInteger amountOfThreads = new AtomicInteger();
+		ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60L, TimeUnit.SECONDS, 
+				new ArrayBlockingQueue<>(QUEUE_CAPACITY), 
+				runnable -> {
+					Thread thread = managedThreadFactory.newThread(runnable);
+					thread.setName("cia-aerea-request-" + amountOfThreads.incrementAndGet());
+					return thread;
+				});
+		
+		threadPoolExecutor.allowCoreThreadTimeOut(true);
+		
+		return threadPoolExecutor;
+	}
+	
+	/**
+	 * Creates an executor that starts a virtual thread for each requisition.
+	 * 
+	 * @return the executor, or null if the running JDK does not have virtual threads
+	 */
+	private ExecutorService newVirtualThreadExecutor() {
+		try {
+			// Procurado por reflexão para que o projeto continue a compilar e correr em JDKs sem threads virtuais
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException reflectiveOperationException) {
+			System.err.println("Virtual threads are not available in this JDK, using platform threads instead");
+			
+			return null;
+		}
+	}
+}
@@ -0,0 +1,4 @@
+/**
+ * Contains the executors that run the requisitions away from the container worker threads.
+ */
+package executors;
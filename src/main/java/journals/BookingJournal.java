@@ -0,0 +1,516 @@
+package journals;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+
+import enums.TicketEventType;
+
+/**
+ * <p>Append-only journal of the changes made to the tickets, written to memory-mapped segment files.</p>
+ * <p>Each event is a fixed-size record at the position given by its offset, so an append only claims the next offset with an atomic increment
+ * and writes a few numbers to memory: it takes microseconds and no lock. The segments are flushed to disk every
+ * <code>cia-aerea.journal.fsync-interval-ms</code> milliseconds by the scheduler of the application server, so at most that much history is lost if the machine stops.</p>
+ * <p>Each record ends with a checksum of its fields, written last. When the application starts, the journal resumes after the last complete record,
+ * discarding anything written after it, and {@link #replay(long, int, Consumer)} reads the events from any offset to rebuild derived state.</p>
+ * <p>The files live in <code>cia-aerea.journal.directory</code>, by default <code>cia-aerea-journal</code> inside the server data directory.
+ * <code>cia-aerea.journal.segment-records</code> must not change once the journal has files.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@ApplicationScoped
+public class BookingJournal {
+	/**
+	 * Size of each record, in bytes: offset, timestamp, type and padding, ticket, flight, passenger, seat and checksum.
+	 */
+	public static final int RECORD_SIZE = 40;
+
+	private static final int OFFSET_POSITION = 0;
+	private static final int TIMESTAMP_POSITION = 8;
+	private static final int TYPE_POSITION = 16;
+	private static final int ID_TICKET_POSITION = 20;
+	private static final int ID_FLIGHT_POSITION = 24;
+	private static final int ID_USER_POSITION = 28;
+	private static final int SEAT_NUMBER_POSITION = 32;
+	private static final int CHECKSUM_POSITION = 36;
+
+	/**
+	 * Directory of the segment files.
+	 */
+	private static final String DIRECTORY = System.getProperty("cia-aerea.journal.directory",
+			Paths.get(System.getProperty("jboss.server.data.dir", System.getProperty("java.io.tmpdir")), "cia-aerea-journal").toString());
+
+	/**
+	 * Amount of records in each segment file.
+	 */
+	static final int RECORDS_PER_SEGMENT = Integer.getInteger("cia-aerea.journal.segment-records", 262144);
+
+	/**
+	 * Time, in milliseconds, between two flushes of the segments to disk.
+	 */
+	private static final long FSYNC_INTERVAL = Long.getLong("cia-aerea.journal.fsync-interval-ms", 1000L);
+
+	private static final String SEGMENT_PREFIX = "journal-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	/**
+	 * Directory of the segment files, once created.
+	 */
+	private Path directory;
+
+	/**
+	 * Offset of the next event to be appended.
+	 */
+	private final AtomicLong nextOffset = new AtomicLong();
+
+	/**
+	 * Segments mapped for writing, indexed by their position in the journal. Only the last two are kept.
+	 */
+	private final Map<Long, Segment> segments = new ConcurrentHashMap<>();
+
+	/**
+	 * <p>Segments mapped read only by the replays, indexed by their position in the journal.</p>
+	 * <p>A segment is only mapped for reading once it no longer receives appends, so its mapping is kept and reused by the next replays.</p>
+	 */
+	private final Map<Long, MappedByteBuffer> readOnlySegments = new ConcurrentHashMap<>();
+
+	/**
+	 * Segment of the most recent appends.
+	 */
+	private volatile Segment currentSegment;
+
+	/**
+	 * Scheduler given by the application server, which flushes the segments to disk.
+	 */
+	@Resource
+	private ManagedScheduledExecutorService fsyncScheduler;
+
+	/**
+	 * The periodic flush, cancelled when the journal is closed.
+	 */
+	private ScheduledFuture<?> fsyncTask;
+
+	/**
+	 * Whether the journal accepts appends. It stops after any write error, so the journal never has gaps.
+	 */
+	private volatile boolean isOpen;
+
+	/**
+	 * Amount of events appended since the application started.
+	 */
+	private final LongAdder appendedEvents = new LongAdder();
+
+	/**
+	 * Opens the journal after its last complete record and starts the periodic flush.
+	 */
+	@PostConstruct
+	void open() {
+		if (open(Paths.get(DIRECTORY))) {
+			fsyncTask = fsyncScheduler.scheduleWithFixedDelay(this::force, FSYNC_INTERVAL, FSYNC_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Opens the journal kept in the given directory after its last complete record, without the periodic flush.
+	 *
+	 * @param journalDirectory the directory of the segment files, created if needed
+	 * @return true if the journal accepts appends, false if it is disabled
+	 */
+	boolean open(Path journalDirectory) {
+		try {
+			directory = Files.createDirectories(journalDirectory);
+			nextOffset.set(recover());
+			isOpen = true;
+		} catch (IOException | RuntimeException exception) {
+			System.err.println("Catch " + exception.getClass().getName() + " open() in BookingJournal, the booking journal is disabled");
+			exception.printStackTrace();
+		}
+
+		return isOpen;
+	}
+
+	/**
+	 * Stops the periodic flush and flushes the segments one last time.
+	 */
+	@PreDestroy
+	void close() {
+		isOpen = false;
+
+		// O scheduler é do servidor: cancela só a tarefa deste journal
+		if (fsyncTask != null) {
+			fsyncTask.cancel(false);
+		}
+
+		force();
+	}
+
+	/**
+	 * <p>Appends one event to the journal.</p>
+	 * <p>Never fails the caller: if the event cannot be written, the error is printed and the journal stops accepting events.</p>
+	 *
+	 * @param type		 the kind of change
+	 * @param idTicket	 primary key of the ticket, or null
+	 * @param idFlight	 primary key of the flight, or null
+	 * @param idUser	 primary key of the passenger, or null
+	 * @param seatNumber number of the seat, or null
+	 * @return the offset of the event, or -1 if the journal is disabled
+	 */
+	public long append(TicketEventType type, Integer idTicket, Integer idFlight, Integer idUser, Integer seatNumber) {
+		if (!isOpen) {
+			return -1L;
+		}
+
+		long offset = nextOffset.getAndIncrement();
+
+		try {
+			MappedByteBuffer buffer = getSegment(offset / RECORDS_PER_SEGMENT).buffer;
+			int position = (int) (offset % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+			long timestamp = System.currentTimeMillis();
+			int ticket = valueOf(idTicket), flight = valueOf(idFlight), user = valueOf(idUser), seat = valueOf(seatNumber);
+
+			// Escritas absolutas: cada pedido escreve na sua própria posição, sem mexer no estado partilhado do buffer
+			buffer.putLong(position + OFFSET_POSITION, offset);
+			buffer.putLong(position + TIMESTAMP_POSITION, timestamp);
+			buffer.put(position + TYPE_POSITION, type.getCode());
+			buffer.putInt(position + ID_TICKET_POSITION, ticket);
+			buffer.putInt(position + ID_FLIGHT_POSITION, flight);
+			buffer.putInt(position + ID_USER_POSITION, user);
+			buffer.putInt(position + SEAT_NUMBER_POSITION, seat);
+			buffer.putInt(position + CHECKSUM_POSITION, checksum(offset, timestamp, type.getCode(), ticket, flight, user, seat));
+
+			appendedEvents.increment();
+
+			return offset;
+		} catch (IOException | RuntimeException exception) {
+			System.err.println("Catch " + exception.getClass().getName() + " append() in BookingJournal, the booking journal is disabled");
+			exception.printStackTrace();
+
+			isOpen = false;
+
+			return -1L;
+		}
+	}
+
+	/**
+	 * <p>Reads the events of the journal in order, starting at the given offset.</p>
+	 * <p>Stops at the first record that is not complete yet, so the events are always handed without gaps.</p>
+	 *
+	 * @param fromOffset the offset of the first event to be read
+	 * @param maxEvents	 the maximum amount of events to be read
+	 * @param consumer	 the action to be done with each event
+	 * @return the offset of the next event to be read
+	 * @throws IOException if a segment file could not be read
+	 */
+	public long replay(long fromOffset, int maxEvents, Consumer<TicketEvent> consumer) throws IOException {
+		long offset = Math.max(fromOffset, 0L);
+		int amountOfEvents = 0;
+
+		while (amountOfEvents < maxEvents) {
+			MappedByteBuffer buffer = getSegmentForReading(offset / RECORDS_PER_SEGMENT);
+
+			if (buffer == null) {
+				return offset;
+			}
+
+			for (int slot = (int) (offset % RECORDS_PER_SEGMENT); slot < RECORDS_PER_SEGMENT && amountOfEvents < maxEvents; slot++) {
+				int position = slot * RECORD_SIZE;
+
+				if (!isComplete(buffer, position, offset)) {
+					return offset;
+				}
+
+				consumer.accept(new TicketEvent(offset, buffer.getLong(position + TIMESTAMP_POSITION),
+						TicketEventType.fromCode(buffer.get(position + TYPE_POSITION)),
+						buffer.getInt(position + ID_TICKET_POSITION), buffer.getInt(position + ID_FLIGHT_POSITION),
+						buffer.getInt(position + ID_USER_POSITION), buffer.getInt(position + SEAT_NUMBER_POSITION)));
+
+				offset++;
+				amountOfEvents++;
+			}
+		}
+
+		return offset;
+	}
+
+	/**
+	 * Gets the usage counters of the journal.
+	 *
+	 * @return whether it is open, its directory, the offset of the next event and the amount of events appended since the application started
+	 */
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+
+		statistics.put("open", isOpen);
+		statistics.put("directory", directory == null ? DIRECTORY : directory.toString());
+		statistics.put("nextOffset", nextOffset.get());
+		statistics.put("appendedEvents", appendedEvents.sum());
+
+		return statistics;
+	}
+
+	/**
+	 * Flushes the segments mapped for writing to disk.
+	 */
+	private void force() {
+		for (Segment segmentElement : segments.values()) {
+			try {
+				segmentElement.buffer.force();
+			} catch (RuntimeException runtimeException) {
+				System.err.println("Catch " + runtimeException.getClass().getName() + " force() in BookingJournal");
+				runtimeException.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Gets the segment of the given position for writing, mapping it the first time.
+	 *
+	 * @param index the position of the segment in the journal
+	 * @return the segment
+	 * @throws IOException if the segment file could not be created
+	 */
+	private Segment getSegment(long index) throws IOException {
+		Segment segment = currentSegment;
+
+		if (segment != null && segment.index == index) {
+			return segment;
+		}
+
+		segment = segments.get(index);
+
+		if (segment != null) {
+			return segment;
+		}
+
+		synchronized (this) {
+			segment = segments.get(index);
+
+			if (segment == null) {
+				segment = new Segment(index, map(index, FileChannel.MapMode.READ_WRITE));
+				segments.put(index, segment);
+
+				// O segmento de há dois já não recebe escritas: grava-o uma última vez e deixa-o de fora do mapa
+				Segment oldSegment = segments.remove(index - 2);
+				if (oldSegment != null) {
+					oldSegment.buffer.force();
+				}
+			}
+
+			if (currentSegment == null || currentSegment.index < index) {
+				currentSegment = segment;
+			}
+
+			return segment;
+		}
+	}
+
+	/**
+	 * Gets the segment of the given position for reading, mapping it read only the first time if it no longer receives appends.
+	 *
+	 * @param index the position of the segment in the journal
+	 * @return the segment contents, or null if the segment file does not exist
+	 * @throws IOException if the segment file could not be read
+	 */
+	private MappedByteBuffer getSegmentForReading(long index) throws IOException {
+		Segment segment = segments.get(index);
+
+		if (segment != null) {
+			return segment.buffer;
+		}
+
+		MappedByteBuffer buffer = readOnlySegments.get(index);
+
+		if (buffer != null) {
+			return buffer;
+		}
+
+		if (directory == null || !Files.exists(pathOf(index))) {
+			return null;
+		}
+
+		buffer = map(index, FileChannel.MapMode.READ_ONLY);
+
+		// Um ficheiro ainda a ser criado pode vir mais curto: esse mapeamento serve só esta leitura
+		if (buffer.limit() < RECORDS_PER_SEGMENT * RECORD_SIZE) {
+			return buffer;
+		}
+
+		// Mapeia fora do mapa; se outra leitura mapeou o mesmo segmento ao mesmo tempo, fica o primeiro mapeamento
+		MappedByteBuffer previousBuffer = readOnlySegments.putIfAbsent(index, buffer);
+
+		return previousBuffer == null ? buffer : previousBuffer;
+	}
+
+	/**
+	 * Finds the last complete record of the journal and erases whatever was written after it.
+	 *
+	 * @return the offset of the next event to be appended
+	 * @throws IOException if the segment files could not be read or written
+	 */
+	private long recover() throws IOException {
+		List<Long> indexes = new ArrayList<>();
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path fileElement : files) {
+				String name = fileElement.getFileName().toString();
+				long firstOffset = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+
+				indexes.add(firstOffset / RECORDS_PER_SEGMENT);
+			}
+		}
+
+		if (indexes.isEmpty()) {
+			return 0L;
+		}
+
+		long lastIndex = Collections.max(indexes);
+		Segment segment = new Segment(lastIndex, map(lastIndex, FileChannel.MapMode.READ_WRITE));
+		long firstOffset = lastIndex * RECORDS_PER_SEGMENT;
+		int slot = 0;
+
+		while (slot < RECORDS_PER_SEGMENT && isComplete(segment.buffer, slot * RECORD_SIZE, firstOffset + slot)) {
+			slot++;
+		}
+
+		// Registos escritos depois do primeiro incompleto não chegaram todos ao disco: apaga-os para que não pareçam válidos
+		for (int position = slot * RECORD_SIZE; position < RECORDS_PER_SEGMENT * RECORD_SIZE; position += Long.BYTES) {
+			segment.buffer.putLong(position, 0L);
+		}
+		segment.buffer.force();
+
+		segments.put(lastIndex, segment);
+		currentSegment = segment;
+
+		return firstOffset + slot;
+	}
+
+	/**
+	 * Maps the whole segment file of the given position, creating it if needed.
+	 *
+	 * @param index the position of the segment in the journal
+	 * @param mode	read only, for the replays, or read and write, for the appends
+	 * @return the segment contents
+	 * @throws IOException if the segment file could not be opened
+	 */
+	private MappedByteBuffer map(long index, FileChannel.MapMode mode) throws IOException {
+		StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+				? new StandardOpenOption[] {StandardOpenOption.READ}
+				: new StandardOpenOption[] {StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE};
+
+		// O mapeamento continua válido depois de o canal ser fechado
+		try (FileChannel channel = FileChannel.open(pathOf(index), options)) {
+			long size = (long) RECORDS_PER_SEGMENT * RECORD_SIZE;
+
+			return channel.map(mode, 0L, mode == FileChannel.MapMode.READ_ONLY ? Math.min(size, channel.size()) : size);
+		}
+	}
+
+	/**
+	 * Gets the file of the segment of the given position, named after the offset of its first record.
+	 *
+	 * @param index the position of the segment in the journal
+	 * @return the path of the segment file
+	 */
+	private Path pathOf(long index) {
+		return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, index * RECORDS_PER_SEGMENT, SEGMENT_SUFFIX));
+	}
+
+	/**
+	 * Checks if the record at the given position was completely written for the given offset.
+	 *
+	 * @param buffer   the segment contents
+	 * @param position the position of the record in the segment
+	 * @param offset   the offset the record must have
+	 * @return true if the record has the expected offset, a known type and a checksum that matches its fields
+	 */
+	private static boolean isComplete(MappedByteBuffer buffer, int position, long offset) {
+		if (position + RECORD_SIZE > buffer.limit() || buffer.getLong(position + OFFSET_POSITION) != offset) {
+			return false;
+		}
+
+		byte type = buffer.get(position + TYPE_POSITION);
+
+		return TicketEventType.fromCode(type) != null && buffer.getInt(position + CHECKSUM_POSITION) == checksum(offset,
+				buffer.getLong(position + TIMESTAMP_POSITION), type, buffer.getInt(position + ID_TICKET_POSITION), buffer.getInt(position + ID_FLIGHT_POSITION),
+				buffer.getInt(position + ID_USER_POSITION), buffer.getInt(position + SEAT_NUMBER_POSITION));
+	}
+
+	/**
+	 * Mixes all fields of a record into a checksum that is never 0, so an erased record is never taken as complete.
+	 *
+	 * @return the checksum
+	 */
+	private static int checksum(long offset, long timestamp, byte type, int idTicket, int idFlight, int idUser, int seatNumber) {
+		long hash = mix(offset);
+		hash = mix(hash ^ timestamp);
+		hash = mix(hash ^ type);
+		hash = mix(hash ^ (((long) idTicket << 32) | (idFlight & 0xFFFFFFFFL)));
+		hash = mix(hash ^ (((long) idUser << 32) | (seatNumber & 0xFFFFFFFFL)));
+
+		int checksum = (int) (hash ^ (hash >>> 32));
+
+		return checksum == 0 ? 1 : checksum;
+	}
+
+	/**
+	 * Spreads the bits of the given value, as the finaliser of MurmurHash3.
+	 *
+	 * @param value the value to be mixed
+	 * @return the mixed value
+	 */
+	private static long mix(long value) {
+		long mixed = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+		mixed = (mixed ^ (mixed >>> 33)) * 0xC4CEB9FE1A85EC53L;
+
+		return mixed ^ (mixed >>> 33);
+	}
+
+	/**
+	 * Gets the value written for an optional field.
+	 *
+	 * @param value the field value, or null
+	 * @return the value, or 0 if it is null
+	 */
+	private static int valueOf(Integer value) {
+		return value == null ? 0 : value;
+	}
+
+	/**
+	 * Segment file mapped for writing.
+	 *
+	 * @author Wanderley Drumond
+	 *
+	 */
+	private static final class Segment {
+		private final long index;
+		private final MappedByteBuffer buffer;
+
+		Segment(long index, MappedByteBuffer buffer) {
+			this.index = index;
+			this.buffer = buffer;
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package journals;
+
+import java.io.Serializable;
+
+import enums.TicketEventType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * <p>One change of a ticket as read from the booking journal.</p>
+ * <p>The primary keys and the seat number are 0 when they do not apply, as in a soft delete, which names only the passenger.</p>
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+@AllArgsConstructor
+@Getter
+public class TicketEvent implements Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 * 
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final long offset;
+	private final long timestamp;
+	private final TicketEventType type;
+	private final int idTicket, idFlight, idUser, seatNumber;
+}
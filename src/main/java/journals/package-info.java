@@ -0,0 +1,4 @@
+/**
+ * Contains the append-only journals that keep the history of the changes made to the tickets.
+ */
+package journals;
@@ -0,0 +1,36 @@
+package mappers;
+
+import javax.ejb.Stateless;
+
+import dtos.TicketDTO;
+import entities.Ticket;
+
+/**
+ * Class responsible by transform <code>Ticket</code> data that transits between backend and frontend.
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+@Stateless
+public class TicketMapper {
+	/**
+	 * Changes a <code>Ticket</code> Entity object into a <code>Ticket</code> DTO object.
+	 * 
+	 * @param ticket the object that will be transformed into DTO object
+	 * @return the DTO resultant object, with the passenger and flight information
+	 */
+	public TicketDTO toDTO(Ticket ticket) {
+		TicketDTO ticketDTO = new TicketDTO();
+		
+		ticketDTO.setId(ticket.getId());
+		ticketDTO.setIdFlight(ticket.getFlightDetails().getId());
+		ticketDTO.setIdUser(ticket.getPassenger().getId());
+		ticketDTO.setSeatNumber(ticket.getSeatNumber());
+		ticketDTO.setFlightCode(ticket.getFlightDetails().getCode());
+		ticketDTO.setUserName(ticket.getPassenger().getName());
+		ticketDTO.setFlightDestination(ticket.getFlightDetails().getDestination());
+		ticketDTO.setFlightDepartTime(ticket.getFlightDetails().getDepartTime().toString());
+		
+		return ticketDTO;
+	}
+}
@@ -0,0 +1,81 @@
+package metrics;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+
+import javax.enterprise.inject.spi.CDI;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Path;
+import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * <p>Binds an {@link EndpointTimingFilter} to each resource method of the controllers when the application is deployed.</p>
+ * <p>The meter of each resource method is registered here, so the filter already holds it when the requisitions arrive.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@Provider
+public class EndpointMetricsFeature implements DynamicFeature {
+	/**
+	 * Package of the classes whose resource methods are measured.
+	 */
+	private static final String CONTROLLERS_PACKAGE = "controllers";
+
+	@Override
+	public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+		Class<?> resourceClass = resourceInfo.getResourceClass();
+		Method resourceMethod = resourceInfo.getResourceMethod();
+
+		if (resourceClass == null || resourceMethod == null || resourceClass.getPackage() == null
+				|| !resourceClass.getPackage().getName().equals(CONTROLLERS_PACKAGE)) {
+			return;
+		}
+
+		MetricsRegistry metricsRegistry = CDI.current().select(MetricsRegistry.class).get();
+
+		context.register(new EndpointTimingFilter(metricsRegistry.registerEndpoint(getHttpMethod(resourceMethod), getPath(resourceClass, resourceMethod))));
+	}
+
+	/**
+	 * Gets the HTTP method answered by the given resource method.
+	 *
+	 * @param resourceMethod the resource method
+	 * @return the HTTP method, or ANY for sub-resource locators
+	 */
+	private String getHttpMethod(Method resourceMethod) {
+		for (Annotation annotationElement : resourceMethod.getAnnotations()) {
+			HttpMethod httpMethod = annotationElement.annotationType().getAnnotation(HttpMethod.class);
+
+			if (httpMethod != null) {
+				return httpMethod.value();
+			}
+		}
+
+		return "ANY";
+	}
+
+	/**
+	 * Gets the path template of the given resource method, joining the class and method paths.
+	 *
+	 * @param resourceClass  the controller
+	 * @param resourceMethod the resource method
+	 * @return the path template, like <code>/flight/{id}</code>
+	 */
+	private String getPath(Class<?> resourceClass, Method resourceMethod) {
+		Path classPath = resourceClass.getAnnotation(Path.class);
+		Path methodPath = resourceMethod.getAnnotation(Path.class);
+		String path = (classPath == null ? "" : "/" + classPath.value()) + (methodPath == null ? "" : "/" + methodPath.value());
+
+		// Remove as barras repetidas e a barra final que vêm da junção dos dois caminhos
+		path = path.replaceAll("/{2,}", "/");
+		if (path.length() > 1 && path.endsWith("/")) {
+			path = path.substring(0, path.length() - 1);
+		}
+
+		return path.isEmpty() ? "/" : path;
+	}
+}
@@ -0,0 +1,46 @@
+package metrics;
+
+import java.io.IOException;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+
+/**
+ * <p>Records the latency of the requisitions of one resource method, from the moment it is matched until its response is ready.</p>
+ * <p>The resource methods answer asynchronously, so the start instant travels as a property of the requisition instead of a thread local,
+ * and the response filter runs when the asynchronous response is resumed, on whichever thread that happens.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class EndpointTimingFilter implements ContainerRequestFilter, ContainerResponseFilter {
+	/**
+	 * Name of the requisition property that keeps the start instant.
+	 */
+	private static final String START_PROPERTY = EndpointTimingFilter.class.getName() + ".start";
+
+	/**
+	 * Meter of the resource method, registered when the application was deployed.
+	 */
+	private final LatencyHistogram histogram;
+
+	public EndpointTimingFilter(LatencyHistogram histogram) {
+		this.histogram = histogram;
+	}
+
+	@Override
+	public void filter(ContainerRequestContext requestContext) throws IOException {
+		requestContext.setProperty(START_PROPERTY, System.nanoTime());
+	}
+
+	@Override
+	public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+		Object start = requestContext.getProperty(START_PROPERTY);
+
+		if (start instanceof Long) {
+			histogram.record(System.nanoTime() - (Long) start);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Lock-free histogram of durations in nanoseconds.</p>
+ * <p>Each power of two is split in {@value #SUB_BUCKETS} buckets, so any recorded duration falls in a bucket at most 12.5% wider than itself
+ * and the whole range of a <code>long</code> fits in a fixed array allocated once. Recording is an array increment and two adder increments,
+ * without locks nor allocation.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public final class LatencyHistogram {
+	/**
+	 * Amount of bits of each duration, after the highest one, used to choose its bucket.
+	 */
+	private static final int SUB_BUCKET_BITS = 3;
+
+	/**
+	 * Amount of buckets in each power of two.
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Amount of buckets needed to hold any positive <code>long</code>.
+	 */
+	private static final int LENGTH = Long.SIZE * SUB_BUCKETS;
+
+	/**
+	 * Amount of durations recorded in each bucket.
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray(LENGTH);
+
+	/**
+	 * Amount of durations recorded.
+	 */
+	private final LongAdder count = new LongAdder();
+
+	/**
+	 * Sum of the durations recorded, in nanoseconds.
+	 */
+	private final LongAdder sum = new LongAdder();
+
+	/**
+	 * Records one duration.
+	 *
+	 * @param nanoseconds the duration, in nanoseconds
+	 */
+	public void record(long nanoseconds) {
+		long duration = Math.max(nanoseconds, 0L);
+
+		counts.incrementAndGet(indexOf(duration));
+		count.increment();
+		sum.add(duration);
+	}
+
+	/**
+	 * Gets the amount of durations recorded.
+	 *
+	 * @return the amount of durations
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Gets the sum of the durations recorded.
+	 *
+	 * @return the sum, in nanoseconds
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * Estimates the duration below which the given fraction of the recorded durations are.
+	 *
+	 * @param quantile the fraction, between 0 and 1
+	 * @return the upper bound of the bucket that holds the quantile, in nanoseconds, or 0 if nothing was recorded
+	 */
+	public long getQuantile(double quantile) {
+		long[] snapshot = new long[LENGTH];
+		long total = 0L;
+
+		// Copia os contadores primeiro para que a posição procurada seja calculada sobre o mesmo total
+		for (int index = 0; index < LENGTH; index++) {
+			snapshot[index] = counts.get(index);
+			total += snapshot[index];
+		}
+
+		if (total == 0L) {
+			return 0L;
+		}
+
+		long rank = Math.max((long) Math.ceil(quantile * total), 1L);
+		long cumulative = 0L;
+
+		for (int index = 0; index < LENGTH; index++) {
+			cumulative += snapshot[index];
+
+			if (cumulative >= rank) {
+				return upperBoundOf(index);
+			}
+		}
+
+		return upperBoundOf(LENGTH - 1);
+	}
+
+	/**
+	 * Gets the bucket of the given duration.
+	 *
+	 * @param duration the duration, not negative
+	 * @return the position of the bucket
+	 */
+	static int indexOf(long duration) {
+		if (duration < SUB_BUCKETS) {
+			return (int) duration;
+		}
+
+		int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(duration) - SUB_BUCKET_BITS;
+		int subBucket = (int) (duration >>> shift) & (SUB_BUCKETS - 1);
+
+		return (shift + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Gets the biggest duration that falls in the given bucket.
+	 *
+	 * @param index the position of the bucket
+	 * @return the duration, in nanoseconds
+	 */
+	static long upperBoundOf(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+
+		int shift = index / SUB_BUCKETS - 1;
+		int subBucket = index % SUB_BUCKETS;
+
+		return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1L;
+	}
+}
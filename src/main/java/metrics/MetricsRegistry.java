@@ -0,0 +1,287 @@
+package metrics;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import enums.ContentEncoding;
+import enums.MetricLayer;
+
+/**
+ * <p>Application wide registry of the latency histograms and of the response status counters.</p>
+ * <p>The endpoint meters are registered once, when the resource methods are deployed, and the service and DAO meters the first time each method
+ * is called, so from then on recording a duration or a status code only looks up existing objects and increments them.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@ApplicationScoped
+public class MetricsRegistry implements Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 *
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Quantiles written for each histogram.
+	 */
+	private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+	/**
+	 * Amount of nanoseconds in one second.
+	 */
+	private static final double NANOSECONDS_PER_SECOND = 1_000_000_000D;
+
+	/**
+	 * Biggest HTTP status code counted.
+	 */
+	private static final int MAX_STATUS = 599;
+
+	/**
+	 * Meters of each layer indexed by their labels, sorted so the output is stable between scrapes.
+	 */
+	private final Map<MetricLayer, Map<String, LatencyHistogram>> metersByLayer = new ConcurrentHashMap<>();
+
+	/**
+	 * Meters of the service and DAO methods indexed by the called class and method.
+	 */
+	private final Map<Class<?>, Map<Method, LatencyHistogram>> metersByClass = new ConcurrentHashMap<>();
+
+	/**
+	 * Amount of responses sent with each status code.
+	 */
+	private final AtomicLongArray statusCounts = new AtomicLongArray(MAX_STATUS + 1);
+
+	/**
+	 * Meters of the time spent compressing the responses, indexed by encoding.
+	 */
+	private final LatencyHistogram[] compressionMeters = new LatencyHistogram[ContentEncoding.values().length];
+
+	/**
+	 * Amount of bytes of the compressed responses before compression, indexed by encoding.
+	 */
+	private final AtomicLongArray compressionInputBytes = new AtomicLongArray(ContentEncoding.values().length);
+
+	/**
+	 * Amount of bytes of the compressed responses after compression, indexed by encoding.
+	 */
+	private final AtomicLongArray compressionOutputBytes = new AtomicLongArray(ContentEncoding.values().length);
+
+	/**
+	 * Registers the meter of a resource method.
+	 *
+	 * @param httpMethod the HTTP method answered by the resource method
+	 * @param path		 the path template of the resource method
+	 * @return the meter, shared if the same resource method is registered more than once
+	 */
+	public LatencyHistogram registerEndpoint(String httpMethod, String path) {
+		return register(MetricLayer.ENDPOINT, "method=\"" + httpMethod + "\",path=\"" + escape(path) + "\"");
+	}
+
+	/**
+	 * Gets the meter of a service or DAO method, registering it on its first call.
+	 *
+	 * @param targetClass the class of the called object
+	 * @param method	  the called method
+	 * @return the meter
+	 */
+	public LatencyHistogram getMethodMeter(Class<?> targetClass, Method method) {
+		Map<Method, LatencyHistogram> meters = metersByClass.get(targetClass);
+
+		if (meters == null) {
+			meters = metersByClass.computeIfAbsent(targetClass, targetClassElement -> new ConcurrentHashMap<>());
+		}
+
+		LatencyHistogram meter = meters.get(method);
+
+		if (meter == null) {
+			meter = meters.computeIfAbsent(method, methodElement -> register(getLayer(targetClass),
+					"class=\"" + getSimpleName(targetClass) + "\",method=\"" + methodElement.getName() + "\""));
+		}
+
+		return meter;
+	}
+
+	/**
+	 * Counts one response with the given status code.
+	 *
+	 * @param status the HTTP status code
+	 */
+	public void countStatus(int status) {
+		if (status >= 0 && status <= MAX_STATUS) {
+			statusCounts.incrementAndGet(status);
+		}
+	}
+
+	/**
+	 * Records the compression of one response.
+	 *
+	 * @param encoding	  the encoding of the response
+	 * @param inputBytes  the size of the response before compression
+	 * @param outputBytes the size of the response after compression
+	 * @param nanoseconds the time spent compressing
+	 */
+	public void recordCompression(ContentEncoding encoding, long inputBytes, long outputBytes, long nanoseconds) {
+		LatencyHistogram meter = compressionMeters[encoding.ordinal()];
+
+		if (meter == null) {
+			meter = register(MetricLayer.COMPRESSION, "encoding=\"" + encoding.getHeaderName() + "\"");
+			compressionMeters[encoding.ordinal()] = meter;
+		}
+
+		meter.record(nanoseconds);
+		compressionInputBytes.addAndGet(encoding.ordinal(), inputBytes);
+		compressionOutputBytes.addAndGet(encoding.ordinal(), outputBytes);
+	}
+
+	/**
+	 * Writes all meters in Prometheus text exposition format.
+	 *
+	 * @return the metrics, one sample per line
+	 */
+	public String toPrometheusText() {
+		StringBuilder text = new StringBuilder(4096);
+
+		for (MetricLayer layerElement : MetricLayer.values()) {
+			Map<String, LatencyHistogram> meters = metersByLayer.get(layerElement);
+
+			if (meters == null || meters.isEmpty()) {
+				continue;
+			}
+
+			String name = layerElement.getMetricName();
+			text.append("# HELP ").append(name).append(' ').append(layerElement.getHelp()).append('\n');
+			text.append("# TYPE ").append(name).append(" summary\n");
+
+			for (Map.Entry<String, LatencyHistogram> meterElement : meters.entrySet()) {
+				String labels = meterElement.getKey();
+				LatencyHistogram histogram = meterElement.getValue();
+
+				for (double quantileElement : QUANTILES) {
+					text.append(name).append('{').append(labels).append(",quantile=\"").append(quantileElement).append("\"} ")
+							.append(toSeconds(histogram.getQuantile(quantileElement))).append('\n');
+				}
+
+				text.append(name).append("_sum{").append(labels).append("} ").append(toSeconds(histogram.getSum())).append('\n');
+				text.append(name).append("_count{").append(labels).append("} ").append(histogram.getCount()).append('\n');
+			}
+		}
+
+		text.append("# HELP cia_aerea_responses_total Amount of responses by HTTP status code\n");
+		text.append("# TYPE cia_aerea_responses_total counter\n");
+
+		for (int status = 0; status <= MAX_STATUS; status++) {
+			long amountOfResponses = statusCounts.get(status);
+
+			if (amountOfResponses > 0L) {
+				text.append("cia_aerea_responses_total{status=\"").append(status).append("\"} ").append(amountOfResponses).append('\n');
+			}
+		}
+
+		appendCompressionCounters(text);
+
+		return text.toString();
+	}
+
+	/**
+	 * Writes the compressed sizes and the compression ratio of each encoding used so far.
+	 *
+	 * @param text the metrics being written
+	 */
+	private void appendCompressionCounters(StringBuilder text) {
+		StringBuilder inputBytes = new StringBuilder();
+		StringBuilder outputBytes = new StringBuilder();
+		StringBuilder ratios = new StringBuilder();
+
+		for (ContentEncoding encodingElement : ContentEncoding.values()) {
+			long input = compressionInputBytes.get(encodingElement.ordinal());
+			long output = compressionOutputBytes.get(encodingElement.ordinal());
+
+			if (output == 0L) {
+				continue;
+			}
+
+			String labels = "{encoding=\"" + encodingElement.getHeaderName() + "\"} ";
+			inputBytes.append("cia_aerea_compression_input_bytes_total").append(labels).append(input).append('\n');
+			outputBytes.append("cia_aerea_compression_output_bytes_total").append(labels).append(output).append('\n');
+			ratios.append("cia_aerea_compression_ratio").append(labels).append(String.format(Locale.ROOT, "%.3f", (double) input / output)).append('\n');
+		}
+
+		if (ratios.length() == 0) {
+			return;
+		}
+
+		text.append("# HELP cia_aerea_compression_input_bytes_total Bytes of the compressed responses before compression\n");
+		text.append("# TYPE cia_aerea_compression_input_bytes_total counter\n").append(inputBytes);
+		text.append("# HELP cia_aerea_compression_output_bytes_total Bytes of the compressed responses after compression\n");
+		text.append("# TYPE cia_aerea_compression_output_bytes_total counter\n").append(outputBytes);
+		text.append("# HELP cia_aerea_compression_ratio Bytes before compression for each byte sent\n");
+		text.append("# TYPE cia_aerea_compression_ratio gauge\n").append(ratios);
+	}
+
+	/**
+	 * Gets the meter with the given labels, creating it if it does not exist yet.
+	 *
+	 * @param layer  the layer of the meter
+	 * @param labels the labels of the meter, already in Prometheus format
+	 * @return the meter
+	 */
+	private LatencyHistogram register(MetricLayer layer, String labels) {
+		return metersByLayer.computeIfAbsent(layer, layerElement -> new ConcurrentSkipListMap<>())
+				.computeIfAbsent(labels, labelsElement -> new LatencyHistogram());
+	}
+
+	/**
+	 * Gets the layer informed in the {@link Timed} annotation of the given class.
+	 *
+	 * @param targetClass the class of the called object
+	 * @return the layer, or SERVICE if the annotation is not found
+	 */
+	private MetricLayer getLayer(Class<?> targetClass) {
+		Timed timed = targetClass.getAnnotation(Timed.class);
+
+		return timed == null ? MetricLayer.SERVICE : timed.value();
+	}
+
+	/**
+	 * Gets the name of the given class as it was written, without the suffixes of the proxies created by the container.
+	 *
+	 * @param targetClass the class of the called object
+	 * @return the class name without package
+	 */
+	private String getSimpleName(Class<?> targetClass) {
+		String name = targetClass.getName();
+		name = name.substring(name.lastIndexOf('.') + 1);
+		int proxySuffix = name.indexOf('$');
+
+		return proxySuffix > 0 ? name.substring(0, proxySuffix) : name;
+	}
+
+	/**
+	 * Escapes a label value as demanded by the Prometheus text format.
+	 *
+	 * @param value the label value
+	 * @return the escaped value
+	 */
+	private String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/**
+	 * Converts a duration to seconds, the base unit of Prometheus.
+	 *
+	 * @param nanoseconds the duration, in nanoseconds
+	 * @return the duration, in seconds
+	 */
+	private String toSeconds(long nanoseconds) {
+		return String.format(Locale.ROOT, "%.9f", nanoseconds / NANOSECONDS_PER_SECOND);
+	}
+}
@@ -0,0 +1,35 @@
+package metrics;
+
+import java.io.IOException;
+
+import javax.enterprise.inject.spi.CDI;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Counts the status code of every response, including the ones of requisitions that did not match any resource method.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@Provider
+public class StatusCodeFilter implements ContainerResponseFilter {
+	/**
+	 * Object that keeps the status counters, resolved on the first response.
+	 */
+	private volatile MetricsRegistry metricsRegistry;
+
+	@Override
+	public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+		MetricsRegistry registry = metricsRegistry;
+
+		if (registry == null) {
+			registry = CDI.current().select(MetricsRegistry.class).get();
+			metricsRegistry = registry;
+		}
+
+		registry.countStatus(responseContext.getStatus());
+	}
+}
@@ -0,0 +1,32 @@
+package metrics;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import javax.enterprise.util.Nonbinding;
+import javax.interceptor.InterceptorBinding;
+
+import enums.MetricLayer;
+
+/**
+ * Marks a class whose business methods have their latency recorded by {@link TimedInterceptor}.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@Inherited
+@InterceptorBinding
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Timed {
+	/**
+	 * The layer of the class, used to name its metrics.
+	 *
+	 * @return the layer
+	 */
+	@Nonbinding
+	MetricLayer value() default MetricLayer.SERVICE;
+}
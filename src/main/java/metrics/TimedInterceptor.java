@@ -0,0 +1,54 @@
+package metrics;
+
+import java.io.Serializable;
+
+import javax.annotation.Priority;
+import javax.inject.Inject;
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.Interceptor;
+import javax.interceptor.InvocationContext;
+
+/**
+ * <p>Records the latency of each call to the business methods of the classes annotated with {@link Timed}.</p>
+ * <p>Calls made by an object to its own methods are not intercepted, so only the method called from outside is recorded.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@Timed
+@Interceptor
+@Priority(Interceptor.Priority.APPLICATION)
+public class TimedInterceptor implements Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 *
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Object that keeps the latency histograms.
+	 */
+	@Inject
+	private MetricsRegistry metricsRegistry;
+
+	/**
+	 * Calls the intercepted method and records how long it took, even if it failed.
+	 *
+	 * @param invocationContext the intercepted call
+	 * @return the value returned by the intercepted method
+	 * @throws Exception the exception thrown by the intercepted method
+	 */
+	@AroundInvoke
+	public Object record(InvocationContext invocationContext) throws Exception {
+		long start = System.nanoTime();
+
+		try {
+			return invocationContext.proceed();
+		} finally {
+			long duration = System.nanoTime() - start;
+
+			metricsRegistry.getMethodMeter(invocationContext.getTarget().getClass(), invocationContext.getMethod()).record(duration);
+		}
+	}
+}
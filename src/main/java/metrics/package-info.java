@@ -0,0 +1,4 @@
+/**
+ * Contains the meters that record the latency of the requisitions, services and DAOs and the status codes of the responses.
+ */
+package metrics;
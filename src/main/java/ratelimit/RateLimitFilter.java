@@ -0,0 +1,131 @@
+package ratelimit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Priority;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+
+import enums.RateLimitKey;
+import security.LoggedUser;
+
+/**
+ * <p>Answers 429 (Too Many Requests) to the clients that go beyond the rate limit of a resource path, before the requisition reaches any service.</p>
+ * <p>The rules are read from <code>cia-aerea.rate-limit.rules</code>, separated by commas, each written as <code>path=capacity/seconds[/key]</code>.
+ * By default the sign in is limited by username and by remote address, so both a single account and a single machine are slowed down,
+ * and the bookings are limited by logged user. A path with more than one rule must pass all of them.</p>
+ * <p>Runs after the <code>AuthenticationFilter</code> of the resource method, so the user of a requisition is the one its token was resolved into:
+ * an unknown token is answered 401 before it takes a bucket, and sending many tokens does not get more requisitions.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@Provider
+@Priority(Priorities.AUTHORIZATION)
+public class RateLimitFilter implements ContainerRequestFilter {
+	/**
+	 * Rules used when <code>cia-aerea.rate-limit.rules</code> is not set.
+	 */
+	private static final String DEFAULT_RULES = "/user/signin=5/60/username,/user/signin=30/60/address,"
+			+ "/ticket/create=30/60/user,/ticket/batch=10/60/user";
+
+	/**
+	 * Rules indexed by their resource path.
+	 */
+	private static final Map<String, List<RateLimitRule>> RULES_BY_PATH = parseRules(System.getProperty("cia-aerea.rate-limit.rules", DEFAULT_RULES));
+
+	/**
+	 * The current requisition, to get the remote address of the client.
+	 */
+	@Context
+	private HttpServletRequest servletRequest;
+
+	@Override
+	public void filter(ContainerRequestContext requestContext) throws IOException {
+		if (RULES_BY_PATH.isEmpty() || HttpMethod.OPTIONS.equals(requestContext.getMethod())) {
+			return;
+		}
+
+		List<RateLimitRule> rules = RULES_BY_PATH.get(RateLimitRule.normalisePath(requestContext.getUriInfo().getPath()));
+
+		if (rules == null) {
+			return;
+		}
+
+		for (RateLimitRule ruleElement : rules) {
+			long wait = ruleElement.tryAcquire(getClient(requestContext, ruleElement.getKey()));
+
+			if (wait > 0L) {
+				long retryAfter = Math.max(TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1L) - 1L), 1L);
+				String message = "Too many requisitions, try again in " + retryAfter + " seconds";
+
+				requestContext.abortWith(Response.status(429).header(HttpHeaders.RETRY_AFTER, retryAfter).entity(message).build());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Gets the name of the client that sent the requisition, as told apart by the given key.
+	 *
+	 * @param requestContext the requisition
+	 * @param key			 how the clients are told apart
+	 * @return the logged user or the header value prefixed by the key, or the remote address if they are absent
+	 */
+	private String getClient(ContainerRequestContext requestContext, RateLimitKey key) {
+		String value = null;
+
+		if (key == RateLimitKey.USER) {
+			LoggedUser loggedUser = LoggedUser.of(requestContext.getSecurityContext());
+			value = loggedUser == null ? null : loggedUser.getName();
+		} else if (key.getHeaderName() != null) {
+			value = requestContext.getHeaderString(key.getHeaderName());
+		}
+
+		if (value == null || value.isBlank()) {
+			return "address:" + (servletRequest == null ? "unknown" : servletRequest.getRemoteAddr());
+		}
+
+		return key.name() + ":" + value;
+	}
+
+	/**
+	 * Reads the rules of the configuration, printing the ones that cannot be read.
+	 *
+	 * @param text the rules, separated by commas
+	 * @return the rules indexed by their resource path
+	 */
+	private static Map<String, List<RateLimitRule>> parseRules(String text) {
+		Map<String, List<RateLimitRule>> rulesByPath = new HashMap<>();
+
+		for (String ruleElement : text.split(",")) {
+			if (ruleElement.isBlank()) {
+				continue;
+			}
+
+			RateLimitRule rule = RateLimitRule.parse(ruleElement);
+
+			if (rule == null) {
+				System.err.println("Rate limit rule ignored, it must be written as path=capacity/seconds[/key]: " + ruleElement.trim());
+				continue;
+			}
+
+			rulesByPath.computeIfAbsent(rule.getPath(), pathElement -> new ArrayList<>()).add(rule);
+		}
+
+		return Collections.unmodifiableMap(rulesByPath);
+	}
+}
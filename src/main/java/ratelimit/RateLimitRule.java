@@ -0,0 +1,201 @@
+package ratelimit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import enums.RateLimitKey;
+
+/**
+ * <p>Rate limit of one resource path: at most <code>capacity</code> requisitions in a burst, refilled evenly along <code>period</code>.</p>
+ * <p>Each client bucket is a single number, the instant it will be full again (the theoretical arrival time of the generic cell rate algorithm),
+ * moved forward with a compare-and-set on each allowed requisition. A bucket that is already full again holds nothing worth keeping,
+ * so it is dropped by the sweeps without changing any decision.</p>
+ * <p>The amount of buckets is bounded: once the limit is reached, the new clients share a single overflow bucket until the next sweep.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+final class RateLimitRule {
+	/**
+	 * Maximum amount of client buckets of each rule.
+	 */
+	private static final int MAX_BUCKETS = Integer.getInteger("cia-aerea.rate-limit.max-keys", 100000);
+
+	/**
+	 * Time between two sweeps of the full buckets.
+	 */
+	private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(60L);
+
+	private final String path;
+	private final RateLimitKey key;
+
+	/**
+	 * Time needed to refill one requisition, in nanoseconds.
+	 */
+	private final long interval;
+
+	/**
+	 * Time needed to refill the whole burst, in nanoseconds.
+	 */
+	private final long burstTolerance;
+
+	/**
+	 * Instant each client bucket will be full again, indexed by client.
+	 */
+	private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+	/**
+	 * Bucket shared by the clients that arrive when the bucket limit is reached.
+	 */
+	private final AtomicLong overflowBucket = new AtomicLong(System.nanoTime());
+
+	/**
+	 * Instant of the next sweep.
+	 */
+	private final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL);
+
+	/**
+	 * Creates a rule.
+	 *
+	 * @param path	   the resource path, like <code>/user/signin</code>
+	 * @param capacity the maximum amount of requisitions in a burst
+	 * @param period   the time to refill the whole burst, in seconds
+	 * @param key	   how the clients are told apart
+	 */
+	RateLimitRule(String path, int capacity, long period, RateLimitKey key) {
+		this.path = path;
+		this.key = key;
+		this.interval = Math.max(TimeUnit.SECONDS.toNanos(period) / capacity, 1L);
+		this.burstTolerance = interval * capacity;
+	}
+
+	/**
+	 * <p>Reads a rule written as <code>path=capacity/seconds[/key]</code>, like <code>/user/signin=5/60/username</code>.</p>
+	 * <p>The key is <code>user</code>, <code>username</code> or <code>address</code>, the default.</p>
+	 *
+	 * @param text the rule
+	 * @return the rule, or null if it cannot be read
+	 */
+	static RateLimitRule parse(String text) {
+		int separator = text.indexOf('=');
+
+		if (separator <= 0) {
+			return null;
+		}
+
+		String[] limit = text.substring(separator + 1).trim().split("/");
+
+		if (limit.length < 2 || limit.length > 3) {
+			return null;
+		}
+
+		try {
+			int capacity = Integer.parseInt(limit[0].trim());
+			long period = Long.parseLong(limit[1].trim());
+			RateLimitKey key = RateLimitKey.fromName(limit.length == 3 ? limit[2] : null);
+
+			if (capacity <= 0 || period <= 0L || key == null) {
+				return null;
+			}
+
+			return new RateLimitRule(normalisePath(text.substring(0, separator)), capacity, period, key);
+		} catch (NumberFormatException numberFormatException) {
+			return null;
+		}
+	}
+
+	/**
+	 * Puts a path in the form compared by the rules: with a leading slash and without a trailing one.
+	 *
+	 * @param path the path of a rule or of a requisition
+	 * @return the normalised path
+	 */
+	static String normalisePath(String path) {
+		String normalised = path.trim();
+
+		if (!normalised.startsWith("/")) {
+			normalised = "/" + normalised;
+		}
+
+		if (normalised.length() > 1 && normalised.endsWith("/")) {
+			normalised = normalised.substring(0, normalised.length() - 1);
+		}
+
+		return normalised;
+	}
+
+	String getPath() {
+		return path;
+	}
+
+	RateLimitKey getKey() {
+		return key;
+	}
+
+	/**
+	 * Takes one requisition from the bucket of the given client.
+	 *
+	 * @param client the client, as told apart by the key of this rule
+	 * @return 0 if the requisition is allowed, otherwise the time to wait until it would be, in nanoseconds
+	 */
+	long tryAcquire(String client) {
+		long now = System.nanoTime();
+
+		sweepIfDue(now);
+
+		AtomicLong bucket = buckets.get(client);
+
+		if (bucket == null) {
+			// Com o limite atingido, os clientes novos partilham um balde até à próxima varredura, sem percorrer o mapa em cada pedido
+			bucket = buckets.size() >= MAX_BUCKETS ? overflowBucket : buckets.computeIfAbsent(client, clientElement -> new AtomicLong(now));
+		}
+
+		while (true) {
+			long fullAt = bucket.get();
+			// Um balde cheio conta a partir de agora, não do instante em que ficou cheio
+			long newFullAt = (fullAt - now < 0L ? now : fullAt) + interval;
+			long wait = newFullAt - burstTolerance - now;
+
+			if (wait > 0L) {
+				return wait;
+			}
+
+			if (bucket.compareAndSet(fullAt, newFullAt)) {
+				return 0L;
+			}
+		}
+	}
+
+	/**
+	 * Gets the amount of client buckets kept.
+	 *
+	 * @return the amount of buckets
+	 */
+	int size() {
+		return buckets.size();
+	}
+
+	/**
+	 * Sweeps the full buckets if the sweep interval passed, in a single thread.
+	 *
+	 * @param now the current instant, from <code>System.nanoTime()</code>
+	 */
+	private void sweepIfDue(long now) {
+		long sweepAt = nextSweep.get();
+
+		if (now - sweepAt >= 0L && nextSweep.compareAndSet(sweepAt, now + SWEEP_INTERVAL)) {
+			sweep(now);
+		}
+	}
+
+	/**
+	 * Drops the buckets that are full again, which the clients would find exactly the same if they were kept.
+	 *
+	 * @param now the current instant, from <code>System.nanoTime()</code>
+	 */
+	private void sweep(long now) {
+		buckets.entrySet().removeIf(bucketElement -> bucketElement.getValue().get() - now <= 0L);
+	}
+}
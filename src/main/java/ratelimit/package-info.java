@@ -0,0 +1,4 @@
+/**
+ * Contains the rate limiting of the requisitions that are expensive to the database.
+ */
+package ratelimit;
@@ -0,0 +1,34 @@
+package security;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import enums.Role;
+
+/**
+ * <p>Marks a resource method, or all resource methods of a controller, as reserved to the logged users with one of the given roles.</p>
+ * <p>The token is resolved once by {@link AuthenticationFilter} before the method is called, and the logged user is read with
+ * {@link LoggedUser#of(javax.ws.rs.core.SecurityContext)}. An annotation on the method takes the place of the one on the controller.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface AllowedRoles {
+	/**
+	 * The roles allowed, all of them by default, so any logged user is allowed.
+	 *
+	 * @return the roles
+	 */
+	Role[] value() default {Role.ADMINISTRATOR, Role.EMPLOYEE, Role.CLIENT};
+
+	/**
+	 * The message of the 403 (Forbidden) response sent to the logged users with other roles.
+	 *
+	 * @return the message
+	 */
+	String message() default "The role of the logged user is not allowed to do this requisition";
+}
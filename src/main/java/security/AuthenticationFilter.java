@@ -0,0 +1,99 @@
+package security;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Optional;
+
+import javax.enterprise.inject.spi.CDI;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.Response;
+
+import caches.SessionCache;
+import enums.Role;
+import services.UserService;
+
+/**
+ * <p>Resolves the token of the requisitions of one resource method into a {@link LoggedUser} and checks its role, before the method is called.</p>
+ * <p>The roles allowed are read once, when the application is deployed, so each requisition costs a single lookup of the token
+ * and a single check of the role.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+final class AuthenticationFilter implements ContainerRequestFilter {
+	private final EnumSet<Role> allowedRoles;
+	private final String forbiddenMessage;
+
+	/**
+	 * Object that resolves the tokens, resolved on the first requisition.
+	 */
+	private volatile UserService userService;
+
+	/**
+	 * Creates the filter of one resource method.
+	 *
+	 * @param allowedRoles	   the roles allowed
+	 * @param forbiddenMessage the message of the 403 (Forbidden) response
+	 */
+	AuthenticationFilter(EnumSet<Role> allowedRoles, String forbiddenMessage) {
+		this.allowedRoles = allowedRoles;
+		this.forbiddenMessage = forbiddenMessage;
+	}
+
+	@Override
+	public void filter(ContainerRequestContext requestContext) throws IOException {
+		String message;
+		String token = requestContext.getHeaderString("token");
+
+		if (token == null || token.isBlank()) {
+			message = "User not logged";
+			requestContext.abortWith(Response.status(401).entity(message).build());
+			return;
+		}
+
+		Optional<SessionCache.Session> session;
+		try {
+			session = getUserService().getSessionByToken(token);
+		} catch (Exception exception) {
+			System.err.println("Catch " + exception.getClass().getName() + " filter() in AuthenticationFilter");
+			exception.printStackTrace();
+
+			message = "There where some problem with the database trying to find the logged user";
+			requestContext.abortWith(Response.status(503).entity(message).build());
+			return;
+		}
+
+		if (session == null || session.isEmpty()) {
+			message = "User not found in database";
+			requestContext.abortWith(Response.status(401).entity(message).build());
+			return;
+		}
+
+		if (!allowedRoles.contains(session.get().getRole())) {
+			requestContext.abortWith(Response.status(403).entity(forbiddenMessage).build());
+			return;
+		}
+
+		LoggedUser loggedUser = new LoggedUser(session.get().getUserId(), session.get().getRole());
+		boolean isSecure = requestContext.getSecurityContext() != null && requestContext.getSecurityContext().isSecure();
+
+		requestContext.setSecurityContext(new TokenSecurityContext(loggedUser, isSecure));
+	}
+
+	/**
+	 * Gets the user service, resolving it on the first call.
+	 *
+	 * @return the user service
+	 */
+	private UserService getUserService() {
+		UserService service = userService;
+
+		if (service == null) {
+			service = CDI.current().select(UserService.class).get();
+			userService = service;
+		}
+
+		return service;
+	}
+}
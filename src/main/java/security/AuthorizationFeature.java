@@ -0,0 +1,43 @@
+package security;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.ext.Provider;
+
+import enums.Role;
+
+/**
+ * Binds an {@link AuthenticationFilter} to each resource method marked with {@link AllowedRoles}, or whose controller is, when the application is deployed.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@Provider
+public class AuthorizationFeature implements DynamicFeature {
+	@Override
+	public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+		if (resourceInfo.getResourceMethod() == null) {
+			return;
+		}
+
+		AllowedRoles allowedRoles = resourceInfo.getResourceMethod().getAnnotation(AllowedRoles.class);
+
+		if (allowedRoles == null && resourceInfo.getResourceClass() != null) {
+			allowedRoles = resourceInfo.getResourceClass().getAnnotation(AllowedRoles.class);
+		}
+
+		if (allowedRoles == null) {
+			return;
+		}
+
+		EnumSet<Role> roles = EnumSet.noneOf(Role.class);
+		roles.addAll(Arrays.asList(allowedRoles.value()));
+
+		context.register(new AuthenticationFilter(roles, allowedRoles.message()), Priorities.AUTHENTICATION);
+	}
+}
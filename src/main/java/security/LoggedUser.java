@@ -0,0 +1,65 @@
+package security;
+
+import java.io.Serializable;
+import java.security.Principal;
+
+import javax.ws.rs.core.SecurityContext;
+
+import enums.Role;
+
+/**
+ * <p>The user that sent the requisition, resolved from its token by {@link AuthenticationFilter}.</p>
+ * <p>Kept in the security context of the requisition, so it must be read in the resource method, before the work is handed to the request executor.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public final class LoggedUser implements Principal, Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 *
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final Integer userId;
+	private final Role role;
+
+	public LoggedUser(Integer userId, Role role) {
+		this.userId = userId;
+		this.role = role;
+	}
+
+	/**
+	 * Gets the logged user of a requisition.
+	 *
+	 * @param securityContext the security context of the requisition
+	 * @return the logged user, or null if the resource method is not marked with {@link AllowedRoles}
+	 */
+	public static LoggedUser of(SecurityContext securityContext) {
+		Principal principal = securityContext == null ? null : securityContext.getUserPrincipal();
+
+		return principal instanceof LoggedUser ? (LoggedUser) principal : null;
+	}
+
+	public Integer getUserId() {
+		return userId;
+	}
+
+	public Role getRole() {
+		return role;
+	}
+
+	/**
+	 * Gets the primary key of the user, as text.
+	 */
+	@Override
+	public String getName() {
+		return String.valueOf(userId);
+	}
+
+	@Override
+	public String toString() {
+		return "LoggedUser [userId=" + userId + ", role=" + role + "]";
+	}
+}
@@ -0,0 +1,301 @@
+package security;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.enterprise.context.ApplicationScoped;
+
+import caches.SessionCache;
+import enums.Role;
+
+/**
+ * <p>Issues and verifies signed session tokens, which carry the user id, the role and the expiry signed with HMAC-SHA256.</p>
+ * <p>Used when <code>cia-aerea.session.mode</code> is <code>signed</code>: the sign in does not write the users table
+ * and a token is verified in memory, with no query. The tokens of the users that signed out, changed role or were deleted
+ * are kept in a small revocation list until they expire.</p>
+ * <p>The key is read from <code>cia-aerea.session.secret</code>, with at least 32 characters. Without it, a random key is made on startup,
+ * so the tokens do not outlive the application and cannot be verified by another instance.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@ApplicationScoped
+public class SessionTokens implements Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 *
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Whether the signed tokens are used instead of the tokens saved in the users table.
+	 */
+	private static final boolean IS_ENABLED = "signed".equalsIgnoreCase(System.getProperty("cia-aerea.session.mode", "database"));
+
+	/**
+	 * Time, in milliseconds, that a signed token is valid since it was issued.
+	 */
+	private static final long TIME_TO_LIVE = Long.getLong("cia-aerea.session.signed-token-ttl-seconds", 3600L) * 1000L;
+
+	private static final String ALGORITHM = "HmacSHA256";
+	private static final byte VERSION = 1;
+	private static final int PAYLOAD_SIZE = 1 + Integer.BYTES + 1 + Long.BYTES + Long.BYTES;
+	private static final char SEPARATOR = '.';
+
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+	private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+	/**
+	 * The signing key.
+	 */
+	private static final SecretKeySpec KEY = new SecretKeySpec(readSecret(), ALGORITHM);
+
+	/**
+	 * One initialised MAC per thread, since creating one costs more than verifying a token.
+	 */
+	private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() -> {
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(KEY);
+			return mac;
+		} catch (GeneralSecurityException generalSecurityException) {
+			throw new IllegalStateException(generalSecurityException);
+		}
+	});
+
+	/**
+	 * Tokens revoked one by one on sign out, with the instant they would expire.
+	 */
+	private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+
+	/**
+	 * Users whose tokens issued before the given instant are no longer valid, because they changed role or were deleted.
+	 */
+	private final Map<Integer, Long> revokedUsers = new ConcurrentHashMap<>();
+
+	/**
+	 * Amount of tokens verified.
+	 */
+	private final LongAdder verifications = new LongAdder();
+
+	/**
+	 * Amount of tokens refused because they were malformed, expired or revoked.
+	 */
+	private final LongAdder refusals = new LongAdder();
+
+	/**
+	 * Checks if the signed tokens are used.
+	 *
+	 * @return true if <code>cia-aerea.session.mode</code> is <code>signed</code>
+	 */
+	public boolean isEnabled() {
+		return IS_ENABLED;
+	}
+
+	/**
+	 * Checks if the given token has the form of a signed token, as opposed to a token saved in the users table.
+	 *
+	 * @param token logged user identifier key
+	 * @return true if the token has a payload and a signature
+	 */
+	public boolean isSignedToken(String token) {
+		return token != null && token.indexOf(SEPARATOR) > 0;
+	}
+
+	/**
+	 * <p>Issues a token for the given user.</p>
+	 * <p>Unlike the tokens saved in the users table, the previous tokens of the user stay valid until they expire or the user signs out,
+	 * so the revocation list only grows with sign outs, changes of role and deletions.</p>
+	 *
+	 * @param userId primary key of the user
+	 * @param role	 role of the user
+	 * @return the signed token
+	 */
+	public String issue(Integer userId, Role role) {
+		// Nunca antes de uma revogação feita no mesmo milissegundo, que invalidaria o próprio token
+		long issuedAt = Math.max(System.currentTimeMillis(), revokedUsers.getOrDefault(userId, 0L));
+		ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_SIZE);
+
+		payload.put(VERSION).putInt(userId).put((byte) role.ordinal()).putLong(issuedAt).putLong(issuedAt + TIME_TO_LIVE);
+
+		String encodedPayload = ENCODER.encodeToString(payload.array());
+
+		return encodedPayload + SEPARATOR + ENCODER.encodeToString(sign(encodedPayload));
+	}
+
+	/**
+	 * Verifies the given token, without any query.
+	 *
+	 * @param token logged user identifier key
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the session of the logged user, if the signature matches and the token is not expired nor revoked</li>
+	 * 			<li>null, otherwise</li>
+	 * 		  </ul>
+	 */
+	public SessionCache.Session verify(String token) {
+		verifications.increment();
+
+		ByteBuffer payload = readPayload(token);
+
+		if (payload == null) {
+			refusals.increment();
+			return null;
+		}
+
+		int userId = payload.getInt(1);
+		int roleOrdinal = payload.get(5);
+		long issuedAt = payload.getLong(6);
+		long expiresAt = payload.getLong(14);
+		long now = System.currentTimeMillis();
+		Long revokedBefore = revokedUsers.get(userId);
+
+		if (now >= expiresAt || roleOrdinal < 0 || roleOrdinal >= Role.values().length || (revokedBefore != null && issuedAt < revokedBefore)
+				|| (!revokedTokens.isEmpty() && revokedTokens.containsKey(token))) {
+			refusals.increment();
+			return null;
+		}
+
+		return new SessionCache.Session(userId, Role.values()[roleOrdinal], issuedAt);
+	}
+
+	/**
+	 * Revokes the given token, on sign out.
+	 *
+	 * @param token logged user identifier key
+	 * @return true if the token was valid until now
+	 */
+	public boolean revoke(String token) {
+		if (verify(token) == null) {
+			return false;
+		}
+
+		removeExpired();
+		revokedTokens.put(token, readPayload(token).getLong(14));
+
+		return true;
+	}
+
+	/**
+	 * Revokes all tokens issued until now to the given user, after a change of role or a deletion.
+	 *
+	 * @param userId primary key of the user
+	 */
+	public void revokeUser(Integer userId) {
+		if (userId != null) {
+			revokeUser(userId, System.currentTimeMillis() + 1L);
+		}
+	}
+
+	/**
+	 * Gets the usage counters of the signed tokens.
+	 *
+	 * @return whether they are enabled, the amount of tokens verified and refused and the size of the revocation list
+	 */
+	public Map<String, Object> getStatistics() {
+		Map<String, Object> statistics = new LinkedHashMap<>();
+
+		statistics.put("enabled", IS_ENABLED);
+		statistics.put("verifications", verifications.sum());
+		statistics.put("refusals", refusals.sum());
+		statistics.put("revokedTokens", revokedTokens.size());
+		statistics.put("revokedUsers", revokedUsers.size());
+
+		return statistics;
+	}
+
+	/**
+	 * Revokes the tokens of the given user issued before the given instant.
+	 *
+	 * @param userId		the primary key of the user
+	 * @param revokedBefore the instant, in milliseconds
+	 */
+	private void revokeUser(int userId, long revokedBefore) {
+		removeExpired();
+		revokedUsers.merge(userId, revokedBefore, Math::max);
+	}
+
+	/**
+	 * Drops the revocations of tokens that expired anyway, so the list only holds the ones still needed.
+	 */
+	private void removeExpired() {
+		long now = System.currentTimeMillis();
+
+		revokedTokens.values().removeIf(expiresAt -> expiresAt <= now);
+		// Qualquer token emitido antes da revogação já expirou quando passou um tempo de vida inteiro
+		revokedUsers.values().removeIf(revokedBefore -> revokedBefore + TIME_TO_LIVE <= now);
+	}
+
+	/**
+	 * Reads the payload of the given token, checking its signature in constant time.
+	 *
+	 * @param token logged user identifier key
+	 * @return the payload, or null if the token is malformed or the signature does not match
+	 */
+	private ByteBuffer readPayload(String token) {
+		if (!isSignedToken(token)) {
+			return null;
+		}
+
+		int separator = token.indexOf(SEPARATOR);
+		String encodedPayload = token.substring(0, separator);
+
+		try {
+			byte[] payload = DECODER.decode(encodedPayload);
+			byte[] signature = DECODER.decode(token.substring(separator + 1));
+
+			if (payload.length != PAYLOAD_SIZE || payload[0] != VERSION || !MessageDigest.isEqual(signature, sign(encodedPayload))) {
+				return null;
+			}
+
+			return ByteBuffer.wrap(payload);
+		} catch (IllegalArgumentException illegalArgumentException) {
+			return null;
+		}
+	}
+
+	/**
+	 * Signs the given encoded payload.
+	 *
+	 * @param encodedPayload the payload in Base64
+	 * @return the HMAC-SHA256 of the payload
+	 */
+	private static byte[] sign(String encodedPayload) {
+		return MAC.get().doFinal(encodedPayload.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Reads the signing key from the configuration, or makes a random one if it is not set.
+	 *
+	 * @return the key bytes
+	 */
+	private static byte[] readSecret() {
+		String secret = System.getProperty("cia-aerea.session.secret");
+
+		if (secret != null && secret.length() >= 32) {
+			return secret.getBytes(StandardCharsets.UTF_8);
+		}
+
+		if (IS_ENABLED) {
+			System.err.println("cia-aerea.session.secret is not set or has less than 32 characters, "
+					+ "the signed tokens use a random key and will not be valid after a restart");
+		}
+
+		byte[] randomSecret = new byte[32];
+		new SecureRandom().nextBytes(randomSecret);
+
+		return randomSecret;
+	}
+}
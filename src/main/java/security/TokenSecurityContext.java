@@ -0,0 +1,46 @@
+package security;
+
+import java.security.Principal;
+
+import javax.ws.rs.core.SecurityContext;
+
+/**
+ * Security context of a requisition authenticated by its token.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+final class TokenSecurityContext implements SecurityContext {
+	/**
+	 * Name of the authentication scheme, the <code>token</code> header.
+	 */
+	private static final String AUTHENTICATION_SCHEME = "token";
+
+	private final LoggedUser loggedUser;
+	private final boolean isSecure;
+
+	TokenSecurityContext(LoggedUser loggedUser, boolean isSecure) {
+		this.loggedUser = loggedUser;
+		this.isSecure = isSecure;
+	}
+
+	@Override
+	public Principal getUserPrincipal() {
+		return loggedUser;
+	}
+
+	@Override
+	public boolean isUserInRole(String role) {
+		return loggedUser.getRole().name().equals(role);
+	}
+
+	@Override
+	public boolean isSecure() {
+		return isSecure;
+	}
+
+	@Override
+	public String getAuthenticationScheme() {
+		return AUTHENTICATION_SCHEME;
+	}
+}
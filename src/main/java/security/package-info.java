@@ -0,0 +1,4 @@
+/**
+ * Contains the authentication and the authorisation of the requisitions.
+ */
+package security;
@@ -0,0 +1,236 @@
+package services;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.google.gson.Gson;
+
+import daos.FlightDAO;
+import daos.TicketDAO;
+import daos.UserDAO;
+import dtos.FlightDTO;
+import dtos.TicketDTO;
+import dtos.UserDTO;
+import enums.ExportFormat;
+import mappers.FlightMapper;
+import mappers.TicketMapper;
+import mappers.UserMapper;
+import metrics.Timed;
+
+/**
+ * <p>Class that contains all the programmatic logic regarding the export of whole tables.</p>
+ * <p>The rows are written to the response while they are read from the database, one per line,
+ * so neither the table nor the response are ever kept whole in memory.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@Timed
+@RequestScoped
+public class ExportService implements Serializable {
+
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 *
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Amount of rows written before the output is flushed to the client.
+	 */
+	private static final int FLUSH_INTERVAL = 500;
+
+	/**
+	 * Object that writes each row in JSON format.
+	 */
+	private static final Gson GSON = new Gson();
+
+	/**
+	 * Object that contains all methods to manipulates database regarding flights table.
+	 */
+	@Inject
+	private FlightDAO flightDAO;
+
+	/**
+	 * Object that contains all methods to manipulates database regarding users table.
+	 */
+	@Inject
+	private UserDAO userDAO;
+
+	/**
+	 * Object that contains all methods to manipulates database regarding tickets table.
+	 */
+	@Inject
+	private TicketDAO ticketDAO;
+
+	/**
+	 * Object that contains methods from <code>Flight</code> object to switch it between Entity and DTO formats.
+	 */
+	@Inject
+	private FlightMapper flightMapper;
+
+	/**
+	 * Object that contains methods from <code>User</code> object to switch it between Entity and DTO formats.
+	 */
+	@Inject
+	private UserMapper userMapper;
+
+	/**
+	 * Object that contains methods from <code>Ticket</code> object to switch it from Entity to DTO format.
+	 */
+	@Inject
+	private TicketMapper ticketMapper;
+
+	/**
+	 * Exports all flights.
+	 *
+	 * @param format the format of the rows
+	 * @return the output that writes the flights while they are read
+	 */
+	public StreamingOutput exportFlights(ExportFormat format) {
+		String[] header = {"id", "code", "destination", "departTime", "totalSeats"};
+		Function<FlightDTO, Object[]> columns = flightDTO -> new Object[] {
+				flightDTO.getId(), flightDTO.getCode(), flightDTO.getDestination(), flightDTO.getDepartTime(), flightDTO.getTotalSeats()};
+
+		return outputStream -> write(outputStream, format, header, columns,
+				rowWriter -> flightDAO.scrollAll(flightElement -> rowWriter.accept(flightMapper.toDTO(flightElement))));
+	}
+
+	/**
+	 * Exports all users, without their password and token.
+	 *
+	 * @param format the format of the rows
+	 * @return the output that writes the users while they are read
+	 */
+	public StreamingOutput exportUsers(ExportFormat format) {
+		String[] header = {"id", "name", "username", "role"};
+		Function<UserDTO, Object[]> columns = userDTO -> new Object[] {
+				userDTO.getId(), userDTO.getName(), userDTO.getUsername(), userDTO.getRole()};
+
+		return outputStream -> write(outputStream, format, header, columns,
+				rowWriter -> userDAO.scrollAll(userElement -> {
+					UserDTO userDTO = userMapper.toDTO(userElement);
+
+					userDTO.setPassword(null);
+					userDTO.setToken(null);
+
+					rowWriter.accept(userDTO);
+				}));
+	}
+
+	/**
+	 * Exports all tickets, along with their passenger and flight information.
+	 *
+	 * @param format the format of the rows
+	 * @return the output that writes the tickets while they are read
+	 */
+	public StreamingOutput exportTickets(ExportFormat format) {
+		String[] header = {"id", "idUser", "userName", "idFlight", "flightCode", "flightDestination", "flightDepartTime"};
+		Function<TicketDTO, Object[]> columns = ticketDTO -> new Object[] {
+				ticketDTO.getId(), ticketDTO.getIdUser(), ticketDTO.getUserName(), ticketDTO.getIdFlight(),
+				ticketDTO.getFlightCode(), ticketDTO.getFlightDestination(), ticketDTO.getFlightDepartTime()};
+
+		return outputStream -> write(outputStream, format, header, columns,
+				rowWriter -> ticketDAO.scrollAllWithDetails(ticketElement -> rowWriter.accept(ticketMapper.toDTO(ticketElement))));
+	}
+
+	/**
+	 * Writes all rows given by the source into the output stream, one per line.
+	 *
+	 * @param <T>		   the type of the rows
+	 * @param outputStream the response body
+	 * @param format	   the format of the rows
+	 * @param header	   the names of the CSV columns
+	 * @param columns	   the function that gets the CSV column values of a row
+	 * @param source	   the action that reads the rows, handing each of them to the row writer
+	 * @throws IOException if the client stopped reading the response
+	 */
+	private <T> void write(OutputStream outputStream, ExportFormat format, String[] header, Function<T, Object[]> columns,
+			Consumer<Consumer<T>> source) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		int[] amountOfRowsWritten = {0};
+
+		if (format.equals(ExportFormat.CSV)) {
+			writeCsvLine(writer, header);
+			writer.flush();
+		}
+
+		try {
+			source.accept(rowElement -> {
+				try {
+					if (format.equals(ExportFormat.CSV)) {
+						writeCsvLine(writer, columns.apply(rowElement));
+					} else {
+						writer.write(GSON.toJson(rowElement));
+						writer.write('\n');
+					}
+
+					// Envia logo a primeira linha e depois um bloco de linhas de cada vez
+					if (++amountOfRowsWritten[0] % FLUSH_INTERVAL == 1) {
+						writer.flush();
+					}
+				} catch (IOException ioException) {
+					throw new UncheckedIOException(ioException);
+				}
+			});
+		} catch (RuntimeException runtimeException) {
+			// O DAO é um EJB, por isso a exceção de escrita pode chegar embrulhada numa EJBException
+			Throwable cause = runtimeException;
+			while (cause != null && !(cause instanceof UncheckedIOException)) {
+				cause = cause.getCause();
+			}
+
+			if (cause != null) {
+				throw ((UncheckedIOException) cause).getCause();
+			}
+
+			throw runtimeException;
+		}
+
+		writer.flush();
+	}
+
+	/**
+	 * Writes one CSV line, quoting the values that contain separators, quotes or line breaks.
+	 *
+	 * @param writer the output
+	 * @param values the values of the line
+	 * @throws IOException if the client stopped reading the response
+	 */
+	private void writeCsvLine(Writer writer, Object[] values) throws IOException {
+		for (int index = 0; index < values.length; index++) {
+			if (index > 0) {
+				writer.write(',');
+			}
+
+			if (values[index] == null) {
+				continue;
+			}
+
+			String value = values[index].toString();
+
+			if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+				writer.write('"');
+				writer.write(value.replace("\"", "\"\""));
+				writer.write('"');
+			} else {
+				writer.write(value);
+			}
+		}
+
+		writer.write('\n');
+	}
+}
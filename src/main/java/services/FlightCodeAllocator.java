@@ -0,0 +1,186 @@
+package services;
+
+import java.io.Serializable;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import daos.FlightDAO;
+import daos.SequenceDAO;
+import entities.CodeSequence;
+import metrics.Timed;
+
+/**
+ * <p>Hands out the numeric suffixes of the flight codes.</p>
+ * <p>Values are reserved from the database in blocks and then handed out from memory, 
+ * so creating a flight does not scan the flights table and two flights never get the same suffix.</p>
+ * <p>Values of a block not used before the application stops are skipped, leaving gaps between suffixes.</p>
+ * <p>The sequence row is created once, by {@link #seed()} at startup, starting after the biggest flight id, which was the suffix used
+ * before the sequence existed. That is the only use of <code>FlightDAO.findNewestId()</code>: it is no longer on the path of each flight creation.</p>
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+@Timed
+@ApplicationScoped
+public class FlightCodeAllocator implements Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 * 
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Name of the flight code sequence in database.
+	 */
+	private static final String SEQUENCE_NAME = "flight_code";
+	
+	/**
+	 * Amount of suffixes reserved from the database at a time.
+	 */
+	private static final int BLOCK_SIZE = Integer.getInteger("cia-aerea.flight-code.block-size", 20);
+	
+	/**
+	 * Object that contains all methods to manipulates database regarding code sequences table.
+	 */
+	@Inject
+	private SequenceDAO sequenceDAO;
+	
+	/**
+	 * Object that contains all methods to manipulates database regarding flights table.
+	 */
+	@Inject
+	private FlightDAO flightDAO;
+	
+	/**
+	 * Block from where the suffixes are being handed out. Starts empty.
+	 */
+	private volatile Block currentBlock = new Block(0L, 0);
+	
+	/**
+	 * Tells if the sequence was already created or found in database by this node. Only read and written holding the lock of this object.
+	 */
+	private boolean isSeeded;
+	
+	/**
+	 * Gets the next flight code suffix.
+	 * 
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the suffix, unique among all nodes</li>
+	 * 			<li>null, if a new block could not be reserved in database</li>
+	 * 		  </ul>
+	 */
+	public Long next() {
+		while (true) {
+			Block block = currentBlock;
+			long value = block.next.getAndIncrement();
+			
+			if (value < block.end) {
+				return value;
+			}
+			
+			// O bloco acabou: apenas uma thread reserva o próximo, as outras voltam a tentar com ele
+			synchronized (this) {
+				if (currentBlock == block) {
+					Block newBlock = reserveBlock();
+					
+					if (newBlock == null) {
+						return null;
+					}
+					
+					currentBlock = newBlock;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * <p>Creates the flight code sequence in database, if it does not exist yet.</p>
+	 * <p>Called once at startup and, if it failed then, before the first block is reserved. Two nodes may seed at the same time:
+	 * the insert of the one that loses fails on its own and the sequence is found again, now with the row of the other one.</p>
+	 * 
+	 * @return true if the sequence exists in database, false if it could not be read nor created
+	 */
+	public synchronized boolean seed() {
+		if (isSeeded) {
+			return true;
+		}
+		
+		Optional<CodeSequence> sequence = sequenceDAO.find(SEQUENCE_NAME);
+		
+		if (sequence == null) {
+			return false;
+		}
+		
+		if (sequence.isEmpty()) {
+			Integer newestId = flightDAO.findNewestId();
+			
+			if (newestId == null) {
+				return false;
+			}
+			
+			// Se outro nó criou a sequência entretanto, a linha dele é que vale
+			if (!sequenceDAO.create(SEQUENCE_NAME, newestId + 1L)) {
+				sequence = sequenceDAO.find(SEQUENCE_NAME);
+				
+				if (sequence == null || sequence.isEmpty()) {
+					return false;
+				}
+			}
+		}
+		
+		isSeeded = true;
+		
+		return true;
+	}
+	
+	/**
+	 * Reserves a new block of suffixes in database.
+	 * 
+	 * @return the new block, or null if any errors occurred
+	 */
+	private Block reserveBlock() {
+		try {
+			if (!seed()) {
+				return null;
+			}
+			
+			Long firstValue = sequenceDAO.reserveBlock(SEQUENCE_NAME, BLOCK_SIZE);
+			
+			if (firstValue == null) {
+				return null;
+			}
+			
+			return new Block(firstValue, BLOCK_SIZE);
+		} catch (Exception exception) {
+			System.err.println("Catch " + exception.getClass().getName() + " in reserveBlock() in FlightCodeAllocator");
+			exception.printStackTrace();
+			
+			return null;
+		}
+	}
+	
+	/**
+	 * Range of suffixes reserved by this node.
+	 */
+	private static final class Block implements Serializable {
+		/**
+		 * <p>The serial version identifier for this class.<p>
+		 * 
+		 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+		 */
+		private static final long serialVersionUID = 1L;
+		
+		private final AtomicLong next;
+		private final long end;
+		
+		Block(Long firstValue, int size) {
+			next = new AtomicLong(firstValue);
+			end = firstValue + size;
+		}
+	}
+}
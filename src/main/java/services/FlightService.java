@@ -2,17 +2,28 @@ package services;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 
+import caches.AvailabilityCache;
+import caches.DepartureIndex;
+import caches.FlightSearchIndex;
+import caches.SeatLedger;
+import caches.SeatMap;
 import daos.FlightDAO;
-import daos.TicketDAO;
 import dtos.FlightDTO;
+import dtos.PageDTO;
+import dtos.SeatMapDTO;
 import entities.Flight;
 import mappers.FlightMapper;
+import metrics.Timed;
 
 /**
  * Class that contains all the programmatic logic regarding the flight.
@@ -20,6 +31,7 @@ import mappers.FlightMapper;
  * @author Wanderley Drumond
  *
  */
+@Timed
 @RequestScoped
 public class FlightService implements Serializable {
 
@@ -30,6 +42,16 @@ public class FlightService implements Serializable {
 	 */
 	private static final long serialVersionUID = 1L;
 	
+	/**
+	 * Maximum amount of flights of the departure window looked at by one page of available flights, full or not.
+	 */
+	static final int MAX_SCANNED_FLIGHTS = Integer.getInteger("cia-aerea.availables.max-scanned-flights", 500);
+	
+	/**
+	 * Amount of flights whose seats are counted at once while filling one page of available flights.
+	 */
+	static final int SEAT_COUNT_BATCH_SIZE = Integer.getInteger("cia-aerea.availables.seat-count-batch-size", 100);
+	
 	/**
 	 * Object that contains all methods to manipulates database regarding flights table.
 	 */
@@ -43,43 +65,86 @@ public class FlightService implements Serializable {
 	private FlightMapper flightMapper;
 	
 	/**
-	 * Object that contains all methods to manipulates database regarding tickets table.
+	 * Object that hands out the numeric suffixes of the flight codes.
+	 */
+	@Inject
+	private FlightCodeAllocator flightCodeAllocator;
+	
+	/**
+	 * Object that keeps the seat map of each flight.
+	 */
+	@Inject
+	private SeatLedger seatLedger;
+	
+	/**
+	 * Object that finds the flights by destination and code without going to the database.
 	 */
 	@Inject
-	private TicketDAO ticketDAO;
+	private FlightSearchIndex flightSearchIndex;
+	
+	/**
+	 * Object that keeps the flights that have not departed yet in order of departure.
+	 */
+	@Inject
+	private DepartureIndex departureIndex;
+	
+	/**
+	 * Object that keeps the pages of available flights already written to JSON.
+	 */
+	@Inject
+	private AvailabilityCache availabilityCache;
 
 	/**
 	 * Creates a new flight for the logged user.
 	 * 
 	 * @param flightDTO flight data to be inserted
-	 * @return the new flight DTO created
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the new flight DTO created</li>
+	 * 			<li>null, if the flight code could not be generated or the flight could not be saved</li>
+	 * 		  </ul>
 	 */
 	public FlightDTO create(FlightDTO flightDTO) {
 		Flight flight = flightMapper.toEntity(flightDTO);
 		String destination = flight.getDestination();
 		String code = generateCode(destination);
 		
+		if (code == null) {
+			return null;
+		}
+		
 		flight.setCode(code);
 		
-		flightDAO.persist(flight);
+		// Os índices só recebem o voo depois de ele estar gravado
+		if (!flightDAO.persistWithSeatMap(flight)) {
+			return null;
+		}
 		
 		flightDTO.setId(flight.getId());
 		flightDTO.setCode(flight.getCode());
 		
+		flightSearchIndex.add(flightDTO);
+		departureIndex.add(flightDTO);
+		availabilityCache.bump();
+		
 		return flightDTO;
 	}
 
 	/**
-	 * Generates a flight code: 3 initial letters from destination in upper case + "_" + last flight id;
+	 * Generates a flight code: 3 initial letters from destination in upper case + "_" + next suffix of the flight code sequence;
 	 * 
 	 * @param destination name which will be cropped the initials  
-	 * @return the generated flight code
+	 * @return the generated flight code, or null if no suffix could be reserved
 	 */
-	private String generateCode(String destination) {
+	String generateCode(String destination) {
 		String initials = getThreeFirstLetters(destination);
-		Integer lastId = flightDAO.findNewestId();
+		Long suffix = flightCodeAllocator.next();
 		
-		return initials + "_" + (lastId + 1);
+		if (suffix == null) {
+			return null;
+		}
+		
+		return initials + "_" + suffix;
 	}
 	
 	/**
@@ -105,7 +170,7 @@ public class FlightService implements Serializable {
 	 * 			<li>One single word: the first three letters</li>
 	 * 		  </ul>
 	 */
-	private String getThreeFirstLetters(String destination) {
+	String getThreeFirstLetters(String destination) {
 	    String[] words = destination.split("\\s+");
 	    StringBuilder firstLetters = new StringBuilder();
 	    // Se o nome do lugar tiver no mínimo 3 palavras
@@ -133,32 +198,98 @@ public class FlightService implements Serializable {
 	}
 
 	/**
-	 * Gets all flights which have available seats.
+	 * <p>Gets one page of flights which have not departed yet and have available seats, already written to JSON.</p>
+	 * <p>The page is computed by {@link #getAllAvailables(int, String, Long, Long)} only if it is not cached for the current inventory version,
+	 * so polling an unchanged page does not touch the seat maps nor the JSON writer.</p>
 	 * 
+	 * @param pageSize the maximum amount of flights in the page
+	 * @param cursor   the cursor of the last flight of the previous page, or null for the first page
+	 * @param from	   the beginning of the departure window, in milliseconds, inclusive, or null for now
+	 * @param to	   the end of the departure window, in milliseconds, exclusive, or null for no end
 	 * @return
 	 * 		  <ul>if requisition was:
-	 * 			<li>successful: the list of flights with available seats</li>
+	 * 			<li>successful: the page in JSON, with its ETag and next cursor</li>
 	 * 			<li>unsuccessful: null</li>
 	 * 		  </ul>
 	 */
-	public List<FlightDTO> getAllAvailables() {
+	public AvailabilityCache.Page getAvailablesPage(int pageSize, String cursor, Long from, Long to) {
+		String key = AvailabilityCache.keyOf(pageSize, cursor, from, to);
+		AvailabilityCache.Page page = availabilityCache.get(key);
+		
+		if (page != null) {
+			return page;
+		}
+		
+		// A versão é lida antes de calcular a página: uma alteração feita entretanto torna-a logo desatualizada
+		long version = availabilityCache.getVersion();
+		PageDTO<FlightDTO> flightsFound = getAllAvailables(pageSize, cursor, from, to);
+		
+		return flightsFound == null ? null : availabilityCache.put(key, version, flightsFound);
+	}
+
+	/**
+	 * <p>Gets one page of flights which have not departed yet and have available seats, in order of departure.</p>
+	 * <p>The flights are read from the departure index and their free seats are counted from their seat map, 
+	 * <code>cia-aerea.availables.seat-count-batch-size</code> flights at a time, until the page is filled. The seat maps of each batch 
+	 * that are not in memory yet are read with a single query and kept in the seat ledger, so only the first pages read after deploy cost statements.</p>
+	 * <p>At most <code>cia-aerea.availables.max-scanned-flights</code> flights are looked at. If they are not enough to fill the page, 
+	 * the page is returned as it is, possibly empty, with a cursor after the last flight looked at.</p>
+	 * 
+	 * @param pageSize the maximum amount of flights in the page
+	 * @param cursor   the cursor of the last flight of the previous page, or null for the first page
+	 * @param from	   the beginning of the departure window, in milliseconds, inclusive, or null for now
+	 * @param to	   the end of the departure window, in milliseconds, exclusive, or null for no end
+	 * @return
+	 * 		  <ul>if requisition was:
+	 * 			<li>successful: the page of flights with available seats</li>
+	 * 			<li>unsuccessful: null</li>
+	 * 		  </ul>
+	 */
+	public PageDTO<FlightDTO> getAllAvailables(int pageSize, String cursor, Long from, Long to) {
 		try {
-			List<Flight> flightsFound = flightDAO.findAll();
-			List<FlightDTO> flightsToDisplay = new ArrayList<FlightDTO>();
+			Collection<FlightDTO> flightsFound = departureIndex.findDepartingBetween(from, to, cursor);
+			
+			if (flightsFound == null) {
+				return null;
+			}
+			
+			List<FlightDTO> flightsDTO = new ArrayList<>(pageSize + 1);
+			List<FlightDTO> flightsToCount = new ArrayList<>();
+			int batchSize = Math.max(SEAT_COUNT_BATCH_SIZE, pageSize + 1);
+			int amountOfScannedFlights = 0;
+			FlightDTO lastScannedFlight = null;
+			Iterator<FlightDTO> iterator = flightsFound.iterator();
 			
-			for (Flight flightElement : flightsFound) {
+			while (iterator.hasNext() && amountOfScannedFlights < MAX_SCANNED_FLIGHTS) {
+				lastScannedFlight = iterator.next();
+				amountOfScannedFlights++;
 				
-				Long totalTicketsByFlight = ticketDAO.countOccupiedSeatsByFlightId(flightElement.getId());
-				Long availableSeats = flightElement.getTotalSeats() - totalTicketsByFlight;
+				// Um voo sem lugares definidos não tem lugares para vender
+				if (lastScannedFlight.getTotalSeats() != null) {
+					flightsToCount.add(lastScannedFlight);
+				}
+				
+				// Os lugares são contados um lote de cada vez, e o último lote quando acabam os voos a olhar
+				if (flightsToCount.size() < batchSize && iterator.hasNext() && amountOfScannedFlights < MAX_SCANNED_FLIGHTS) {
+					continue;
+				}
+				
+				Boolean isPageFull = addAvailables(flightsDTO, flightsToCount, pageSize);
+				
+				if (isPageFull == null) {
+					return null;
+				}
 				
-				if (availableSeats > 0) {
-					FlightDTO flightDTO = flightMapper.toDTO(flightElement);
-					flightDTO.setFreeSeats(availableSeats.intValue());
-					flightsToDisplay.add(flightDTO);
+				// Já há uma página cheia e mais um voo disponível: a página seguinte começa depois do último voo desta
+				if (isPageFull) {
+					flightsDTO.remove(pageSize);
+					
+					return new PageDTO<>(flightsDTO, DepartureIndex.cursorOf(flightsDTO.get(pageSize - 1)));
 				}
 			}
 			
-			return flightsToDisplay;
+			// O limite de voos olhados foi atingido: a página seguinte continua depois do último voo olhado
+			return new PageDTO<>(flightsDTO, iterator.hasNext() ? DepartureIndex.cursorOf(lastScannedFlight) : null);
 		} catch (Exception exception) {
 			System.err.println("Catch " + exception.getClass().getName() + " in getAllAvailables() in FlightService");
 			exception.printStackTrace();
@@ -166,6 +297,123 @@ public class FlightService implements Serializable {
 			return null;
 		}
 	}
+	
+	/**
+	 * Adds to the page, in their order, the given flights that have free seats, counting the seats of all of them at once.
+	 * 
+	 * @param flightsDTO the page being filled
+	 * @param flights	 the flights to be counted, emptied once they are counted
+	 * @param pageSize   the maximum amount of flights in the page
+	 * @return
+	 * 		  <ul>
+	 * 			<li>true, if the page got full and one more available flight was added after it</li>
+	 * 			<li>false, if the page is not full yet</li>
+	 * 			<li>null, if the seats could not be counted</li>
+	 * 		  </ul>
+	 */
+	private Boolean addAvailables(List<FlightDTO> flightsDTO, List<FlightDTO> flights, int pageSize) {
+		Map<Integer, Long> occupiedSeatsByFlight = seatLedger.getOccupiedSeats(flights);
+		
+		if (occupiedSeatsByFlight == null) {
+			return null;
+		}
+		
+		for (FlightDTO flightElement : flights) {
+			Long occupiedSeats = occupiedSeatsByFlight.get(flightElement.getId());
+			
+			if (occupiedSeats == null || occupiedSeats >= flightElement.getTotalSeats()) {
+				continue;
+			}
+			
+			flightsDTO.add(copyWithFreeSeats(flightElement, flightElement.getTotalSeats() - occupiedSeats.intValue()));
+			
+			if (flightsDTO.size() > pageSize) {
+				return true;
+			}
+		}
+		
+		flights.clear();
+		
+		return false;
+	}
+	
+	/**
+	 * Gets the seat map of the given flight.
+	 * 
+	 * @param idFlight flight object primary key
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the seat map, with the occupied seats encoded in Base64</li>
+	 * 			<li>null, if the flight is not found or its seat map could not be read</li>
+	 * 		  </ul>
+	 */
+	public SeatMapDTO getSeatMap(Integer idFlight) {
+		SeatMap seatMap = seatLedger.getSeatMap(idFlight);
+		
+		if (seatMap == null) {
+			return null;
+		}
+		
+		SeatMapDTO seatMapDTO = new SeatMapDTO();
+		
+		seatMapDTO.setIdFlight(idFlight);
+		seatMapDTO.setTotalSeats(seatMap.getTotalSeats());
+		seatMapDTO.setFreeSeats(seatMap.getTotalSeats() - seatMap.countOccupied());
+		seatMapDTO.setSeats(Base64.getEncoder().encodeToString(seatMap.toBytes()));
+		
+		return seatMapDTO;
+	}
+
+	/**
+	 * Finds the flights whose destination, any word of the destination or code starts with the given text, ignoring case and accents.
+	 * 
+	 * @param query the beginning of the destination or code
+	 * @param limit the maximum amount of flights found
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the flights found</li>
+	 * 			<li>null, if the search index could not be loaded</li>
+	 * 		  </ul>
+	 */
+	public List<FlightDTO> search(String query, int limit) {
+		return flightSearchIndex.search(query, limit);
+	}
+	
+	/**
+	 * Finds the flight that owns the given code, ignoring case.
+	 * 
+	 * @param code the flight code
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the flight, if it exists</li>
+	 * 			<li>a new flight DTO with id equal to -1, if the search index could not be loaded</li>
+	 * 			<li>null, if no flight has the given code</li>
+	 * 		  </ul>
+	 */
+	public FlightDTO getByCode(String code) {
+		return flightSearchIndex.findByCode(code);
+	}
+
+	/**
+	 * <p>Copies the given flight, filling its free seats.</p>
+	 * <p><code>getAllAvailables()</code> auxiliary method: the flights of the departure index are shared by all requisitions, so they are never changed.</p>
+	 * 
+	 * @param flightDTO the flight of the departure index
+	 * @param freeSeats the amount of free seats of the flight
+	 * @return the new flight DTO
+	 */
+	private FlightDTO copyWithFreeSeats(FlightDTO flightDTO, int freeSeats) {
+		FlightDTO availableFlightDTO = new FlightDTO();
+		
+		availableFlightDTO.setId(flightDTO.getId());
+		availableFlightDTO.setCode(flightDTO.getCode());
+		availableFlightDTO.setDestination(flightDTO.getDestination());
+		availableFlightDTO.setDepartTime(flightDTO.getDepartTime());
+		availableFlightDTO.setTotalSeats(flightDTO.getTotalSeats());
+		availableFlightDTO.setFreeSeats(freeSeats);
+		
+		return availableFlightDTO;
+	}
 
 	/**
 	 * Gets the flight object by the given id.
@@ -191,18 +439,17 @@ public class FlightService implements Serializable {
 	}
 
 	/**
-	 * Gets all flights, crowded and with available seats.
+	 * Gets one page of flights, crowded and with available seats.
 	 * 
-	 * @return the flights DTO list
+	 * @param pageSize the maximum amount of flights in the page
+	 * @param afterId  the primary key of the last flight of the previous page, or null for the first page
+	 * @return the flights DTO page
 	 */
-	public List<FlightDTO> getAll() {
+	public PageDTO<FlightDTO> getAll(int pageSize, Integer afterId) {
 		try {
-			List<Flight> flights = flightDAO.findAll();
-			List<FlightDTO> flightsDTO = new ArrayList<>();
-			
-			flights.forEach(flightElement -> flightsDTO.add(flightMapper.toDTO(flightElement)));
+			List<FlightDTO> flightsDTO = flightDAO.findDTOPage(pageSize, afterId);
 			
-			return flightsDTO;
+			return PageDTO.of(flightsDTO, pageSize, FlightDTO::getId);
 		} catch (Exception exception) {
 			System.err.println("Catch " + exception.getClass().getName() + " in getAll() in FlightService");
 			exception.printStackTrace();
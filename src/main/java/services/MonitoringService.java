@@ -0,0 +1,86 @@
+package services;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.enterprise.context.RequestScoped;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import metrics.Timed;
+
+/**
+ * Class that contains all the programmatic logic regarding the runtime state of the system.
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+@Timed
+@RequestScoped
+public class MonitoringService implements Serializable {
+	/**
+	 * <p>The serial version identifier for this class.<p>
+	 * 
+	 * <p>This identifier is used during deserialization to verify that the sender and receiver of a serialized object have loaded classes for that object that are compatible with respect to serialization.<p>
+	 */
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Factory of the persistence contexts, which keeps the second-level cache and its statistics.
+	 */
+	@PersistenceUnit(unitName = "backend-cia-aerea")
+	private EntityManagerFactory entityManagerFactory;
+	
+	/**
+	 * Gets the usage counters of the second-level and query caches.
+	 * 
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the amount of hits, misses and puts of each cache, their hit ratio and the cache region names</li>
+	 * 			<li>null, if the statistics could not be read</li>
+	 * 		  </ul>
+	 */
+	public Map<String, Object> getSecondLevelCacheStatistics() {
+		try {
+			Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+			Map<String, Object> cacheStatistics = new LinkedHashMap<>();
+			
+			cacheStatistics.put("statisticsEnabled", statistics.isStatisticsEnabled());
+			cacheStatistics.put("secondLevelCacheHits", statistics.getSecondLevelCacheHitCount());
+			cacheStatistics.put("secondLevelCacheMisses", statistics.getSecondLevelCacheMissCount());
+			cacheStatistics.put("secondLevelCachePuts", statistics.getSecondLevelCachePutCount());
+			cacheStatistics.put("secondLevelCacheHitRatio", 
+					hitRatio(statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount()));
+			cacheStatistics.put("queryCacheHits", statistics.getQueryCacheHitCount());
+			cacheStatistics.put("queryCacheMisses", statistics.getQueryCacheMissCount());
+			cacheStatistics.put("queryCachePuts", statistics.getQueryCachePutCount());
+			cacheStatistics.put("queryCacheHitRatio", hitRatio(statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount()));
+			cacheStatistics.put("regions", Arrays.asList(statistics.getSecondLevelCacheRegionNames()));
+			
+			return cacheStatistics;
+		} catch (Exception exception) {
+			System.err.println("Catch " + exception.getClass().getName() + " in getSecondLevelCacheStatistics() in MonitoringService");
+			exception.printStackTrace();
+			
+			return null;
+		}
+	}
+	
+	/**
+	 * Calculates the share of lookups answered by a cache.
+	 * 
+	 * @param hits	 amount of lookups answered by the cache
+	 * @param misses amount of lookups that had to go to the database
+	 * @return the hit ratio, between 0 and 1, or 0 if there were no lookups yet
+	 */
+	private double hitRatio(long hits, long misses) {
+		long lookups = hits + misses;
+		
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+}
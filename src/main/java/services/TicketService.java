@@ -1,21 +1,37 @@
 package services;
 
 import java.io.Serializable;
+import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
+import javax.persistence.Tuple;
 
+import caches.AvailabilityCache;
+import caches.SeatLedger;
 import daos.TicketDAO;
+import daos.UserDAO;
+import dtos.PageDTO;
+import dtos.TicketBatchDTO;
 import dtos.TicketDTO;
 import entities.Flight;
 import entities.Ticket;
 import entities.User;
 import enums.Role;
+import enums.TicketEventType;
+import journals.BookingJournal;
+import mappers.TicketMapper;
+import metrics.Timed;
+import security.LoggedUser;
 
 /**
  * Class that contains all the programmatic logic regarding the ticket.
@@ -23,6 +39,7 @@ import enums.Role;
  * @author Wanderley Drumond
  *
  */
+@Timed
 @RequestScoped
 public class TicketService implements Serializable {
 
@@ -33,6 +50,11 @@ public class TicketService implements Serializable {
 	 */
 	private static final long serialVersionUID = 1L;
 	
+	/**
+	 * Maximum amount of passengers in a group booking.
+	 */
+	private static final int MAX_BATCH_SIZE = Integer.getInteger("cia-aerea.ticket-batch.max-size", 100);
+	
 	/**
 	 * Object that contains all flight service methods.
 	 */
@@ -50,11 +72,42 @@ public class TicketService implements Serializable {
 	 */
 	@Inject
 	private TicketDAO ticketDAO;
+	
+	/**
+	 * Object that contains methods from <code>Ticket</code> object to switch it from Entity to DTO format.
+	 */
+	@Inject
+	private TicketMapper ticketMapper;
+	
+	/**
+	 * Object that keeps the amount of occupied seats of each flight.
+	 */
+	@Inject
+	private SeatLedger seatLedger;
+	
+	/**
+	 * Object that keeps the pages of available flights already written to JSON.
+	 */
+	@Inject
+	private AvailabilityCache availabilityCache;
+	
+	/**
+	 * Object that keeps the history of the changes made to the tickets.
+	 */
+	@Inject
+	private BookingJournal bookingJournal;
+	
+	/**
+	 * Object that contains all methods to manipulates database regarding users table.
+	 */
+	@Inject
+	private UserDAO userDAO;
 
 	/**
-	 * Creates a new ticket.
+	 * <p>Creates a new ticket.</p>
+	 * <p>The passenger can choose the seat in <code>seatNumber</code>, otherwise the free seat with the lowest number is given.</p>
 	 * 
-	 * @param token		the authorisation key of the logged user
+	 * @param buyer		the logged user, who buys the ticket
 	 * @param ticketDTO the information of the new ticket to be created
 	 * @return
 	 * 		  <ul>
@@ -64,16 +117,18 @@ public class TicketService implements Serializable {
 	 * 					<li>-1: if user who will buy the ticket not found in database</li>
 	 * 					<li>-2: if CLIENT tries to buy new a ticket for another user</li>
 	 * 					<li>-3: if user tries to buy a new ticket for a flight with no available seats</li>
+	 * 					<li>-4: if the ticket could not be saved in database</li>
+	 * 					<li>-5: if the chosen seat does not exist in the flight or is already occupied</li>
+	 * 					<li>-6: if the flight is not found in database</li>
 	 * 				</ul>
 	 * 			</li>
-	 * 			<li>the ticketDTO object, updated with its id and user id and flight id</li>
+	 * 			<li>the ticketDTO object, updated with its id, user id, flight id and seat number</li>
 	 * 		  </ul>
 	 */
-	public TicketDTO create(String token, TicketDTO ticketDTO) {
+	public TicketDTO create(LoggedUser buyer, TicketDTO ticketDTO) {
 		Ticket ticket = new Ticket();
-		Optional<Flight> flight = flightService.getById(ticketDTO.getIdFlight());
+		Optional<Flight> flight = ticketDTO.getIdFlight() == null ? Optional.empty() : flightService.getById(ticketDTO.getIdFlight());
 		Optional<User> passenger = userService.getById(ticketDTO.getIdUser());
-		Optional<User> buyer = userService.getByToken(token);
 		
 		// Se o utilizador que fará a viagem não for encontrado na base de dados
 		if (passenger.isEmpty()) {
@@ -81,7 +136,7 @@ public class TicketService implements Serializable {
 		}
 		
 		// Se o utilizador que cria/compra a passagem não for encontrado (impossible) (401)
-		if (buyer.isEmpty()) {
+		if (buyer == null) {
 			TicketDTO expendableTicketDTO = new TicketDTO();
 			
 			expendableTicketDTO.setId(-1);
@@ -90,7 +145,7 @@ public class TicketService implements Serializable {
 		}
 		
 		// Se o utilizador que compra a passagem for um cliente e tentar comprá-la para outro utilizador (403)
-		if (buyer.get().getRole().equals(Role.CLIENT) && passenger.get().getId() != buyer.get().getId()) {
+		if (buyer.getRole().equals(Role.CLIENT) && !passenger.get().getId().equals(buyer.getUserId())) {
 			TicketDTO expendableTicketDTO = new TicketDTO();
 			
 			expendableTicketDTO.setId(-2);
@@ -98,81 +153,208 @@ public class TicketService implements Serializable {
 			return expendableTicketDTO;
 		}
 		
-		Long occupiedSeats = getOccupiedSeatsByFlightId(flight.get().getId());
+		// Se o voo não for encontrado (404)
+		if (flight == null || flight.isEmpty()) {
+			TicketDTO expendableTicketDTO = new TicketDTO();
+			
+			expendableTicketDTO.setId(-6);
+			
+			return expendableTicketDTO;
+		}
+		
+		// Ocupa o lugar em memória antes de gravar o ticket, para que dois pedidos simultâneos não ocupem o mesmo lugar
+		int seatNumber = seatLedger.claim(flight.get().getId(), ticketDTO.getSeatNumber());
+		
+		if (seatNumber == 0) {
+			TicketDTO expendableTicketDTO = new TicketDTO();
+			
+			expendableTicketDTO.setId(ticketDTO.getSeatNumber() == null ? -3 : -5);
+			
+			return expendableTicketDTO;
+		}
 		
-		if (flight.get().getTotalSeats() <= occupiedSeats) {
+		if (seatNumber < 0) {
 			TicketDTO expendableTicketDTO = new TicketDTO();
 			
-			expendableTicketDTO.setId(-3);
+			expendableTicketDTO.setId(-4);
 			
 			return expendableTicketDTO;
 		}
 		
 		ticket.setFlightDetails(flight.get());
 		ticket.setPassenger(passenger.get());
+		ticket.setSeatNumber(seatNumber);
 		ticket.setIsCanceled(false);
 		ticket.setIsDeleted(false);
 		
-		ticketDAO.persist(ticket);
+		boolean isPersisted = false;
+		try {
+			isPersisted = ticketDAO.persistAll(Collections.singletonList(ticket));
+		} finally {
+			// Se a transação falhou, descarta o mapa em memória para que o lugar volte a ser lido da base de dados
+			if (!isPersisted) {
+				seatLedger.invalidate(flight.get().getId());
+			}
+			
+			// O mapa de lugares mudou, quer o ticket tenha sido gravado quer não
+			availabilityCache.bump();
+		}
+		
+		if (!isPersisted) {
+			TicketDTO expendableTicketDTO = new TicketDTO();
+			
+			expendableTicketDTO.setId(-4);
+			
+			return expendableTicketDTO;
+		}
+		
+		bookingJournal.append(TicketEventType.CREATED, ticket.getId(), flight.get().getId(), passenger.get().getId(), seatNumber);
 		
 		ticketDTO.setId(ticket.getId());
 		ticketDTO.setIdFlight(flight.get().getId());
 		ticketDTO.setIdUser(passenger.get().getId());
+		ticketDTO.setSeatNumber(seatNumber);
 		
 		return ticketDTO;
 	}
 	
 	/**
-	 * Gets the amount of occupied seats by flight according to the given id.
+	 * <p>Creates one ticket in the given flight for each given passenger.</p>
+	 * <p>The passengers are validated in a single query and all seats are claimed at once, 
+	 * then all tickets are saved in a single transaction: either all tickets are created or none is.</p>
 	 * 
-	 * @param idFlight primary key of the flight to be checked
+	 * @param buyer			 the logged user, who buys the tickets
+	 * @param ticketBatchDTO the flight and the passengers of the group booking
 	 * @return
-	 * 		  <ul> If the request was:
-	 * 			<li>Well succeeded: the amount of the occupied seats</li>
-	 * 			<li>Bad succeeded: null</li>
+	 * 		  <ul>
+	 * 			<li>null, if any of the passengers is not found in database</li>
+	 * 			<li>a new ticketBatchDTO object with it's idFlight equal to: 
+	 * 				<ul>
+	 * 					<li>-1: if user who will buy the tickets not found in database</li>
+	 * 					<li>-2: if CLIENT tries to buy tickets for other users</li>
+	 * 					<li>-3: if the flight has not enough available seats for all passengers</li>
+	 * 					<li>-4: if the tickets could not be saved in database</li>
+	 * 					<li>-5: if the flight is not found in database</li>
+	 * 					<li>-6: if the passengers list is empty, too long or has repeated passengers</li>
+	 * 				</ul>
+	 * 			</li>
+	 * 			<li>the ticketBatchDTO object, with the created tickets</li>
 	 * 		  </ul>
 	 */
-	public Long getOccupiedSeatsByFlightId(Integer idFlight) {
+	public TicketBatchDTO createBatch(LoggedUser buyer, TicketBatchDTO ticketBatchDTO) {
+		TicketBatchDTO expendableTicketBatchDTO = new TicketBatchDTO();
+		List<Integer> idUsers = ticketBatchDTO.getIdUsers();
+		Set<Integer> distinctIdUsers = idUsers == null ? Collections.emptySet() : new HashSet<>(idUsers);
+		
+		// Se a lista de passageiros estiver vazia, for grande demais ou tiver passageiros repetidos
+		if (distinctIdUsers.isEmpty() || distinctIdUsers.size() > MAX_BATCH_SIZE || distinctIdUsers.size() != idUsers.size() 
+				|| distinctIdUsers.contains(null)) {
+			expendableTicketBatchDTO.setIdFlight(-6);
+			return expendableTicketBatchDTO;
+		}
+		
+		// Se o utilizador que cria/compra as passagens não for encontrado (401)
+		if (buyer == null) {
+			expendableTicketBatchDTO.setIdFlight(-1);
+			return expendableTicketBatchDTO;
+		}
+		
+		// Se o utilizador que compra as passagens for um cliente e tentar comprá-las para outros utilizadores (403)
+		if (buyer.getRole().equals(Role.CLIENT) 
+				&& (distinctIdUsers.size() != 1 || !distinctIdUsers.contains(buyer.getUserId()))) {
+			expendableTicketBatchDTO.setIdFlight(-2);
+			return expendableTicketBatchDTO;
+		}
+		
+		Optional<Flight> flight = ticketBatchDTO.getIdFlight() == null ? Optional.empty() : flightService.getById(ticketBatchDTO.getIdFlight());
+		
+		// Se o voo não for encontrado
+		if (flight == null || flight.isEmpty()) {
+			expendableTicketBatchDTO.setIdFlight(-5);
+			return expendableTicketBatchDTO;
+		}
+		
+		// Todos os passageiros numa só query
+		List<User> passengers = userDAO.findAllNonDeletedByIds(distinctIdUsers);
+		
+		if (passengers == null || passengers.size() != distinctIdUsers.size()) {
+			return null;
+		}
+		
+		int amountOfSeats = passengers.size();
+		
+		// Ocupa todos os lugares de uma vez, ou nenhum
+		int[] seatNumbers = seatLedger.claim(flight.get().getId(), amountOfSeats);
+		
+		if (seatNumbers == null) {
+			expendableTicketBatchDTO.setIdFlight(-3);
+			return expendableTicketBatchDTO;
+		}
+		
+		List<Ticket> tickets = new ArrayList<>(amountOfSeats);
+		for (int index = 0; index < amountOfSeats; index++) {
+			Ticket ticket = new Ticket();
+			
+			ticket.setFlightDetails(flight.get());
+			ticket.setPassenger(passengers.get(index));
+			ticket.setSeatNumber(seatNumbers[index]);
+			ticket.setIsCanceled(false);
+			ticket.setIsDeleted(false);
+			
+			tickets.add(ticket);
+		}
+		
+		boolean isPersisted = false;
 		try {
-			return ticketDAO.countOccupiedSeatsByFlightId(idFlight);
+			isPersisted = ticketDAO.persistAll(tickets);
 		} catch (Exception exception) {
-			System.err.println("Catch " + exception.getClass().getName() + " countOccupiedSeatsByFlightId() in TicketService");
+			System.err.println("Catch " + exception.getClass().getName() + " createBatch() in TicketService");
 			exception.printStackTrace();
+		} finally {
+			// Se a transação falhou, descarta o mapa em memória para que os lugares voltem a ser lidos da base de dados
+			if (!isPersisted) {
+				seatLedger.invalidate(flight.get().getId());
+			}
 			
-			return null;
+			// O mapa de lugares mudou, quer os tickets tenham sido gravados quer não
+			availabilityCache.bump();
+		}
+		
+		if (!isPersisted) {
+			expendableTicketBatchDTO.setIdFlight(-4);
+			return expendableTicketBatchDTO;
 		}
+		
+		List<TicketDTO> ticketsDTO = new ArrayList<>(amountOfSeats);
+		tickets.forEach(ticketElement -> {
+			bookingJournal.append(TicketEventType.CREATED, ticketElement.getId(), flight.get().getId(), ticketElement.getPassenger().getId(),
+					ticketElement.getSeatNumber());
+			ticketsDTO.add(ticketMapper.toDTO(ticketElement));
+		});
+		
+		ticketBatchDTO.setIdFlight(flight.get().getId());
+		ticketBatchDTO.setTickets(ticketsDTO);
+		
+		return ticketBatchDTO;
 	}
-
+	
 	/**
-	 * Gets the list of tickets for the given user id.
+	 * Gets one page of tickets for the given user id.
 	 * 
-	 * @param userId primary key of the user that owns the ticket
+	 * @param userId   primary key of the user that owns the ticket
+	 * @param pageSize the maximum amount of tickets in the page
+	 * @param afterId  the primary key of the last ticket of the previous page, or null for the first page
 	 * @return
 	 * 		  <ul> If the request was:
-	 * 			<li>Well succeeded: the list of tickets DTO</li>
+	 * 			<li>Well succeeded: the page of tickets DTO</li>
 	 * 			<li>Bad succeeded: null</li>
 	 * 		  </ul>
 	 */
-	public List<TicketDTO> getByUserId(int userId) {
+	public PageDTO<TicketDTO> getByUserId(int userId, int pageSize, Integer afterId) {
 		try {
-			List<Ticket> ticketsFound = ticketDAO.findTicketsByUserId(userId);
-			TicketDTO ticketDTO = new TicketDTO();
-			List<TicketDTO> ticketsDTO = new ArrayList<>();
+			List<TicketDTO> ticketsDTO = ticketDAO.findTicketsByUserId(userId, pageSize, afterId);
 			
-			ticketsFound.forEach(ticketElement -> {
-				ticketDTO.setId(ticketElement.getId());
-				ticketDTO.setIdFlight(ticketElement.getFlightDetails().getId());
-				ticketDTO.setIdUser(ticketElement.getPassenger().getId());
-				ticketDTO.setFlightCode(ticketElement.getFlightDetails().getCode());
-				ticketDTO.setUserName(ticketElement.getPassenger().getName());
-				ticketDTO.setFlightDestination(ticketElement.getFlightDetails().getDestination());
-				ticketDTO.setFlightDepartTime(ticketElement.getFlightDetails().getDepartTime().toString());
-				
-				ticketsDTO.add(ticketDTO);
-			});
-			
-			
-			return ticketsDTO;
+			return PageDTO.of(ticketsDTO, pageSize, TicketDTO::getId);
 		} catch (Exception exception) {
 			System.err.println("Catch " + exception.getClass().getName() + " getByUserId() in TicketService");
 			exception.printStackTrace();
@@ -184,8 +366,8 @@ public class TicketService implements Serializable {
 	/**
 	 * Sets the attribute isCanceled in <code>Ticket</code> object in database to true.
 	 * 
-	 * @param token		the authorisation key of the logged user
-	 * @param ticketId	the primary key of the ticket
+	 * @param loggedUser the logged user, who cancels the ticket
+	 * @param ticketId	 the primary key of the ticket
 	 * @return
 	 * 		  <ul>
 	 * 			<li>A new <code>TicketDTO</code> with id:</li>
@@ -198,22 +380,24 @@ public class TicketService implements Serializable {
 	 * 				<li>A <code>TicketDTO</code> updated if everything goes well</li>
 	 * 		  </ul>
 	 */
-	public TicketDTO cancelById(String token, int ticketId) {
-		Optional<Ticket> optionalTicket = ticketDAO.find(ticketId);
-		Flight flight = optionalTicket.get().getFlightDetails();
-		User passenger = optionalTicket.get().getPassenger();
-		Optional<User> loggedUser = userService.getByToken(token);
+	public TicketDTO cancelById(LoggedUser loggedUser, int ticketId) {
+		Optional<Tuple> optionalTicket = ticketDAO.findCancellationDetails(ticketId);
 		TicketDTO ticketDTO = new TicketDTO();
-		LocalDateTime oneDayEarlierDepart = flight.getDepartTime().toLocalDateTime().minusDays(1);
 		
 		// Se não encontrar o ticket com o id fornecido
-		if (optionalTicket.isEmpty()) {
+		if (optionalTicket == null || optionalTicket.isEmpty()) {
 			ticketDTO.setId(-1);
 			return ticketDTO;
 		}
 		
+		Tuple ticket = optionalTicket.get();
+		Integer idFlight = ticket.get("idFlight", Integer.class);
+		Integer idUser = ticket.get("idUser", Integer.class);
+		Timestamp flightDepartTime = ticket.get("flightDepartTime", Timestamp.class);
+		LocalDateTime oneDayEarlierDepart = flightDepartTime.toLocalDateTime().minusDays(1);
+		
 		// Se o ticket já estiver cancelado
-		if (optionalTicket.get().getIsCanceled().equals(true)) {
+		if (ticket.get("isCanceled", Boolean.class).equals(true)) {
 			ticketDTO.setId(-2);
 			return ticketDTO;
 		}
@@ -225,58 +409,57 @@ public class TicketService implements Serializable {
 		}
 		
 		// Se o user for client e tentar cancelar de outro user
-		if (loggedUser.get().getRole().equals(Role.CLIENT) && loggedUser.get().getId() != passenger.getId()) {
+		if (loggedUser.getRole().equals(Role.CLIENT) && !loggedUser.getUserId().equals(idUser)) {
 			ticketDTO.setId(-4);
 			return ticketDTO;
 		}
 		
-		optionalTicket.get().setIsCanceled(true);
-		ticketDAO.merge(optionalTicket.get());
+		Integer seatNumber = ticket.get("seatNumber", Integer.class);
+		Integer amountOfRowsUpdated = ticketDAO.cancel(ticket.get("id", Integer.class), idFlight, seatNumber);
 		
-		ticketDTO.setId(optionalTicket.get().getId());
-		ticketDTO.setIdFlight(flight.getId());
-		ticketDTO.setFlightCode(flight.getCode());
-		ticketDTO.setFlightDestination(flight.getDestination());
-		ticketDTO.setFlightDepartTime(new SimpleDateFormat("dd/MM/yyyy HH:mm:ss").format(flight.getDepartTime()));
-		ticketDTO.setIdUser(passenger.getId());
-		ticketDTO.setUserName(passenger.getName());
+		// Se outro pedido cancelou o ticket entretanto
+		if (amountOfRowsUpdated == null || amountOfRowsUpdated == 0) {
+			ticketDTO.setId(-2);
+			return ticketDTO;
+		}
+		
+		seatLedger.release(idFlight, seatNumber);
+		availabilityCache.bump();
+		bookingJournal.append(TicketEventType.CANCELED, ticket.get("id", Integer.class), idFlight, idUser, seatNumber);
+		
+		ticketDTO.setId(ticket.get("id", Integer.class));
+		ticketDTO.setIdFlight(idFlight);
+		ticketDTO.setSeatNumber(seatNumber);
+		ticketDTO.setFlightCode(ticket.get("flightCode", String.class));
+		ticketDTO.setFlightDestination(ticket.get("flightDestination", String.class));
+		ticketDTO.setFlightDepartTime(new SimpleDateFormat("dd/MM/yyyy HH:mm:ss").format(flightDepartTime));
+		ticketDTO.setIdUser(idUser);
+		ticketDTO.setUserName(ticket.get("userName", String.class));
 		
 		return ticketDTO;
 	}
 
 	/**
-	 * Gets the amount of active tickets that have not yet taken place for the given user id.
+	 * Gets which of the given users have active tickets that have not yet taken place.
 	 * 
-	 * @param userId primary key of the user to have their tickets count
+	 * @param userIds primary keys of the users to be checked
 	 * @return
 	 * 		  <ul>
-	 * 			<li>the amount tickets, if the requisition was successfully</li>
+	 * 			<li>the primary keys of the users with future flights, if the requisition was successfully</li>
 	 * 			<li>null, if any errors occurred</li>
 	 * 		  </ul>
 	 */
-	public Integer getAllNonDeletedWithFutureFlightByUserId(Integer userId) {
-		try {
-			return ticketDAO.countAllNonDeletedWithFutureFlightByUserId(userId);
-		} catch (Exception exception) {
-			System.err.println("Catch " + exception.getClass().getName() + " getAllNonDeletedWithFutureFlightByUserId() in TicketService");
-			exception.printStackTrace();
-			return null;
-		}
+	public List<Integer> getPassengerIdsWithFutureFlight(Collection<Integer> userIds) {
+		return ticketDAO.findPassengerIdsWithFutureFlight(userIds);
 	}
 
 	/**
-	 * Soft delete all tickets of the given user id.
+	 * Records in the journal, one event per ticket, the tickets soft deleted along with their passengers by <code>UserDAO.softDeleteWithTicketsByIds()</code>.
 	 * 
-	 * @param userId primary key of the user that owns the tickets to be soft deleted
-	 * @return the amount of rows updated in database
+	 * @param ticketsDTO the tickets deleted, with their flight, passenger and seat
 	 */
-	public Integer softDeleteByUserId(Integer userId) {
-		List<Ticket> ticketsToDelete = ticketDAO.findTicketsByUserId(userId);
-		ticketsToDelete.forEach(ticketElement -> {
-			ticketElement.setIsDeleted(true);
-			ticketDAO.merge(ticketElement);
-		});
-		
-		return ticketsToDelete.size();
+	public void recordSoftDeleted(Collection<TicketDTO> ticketsDTO) {
+		ticketsDTO.forEach(ticketElement -> bookingJournal.append(TicketEventType.DELETED, ticketElement.getId(), ticketElement.getIdFlight(), 
+				ticketElement.getIdUser(), ticketElement.getSeatNumber()));
 	}
-}
\ No newline at end of file
+}
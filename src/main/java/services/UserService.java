@@ -1,20 +1,29 @@
 package services;
 
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 
+import caches.SessionCache;
 import daos.UserDAO;
+import dtos.BulkDeleteDTO;
+import dtos.PageDTO;
 import dtos.UserDTO;
 import entities.User;
 import enums.Role;
 import mappers.UserMapper;
+import metrics.Timed;
+import security.LoggedUser;
+import security.SessionTokens;
 
 /**
  * Class that contains all the programmatic logic regarding the user.
@@ -22,6 +31,7 @@ import mappers.UserMapper;
  * @author Wanderley Drumond
  *
  */
+@Timed
 @RequestScoped
 public class UserService implements Serializable {
 
@@ -50,6 +60,18 @@ public class UserService implements Serializable {
 	 */
 	@Inject
 	private TicketService ticketService;
+	
+	/**
+	 * Object that keeps the logged users already resolved by their token.
+	 */
+	@Inject
+	private SessionCache sessionCache;
+	
+	/**
+	 * Object that issues and verifies the signed session tokens.
+	 */
+	@Inject
+	private SessionTokens sessionTokens;
 
 	/**
 	 * Registers a new user into the system.
@@ -78,41 +100,6 @@ public class UserService implements Serializable {
 		}
 	}
 
-	/**
-	 * Validates the role of the user with the given token.
-	 *
-	 * @param token logged user identifier key
-	 * @return the role of the user with the given token, one of the following:
-	 * 		<ul>
-	 *			<li><strong>EMPLOYEE</strong> if the user is an employee</li>
-	 *			<li><strong>ADMINISTRATOR</strong> if the user is an administrator</li>
-	 *			<li><strong>CLIENT</strong> if the user is a client</li>
-	 *			<li><strong>null</strong> if the user with the given token doesn't exist</li>
-	 * 		</ul>
-	 */
-	public Role validateLoggedUserRole(String token) {
-		try {
-			Optional<User> user = userDAO.findByToken(token);
-
-			if (user.isPresent()) {
-				if (user.get().getRole().equals(Role.EMPLOYEE)) {
-					return Role.EMPLOYEE;
-				} else if (user.get().getRole().equals(Role.ADMINISTRATOR)) {
-					return Role.ADMINISTRATOR;
-				}
-
-				return Role.CLIENT;
-			}
-
-			return null;
-		} catch (Exception exception) {
-			System.err.println("Catch " + exception.getClass().getName() + " in validateLoggedUserRole() in UserService");
-			exception.printStackTrace();
-
-			return null;
-		}
-	}
-
 	/**
 	 * Saves another user in the database.
 	 * 
@@ -169,8 +156,9 @@ public class UserService implements Serializable {
 	 * 			<li>null, if error occurred, preventing the user from being updated</li>
 	 * 		  </ul>
 	 */
-	public UserDTO update(User loggedUser, User userToBeUpdated, UserDTO userDTO) {
+	public UserDTO update(LoggedUser loggedUser, User userToBeUpdated, UserDTO userDTO) {
 		try {
+			boolean isRoleChanged = false;
 			userToBeUpdated.setId(userDTO.getId());
 			userToBeUpdated.setName(userDTO.getName());
 			
@@ -180,11 +168,18 @@ public class UserService implements Serializable {
 			}
 			
 			if (loggedUser.getRole().equals(Role.ADMINISTRATOR)) {
+				isRoleChanged = userDTO.getRole() != userToBeUpdated.getRole();
 				userToBeUpdated.setRole(userDTO.getRole());
 			}
 			
 			userDAO.merge(userToBeUpdated);
 			
+			// Se o role mudou, as sessões em memória deste utilizador deixam de ser válidas depois de gravado
+			if (isRoleChanged) {
+				sessionCache.invalidateUser(userToBeUpdated.getId());
+				sessionTokens.revokeUser(userToBeUpdated.getId());
+			}
+			
 			return userMapper.toDTO(userToBeUpdated);
 		} catch (Exception exception) {
 			System.err.println("Catch " + exception.getClass().getName() + " in update() in UserService");
@@ -195,7 +190,8 @@ public class UserService implements Serializable {
 	}
 
 	/**
-	 * Signs in a user into the system.
+	 * <p>Signs in a user into the system.</p>
+	 * <p>With signed session tokens, the token is signed in memory and the users table is only read, never written.</p>
 	 * 
 	 * @param username the username of the user
 	 * @param password the password of the user
@@ -213,8 +209,13 @@ public class UserService implements Serializable {
 				return null;
 			}
 
+			if (sessionTokens.isEnabled()) {
+				return sessionTokens.issue(user.getId(), user.getRole());
+			}
+
 			user.setToken(UUID.randomUUID().toString());
 			userDAO.merge(user);
+			sessionCache.invalidateUser(user.getId()); // O token antigo deixou de ser válido
 
 			return user.getToken();
 		} catch (Exception exception) {
@@ -238,7 +239,12 @@ public class UserService implements Serializable {
 	 */
 	public Boolean signOut(String token) {
 		try {
+			if (sessionTokens.isEnabled() && sessionTokens.isSignedToken(token)) {
+				return sessionTokens.revoke(token);
+			}
+			
 			Integer amountOfRowsUpdated = userDAO.signOut(token);
+			sessionCache.invalidate(token); // Só depois de gravado, para que uma procura concorrente não volte a guardar a sessão
 
 			switch (amountOfRowsUpdated) {
 			case 0:
@@ -290,56 +296,50 @@ public class UserService implements Serializable {
 	}
 
 	/**
-	 * Gets the user that owns the given token.
-	 * 
-	 * @param token logged user identifier key
-	 * @return
-	 */
-	public Optional<User> getByToken(String token) {
-		return userDAO.findByToken(token);
-	}
-	
-	/**
-	 * Gets the role of the logged user
+	 * <p>Gets the id and role of the user that owns the given token.</p>
+	 * <p>Does not touch the database when the session is already cached or the token is a signed one.</p>
 	 * 
 	 * @param token logged user identifier key
 	 * @return
-	 * 		  <ul>
-	 * 			<li>null, if:</li>
-	 * 				<ul>
-	 * 					<li>logged user was not found in database</li>
-	 * 					<li>any error occurs in database</li>
-	 * 				</ul>
-	 * 			<li>Role of the logged user</li>
+	 * 		  <ul> An Optional object which has inside:
+	 * 			<li>the session of the logged user, if the token belongs to a non-deleted user</li>
+	 * 			<li>empty, if the token was not found or any error occurs in database</li>
 	 * 		  </ul>
 	 */
-	public Role getRoleLoggedUser(String token) {
-		try {
-			Optional<User> optionalUser = getByToken(token);
-			if (optionalUser.isEmpty()) {
-				return null;
-			}
-			
-			return optionalUser.get().getRole();
-		} catch (Exception exception) {
-			System.err.println("Catch " + exception.getClass().getName() + " in getRoleLoggedUser() in UserService");
-			exception.printStackTrace();
-			return null;
+	public Optional<SessionCache.Session> getSessionByToken(String token) {
+		// Os tokens assinados são verificados em memória; os restantes continuam a ser procurados na base de dados
+		if (sessionTokens.isEnabled() && sessionTokens.isSignedToken(token)) {
+			return Optional.ofNullable(sessionTokens.verify(token));
+		}
+		
+		SessionCache.Session session = sessionCache.get(token);
+		
+		if (session != null) {
+			return Optional.of(session);
+		}
+		
+		long lookupStamp = sessionCache.beginLookup();
+		Optional<User> optionalUser = userDAO.findByToken(token);
+		
+		if (optionalUser == null || optionalUser.isEmpty()) {
+			return Optional.empty();
 		}
+		
+		return Optional.ofNullable(sessionCache.put(token, optionalUser.get().getId(), optionalUser.get().getRole(), lookupStamp));
 	}
-
+	
 	/**
-	 * Gets all users from system without restrictions.
+	 * Gets one page of users from system without restrictions.
 	 * 
-	 * @return A list of all users of the system
+	 * @param pageSize the maximum amount of users in the page
+	 * @param afterId  the primary key of the last user of the previous page, or null for the first page
+	 * @return A page of the users of the system
 	 */
-	public List<UserDTO> getAll() {
+	public PageDTO<UserDTO> getAll(int pageSize, Integer afterId) {
 		try {
-			List<User> users = userDAO.findAll();
-			List<UserDTO> usersDTO = new ArrayList<>();
-			usersDTO = users.stream().map(userMapper::toDTO).collect(Collectors.toList());
+			List<UserDTO> usersDTO = userDAO.findDTOPage(pageSize, afterId);
 			
-			return usersDTO;
+			return PageDTO.of(usersDTO, pageSize, UserDTO::getId);
 		} catch (Exception exception) {
 			System.err.println("Catch " + exception.getClass().getName() + " in getAll() in UserService");
 			exception.printStackTrace();
@@ -349,25 +349,27 @@ public class UserService implements Serializable {
 
 	
 	/**
-	 * Gets all users non deleted by the given role.
+	 * Gets one page of users non deleted by the given role.
 	 * 
-	 * @param role from the user that is doing the search
+	 * @param role	   from the user that is doing the search
+	 * @param pageSize the maximum amount of users in the page
+	 * @param afterId  the primary key of the last user of the previous page, or null for the first page
 	 * @return
 	 * 		  <ul>
 	 * 			If the user role is:
 	 * 			<li><strong>CLIENT</strong>, null</li>
-	 * 			<li><strong>EMPLOYEE</strong>, the list of all non-deleted clients</li>
-	 * 			<li><strong>ADMINISTRATOR</strong>, the list of all non-deleted users</li>
+	 * 			<li><strong>EMPLOYEE</strong>, the page of non-deleted clients</li>
+	 * 			<li><strong>ADMINISTRATOR</strong>, the page of non-deleted users</li>
 	 * 		  </ul>
 	 */
-	public List<UserDTO> getAllNonDeletedByRole(Role role) {
-		List<User> users;
-		List<UserDTO> usersDTO = null;
+	public PageDTO<UserDTO> getAllNonDeletedByRole(Role role, int pageSize, Integer afterId) {
+		List<UserDTO> users;
+		PageDTO<UserDTO> usersDTO = null;
 		try {
 			// Se o usuário logado for um empregado, ele só pode ver lista de clientes
 			if (role.equals(Role.EMPLOYEE)) {
-				users = userDAO.findAllNonDeletedByRole(Role.CLIENT);
-				usersDTO = users.stream().map(userMapper::toDTO).collect(Collectors.toList());
+				users = userDAO.findAllNonDeletedByRole(Role.CLIENT, pageSize, afterId);
+				usersDTO = PageDTO.of(users, pageSize, UserDTO::getId);
 			}
 			
 			// Se o usuário logado for um cliente, ele não tem nada
@@ -390,32 +392,103 @@ public class UserService implements Serializable {
 	 * @return
 	 * 		  <ul>
 	 * 			<li>new empty <code>UserDTO</code> if amount of non cancelled tickets with date in the future was found</li>
+	 * 			<li>new <code>UserDTO</code> with id equal to -1, if the user was not found or was already deleted</li>
 	 * 			<li><code>UserDTO</code> with all updated data if the user was successfully soft deleted</li>
 	 * 			<li>null, if occurs any errors in database</li>
 	 * 		  </ul>
 	 */
 	public UserDTO softDelete(User user) {
 		try {
-			Integer amountNonCancelledTicketsWithFutureFlight = ticketService.getAllNonDeletedWithFutureFlightByUserId(user.getId());
+			BulkDeleteDTO bulkDeleteDTO = softDeleteAll(Collections.singletonList(user.getId()));
+			
+			if (bulkDeleteDTO == null) {
+				return null;
+			}
+			
+			// Apagado entretanto por outra requisição, ou já apagado antes
+			if (bulkDeleteDTO.getNotFoundIds().contains(user.getId())) {
+				UserDTO userNotFoundDTO = new UserDTO();
+				userNotFoundDTO.setId(-1);
+				
+				return userNotFoundDTO;
+			}
 			
-			if (amountNonCancelledTicketsWithFutureFlight > 0) {
+			if (!bulkDeleteDTO.getDeletedIds().contains(user.getId())) {
 				return new UserDTO();
 			}
 			
 			user.setIsDeleted(true);
 			
-			userDAO.merge(user);
+			return userMapper.toDTO(user);
+		} catch (Exception exception) {
+			System.err.println("Catch " + exception.getClass().getName() + " in softDelete() in UserService");
+			exception.printStackTrace();
+			
+			return null;
+		}
+	}
+	
+	/**
+	 * <p>Soft deletes the given users and their tickets, except the ones with non cancelled tickets with date in the future.</p>
+	 * <p>Runs the same amount of statements whatever the amount of users and tickets: 
+	 * one to find the users, one to find the ones with future flights, one to delete the users, one to read their tickets and one to delete them.
+	 * The users and their tickets are deleted in a single transaction.</p>
+	 * 
+	 * @param ids primary keys of the users to be deleted
+	 * @return
+	 * 		  <ul>
+	 * 			<li>the ids of the users deleted, of the ones with future flights and of the ones not found or already deleted</li>
+	 * 			<li>null, if occurs any errors in database</li>
+	 * 		  </ul>
+	 */
+	public BulkDeleteDTO softDeleteAll(Collection<Integer> ids) {
+		try {
+			BulkDeleteDTO bulkDeleteDTO = new BulkDeleteDTO();
+			Set<Integer> distinctIds = new LinkedHashSet<>(ids);
+			distinctIds.remove(null);
+			
+			if (distinctIds.isEmpty()) {
+				return bulkDeleteDTO;
+			}
+			
+			List<User> usersFound = userDAO.findAllNonDeletedByIds(distinctIds);
+			List<Integer> idsWithFutureFlight = ticketService.getPassengerIdsWithFutureFlight(distinctIds);
+			
+			if (usersFound == null || idsWithFutureFlight == null) {
+				return null;
+			}
+			
+			Set<Integer> idsToDelete = usersFound.stream().map(User::getId).collect(Collectors.toCollection(LinkedHashSet::new));
 			
-			UserDTO userDTO = userMapper.toDTO(user);
+			distinctIds.stream().filter(idElement -> !idsToDelete.contains(idElement)).forEach(bulkDeleteDTO.getNotFoundIds()::add);
+			idsToDelete.removeAll(idsWithFutureFlight);
+			usersFound.stream().map(User::getId).filter(idsWithFutureFlight::contains).forEach(bulkDeleteDTO.getWithFutureFlightIds()::add);
 			
-			ticketService.softDeleteByUserId(user.getId());
+			if (idsToDelete.isEmpty()) {
+				return bulkDeleteDTO;
+			}
+			
+			// Os utilizadores e os seus tickets são apagados na mesma transação
+			BulkDeleteDTO deletedDTO = userDAO.softDeleteWithTicketsByIds(idsToDelete);
 			
-			return userDTO;
+			if (deletedDTO == null || deletedDTO.getAmountOfTicketsDeleted() == null) {
+				return null;
+			}
+			
+			deletedDTO.getDeletedIds().forEach(sessionCache::invalidateUser);
+			deletedDTO.getDeletedIds().forEach(sessionTokens::revokeUser);
+			ticketService.recordSoftDeleted(deletedDTO.getDeletedTickets());
+			
+			bulkDeleteDTO.getDeletedIds().addAll(deletedDTO.getDeletedIds());
+			bulkDeleteDTO.getWithFutureFlightIds().addAll(deletedDTO.getWithFutureFlightIds());
+			bulkDeleteDTO.setAmountOfTicketsDeleted(deletedDTO.getAmountOfTicketsDeleted());
+			
+			return bulkDeleteDTO;
 		} catch (Exception exception) {
-			System.err.println("Catch " + exception.getClass().getName() + " in softDelete() in UserService");
+			System.err.println("Catch " + exception.getClass().getName() + " in softDeleteAll() in UserService");
 			exception.printStackTrace();
 			
 			return null;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,267 @@
+package startup;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.inject.Inject;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+
+import caches.DepartureIndex;
+import caches.FlightSearchIndex;
+import caches.SeatLedger;
+import daos.FlightDAO;
+import daos.GenericDAO;
+import dtos.BulkDeleteDTO;
+import dtos.FlightDTO;
+import dtos.PageDTO;
+import dtos.SeatMapDTO;
+import dtos.TicketBatchDTO;
+import dtos.TicketDTO;
+import dtos.UserDTO;
+import enums.Role;
+import services.FlightCodeAllocator;
+
+/**
+ * <p>Warm-up stage run once after each deploy, before the application is reported as ready.</p>
+ * <p>Creates the flight code sequence if it does not exist yet, loads the flight indexes and the seat maps of the upcoming flights, which reads those flights into the second-level cache,
+ * fills the query cache of the first page of the flights listing and writes each DTO to JSON a few times so the classes and the code paths
+ * of the JSON writer are loaded and compiled. The first requisitions then find everything in memory.</p>
+ * <p>The stage runs in a timer, away from the deployment thread, and never fails the deploy: what could not be loaded is loaded lazily later.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+@Startup
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class WarmUp {
+	/**
+	 * Maximum amount of upcoming flights whose seat maps are loaded.
+	 */
+	private static final int MAX_FLIGHTS = Integer.getInteger("cia-aerea.warm-up.max-flights", 10000);
+
+	/**
+	 * Amount of times each DTO is written to JSON.
+	 */
+	private static final int JSON_ROUNDS = Integer.getInteger("cia-aerea.warm-up.json-rounds", 200);
+
+	/**
+	 * Object that contains all methods to manipulates database regarding flights table.
+	 */
+	@Inject
+	private FlightDAO flightDAO;
+
+	/**
+	 * Object that keeps the flights that have not departed yet ordered by departure.
+	 */
+	@Inject
+	private DepartureIndex departureIndex;
+
+	/**
+	 * Object that keeps the flights indexed by destination and code.
+	 */
+	@Inject
+	private FlightSearchIndex flightSearchIndex;
+
+	/**
+	 * Object that keeps the seat map of each flight.
+	 */
+	@Inject
+	private SeatLedger seatLedger;
+
+	/**
+	 * Object that hands out the numeric suffixes of the flight codes.
+	 */
+	@Inject
+	private FlightCodeAllocator flightCodeAllocator;
+
+	/**
+	 * Container service that runs the warm-up away from the deployment thread.
+	 */
+	@Resource
+	private TimerService timerService;
+
+	/**
+	 * Whether the warm-up is over and the application can receive traffic.
+	 */
+	private volatile boolean isReady;
+
+	/**
+	 * What was loaded by the warm-up, filled once it is over.
+	 */
+	private volatile Map<String, Object> report = Collections.emptyMap();
+
+	/**
+	 * Schedules the warm-up to start right after the deploy.
+	 */
+	@PostConstruct
+	void schedule() {
+		timerService.createSingleActionTimer(0L, new TimerConfig(null, false));
+	}
+
+	/**
+	 * <p>Runs the warm-up and flips the readiness flag, whatever its outcome.</p>
+	 * <p>Runs without transaction, so each database read is committed on its own and no transaction lasts as long as the whole stage.</p>
+	 */
+	@Timeout
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+	public void run() {
+		long start = System.nanoTime();
+		Map<String, Object> warmUpReport = new LinkedHashMap<>();
+		List<String> failures = new ArrayList<>();
+
+		warmUpReport.put("flightCodeSequenceSeeded", flightCodeAllocator.seed());
+		warmUpReport.put("departureIndexLoaded", departureIndex.load());
+		warmUpReport.put("upcomingFlights", departureIndex.size());
+		warmUpReport.put("searchIndexLoaded", flightSearchIndex.load());
+		warmUpReport.put("indexedFlights", flightSearchIndex.size());
+
+		List<FlightDTO> availableFlights = new ArrayList<>();
+		int amountOfSeatMaps = 0;
+		try {
+			Collection<FlightDTO> upcomingFlights = departureIndex.findDepartingBetween(null, null, null);
+
+			if (upcomingFlights != null) {
+				for (FlightDTO flightElement : upcomingFlights) {
+					if (amountOfSeatMaps >= MAX_FLIGHTS) {
+						break;
+					}
+
+					Long occupiedSeats = seatLedger.getOccupiedSeats(flightElement.getId());
+
+					if (occupiedSeats != null) {
+						amountOfSeatMaps++;
+
+						if (availableFlights.size() < GenericDAO.DEFAULT_PAGE_SIZE && occupiedSeats < flightElement.getTotalSeats()) {
+							availableFlights.add(flightElement);
+						}
+					}
+				}
+			}
+		} catch (Exception exception) {
+			failures.add("seat maps: " + exception.getClass().getName());
+			System.err.println("Catch " + exception.getClass().getName() + " run() in WarmUp");
+			exception.printStackTrace();
+		}
+		warmUpReport.put("seatMapsLoaded", amountOfSeatMaps);
+
+		int amountOfListedFlights = 0;
+		try {
+			// Mesma consulta da primeira página de GET /flight sem limite, para que fique na cache de consultas
+			amountOfListedFlights = flightDAO.findDTOPage(GenericDAO.DEFAULT_PAGE_SIZE, null).size();
+		} catch (Exception exception) {
+			failures.add("flights listing: " + exception.getClass().getName());
+			System.err.println("Catch " + exception.getClass().getName() + " run() in WarmUp");
+			exception.printStackTrace();
+		}
+		warmUpReport.put("listedFlightsCached", amountOfListedFlights);
+
+		long amountOfJsonCharacters = 0L;
+		try {
+			amountOfJsonCharacters = writeJson(availableFlights);
+		} catch (Exception exception) {
+			failures.add("json: " + exception.getClass().getName());
+			System.err.println("Catch " + exception.getClass().getName() + " run() in WarmUp");
+			exception.printStackTrace();
+		}
+		warmUpReport.put("jsonCharactersWritten", amountOfJsonCharacters);
+
+		long durationMilliseconds = (System.nanoTime() - start) / 1_000_000L;
+		warmUpReport.put("failures", failures);
+		warmUpReport.put("durationMilliseconds", durationMilliseconds);
+
+		report = Collections.unmodifiableMap(warmUpReport);
+		isReady = true;
+
+		System.out.println("Warm-up finished in " + durationMilliseconds + " ms: " + warmUpReport);
+	}
+
+	/**
+	 * Checks if the warm-up is over.
+	 *
+	 * @return true once the warm-up ran, even if some of its steps failed
+	 */
+	public boolean isReady() {
+		return isReady;
+	}
+
+	/**
+	 * Gets what was loaded by the warm-up.
+	 *
+	 * @return whether it is over and, once it is, the amount of items loaded by each step, the failed steps and its duration
+	 */
+	public Map<String, Object> getReport() {
+		Map<String, Object> readiness = new LinkedHashMap<>();
+
+		readiness.put("ready", isReady);
+		readiness.putAll(report);
+
+		return readiness;
+	}
+
+	/**
+	 * Writes a sample of each DTO returned by the controllers to JSON.
+	 *
+	 * @param availableFlights some flights with available seats, the same the first listing of available flights returns
+	 * @return the amount of characters written
+	 * @throws Exception if the JSON writer could not be created or closed
+	 */
+	private long writeJson(List<FlightDTO> availableFlights) throws Exception {
+		FlightDTO flightDTO = availableFlights.isEmpty() ? new FlightDTO(0, "TP0000", "Lisboa", new Timestamp(0L), 1) : availableFlights.get(0);
+
+		TicketDTO ticketDTO = new TicketDTO();
+		ticketDTO.setId(0);
+		ticketDTO.setIdFlight(flightDTO.getId());
+		ticketDTO.setFlightCode(flightDTO.getCode());
+		ticketDTO.setFlightDestination(flightDTO.getDestination());
+		ticketDTO.setFlightDepartTime(flightDTO.getDepartTime());
+		ticketDTO.setSeatNumber(1);
+
+		TicketBatchDTO ticketBatchDTO = new TicketBatchDTO();
+		ticketBatchDTO.setIdFlight(flightDTO.getId());
+		ticketBatchDTO.setIdUsers(Collections.singletonList(0));
+		ticketBatchDTO.setTickets(Collections.singletonList(ticketDTO));
+
+		UserDTO userDTO = new UserDTO();
+		userDTO.setId(0);
+		userDTO.setName("Warm-up");
+		userDTO.setRole(Role.CLIENT);
+
+		SeatMapDTO seatMapDTO = new SeatMapDTO();
+		seatMapDTO.setIdFlight(flightDTO.getId());
+		seatMapDTO.setTotalSeats(flightDTO.getTotalSeats());
+		seatMapDTO.setSeats("");
+
+		List<Object> samples = Arrays.asList(availableFlights, new PageDTO<>(Collections.singletonList(flightDTO), "0"), ticketDTO, ticketBatchDTO,
+				userDTO, seatMapDTO, new BulkDeleteDTO());
+		long amountOfCharacters = 0L;
+
+		try (Jsonb jsonb = JsonbBuilder.create()) {
+			for (int round = 0; round < JSON_ROUNDS; round++) {
+				for (Object sampleElement : samples) {
+					amountOfCharacters += jsonb.toJson(sampleElement).length();
+				}
+			}
+		}
+
+		return amountOfCharacters;
+	}
+}
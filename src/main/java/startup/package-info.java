@@ -0,0 +1,4 @@
+/**
+ * Contains the tasks run when the application is deployed.
+ */
+package startup;
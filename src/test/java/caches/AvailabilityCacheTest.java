@@ -0,0 +1,56 @@
+package caches;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import compression.CompressionInterceptor;
+import enums.ContentEncoding;
+
+/**
+ * Tests how {@link AvailabilityCache.Page#findMatch(String)} reads the <code>If-None-Match</code> header.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class AvailabilityCacheTest {
+	private static final String E_TAG = "\"1-2b\"";
+
+	private final AvailabilityCache.Page page = new AvailabilityCache.Page(1L, Long.MAX_VALUE, new byte[0], E_TAG, null);
+
+	@Test
+	public void matchesNothingWithoutTheHeader() {
+		assertNull(page.findMatch(null));
+	}
+
+	@Test
+	public void matchesItsOwnETagAmongOthers() {
+		assertEquals(E_TAG, page.findMatch(E_TAG));
+		assertEquals(E_TAG, page.findMatch("\"0-1a\", " + E_TAG + " ,\"2-3c\""));
+	}
+
+	@Test
+	public void matchesAnyETagWithAStar() {
+		assertEquals(E_TAG, page.findMatch("*"));
+		assertEquals(E_TAG, page.findMatch("\"0-1a\", *"));
+	}
+
+	@Test
+	public void matchesTheETagOfItsCompressedForm() {
+		String gzipETag = CompressionInterceptor.tagETag(E_TAG, ContentEncoding.GZIP);
+
+		// Devolve a ETag que o cliente tem, a da forma comprimida
+		assertEquals("\"1-2b-gzip\"", page.findMatch(gzipETag));
+		assertEquals("\"1-2b-deflate\"", page.findMatch("\"0-1a\", " + CompressionInterceptor.tagETag(E_TAG, ContentEncoding.DEFLATE)));
+	}
+
+	@Test
+	public void doesNotMatchTheETagsOfOtherPages() {
+		assertNull(page.findMatch("\"1-2c\""));
+		assertNull(page.findMatch("\"1-2c-gzip\""));
+		assertNull(page.findMatch("\"0-1-2b-gzip\""));
+		assertNull(page.findMatch("\"1-2b-gzip-x\""));
+		assertNull(page.findMatch("\"1-2b-gzip"));
+	}
+}
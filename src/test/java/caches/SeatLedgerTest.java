@@ -0,0 +1,103 @@
+package caches;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import daos.FlightDAO;
+import daos.TicketDAO;
+import entities.Flight;
+import entities.FlightSeatMap;
+import entities.Ticket;
+import entities.User;
+import support.TestDatabase;
+
+/**
+ * Tests that the seat ledger seeds the seat maps from their own table and that booking a seat writes only that table.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class SeatLedgerTest {
+	private SessionFactory sessionFactory;
+
+	private EntityManager entityManager;
+
+	private TicketDAO ticketDAO;
+
+	private SeatLedger seatLedger;
+
+	@Before
+	public void setUp() {
+		sessionFactory = TestDatabase.create();
+		entityManager = sessionFactory.createEntityManager();
+
+		// 2 clientes com 2 tickets cada, espalhados por 2 voos de 4 lugares, todos sem lugar
+		TestDatabase.seed(entityManager, 2, 2, 2);
+
+		FlightDAO flightDAO = new FlightDAO();
+		ticketDAO = new TicketDAO();
+		TestDatabase.inject(flightDAO, "entityManager", entityManager);
+		TestDatabase.inject(ticketDAO, "entityManager", entityManager);
+
+		seatLedger = new SeatLedger();
+		TestDatabase.inject(seatLedger, "flightDAO", flightDAO);
+		TestDatabase.inject(seatLedger, "ticketDAO", ticketDAO);
+	}
+
+	@After
+	public void tearDown() {
+		entityManager.close();
+		sessionFactory.close();
+	}
+
+	@Test
+	public void seedsTheSeatMapOfAFlightWithoutOneFromItsTickets() {
+		entityManager.getTransaction().begin();
+		SeatMap seatMap = seatLedger.getSeatMap(1);
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+
+		assertEquals(2, seatMap.countOccupied());
+		assertSame(seatMap, seatLedger.getSeatMap(1));
+
+		FlightSeatMap flightSeatMap = entityManager.find(FlightSeatMap.class, 1);
+		assertArrayEquals(new byte[] {0x03}, flightSeatMap.getSeats());
+	}
+
+	@Test
+	public void bookingASeatChangesTheSeatMapRowAndNotTheFlight() {
+		entityManager.getTransaction().begin();
+		Integer idFlight = 1;
+		Integer anySeat = null;
+		int seatNumber = seatLedger.claim(idFlight, anySeat);
+		entityManager.getTransaction().commit();
+
+		assertEquals(3, seatNumber);
+
+		Ticket ticket = new Ticket();
+		ticket.setPassenger(entityManager.getReference(User.class, 1));
+		ticket.setFlightDetails(entityManager.getReference(Flight.class, 1));
+		ticket.setSeatNumber(seatNumber);
+		ticket.setIsCanceled(false);
+		ticket.setIsDeleted(false);
+
+		entityManager.getTransaction().begin();
+		assertTrue(ticketDAO.persistAll(Collections.singletonList(ticket)));
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+
+		assertArrayEquals(new byte[] {0x07}, entityManager.find(FlightSeatMap.class, 1).getSeats());
+		assertEquals(Integer.valueOf(4), entityManager.find(Flight.class, 1).getTotalSeats());
+	}
+}
@@ -0,0 +1,203 @@
+package caches;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Tests the in-memory bitmap of {@link SeatMap} and its persisted form.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class SeatMapTest {
+	@Test
+	public void claimsEachSeatOnlyOnce() {
+		SeatMap seatMap = new SeatMap(130);
+
+		assertTrue(seatMap.claim(65));
+		assertFalse(seatMap.claim(65));
+		assertEquals(1, seatMap.countOccupied());
+	}
+
+	@Test
+	public void doesNotClaimSeatsOutsideTheFlight() {
+		SeatMap seatMap = new SeatMap(130);
+
+		assertFalse(seatMap.claim(0));
+		assertFalse(seatMap.claim(131));
+		assertEquals(0, seatMap.countOccupied());
+	}
+
+	@Test
+	public void claimsTheFreeSeatWithTheLowestNumberUntilTheFlightIsFull() {
+		SeatMap seatMap = new SeatMap(70);
+		seatMap.claim(1);
+		seatMap.claim(3);
+
+		assertEquals(2, seatMap.claimFirstFree());
+		assertEquals(4, seatMap.claimFirstFree());
+
+		for (int seatNumber = 5; seatNumber <= 70; seatNumber++) {
+			assertEquals(seatNumber, seatMap.claimFirstFree());
+		}
+
+		// Os bits depois do lugar 70 na última palavra não são lugares
+		assertEquals(0, seatMap.claimFirstFree());
+		assertEquals(70, seatMap.countOccupied());
+	}
+
+	@Test
+	public void releasedSeatCanBeClaimedAgain() {
+		SeatMap seatMap = new SeatMap(10);
+		seatMap.claim(7);
+
+		seatMap.release(7);
+		seatMap.release(7);
+
+		assertEquals(0, seatMap.countOccupied());
+		assertTrue(seatMap.claim(7));
+	}
+
+	@Test
+	public void claimsSeveralSeatsOnlyIfTheFlightHasThemAllFree() {
+		SeatMap seatMap = new SeatMap(5);
+		seatMap.claim(2);
+
+		assertArrayEquals(new int[] { 1, 3, 4 }, seatMap.claimFirstFree(3));
+		assertNull(seatMap.claimFirstFree(2));
+		assertEquals(4, seatMap.countOccupied());
+		assertEquals(5, seatMap.claimFirstFree());
+	}
+
+	@Test
+	public void refusedGroupClaimNeverTakesTheSeatsOfAConcurrentClaim() throws InterruptedException {
+		SeatMap seatMap = new SeatMap(64);
+
+		// Só ficam 10 lugares livres, nunca os 11 pedidos pelo grupo
+		for (int seatNumber = 1; seatNumber <= 54; seatNumber++) {
+			seatMap.claim(seatNumber);
+		}
+
+		AtomicBoolean isFlightSeenFull = new AtomicBoolean(false);
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+
+		executor.execute(() -> {
+			try {
+				start.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			for (int attempt = 0; attempt < 20_000; attempt++) {
+				assertNull(seatMap.claimFirstFree(11));
+			}
+		});
+		executor.execute(() -> {
+			try {
+				start.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			for (int attempt = 0; attempt < 20_000; attempt++) {
+				int seatNumber = seatMap.claimFirstFree();
+
+				if (seatNumber == 0) {
+					isFlightSeenFull.set(true);
+				}
+
+				seatMap.release(seatNumber);
+			}
+		});
+
+		start.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		assertFalse(isFlightSeenFull.get());
+		assertEquals(54, seatMap.countOccupied());
+	}
+
+	@Test
+	public void concurrentClaimsGetDifferentSeats() throws InterruptedException {
+		int totalSeats = 300;
+		SeatMap seatMap = new SeatMap(totalSeats);
+		Set<Integer> seatsClaimed = ConcurrentHashMap.newKeySet();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		for (int thread = 0; thread < 8; thread++) {
+			executor.execute(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+
+				int seatNumber;
+				while ((seatNumber = seatMap.claimFirstFree()) != 0) {
+					assertTrue(seatsClaimed.add(seatNumber));
+				}
+			});
+		}
+
+		start.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		assertEquals(totalSeats, seatsClaimed.size());
+		assertEquals(totalSeats, seatMap.countOccupied());
+	}
+
+	@Test
+	public void persistedFormKeepsTheOccupiedSeats() {
+		SeatMap seatMap = new SeatMap(20);
+		seatMap.claim(1);
+		seatMap.claim(9);
+		seatMap.claim(20);
+
+		byte[] bytes = seatMap.toBytes();
+
+		assertArrayEquals(new byte[] {0x01, 0x01, 0x08}, bytes);
+		assertEquals(3, SeatMap.countOccupied(bytes));
+
+		SeatMap readSeatMap = SeatMap.fromBytes(bytes, 20);
+
+		assertEquals(3, readSeatMap.countOccupied());
+		assertFalse(readSeatMap.claim(9));
+		assertTrue(readSeatMap.claim(10));
+	}
+
+	@Test
+	public void occupiesAndFreesSeatsOfThePersistedForm() {
+		byte[] bytes = SeatMap.emptyBytes(12);
+
+		assertEquals(2, bytes.length);
+		assertTrue(SeatMap.occupy(bytes, 12));
+		assertFalse(SeatMap.occupy(bytes, 12));
+		assertFalse(SeatMap.occupy(bytes, 17));
+		assertTrue(SeatMap.isOccupied(bytes, 12));
+
+		SeatMap.free(bytes, 12);
+
+		assertFalse(SeatMap.isOccupied(bytes, 12));
+		assertEquals(0, SeatMap.countOccupied(bytes));
+	}
+}
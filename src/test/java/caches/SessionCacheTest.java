@@ -0,0 +1,81 @@
+package caches;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import enums.Role;
+
+/**
+ * Tests the invalidation guard, the per user index and the size bound of {@link SessionCache}.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class SessionCacheTest {
+	private final SessionCache sessionCache = new SessionCache();
+
+	@Test
+	public void keepsSessionReadBeforeAnyInvalidation() {
+		long lookupStamp = sessionCache.beginLookup();
+
+		assertNotNull(sessionCache.put("token", 1, Role.CLIENT, lookupStamp));
+		assertEquals(Integer.valueOf(1), sessionCache.get("token").getUserId());
+	}
+
+	@Test
+	public void doesNotKeepSessionReadBeforeItsTokenWasInvalidated() {
+		long lookupStamp = sessionCache.beginLookup();
+		sessionCache.invalidate("token");
+
+		assertNotNull(sessionCache.put("token", 1, Role.CLIENT, lookupStamp));
+		assertNull(sessionCache.get("token"));
+	}
+
+	@Test
+	public void doesNotKeepSessionReadBeforeItsUserWasInvalidated() {
+		long lookupStamp = sessionCache.beginLookup();
+		sessionCache.invalidateUser(1);
+
+		sessionCache.put("token", 1, Role.CLIENT, lookupStamp);
+
+		assertNull(sessionCache.get("token"));
+	}
+
+	@Test
+	public void keepsSessionReadAfterTheInvalidation() {
+		sessionCache.invalidate("token");
+		sessionCache.put("token", 1, Role.CLIENT, sessionCache.beginLookup());
+
+		assertNotNull(sessionCache.get("token"));
+	}
+
+	@Test
+	public void invalidatesOnlyTheSessionsOfTheGivenUser() {
+		sessionCache.put("first", 1, Role.CLIENT, sessionCache.beginLookup());
+		sessionCache.put("second", 1, Role.CLIENT, sessionCache.beginLookup());
+		sessionCache.put("other", 2, Role.CLIENT, sessionCache.beginLookup());
+
+		sessionCache.invalidateUser(1);
+
+		assertNull(sessionCache.get("first"));
+		assertNull(sessionCache.get("second"));
+		assertNotNull(sessionCache.get("other"));
+	}
+
+	@Test
+	public void keepsTheSizeBoundedAndTheRecentlyUsedSession() {
+		sessionCache.put("hot", 0, Role.CLIENT, sessionCache.beginLookup());
+
+		for (int index = 1; index <= 30000; index++) {
+			sessionCache.put("token-" + index, index, Role.CLIENT, sessionCache.beginLookup());
+			sessionCache.get("hot");
+		}
+
+		assertNotNull(sessionCache.get("hot"));
+		assertEquals(10000L, sessionCache.getStatistics().get("size").longValue());
+		assertEquals(20001L, sessionCache.getStatistics().get("evictions").longValue());
+	}
+}
@@ -0,0 +1,150 @@
+package compression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.junit.Test;
+
+import enums.ContentEncoding;
+import metrics.MetricsRegistry;
+
+/**
+ * Tests that {@link CompressingOutputStream} leaves small responses as they are and frames the big ones as the encoding requires.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class CompressingOutputStreamTest {
+	/**
+	 * Size above which the responses of the tests are compressed.
+	 */
+	private static final int THRESHOLD = 64;
+
+	private final ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+	private final MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+
+	@Test
+	public void writesSmallResponseAsItIs() throws IOException {
+		byte[] body = body(THRESHOLD);
+
+		CompressingOutputStream stream = open(ContentEncoding.GZIP);
+		stream.write(body);
+		stream.close();
+
+		assertArrayEquals(body, target.toByteArray());
+		assertFalse(headers.containsKey(HttpHeaders.CONTENT_ENCODING));
+	}
+
+	@Test
+	public void framesBigResponseAsOneGzipMember() throws IOException {
+		byte[] body = body(10000);
+
+		CompressingOutputStream stream = open(ContentEncoding.GZIP);
+		stream.write(body);
+		stream.close();
+		stream.release();
+
+		byte[] compressed = target.toByteArray();
+		ByteBuffer trailer = ByteBuffer.wrap(compressed, compressed.length - 8, 8).order(ByteOrder.LITTLE_ENDIAN);
+		CRC32 checksum = new CRC32();
+		checksum.update(body);
+
+		assertArrayEquals(new byte[] {0x1f, (byte) 0x8b, 8}, Arrays.copyOf(compressed, 3));
+		assertEquals((int) checksum.getValue(), trailer.getInt());
+		assertEquals(body.length, trailer.getInt());
+		assertArrayEquals(body, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+	}
+
+	@Test
+	public void keepsTheGzipMemberValidAcrossSmallWritesAndFlushes() throws IOException {
+		byte[] body = body(5000);
+
+		CompressingOutputStream stream = open(ContentEncoding.GZIP);
+		for (int offset = 0; offset < body.length; offset += 7) {
+			stream.write(body, offset, Math.min(7, body.length - offset));
+
+			if (offset % 700 == 0) {
+				stream.flush();
+			}
+		}
+		stream.close();
+		stream.close();
+		stream.release();
+
+		assertArrayEquals(body, readAll(new GZIPInputStream(new ByteArrayInputStream(target.toByteArray()))));
+	}
+
+	@Test
+	public void framesBigResponseAsZlibForDeflate() throws IOException {
+		byte[] body = body(10000);
+
+		CompressingOutputStream stream = new CompressingOutputStream(target, headers, ContentEncoding.DEFLATE, new DeflaterPool(6, false, 1),
+				THRESHOLD, new MetricsRegistry());
+		stream.write(body);
+		stream.close();
+		stream.release();
+
+		assertEquals("deflate", headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertArrayEquals(body, readAll(new InflaterInputStream(new ByteArrayInputStream(target.toByteArray()))));
+	}
+
+	@Test
+	public void changesTheHeadersOfTheCompressedRepresentation() throws IOException {
+		headers.putSingle(HttpHeaders.CONTENT_LENGTH, 10000);
+		headers.putSingle(HttpHeaders.ETAG, "\"page-1\"");
+
+		CompressingOutputStream stream = open(ContentEncoding.GZIP);
+		stream.write(body(10000));
+		stream.close();
+		stream.release();
+
+		assertEquals("gzip", headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertNull(headers.getFirst(HttpHeaders.CONTENT_LENGTH));
+		assertEquals("\"page-1-gzip\"", headers.getFirst(HttpHeaders.ETAG));
+	}
+
+	private CompressingOutputStream open(ContentEncoding encoding) {
+		return new CompressingOutputStream(target, headers, encoding, new DeflaterPool(6, true, 1), THRESHOLD, new MetricsRegistry());
+	}
+
+	/**
+	 * Builds a compressible body, like the JSON of a page of flights.
+	 *
+	 * @param size the size of the body, in bytes
+	 * @return the body
+	 */
+	private static byte[] body(int size) {
+		StringBuilder body = new StringBuilder(size);
+
+		for (int index = 0; body.length() < size; index++) {
+			body.append("{\"id\":").append(index).append(",\"destination\":\"Test City\"},");
+		}
+
+		return body.substring(0, size).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] readAll(InputStream inputStream) throws IOException {
+		try (InputStream stream = inputStream) {
+			return stream.readAllBytes();
+		}
+	}
+}
@@ -0,0 +1,395 @@
+package controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CompletionStage;
+
+import javax.persistence.EntityManager;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Test;
+
+import dtos.FlightDTO;
+import dtos.TicketBatchDTO;
+import dtos.TicketDTO;
+import dtos.UserDTO;
+import entities.User;
+import enums.Role;
+import support.TestApplication;
+import support.TestDatabase;
+
+/**
+ * <p>Tests that each endpoint runs no more SQL statements and loads no more entities than its budget, in
+ * <code>sql-budgets/&lt;endpoint&gt;.properties</code>, and that these amounts do not grow with the amount of rows.</p>
+ * <p>Each endpoint is called on a database with <code>N</code> and with <code>10 × N</code> clients, flights and tickets, loaded as the warm-up
+ * leaves them on deploy, and its statements are counted by the Hibernate statistics. The requisition has its own persistence context and,
+ * as the second level cache is off, the budgets hold even when the cache is cold. The token is looked up with no session in memory,
+ * the worst case, and is counted with the endpoint.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class SqlBudgetTest {
+	/**
+	 * Amount of clients, flights and tickets of the smaller database.
+	 */
+	private static final int N = 20;
+
+	/**
+	 * Amount of items of each page asked for.
+	 */
+	private static final int PAGE_SIZE = 10;
+
+	/**
+	 * Token of the administrator, created after the clients.
+	 */
+	private static final String ADMINISTRATOR_TOKEN = "token-administrator";
+
+	/**
+	 * Token of the first client, who owns the first ticket.
+	 */
+	private static final String CLIENT_TOKEN = "token-0";
+
+	/**
+	 * Token of the first client without tickets, created after the administrator.
+	 */
+	private static final String CLIENT_WITHOUT_TICKETS_TOKEN = "token-spare0";
+
+	@Test
+	public void flightCreate() {
+		FlightDTO flightDTO = new FlightDTO();
+		flightDTO.setDestination("Budget City");
+		flightDTO.setDepartTime("2030-01-01 10:00:00");
+		flightDTO.setTotalSeats(100);
+
+		assertWithinBudget("flight.create", ADMINISTRATOR_TOKEN, 201,
+				(application, securityContext, amountOfRows) -> application.flightController.create(flightDTO));
+	}
+
+	@Test
+	public void flightGetAvailables() {
+		assertWithinBudget("flight.getAvailables", CLIENT_TOKEN, 200,
+				(application, securityContext, amountOfRows) -> application.flightController.getAvailables(null, PAGE_SIZE, null, null, null));
+	}
+
+	@Test
+	public void flightSearch() {
+		assertWithinBudget("flight.search", CLIENT_TOKEN, 200,
+				(application, securityContext, amountOfRows) -> application.flightController.search("Test City", PAGE_SIZE));
+	}
+
+	@Test
+	public void flightGetByCode() {
+		assertWithinBudget("flight.getByCode", CLIENT_TOKEN, 200,
+				(application, securityContext, amountOfRows) -> application.flightController.getByCode("TST_1"));
+	}
+
+	@Test
+	public void flightGetSeatMap() {
+		assertWithinBudget("flight.getSeatMap", CLIENT_TOKEN, 200, (application, securityContext, amountOfRows) -> {
+			// O pior caso: o mapa de lugares do voo ainda não está no livro de lugares
+			application.seatLedger.invalidate(1);
+
+			return application.flightController.getSeatMap(1);
+		});
+	}
+
+	@Test
+	public void flightGetAll() {
+		assertWithinBudget("flight.getAll", ADMINISTRATOR_TOKEN, 200,
+				(application, securityContext, amountOfRows) -> application.flightController.getAll(PAGE_SIZE, null));
+	}
+
+	@Test
+	public void ticketCreate() {
+		TicketDTO ticketDTO = new TicketDTO();
+		ticketDTO.setIdUser(1);
+		ticketDTO.setIdFlight(2);
+
+		assertWithinBudget("ticket.create", CLIENT_TOKEN, 201,
+				(application, securityContext, amountOfRows) -> application.ticketController.create(securityContext, ticketDTO));
+	}
+
+	@Test
+	public void ticketCreateBatch() {
+		TicketBatchDTO ticketBatchDTO = new TicketBatchDTO();
+		ticketBatchDTO.setIdFlight(2);
+		ticketBatchDTO.setIdUsers(Arrays.asList(2, 3, 4, 5, 6));
+
+		assertWithinBudget("ticket.createBatch", ADMINISTRATOR_TOKEN, 201,
+				(application, securityContext, amountOfRows) -> application.ticketController.createBatch(securityContext, ticketBatchDTO));
+	}
+
+	@Test
+	public void ticketGetByUserId() {
+		assertWithinBudget("ticket.getByUserId", ADMINISTRATOR_TOKEN, 200,
+				(application, securityContext, amountOfRows) -> application.ticketController.getByUserId("1", PAGE_SIZE, null));
+	}
+
+	@Test
+	public void ticketCancelById() {
+		assertWithinBudget("ticket.cancelById", CLIENT_TOKEN, 200,
+				(application, securityContext, amountOfRows) -> application.ticketController.cancelById(securityContext, "1"));
+	}
+
+	@Test
+	public void userSignUp() {
+		UserDTO userDTO = new UserDTO();
+		userDTO.setName("Budget Client");
+		userDTO.setUsername("budget-client");
+		userDTO.setPassword("password");
+
+		assertWithinBudget("user.signUp", null, 200,
+				(application, securityContext, amountOfRows) -> application.userController.signUp(userDTO));
+	}
+
+	@Test
+	public void userCreate() {
+		UserDTO userDTO = new UserDTO();
+		userDTO.setName("Budget Employee");
+		userDTO.setUsername("budget-employee");
+		userDTO.setPassword("password");
+		userDTO.setRole(Role.EMPLOYEE);
+
+		assertWithinBudget("user.create", ADMINISTRATOR_TOKEN, 201,
+				(application, securityContext, amountOfRows) -> application.userController.create(securityContext, userDTO));
+	}
+
+	@Test
+	public void userSignIn() {
+		assertWithinBudget("user.signIn", null, 200,
+				(application, securityContext, amountOfRows) -> application.userController.signIn("client0", "password"));
+	}
+
+	@Test
+	public void userSignOut() {
+		assertWithinBudget("user.signOut", null, 200,
+				(application, securityContext, amountOfRows) -> application.userController.signOut(CLIENT_TOKEN));
+	}
+
+	@Test
+	public void userUpdate() {
+		UserDTO userDTO = new UserDTO();
+		userDTO.setId(1);
+		userDTO.setName("Renamed Client");
+		userDTO.setUsername("client0");
+		userDTO.setPassword("password");
+		userDTO.setRole(Role.CLIENT);
+
+		assertWithinBudget("user.update", ADMINISTRATOR_TOKEN, 200,
+				(application, securityContext, amountOfRows) -> application.userController.update(securityContext, 1, userDTO));
+	}
+
+	@Test
+	public void userGetById() {
+		assertWithinBudget("user.getById", ADMINISTRATOR_TOKEN, 200,
+				(application, securityContext, amountOfRows) -> application.userController.getById(securityContext, "1"));
+	}
+
+	@Test
+	public void userGetAll() {
+		assertWithinBudget("user.getAll", ADMINISTRATOR_TOKEN, 200,
+				(application, securityContext, amountOfRows) -> application.userController.getAll(securityContext, PAGE_SIZE, null));
+	}
+
+	@Test
+	public void userSoftDeleteById() {
+		// Um cliente só pode apagar a sua própria conta
+		assertWithinBudget("user.softDeleteById", CLIENT_WITHOUT_TICKETS_TOKEN, 200, (application, securityContext, amountOfRows) ->
+				application.userController.softDeleteById(securityContext, String.valueOf(firstClientWithoutTickets(amountOfRows))));
+	}
+
+	@Test
+	public void userSoftDeleteAll() {
+		assertWithinBudget("user.softDeleteAll", ADMINISTRATOR_TOKEN, 200, (application, securityContext, amountOfRows) -> {
+			int idUser = firstClientWithoutTickets(amountOfRows);
+
+			return application.userController.softDeleteAll(Arrays.asList(idUser, idUser + 1));
+		});
+	}
+
+	/**
+	 * Calls the endpoint on the smaller and on the bigger database and checks the statements and entities counted against its budget.
+	 *
+	 * @param endpoint		 the name of the endpoint, as given to the request executor, which is also the name of its budget file
+	 * @param token			 the token sent with the requisition, or null if the endpoint does not look it up
+	 * @param expectedStatus the status of the response when the requisition succeeds
+	 * @param requisition	 the call of the controller
+	 */
+	private static void assertWithinBudget(String endpoint, String token, int expectedStatus, Requisition requisition) {
+		Properties budget = readBudget(endpoint);
+		long[] countsWithFewRows = count(N, token, expectedStatus, requisition);
+		long[] countsWithManyRows = count(10 * N, token, expectedStatus, requisition);
+
+		assertTrue(endpoint + " ran " + countsWithManyRows[0] + " statements with " + 10 * N + " rows and " + countsWithFewRows[0] + " with " + N,
+				countsWithManyRows[0] <= countsWithFewRows[0]);
+		assertTrue(endpoint + " loaded " + countsWithManyRows[1] + " entities with " + 10 * N + " rows and " + countsWithFewRows[1] + " with " + N,
+				countsWithManyRows[1] <= countsWithFewRows[1]);
+
+		long maxStatements = Long.parseLong(budget.getProperty("statements"));
+		assertTrue(endpoint + " ran " + countsWithFewRows[0] + " statements, over its budget of " + maxStatements,
+				countsWithFewRows[0] <= maxStatements);
+
+		// Sem o limite de entidades no orçamento, elas não são limitadas
+		if (budget.containsKey("entities")) {
+			long maxEntities = Long.parseLong(budget.getProperty("entities"));
+			assertTrue(endpoint + " loaded " + countsWithFewRows[1] + " entities, over its budget of " + maxEntities,
+					countsWithFewRows[1] <= maxEntities);
+		}
+	}
+
+	/**
+	 * Counts the statements run and the entities loaded by one requisition on a new database.
+	 *
+	 * @param amountOfRows	 amount of clients, flights and tickets of the database
+	 * @param token			 the token sent with the requisition, or null if the endpoint does not look it up
+	 * @param expectedStatus the status of the response when the requisition succeeds
+	 * @param requisition	 the call of the controller
+	 * @return the amount of statements prepared and the amount of entities loaded, in this order
+	 */
+	private static long[] count(int amountOfRows, String token, int expectedStatus, Requisition requisition) {
+		SessionFactory sessionFactory = TestDatabase.create(true);
+		EntityManager entityManager = sessionFactory.createEntityManager();
+
+		try {
+			seed(entityManager, amountOfRows);
+
+			TestApplication application = new TestApplication(entityManager);
+			warmUp(entityManager, application, amountOfRows);
+
+			Statistics statistics = sessionFactory.getStatistics();
+			statistics.clear();
+
+			entityManager.getTransaction().begin();
+			SecurityContext securityContext = token == null ? null : application.authenticate(token);
+
+			if (token != null) {
+				assertNotNull("Token " + token + " not found", securityContext);
+			}
+
+			Response response = TestApplication.await(requisition.send(application, securityContext, amountOfRows));
+			entityManager.getTransaction().commit();
+
+			assertEquals(String.valueOf(response.getEntity()), expectedStatus, response.getStatus());
+
+			return new long[] {statistics.getPrepareStatementCount(), statistics.getEntityLoadCount()};
+		} finally {
+			if (entityManager.getTransaction().isActive()) {
+				entityManager.getTransaction().rollback();
+			}
+
+			entityManager.close();
+			sessionFactory.close();
+		}
+	}
+
+	/**
+	 * Fills the database with the clients, flights and tickets, one ticket per client, an administrator and two clients without tickets.
+	 *
+	 * @param entityManager the persistence context of the database
+	 * @param amountOfRows	amount of clients, flights and tickets
+	 */
+	private static void seed(EntityManager entityManager, int amountOfRows) {
+		TestDatabase.seed(entityManager, amountOfRows, amountOfRows, 1);
+
+		entityManager.getTransaction().begin();
+		entityManager.persist(newUser("Test Administrator", "administrator", ADMINISTRATOR_TOKEN, Role.ADMINISTRATOR));
+		entityManager.persist(newUser("Test Client Without Tickets", "spare0", CLIENT_WITHOUT_TICKETS_TOKEN, Role.CLIENT));
+		entityManager.persist(newUser("Test Client Without Tickets", "spare1", "token-spare1", Role.CLIENT));
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+	}
+
+	/**
+	 * Creates the flight code sequence and loads the indexes of the flights and the seat maps of the upcoming flights, as the warm-up does on deploy,
+	 * and clears the persistence context.
+	 *
+	 * @param entityManager the persistence context of the database
+	 * @param application	the controllers and caches of the application
+	 * @param amountOfRows	amount of flights in the database
+	 */
+	private static void warmUp(EntityManager entityManager, TestApplication application, int amountOfRows) {
+		// Fora do servidor não há transação gerida pelo container, então a carga abre a sua
+		entityManager.getTransaction().begin();
+		assertTrue(application.flightCodeAllocator.seed());
+		application.departureIndex.load();
+		application.flightSearchIndex.load();
+
+		for (int idFlight = 1; idFlight <= amountOfRows; idFlight++) {
+			application.seatLedger.getOccupiedSeats(idFlight);
+		}
+
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+	}
+
+	private static User newUser(String name, String username, String token, Role role) {
+		User user = new User();
+
+		user.setName(name);
+		user.setUsername(username);
+		user.setPassword("password");
+		user.setToken(token);
+		user.setRole(role);
+		user.setIsDeleted(false);
+
+		return user;
+	}
+
+	/**
+	 * Gets the id of the first client without tickets, created after the administrator.
+	 *
+	 * @param amountOfRows amount of clients with tickets
+	 * @return the id of the client
+	 */
+	private static int firstClientWithoutTickets(int amountOfRows) {
+		return amountOfRows + 2;
+	}
+
+	/**
+	 * Reads the budget of the given endpoint.
+	 *
+	 * @param endpoint the name of the endpoint
+	 * @return the maximum amount of <code>statements</code> and, if limited, of <code>entities</code>
+	 */
+	private static Properties readBudget(String endpoint) {
+		Properties budget = new Properties();
+
+		try (InputStream inputStream = SqlBudgetTest.class.getResourceAsStream("/sql-budgets/" + endpoint + ".properties")) {
+			assertNotNull("No SQL budget for " + endpoint, inputStream);
+			budget.load(inputStream);
+		} catch (IOException ioException) {
+			throw new IllegalStateException(ioException);
+		}
+
+		return budget;
+	}
+
+	/**
+	 * Call of one endpoint of the controllers.
+	 *
+	 * @author Wanderley Drumond
+	 *
+	 */
+	@FunctionalInterface
+	private interface Requisition {
+		/**
+		 * Calls the endpoint.
+		 *
+		 * @param application	  the controllers of the application
+		 * @param securityContext the security context with the logged user, or null if the endpoint does not look up the token
+		 * @param amountOfRows	  amount of clients, flights and tickets of the database
+		 * @return the response of the controller
+		 */
+		CompletionStage<Response> send(TestApplication application, SecurityContext securityContext, int amountOfRows);
+	}
+}
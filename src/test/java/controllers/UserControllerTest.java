@@ -0,0 +1,98 @@
+package controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import javax.persistence.EntityManager;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import entities.User;
+import enums.Role;
+import support.TestApplication;
+import support.TestDatabase;
+
+/**
+ * Tests the answers of the soft delete of one user when it cannot be done.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class UserControllerTest {
+	private static final String ADMINISTRATOR_TOKEN = "token-administrator";
+
+	private SessionFactory sessionFactory;
+	private EntityManager entityManager;
+	private TestApplication application;
+	private int idDeletedUser;
+
+	@Before
+	public void setUp() {
+		sessionFactory = TestDatabase.create();
+		entityManager = sessionFactory.createEntityManager();
+
+		// O cliente 1 tem um ticket num voo futuro
+		TestDatabase.seed(entityManager, 1, 1, 1);
+
+		entityManager.getTransaction().begin();
+		entityManager.persist(newUser("Test Administrator", "administrator", ADMINISTRATOR_TOKEN, Role.ADMINISTRATOR, false));
+		User deletedUser = newUser("Test Deleted Employee", "deleted", "token-deleted", Role.EMPLOYEE, true);
+		entityManager.persist(deletedUser);
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+
+		idDeletedUser = deletedUser.getId();
+		application = new TestApplication(entityManager);
+	}
+
+	@After
+	public void tearDown() {
+		if (entityManager.getTransaction().isActive()) {
+			entityManager.getTransaction().rollback();
+		}
+
+		entityManager.close();
+		sessionFactory.close();
+	}
+
+	@Test
+	public void softDeleteByIdOfAnAlreadyDeletedUserIsNotFound() {
+		assertEquals(404, softDeleteById(ADMINISTRATOR_TOKEN, idDeletedUser).getStatus());
+	}
+
+	@Test
+	public void softDeleteByIdOfAUserWithFutureFlightsIsABadRequest() {
+		// Um cliente só pode apagar a sua própria conta
+		assertEquals(400, softDeleteById("token-0", 1).getStatus());
+	}
+
+	private Response softDeleteById(String token, int idUser) {
+		// Fora do servidor não há transação gerida pelo container, então a requisição abre a sua
+		entityManager.getTransaction().begin();
+		SecurityContext securityContext = application.authenticate(token);
+		assertNotNull(securityContext);
+
+		Response response = TestApplication.await(application.userController.softDeleteById(securityContext, String.valueOf(idUser)));
+		entityManager.getTransaction().commit();
+
+		return response;
+	}
+
+	private static User newUser(String name, String username, String token, Role role, boolean isDeleted) {
+		User user = new User();
+
+		user.setName(name);
+		user.setUsername(username);
+		user.setPassword("password");
+		user.setToken(token);
+		user.setRole(role);
+		user.setIsDeleted(isDeleted);
+
+		return user;
+	}
+}
@@ -0,0 +1,76 @@
+package daos;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.SessionFactory;
+import org.junit.Test;
+
+import dtos.PageDTO;
+import entities.Flight;
+import support.TestDatabase;
+
+/**
+ * Tests the page size given to the DAOs from the one asked by a requisition and the keyset pages sorted by an attribute.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class GenericDAOTest {
+
+	@Test
+	public void usesTheDefaultPageSizeWhenNoneWasAsked() {
+		assertEquals(GenericDAO.DEFAULT_PAGE_SIZE, GenericDAO.pageSize(null));
+	}
+
+	@Test
+	public void limitsThePageSizeToTheMaximum() {
+		assertEquals(GenericDAO.MAX_PAGE_SIZE, GenericDAO.pageSize(GenericDAO.MAX_PAGE_SIZE + 1));
+	}
+
+	@Test
+	public void givesAtLeastOneItemPerPage() {
+		assertEquals(1, GenericDAO.pageSize(0));
+		assertEquals(1, GenericDAO.pageSize(-5));
+	}
+
+	@Test
+	public void pagesBySortAttributeAndThenByPrimaryKey() {
+		SessionFactory sessionFactory = TestDatabase.create();
+		EntityManager entityManager = sessionFactory.createEntityManager();
+
+		try {
+			TestDatabase.seed(entityManager, 1, 12, 1);
+
+			// Os voos 2 a 5 ficam com o mesmo destino, para que a chave primária desempate entre páginas
+			entityManager.getTransaction().begin();
+			entityManager.createQuery("update Flight set destination = 'Test City 1' where id between 2 and 5").executeUpdate();
+			entityManager.getTransaction().commit();
+
+			FlightDAO flightDAO = new FlightDAO();
+			TestDatabase.inject(flightDAO, "entityManager", entityManager);
+
+			List<Integer> expectedIds = entityManager.createQuery("select f.id from Flight f order by f.destination, f.id", Integer.class)
+					.getResultList();
+			List<Integer> pagedIds = new ArrayList<>();
+			String cursor = null;
+
+			do {
+				List<Flight> rows = flightDAO.findPage(2, "destination", PageDTO.sortValueOfCursor(cursor), PageDTO.idOfCursor(cursor));
+				PageDTO<Flight> page = PageDTO.of(rows, 2, Flight::getDestination, Flight::getId);
+
+				page.getItems().forEach(flight -> pagedIds.add(flight.getId()));
+				cursor = page.getNextCursor();
+			} while (cursor != null);
+
+			assertEquals(expectedIds, pagedIds);
+		} finally {
+			entityManager.close();
+			sessionFactory.close();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package daos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dtos.BulkDeleteDTO;
+import entities.Flight;
+import entities.Ticket;
+import entities.User;
+import enums.Role;
+import support.TestDatabase;
+
+/**
+ * Tests that the users and their tickets are soft deleted together, and that the tickets deleted are returned for the journal.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class UserDAOTest {
+	private SessionFactory sessionFactory;
+	private EntityManager entityManager;
+	private UserDAO userDAO;
+
+	@Before
+	public void setUp() {
+		sessionFactory = TestDatabase.create();
+		entityManager = sessionFactory.createEntityManager();
+		userDAO = new UserDAO();
+		TestDatabase.inject(userDAO, "entityManager", entityManager);
+
+		// Os clientes 1 e 2 têm um ticket de um voo futuro
+		TestDatabase.seed(entityManager, 2, 1, 1);
+	}
+
+	@After
+	public void tearDown() {
+		entityManager.close();
+		sessionFactory.close();
+	}
+
+	@Test
+	public void deletesTheUsersWithoutFutureFlightsAndTheirTickets() {
+		Integer idUser = persistClientWithPastTickets(2);
+
+		entityManager.getTransaction().begin();
+		BulkDeleteDTO bulkDeleteDTO = userDAO.softDeleteWithTicketsByIds(Arrays.asList(1, 2, idUser));
+		entityManager.getTransaction().commit();
+
+		assertNotNull(bulkDeleteDTO);
+		assertEquals(Collections.singletonList(idUser), bulkDeleteDTO.getDeletedIds());
+		assertEquals(Arrays.asList(1, 2), bulkDeleteDTO.getWithFutureFlightIds());
+		assertEquals(Integer.valueOf(2), bulkDeleteDTO.getAmountOfTicketsDeleted());
+		assertEquals(2, bulkDeleteDTO.getDeletedTickets().size());
+		bulkDeleteDTO.getDeletedTickets().forEach(ticketDTO -> {
+			assertNotNull(ticketDTO.getId());
+			assertNotNull(ticketDTO.getIdFlight());
+			assertEquals(idUser, ticketDTO.getIdUser());
+		});
+
+		entityManager.clear();
+		assertEquals(Boolean.TRUE, entityManager.find(User.class, idUser).getIsDeleted());
+		assertEquals(Boolean.FALSE, entityManager.find(User.class, 1).getIsDeleted());
+	}
+
+	@Test
+	public void deletesNoTicketWhenNoUserIsDeleted() {
+		entityManager.getTransaction().begin();
+		BulkDeleteDTO bulkDeleteDTO = userDAO.softDeleteWithTicketsByIds(Arrays.asList(1, 2));
+		entityManager.getTransaction().commit();
+
+		assertNotNull(bulkDeleteDTO);
+		assertEquals(Collections.emptyList(), bulkDeleteDTO.getDeletedIds());
+		assertEquals(Integer.valueOf(0), bulkDeleteDTO.getAmountOfTicketsDeleted());
+		assertEquals(Collections.emptyList(), bulkDeleteDTO.getDeletedTickets());
+	}
+
+	/**
+	 * Saves a client whose tickets are all of a flight that already departed.
+	 *
+	 * @param amountOfTickets amount of tickets of the client
+	 * @return the primary key of the client
+	 */
+	private Integer persistClientWithPastTickets(int amountOfTickets) {
+		entityManager.getTransaction().begin();
+
+		Flight flight = new Flight();
+		flight.setCode("TST_PAST");
+		flight.setDestination("Test City Past");
+		flight.setDepartTime(Timestamp.valueOf(LocalDateTime.now().minusDays(1)));
+		flight.setTotalSeats(amountOfTickets);
+		entityManager.persist(flight);
+
+		User user = new User();
+		user.setName("Test Client Past");
+		user.setUsername("clientPast");
+		user.setPassword("password");
+		user.setRole(Role.CLIENT);
+		user.setIsDeleted(false);
+		entityManager.persist(user);
+
+		for (int index = 0; index < amountOfTickets; index++) {
+			Ticket ticket = new Ticket();
+
+			ticket.setPassenger(user);
+			ticket.setFlightDetails(flight);
+			ticket.setIsCanceled(false);
+			ticket.setIsDeleted(false);
+			entityManager.persist(ticket);
+		}
+
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+
+		return user.getId();
+	}
+}
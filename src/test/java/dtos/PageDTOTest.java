@@ -0,0 +1,53 @@
+package dtos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+/**
+ * Tests how {@link PageDTO#of(List, int, Function)} cuts the rows of a keyset query into a page and its next cursor.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class PageDTOTest {
+	private static final Function<Integer, Integer> ID_OF = Function.identity();
+
+	@Test
+	public void hasNoNextCursorWhenNoRowWasFound() {
+		PageDTO<Integer> page = PageDTO.of(Collections.emptyList(), 3, ID_OF);
+
+		assertEquals(Collections.emptyList(), page.getItems());
+		assertNull(page.getNextCursor());
+	}
+
+	@Test
+	public void hasNoNextCursorWhenTheRowsFillExactlyThePage() {
+		PageDTO<Integer> page = PageDTO.of(Arrays.asList(4, 7, 9), 3, ID_OF);
+
+		assertEquals(Arrays.asList(4, 7, 9), page.getItems());
+		assertNull(page.getNextCursor());
+	}
+
+	@Test
+	public void pointsTheNextCursorToTheLastItemOfThePage() {
+		PageDTO<Integer> page = PageDTO.of(Arrays.asList(4, 7, 9, 12), 3, ID_OF);
+
+		assertEquals(Arrays.asList(4, 7, 9), page.getItems());
+		assertEquals("9", page.getNextCursor());
+	}
+
+	@Test
+	public void usesTheGivenFunctionToReadTheCursor() {
+		PageDTO<String> page = PageDTO.of(Arrays.asList("a", "bb", "ccc"), 2, String::length);
+
+		assertEquals(Arrays.asList("a", "bb"), page.getItems());
+		assertEquals("2", page.getNextCursor());
+	}
+}
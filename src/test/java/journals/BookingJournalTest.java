@@ -0,0 +1,168 @@
+package journals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import enums.TicketEventType;
+
+/**
+ * Tests that the booking journal resumes after its last complete record and replays the events in order.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class BookingJournalTest {
+	/**
+	 * Position of the seat number inside a record.
+	 */
+	private static final int SEAT_NUMBER_POSITION = 32;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private Path directory;
+
+	private BookingJournal bookingJournal;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = temporaryFolder.newFolder("journal").toPath();
+		bookingJournal = open();
+	}
+
+	@After
+	public void tearDown() {
+		bookingJournal.close();
+	}
+
+	@Test
+	public void replaysTheAppendedEventsInOrder() throws IOException {
+		appendEvents(3);
+
+		List<TicketEvent> events = replayAll();
+
+		assertEquals(3, events.size());
+		assertEquals(0L, events.get(0).getOffset());
+		assertEquals(TicketEventType.CREATED, events.get(0).getType());
+		assertEquals(2, events.get(2).getIdTicket());
+		assertEquals(12, events.get(2).getSeatNumber());
+	}
+
+	@Test
+	public void resumesAfterTheLastRecordWhenReopened() throws IOException {
+		appendEvents(3);
+		bookingJournal.close();
+
+		bookingJournal = open();
+
+		assertEquals(3L, bookingJournal.append(TicketEventType.CANCELED, 0, 100, 200, 10));
+		assertEquals(4, replayAll().size());
+	}
+
+	@Test
+	public void discardsATornRecordAndEverythingWrittenAfterIt() throws IOException {
+		appendEvents(5);
+		bookingJournal.close();
+
+		// O registo 2 ficou a meio: o checksum não bate certo com os campos
+		corrupt(2);
+
+		bookingJournal = open();
+
+		assertEquals(2, replayAll().size());
+		assertEquals(2L, bookingJournal.append(TicketEventType.DELETED, null, null, 300, null));
+
+		List<TicketEvent> events = replayAll();
+
+		assertEquals(3, events.size());
+		assertEquals(TicketEventType.DELETED, events.get(2).getType());
+		assertEquals(0, events.get(2).getIdTicket());
+	}
+
+	@Test
+	public void replaysFromTheGivenOffsetAcrossSegments() throws IOException {
+		int amountOfEvents = BookingJournal.RECORDS_PER_SEGMENT * 2 + 5;
+		appendEvents(amountOfEvents);
+
+		List<TicketEvent> events = new ArrayList<>();
+		long nextOffset = bookingJournal.replay(BookingJournal.RECORDS_PER_SEGMENT - 2, Integer.MAX_VALUE, events::add);
+
+		assertEquals(amountOfEvents, nextOffset);
+		assertEquals(BookingJournal.RECORDS_PER_SEGMENT + 7, events.size());
+
+		for (int index = 0; index < events.size(); index++) {
+			assertEquals(BookingJournal.RECORDS_PER_SEGMENT - 2 + index, events.get(index).getOffset());
+		}
+
+		// A segunda leitura do primeiro segmento usa o mapeamento já guardado
+		assertEquals(3L, bookingJournal.replay(0L, 3, event -> {}));
+	}
+
+	@Test
+	public void stopsReplayingAtTheMaximumAmountOfEvents() throws IOException {
+		appendEvents(10);
+
+		List<TicketEvent> events = new ArrayList<>();
+
+		assertEquals(7L, bookingJournal.replay(3L, 4, events::add));
+		assertEquals(4, events.size());
+		assertEquals(3L, events.get(0).getOffset());
+	}
+
+	private BookingJournal open() {
+		BookingJournal journal = new BookingJournal();
+
+		assertTrue(journal.open(directory));
+
+		return journal;
+	}
+
+	private void appendEvents(int amountOfEvents) {
+		for (int index = 0; index < amountOfEvents; index++) {
+			bookingJournal.append(TicketEventType.CREATED, index, 100, 200, 10 + index);
+		}
+	}
+
+	private List<TicketEvent> replayAll() throws IOException {
+		List<TicketEvent> events = new ArrayList<>();
+
+		bookingJournal.replay(0L, Integer.MAX_VALUE, events::add);
+
+		return events;
+	}
+
+	/**
+	 * Changes the seat number of the given record of the first segment, leaving its checksum as it was.
+	 *
+	 * @param offset the offset of the record
+	 * @throws IOException if the segment file could not be written
+	 */
+	private void corrupt(long offset) throws IOException {
+		Path segmentFile;
+
+		try (Stream<Path> files = Files.list(directory)) {
+			segmentFile = files.sorted().collect(Collectors.toList()).get(0);
+		}
+
+		try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 999), offset * BookingJournal.RECORD_SIZE + SEAT_NUMBER_POSITION);
+		}
+	}
+}
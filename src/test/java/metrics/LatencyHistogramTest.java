@@ -0,0 +1,97 @@
+package metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the bucket math and the quantiles of {@link LatencyHistogram}.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void keepsTheSmallestDurationsInTheirOwnBucket() {
+		for (long duration = 0L; duration < 8L; duration++) {
+			assertEquals(duration, LatencyHistogram.indexOf(duration));
+			assertEquals(duration, LatencyHistogram.upperBoundOf((int) duration));
+		}
+	}
+
+	@Test
+	public void putsEachDurationInTheBucketThatBoundsIt() {
+		Random random = new Random(42L);
+
+		for (int iteration = 0; iteration < 100000; iteration++) {
+			long duration = random.nextLong() >>> (1 + random.nextInt(63));
+			int index = LatencyHistogram.indexOf(duration);
+
+			assertTrue(duration + " above its bucket", duration <= LatencyHistogram.upperBoundOf(index));
+			assertTrue(duration + " below its bucket", index == 0 || duration > LatencyHistogram.upperBoundOf(index - 1));
+		}
+	}
+
+	@Test
+	public void startsEachPowerOfTwoInANewBucket() {
+		for (int exponent = 3; exponent < 63; exponent++) {
+			long powerOfTwo = 1L << exponent;
+
+			assertEquals(powerOfTwo - 1L, LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(powerOfTwo) - 1));
+			assertEquals(LatencyHistogram.indexOf(powerOfTwo - 1L) + 1, LatencyHistogram.indexOf(powerOfTwo));
+		}
+	}
+
+	@Test
+	public void keepsEachBucketAtMostAnEighthWiderThanItsDurations() {
+		for (int index = 8; index < LatencyHistogram.indexOf(Long.MAX_VALUE); index++) {
+			long lowerBound = LatencyHistogram.upperBoundOf(index - 1) + 1L;
+			long width = LatencyHistogram.upperBoundOf(index) - lowerBound + 1L;
+
+			assertTrue("bucket " + index + " too wide", width * 8L <= lowerBound);
+		}
+	}
+
+	@Test
+	public void holdsTheBiggestDuration() {
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(Long.MAX_VALUE)));
+	}
+
+	@Test
+	public void estimatesTheQuantilesWithinTheBucketWidth() {
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		for (long duration = 1L; duration <= 1000L; duration++) {
+			histogram.record(duration);
+		}
+
+		assertEquals(1000L, histogram.getCount());
+		assertEquals(500500L, histogram.getSum());
+		assertBetween(500L, 500L * 9L / 8L, histogram.getQuantile(0.5));
+		assertBetween(990L, 990L * 9L / 8L, histogram.getQuantile(0.99));
+		assertBetween(1000L, 1000L * 9L / 8L, histogram.getQuantile(1.0));
+	}
+
+	@Test
+	public void recordsNegativeDurationsAsZero() {
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		histogram.record(-5L);
+
+		assertEquals(0L, histogram.getSum());
+		assertEquals(0L, histogram.getQuantile(1.0));
+	}
+
+	@Test
+	public void answersZeroWhenNothingWasRecorded() {
+		assertEquals(0L, new LatencyHistogram().getQuantile(0.99));
+	}
+
+	private static void assertBetween(long minimum, long maximum, long value) {
+		assertTrue(value + " not between " + minimum + " and " + maximum, value >= minimum && value <= maximum);
+	}
+}
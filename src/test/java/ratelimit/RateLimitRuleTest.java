@@ -0,0 +1,95 @@
+package ratelimit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import enums.RateLimitKey;
+
+/**
+ * Tests the reading of the rules and the burst, refill and bucket bound of the generic cell rate algorithm of {@link RateLimitRule}.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class RateLimitRuleTest {
+	@Test
+	public void allowsTheWholeBurstAndThenAsksToWaitOneInterval() {
+		RateLimitRule rule = new RateLimitRule("/ticket/create", 3, 60L, RateLimitKey.USER);
+
+		assertEquals(0L, rule.tryAcquire("USER:1"));
+		assertEquals(0L, rule.tryAcquire("USER:1"));
+		assertEquals(0L, rule.tryAcquire("USER:1"));
+
+		long wait = rule.tryAcquire("USER:1");
+
+		assertTrue(wait > 0L);
+		assertTrue(wait <= TimeUnit.SECONDS.toNanos(20L));
+	}
+
+	@Test
+	public void countsEachClientInItsOwnBucket() {
+		RateLimitRule rule = new RateLimitRule("/user/signin", 1, 60L, RateLimitKey.USERNAME);
+
+		assertEquals(0L, rule.tryAcquire("USERNAME:first"));
+		assertTrue(rule.tryAcquire("USERNAME:first") > 0L);
+		assertEquals(0L, rule.tryAcquire("USERNAME:second"));
+		assertEquals(2, rule.size());
+	}
+
+	@Test
+	public void refillsOneRequisitionEachInterval() throws InterruptedException {
+		// 2 por segundo: um pedido volta a caber a cada meio segundo
+		RateLimitRule rule = new RateLimitRule("/ticket/batch", 2, 1L, RateLimitKey.USER);
+
+		assertEquals(0L, rule.tryAcquire("USER:1"));
+		assertEquals(0L, rule.tryAcquire("USER:1"));
+
+		long wait = rule.tryAcquire("USER:1");
+		assertTrue(wait > 0L);
+		assertTrue(wait <= TimeUnit.MILLISECONDS.toNanos(500L));
+
+		TimeUnit.NANOSECONDS.sleep(wait + TimeUnit.MILLISECONDS.toNanos(2L));
+
+		assertEquals(0L, rule.tryAcquire("USER:1"));
+	}
+
+	@Test
+	public void newClientsShareOneBucketOnceTheLimitIsReached() {
+		RateLimitRule rule = new RateLimitRule("/user/signin", 1, 60L, RateLimitKey.ADDRESS);
+		int maxBuckets = Integer.getInteger("cia-aerea.rate-limit.max-keys", 100000);
+
+		for (int index = 0; index < maxBuckets; index++) {
+			rule.tryAcquire("address:" + index);
+		}
+
+		assertEquals(0L, rule.tryAcquire("address:new-1"));
+		assertTrue(rule.tryAcquire("address:new-2") > 0L);
+		assertEquals(maxBuckets, rule.size());
+	}
+
+	@Test
+	public void readsTheRules() {
+		RateLimitRule rule = RateLimitRule.parse(" ticket/create/ =30/60/user");
+
+		assertEquals("/ticket/create", rule.getPath());
+		assertEquals(RateLimitKey.USER, rule.getKey());
+		assertEquals(RateLimitKey.ADDRESS, RateLimitRule.parse("/user/signin=30/60").getKey());
+		assertEquals(RateLimitKey.USER, RateLimitRule.parse("/ticket/batch=10/60/token").getKey());
+	}
+
+	@Test
+	public void ignoresTheRulesThatCannotBeRead() {
+		assertNull(RateLimitRule.parse("/user/signin"));
+		assertNull(RateLimitRule.parse("=5/60"));
+		assertNull(RateLimitRule.parse("/user/signin=5"));
+		assertNull(RateLimitRule.parse("/user/signin=0/60"));
+		assertNull(RateLimitRule.parse("/user/signin=5/sixty"));
+		assertNull(RateLimitRule.parse("/user/signin=5/60/cookie"));
+		assertNull(RateLimitRule.parse("/user/signin=5/60/user/extra"));
+	}
+}
@@ -0,0 +1,93 @@
+package security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+import org.junit.Test;
+
+import caches.SessionCache;
+import enums.Role;
+
+/**
+ * Tests the signature, the revocation by token and by user and the refusal of malformed tokens of {@link SessionTokens}.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class SessionTokensTest {
+	private final SessionTokens sessionTokens = new SessionTokens();
+
+	@Test
+	public void verifiesTheTokenItIssued() {
+		String token = sessionTokens.issue(7, Role.EMPLOYEE);
+
+		SessionCache.Session session = sessionTokens.verify(token);
+
+		assertTrue(sessionTokens.isSignedToken(token));
+		assertEquals(Integer.valueOf(7), session.getUserId());
+		assertEquals(Role.EMPLOYEE, session.getRole());
+	}
+
+	@Test
+	public void refusesATokenWhosePayloadWasChanged() {
+		String token = sessionTokens.issue(7, Role.CLIENT);
+		int separator = token.indexOf('.');
+
+		// Mesmo token com outro utilizador e o papel de administrador, mas com a assinatura original
+		ByteBuffer payload = ByteBuffer.wrap(Base64.getUrlDecoder().decode(token.substring(0, separator)));
+		payload.putInt(1, 1).put(5, (byte) Role.ADMINISTRATOR.ordinal());
+		String forgedToken = Base64.getUrlEncoder().withoutPadding().encodeToString(payload.array()) + token.substring(separator);
+
+		assertNull(sessionTokens.verify(forgedToken));
+	}
+
+	@Test
+	public void refusesATokenWhoseSignatureWasChanged() {
+		String token = sessionTokens.issue(7, Role.CLIENT);
+		char lastCharacter = token.charAt(token.length() - 1);
+
+		assertNull(sessionTokens.verify(token.substring(0, token.length() - 1) + (lastCharacter == 'A' ? 'B' : 'A')));
+	}
+
+	@Test
+	public void refusesMalformedTokens() {
+		assertNull(sessionTokens.verify(null));
+		assertNull(sessionTokens.verify("a1b2c3d4"));
+		assertNull(sessionTokens.verify("payload.signature"));
+		assertNull(sessionTokens.verify("%%%.%%%"));
+		assertFalse(sessionTokens.isSignedToken("a1b2c3d4"));
+		assertEquals(4L, ((Number) sessionTokens.getStatistics().get("refusals")).longValue());
+	}
+
+	@Test
+	public void revokesOnlyTheTokenSignedOut() {
+		String token = sessionTokens.issue(7, Role.CLIENT);
+		String otherToken = sessionTokens.issue(8, Role.CLIENT);
+
+		assertTrue(sessionTokens.revoke(token));
+
+		assertNull(sessionTokens.verify(token));
+		assertFalse(sessionTokens.revoke(token));
+		assertNotNull(sessionTokens.verify(otherToken));
+	}
+
+	@Test
+	public void revokesTheTokensIssuedToTheUserUntilNow() {
+		String token = sessionTokens.issue(7, Role.CLIENT);
+		String otherUserToken = sessionTokens.issue(8, Role.CLIENT);
+
+		sessionTokens.revokeUser(7);
+
+		assertNull(sessionTokens.verify(token));
+		assertNotNull(sessionTokens.verify(otherUserToken));
+
+		// Um token emitido logo a seguir, mesmo no mesmo milissegundo, já é válido
+		assertNotNull(sessionTokens.verify(sessionTokens.issue(7, Role.EMPLOYEE)));
+	}
+}
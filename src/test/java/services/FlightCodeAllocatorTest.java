@@ -0,0 +1,101 @@
+package services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import daos.FlightDAO;
+import daos.SequenceDAO;
+import entities.CodeSequence;
+import support.TestDatabase;
+
+/**
+ * Tests that the flight code sequence is created once, after the newest flight, also when another node creates it at the same time.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class FlightCodeAllocatorTest {
+	private SessionFactory sessionFactory;
+	private EntityManager entityManager;
+	private FlightDAO flightDAO;
+
+	@Before
+	public void setUp() {
+		sessionFactory = TestDatabase.create();
+		entityManager = sessionFactory.createEntityManager();
+		TestDatabase.seed(entityManager, 1, 3, 1);
+
+		flightDAO = new FlightDAO();
+		TestDatabase.inject(flightDAO, "entityManager", entityManager);
+	}
+
+	@After
+	public void tearDown() {
+		if (entityManager.getTransaction().isActive()) {
+			entityManager.getTransaction().rollback();
+		}
+
+		entityManager.close();
+		sessionFactory.close();
+	}
+
+	@Test
+	public void startsTheSequenceAfterTheNewestFlight() {
+		SequenceDAO sequenceDAO = new SequenceDAO();
+		TestDatabase.inject(sequenceDAO, "entityManager", entityManager);
+
+		assertEquals(Long.valueOf(4L), next(newAllocator(sequenceDAO)));
+	}
+
+	@Test
+	public void usesTheSequenceCreatedByAnotherNode() {
+		// Outro nó cria a sequência entre a leitura e o insert deste: o insert falha como falharia pela chave duplicada
+		SequenceDAO sequenceDAO = new SequenceDAO() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean create(String name, long initialValue) {
+				CodeSequence sequence = new CodeSequence();
+				sequence.setName(name);
+				sequence.setNextValue(100L);
+				entityManager.persist(sequence);
+				entityManager.flush();
+
+				return false;
+			}
+		};
+		TestDatabase.inject(sequenceDAO, "entityManager", entityManager);
+
+		assertEquals(Long.valueOf(100L), next(newAllocator(sequenceDAO)));
+	}
+
+	private FlightCodeAllocator newAllocator(SequenceDAO sequenceDAO) {
+		FlightCodeAllocator flightCodeAllocator = new FlightCodeAllocator();
+		TestDatabase.inject(flightCodeAllocator, "sequenceDAO", sequenceDAO);
+		TestDatabase.inject(flightCodeAllocator, "flightDAO", flightDAO);
+
+		return flightCodeAllocator;
+	}
+
+	/**
+	 * Seeds the sequence and gets the first suffix in one transaction, as there is no container managed one outside the server.
+	 *
+	 * @param flightCodeAllocator the allocator
+	 * @return the first suffix
+	 */
+	private Long next(FlightCodeAllocator flightCodeAllocator) {
+		entityManager.getTransaction().begin();
+		assertTrue(flightCodeAllocator.seed());
+		Long suffix = flightCodeAllocator.next();
+		entityManager.getTransaction().commit();
+
+		return suffix;
+	}
+}
@@ -0,0 +1,228 @@
+package services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Test;
+
+import caches.AvailabilityCache;
+import caches.DepartureIndex;
+import caches.SeatLedger;
+import daos.FlightDAO;
+import daos.TicketDAO;
+import dtos.FlightDTO;
+import dtos.PageDTO;
+import support.TestDatabase;
+
+/**
+ * Tests that the available flights are found with the same amount of statements whatever the amount of flights, full or not,
+ * that the seat maps read are kept for the next pages and that an unchanged page is served from the availability cache.
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public class FlightServiceTest {
+	/**
+	 * Amount of flights of each page, smaller than the amount of available flights in the bigger database.
+	 */
+	private static final int PAGE_SIZE = 5;
+
+	private SessionFactory sessionFactory;
+	private EntityManager entityManager;
+	private DepartureIndex departureIndex;
+	private FlightService flightService;
+	private AvailabilityCache availabilityCache;
+	private Statistics statistics;
+
+	@After
+	public void tearDown() {
+		entityManager.close();
+		sessionFactory.close();
+	}
+
+	@Test
+	public void getAllAvailablesReadsOneBatchOfSeatMapsForAnyAmountOfFullFlights() {
+		PageDTO<FlightDTO> pageWithFewFlights = getAllAvailablesWithColdSeatLedger(10);
+		long statementsWithFewFlights = statistics.getPrepareStatementCount();
+		tearDown();
+
+		PageDTO<FlightDTO> pageWithManyFlights = getAllAvailablesWithColdSeatLedger(1000);
+		long statementsWithManyFlights = statistics.getPrepareStatementCount();
+
+		assertEquals(1L, statementsWithFewFlights);
+		assertEquals(statementsWithFewFlights, statementsWithManyFlights);
+
+		// Só o voo 10 tem lugares na base pequena; na grande a página enche-se com os voos 10 a 50
+		assertEquals("10", idsOf(pageWithFewFlights));
+		assertNull(pageWithFewFlights.getNextCursor());
+		assertEquals("10,20,30,40,50", idsOf(pageWithManyFlights));
+		assertNotNull(pageWithManyFlights.getNextCursor());
+		assertEquals(Integer.valueOf(999), pageWithManyFlights.getItems().get(0).getFreeSeats());
+
+		// Os mapas de lugares lidos ficam no ledger: a mesma página já não lê a base
+		getAllAvailables(null);
+
+		assertEquals(0L, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	public void getAllAvailablesStopsAtTheScanLimitWithACursor() {
+		int amountOfFlights = FlightService.MAX_SCANNED_FLIGHTS + 10;
+		open(amountOfFlights);
+
+		// Todos os voos ficam cheios, exceto o último, que está depois do limite
+		entityManager.getTransaction().begin();
+		entityManager.createQuery("update Flight set totalSeats = 1 where id < :lastId").setParameter("lastId", amountOfFlights).executeUpdate();
+		entityManager.getTransaction().commit();
+		TestDatabase.seedSeatMaps(entityManager);
+
+		PageDTO<FlightDTO> page = getAllAvailables(null);
+
+		// Um lote de voos por statement, até ao limite de voos olhados
+		assertEquals((long) FlightService.MAX_SCANNED_FLIGHTS / FlightService.SEAT_COUNT_BATCH_SIZE, statistics.getPrepareStatementCount());
+		assertEquals("", idsOf(page));
+		assertNotNull(page.getNextCursor());
+
+		PageDTO<FlightDTO> nextPage = getAllAvailables(page.getNextCursor());
+
+		assertEquals(String.valueOf(amountOfFlights), idsOf(nextPage));
+		assertNull(nextPage.getNextCursor());
+	}
+
+	@Test
+	public void getAllAvailablesSkipsTheFlightsWithoutSeats() {
+		open(3);
+
+		entityManager.getTransaction().begin();
+		entityManager.createQuery("update Flight set totalSeats = null where id = 2").executeUpdate();
+		entityManager.getTransaction().commit();
+		TestDatabase.seedSeatMaps(entityManager);
+
+		PageDTO<FlightDTO> page = getAllAvailables(null);
+
+		assertNotNull(page);
+		assertEquals("1,3", idsOf(page));
+	}
+
+	@Test
+	public void getAvailablesPageServesAnUnchangedPageFromTheCache() {
+		open(20);
+		TestDatabase.seedSeatMaps(entityManager);
+
+		AvailabilityCache.Page page = getAvailablesPage();
+		AvailabilityCache.Page cachedPage = getAvailablesPage();
+
+		// O mesmo pedido devolve a página guardada, sem statements nem nova escrita em JSON
+		assertSame(page, cachedPage);
+		assertEquals(page.getETag(), cachedPage.getETag());
+		assertEquals(0L, statistics.getPrepareStatementCount());
+
+		availabilityCache.bump();
+		AvailabilityCache.Page pageAfterBump = getAvailablesPage();
+
+		assertNotEquals(page.getETag(), pageAfterBump.getETag());
+	}
+
+	/**
+	 * Computes the first page of available flights on a database where 9 in each 10 flights are full, with no seat map in memory.
+	 *
+	 * @param amountOfFlights amount of future flights in the database, one ticket each
+	 * @return the page of available flights
+	 */
+	private PageDTO<FlightDTO> getAllAvailablesWithColdSeatLedger(int amountOfFlights) {
+		open(amountOfFlights);
+
+		// Os voos cujo id não é múltiplo de 10 ficam com um só lugar, já ocupado
+		entityManager.getTransaction().begin();
+		entityManager.createQuery("update Flight set totalSeats = 1 where mod(id, 10) <> 0").executeUpdate();
+		entityManager.getTransaction().commit();
+		TestDatabase.seedSeatMaps(entityManager);
+
+		return getAllAvailables(null);
+	}
+
+	/**
+	 * Creates the database, with one ticket in each flight, and the service with an empty seat ledger. The departure index is loaded before the first page is counted, as it is on deploy.
+	 *
+	 * @param amountOfFlights amount of future flights in the database
+	 */
+	private void open(int amountOfFlights) {
+		sessionFactory = TestDatabase.create(true);
+		entityManager = sessionFactory.createEntityManager();
+		statistics = sessionFactory.getStatistics();
+
+		TestDatabase.seed(entityManager, amountOfFlights, amountOfFlights, 1);
+
+		FlightDAO flightDAO = new FlightDAO();
+		TicketDAO ticketDAO = new TicketDAO();
+		TestDatabase.inject(flightDAO, "entityManager", entityManager);
+		TestDatabase.inject(ticketDAO, "entityManager", entityManager);
+
+		departureIndex = new DepartureIndex();
+		TestDatabase.inject(departureIndex, "flightDAO", flightDAO);
+
+		SeatLedger seatLedger = new SeatLedger();
+		TestDatabase.inject(seatLedger, "flightDAO", flightDAO);
+		TestDatabase.inject(seatLedger, "ticketDAO", ticketDAO);
+
+		availabilityCache = new AvailabilityCache();
+
+		flightService = new FlightService();
+		TestDatabase.inject(flightService, "flightDAO", flightDAO);
+		TestDatabase.inject(flightService, "availabilityCache", availabilityCache);
+		TestDatabase.inject(flightService, "departureIndex", departureIndex);
+		TestDatabase.inject(flightService, "seatLedger", seatLedger);
+	}
+
+	/**
+	 * Computes one page of available flights in its own transaction, counting its statements.
+	 *
+	 * @param cursor the cursor of the previous page, or null for the first page
+	 * @return the page of available flights
+	 */
+	private PageDTO<FlightDTO> getAllAvailables(String cursor) {
+		// Fora do servidor não há transação gerida pelo container, então cada passo abre a sua
+		entityManager.getTransaction().begin();
+		departureIndex.load();
+		entityManager.clear();
+		statistics.clear();
+		PageDTO<FlightDTO> page = flightService.getAllAvailables(PAGE_SIZE, cursor, null, null);
+		entityManager.getTransaction().commit();
+
+		assertNotNull(page);
+
+		return page;
+	}
+
+	/**
+	 * Gets the first page of available flights through the availability cache, in its own transaction, counting its statements.
+	 *
+	 * @return the page of available flights written to JSON
+	 */
+	private AvailabilityCache.Page getAvailablesPage() {
+		entityManager.getTransaction().begin();
+		departureIndex.load();
+		entityManager.clear();
+		statistics.clear();
+		AvailabilityCache.Page page = flightService.getAvailablesPage(PAGE_SIZE, null, null, null);
+		entityManager.getTransaction().commit();
+
+		assertNotNull(page);
+
+		return page;
+	}
+
+	private static String idsOf(PageDTO<FlightDTO> page) {
+		return page.getItems().stream().map(flightDTO -> String.valueOf(flightDTO.getId())).collect(Collectors.joining(","));
+	}
+}
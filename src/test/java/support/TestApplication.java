@@ -0,0 +1,193 @@
+package support;
+
+import java.security.Principal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManager;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+
+import caches.AvailabilityCache;
+import caches.DepartureIndex;
+import caches.FlightSearchIndex;
+import caches.SeatLedger;
+import caches.SessionCache;
+import controllers.FlightController;
+import controllers.TicketController;
+import controllers.UserController;
+import daos.FlightDAO;
+import daos.SequenceDAO;
+import daos.TicketDAO;
+import daos.UserDAO;
+import executors.RequestExecutor;
+import journals.BookingJournal;
+import mappers.FlightMapper;
+import mappers.TicketMapper;
+import mappers.UserMapper;
+import security.LoggedUser;
+import security.SessionTokens;
+import services.FlightCodeAllocator;
+import services.FlightService;
+import services.TicketService;
+import services.UserService;
+
+/**
+ * <p>The controllers of the application wired by hand over one persistence context of a {@link TestDatabase}, as the application server would inject them.</p>
+ * <p>The requisitions run in the calling thread, inside the transaction opened by the caller, and the booking journal stays closed.
+ * The token of a requisition is resolved by {@link #authenticate(String)}, as the authentication filter does before the resource method is called.</p>
+ *
+ * @author Wanderley Drumond
+ *
+ */
+public final class TestApplication {
+	public final FlightController flightController = new FlightController();
+	public final TicketController ticketController = new TicketController();
+	public final UserController userController = new UserController();
+	public final DepartureIndex departureIndex = new DepartureIndex();
+	public final FlightSearchIndex flightSearchIndex = new FlightSearchIndex();
+	public final SeatLedger seatLedger = new SeatLedger();
+	public final FlightCodeAllocator flightCodeAllocator = new FlightCodeAllocator();
+
+	private final UserService userService = new UserService();
+
+	/**
+	 * Wires the controllers, the services, the DAOs and the in-memory caches.
+	 *
+	 * @param entityManager the persistence context shared by all DAOs
+	 */
+	public TestApplication(EntityManager entityManager) {
+		FlightDAO flightDAO = new FlightDAO();
+		TicketDAO ticketDAO = new TicketDAO();
+		UserDAO userDAO = new UserDAO();
+		SequenceDAO sequenceDAO = new SequenceDAO();
+		TestDatabase.inject(flightDAO, "entityManager", entityManager);
+		TestDatabase.inject(ticketDAO, "entityManager", entityManager);
+		TestDatabase.inject(userDAO, "entityManager", entityManager);
+		TestDatabase.inject(sequenceDAO, "entityManager", entityManager);
+
+		FlightMapper flightMapper = new FlightMapper();
+		UserMapper userMapper = new UserMapper();
+		AvailabilityCache availabilityCache = new AvailabilityCache();
+
+		TestDatabase.inject(departureIndex, "flightDAO", flightDAO);
+		TestDatabase.inject(flightSearchIndex, "flightDAO", flightDAO);
+		TestDatabase.inject(seatLedger, "flightDAO", flightDAO);
+		TestDatabase.inject(seatLedger, "ticketDAO", ticketDAO);
+
+		TestDatabase.inject(flightCodeAllocator, "sequenceDAO", sequenceDAO);
+		TestDatabase.inject(flightCodeAllocator, "flightDAO", flightDAO);
+
+		FlightService flightService = new FlightService();
+		TestDatabase.inject(flightService, "flightDAO", flightDAO);
+		TestDatabase.inject(flightService, "flightMapper", flightMapper);
+		TestDatabase.inject(flightService, "flightCodeAllocator", flightCodeAllocator);
+		TestDatabase.inject(flightService, "seatLedger", seatLedger);
+		TestDatabase.inject(flightService, "flightSearchIndex", flightSearchIndex);
+		TestDatabase.inject(flightService, "departureIndex", departureIndex);
+		TestDatabase.inject(flightService, "availabilityCache", availabilityCache);
+
+		TicketService ticketService = new TicketService();
+		TestDatabase.inject(userService, "userMapper", userMapper);
+		TestDatabase.inject(userService, "userDAO", userDAO);
+		TestDatabase.inject(userService, "ticketService", ticketService);
+		TestDatabase.inject(userService, "sessionCache", new SessionCache());
+		TestDatabase.inject(userService, "sessionTokens", new SessionTokens());
+
+		TestDatabase.inject(ticketService, "flightService", flightService);
+		TestDatabase.inject(ticketService, "userService", userService);
+		TestDatabase.inject(ticketService, "ticketDAO", ticketDAO);
+		TestDatabase.inject(ticketService, "ticketMapper", new TicketMapper());
+		TestDatabase.inject(ticketService, "seatLedger", seatLedger);
+		TestDatabase.inject(ticketService, "availabilityCache", availabilityCache);
+		TestDatabase.inject(ticketService, "bookingJournal", new BookingJournal());
+		TestDatabase.inject(ticketService, "userDAO", userDAO);
+
+		RequestExecutor requestExecutor = new InlineRequestExecutor();
+
+		TestDatabase.inject(flightController, "flightService", flightService);
+		TestDatabase.inject(flightController, "requestExecutor", requestExecutor);
+		TestDatabase.inject(ticketController, "ticketService", ticketService);
+		TestDatabase.inject(ticketController, "requestExecutor", requestExecutor);
+		TestDatabase.inject(userController, "userService", userService);
+		TestDatabase.inject(userController, "userMapper", userMapper);
+		TestDatabase.inject(userController, "requestExecutor", requestExecutor);
+	}
+
+	/**
+	 * Resolves the given token into the security context of a requisition, as the authentication filter does.
+	 *
+	 * @param token the authorisation key of the logged user
+	 * @return the security context with the logged user, or null if the token is not found
+	 */
+	public SecurityContext authenticate(String token) {
+		return userService.getSessionByToken(token)
+				.map(session -> new LoggedUserSecurityContext(new LoggedUser(session.getUserId(), session.getRole())))
+				.orElse(null);
+	}
+
+	/**
+	 * Forgets all sessions kept in memory, so the next token is looked up in the database as on its first requisition.
+	 */
+	public void forgetSessions() {
+		TestDatabase.inject(userService, "sessionCache", new SessionCache());
+	}
+
+	/**
+	 * Gets the response of a requisition that ran in the calling thread.
+	 *
+	 * @param response the response returned by the controller
+	 * @return the response
+	 */
+	public static Response await(CompletionStage<Response> response) {
+		return response.toCompletableFuture().join();
+	}
+
+	/**
+	 * Request executor that runs each requisition in the calling thread, with no time limit.
+	 *
+	 * @author Wanderley Drumond
+	 *
+	 */
+	private static final class InlineRequestExecutor extends RequestExecutor {
+		@Override
+		public CompletionStage<Response> submit(String endpoint, Supplier<Response> task) {
+			return CompletableFuture.completedFuture(task.get());
+		}
+	}
+
+	/**
+	 * Security context of a requisition whose token was resolved into a logged user.
+	 *
+	 * @author Wanderley Drumond
+	 *
+	 */
+	private static final class LoggedUserSecurityContext implements SecurityContext {
+		private final LoggedUser loggedUser;
+
+		LoggedUserSecurityContext(LoggedUser loggedUser) {
+			this.loggedUser = loggedUser;
+		}
+
+		@Override
+		public Principal getUserPrincipal() {
+			return loggedUser;
+		}
+
+		@Override
+		public boolean isUserInRole(String role) {
+			return loggedUser.getRole().name().equals(role);
+		}
+
+		@Override
+		public boolean isSecure() {
+			return false;
+		}
+
+		@Override
+		public String getAuthenticationScheme() {
+			return "token";
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package support;
+
+import java.lang.reflect.Field;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+
+import caches.SeatMap;
+import entities.CodeSequence;
+import entities.Flight;
+import entities.FlightSeatMap;
+import entities.Ticket;
+import entities.User;
+import enums.Role;
+
+/**
+ * <p>In-memory H2 database with the application tables, used by the tests and the benchmarks that need a persistence context.</p>
+ * <p>Hibernate is bootstrapped directly, without the application server, and its session factory is also the JPA entity manager factory.
+ * The DAOs used outside the server get their entity manager through {@link #inject(Object, String, Object)} and, having no container
+ * managed transaction, the methods that write or lock must be called inside a transaction opened by the caller.</p>
+ * 
+ * @author Wanderley Drumond
+ *
+ */
+public final class TestDatabase {
+	
+	/**
+	 * Amount of rows persisted before the transaction is committed and the persistence context cleared.
+	 */
+	private static final int SEED_CHUNK_SIZE = 500;
+	
+	private TestDatabase() {
+	}
+	
+	/**
+	 * Creates a new empty database, with its own name, and the tables of all application entities.
+	 * 
+	 * @return the factory of the persistence contexts of the new database
+	 */
+	public static SessionFactory create() {
+		return create(false);
+	}
+	
+	/**
+	 * Creates a new empty database, with its own name, and the tables of all application entities.
+	 * 
+	 * @param isGeneratingStatistics whether Hibernate counts the statements run, read through <code>SessionFactory.getStatistics()</code>
+	 * @return the factory of the persistence contexts of the new database
+	 */
+	public static SessionFactory create(boolean isGeneratingStatistics) {
+		return new Configuration()
+				.addAnnotatedClass(User.class)
+				.addAnnotatedClass(Flight.class)
+				.addAnnotatedClass(FlightSeatMap.class)
+				.addAnnotatedClass(Ticket.class)
+				.addAnnotatedClass(CodeSequence.class)
+				.setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+				.setProperty("hibernate.connection.url", "jdbc:h2:mem:test-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1")
+				.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+				.setProperty("hibernate.hbm2ddl.auto", "create")
+				.setProperty("hibernate.cache.use_second_level_cache", "false")
+				.setProperty("hibernate.cache.use_query_cache", "false")
+				.setProperty("javax.persistence.validation.mode", "none")
+				.setProperty("hibernate.generate_statistics", String.valueOf(isGeneratingStatistics))
+				.buildSessionFactory();
+	}
+	
+	/**
+	 * <p>Fills the database with clients, future flights and tickets.</p>
+	 * <p>The client <code>i</code> has the token <code>token-i</code> and the tickets are spread over the flights in turn.</p>
+	 * 
+	 * @param entityManager		 the persistence context of the database
+	 * @param amountOfUsers		 amount of clients to be created
+	 * @param amountOfFlights	 amount of flights to be created
+	 * @param ticketsPerUser	 amount of tickets of each client
+	 */
+	public static void seed(EntityManager entityManager, int amountOfUsers, int amountOfFlights, int ticketsPerUser) {
+		Timestamp departTime = Timestamp.valueOf(LocalDateTime.now().plusMonths(1));
+		int amountOfRows = 0;
+		
+		entityManager.getTransaction().begin();
+		
+		for (int index = 0; index < amountOfFlights; index++) {
+			Flight flight = new Flight();
+			
+			flight.setCode("TST_" + (index + 1));
+			flight.setDestination("Test City " + index);
+			flight.setDepartTime(departTime);
+			flight.setTotalSeats(ticketsPerUser * amountOfUsers);
+			entityManager.persist(flight);
+			
+			amountOfRows = commitChunk(entityManager, ++amountOfRows);
+		}
+		
+		for (int index = 0; index < amountOfUsers; index++) {
+			User user = new User();
+			
+			user.setName("Test Client " + index);
+			user.setUsername("client" + index);
+			user.setPassword("password");
+			user.setToken("token-" + index);
+			user.setRole(Role.CLIENT);
+			user.setIsDeleted(false);
+			entityManager.persist(user);
+			
+			for (int ticketIndex = 0; ticketIndex < ticketsPerUser; ticketIndex++) {
+				Ticket ticket = new Ticket();
+				
+				ticket.setPassenger(user);
+				ticket.setFlightDetails(entityManager.getReference(Flight.class, (index * ticketsPerUser + ticketIndex) % amountOfFlights + 1));
+				ticket.setIsCanceled(false);
+				ticket.setIsDeleted(false);
+				entityManager.persist(ticket);
+				
+				amountOfRows = commitChunk(entityManager, ++amountOfRows);
+			}
+		}
+		
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+	}
+	
+	/**
+	 * <p>Saves the seat map of each flight that has seats and no seat map yet, as the flights created through the application have.</p>
+	 * <p>The active tickets of the flight occupy the seats with the lowest numbers, up to the amount of seats of the flight.</p>
+	 *
+	 * @param entityManager the persistence context of the database
+	 */
+	public static void seedSeatMaps(EntityManager entityManager) {
+		int amountOfRows = 0;
+		
+		entityManager.getTransaction().begin();
+		
+		List<Object[]> flights = entityManager.createQuery(
+				"select f.id, f.totalSeats, count(t) from Flight f left join f.tickets t on t.isCanceled = false "
+				+ "where f.totalSeats is not null and not exists (select m from FlightSeatMap m where m.idFlight = f.id) "
+				+ "group by f.id, f.totalSeats", Object[].class).getResultList();
+		
+		for (Object[] flightElement : flights) {
+			int totalSeats = (Integer) flightElement[1];
+			byte[] seats = SeatMap.emptyBytes(totalSeats);
+			
+			for (int seatNumber = 1; seatNumber <= Math.min((Long) flightElement[2], totalSeats); seatNumber++) {
+				SeatMap.occupy(seats, seatNumber);
+			}
+			
+			FlightSeatMap flightSeatMap = new FlightSeatMap();
+			flightSeatMap.setIdFlight((Integer) flightElement[0]);
+			flightSeatMap.setSeats(seats);
+			entityManager.persist(flightSeatMap);
+			
+			amountOfRows = commitChunk(entityManager, ++amountOfRows);
+		}
+		
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+	}
+	
+	/**
+	 * Commits the seed transaction and starts a new one every <code>SEED_CHUNK_SIZE</code> rows.
+	 * 
+	 * @param entityManager  the persistence context of the database
+	 * @param amountOfRows   amount of rows persisted in the current transaction
+	 * @return the amount of rows persisted in the transaction that is open after the call
+	 */
+	private static int commitChunk(EntityManager entityManager, int amountOfRows) {
+		if (amountOfRows < SEED_CHUNK_SIZE) {
+			return amountOfRows;
+		}
+		
+		entityManager.getTransaction().commit();
+		entityManager.clear();
+		entityManager.getTransaction().begin();
+		
+		return 0;
+	}
+	
+	/**
+	 * Sets a field that the application server would inject, such as an <code>@Inject</code> private field.
+	 * 
+	 * @param target	the object that owns the field
+	 * @param fieldName the name of the field, declared in the object class or in one of its super classes
+	 * @param value		the value to be set
+	 */
+	public static void inject(Object target, String fieldName, Object value) {
+		for (Class<?> clazz = target.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+			try {
+				Field field = clazz.getDeclaredField(fieldName);
+				
+				field.setAccessible(true);
+				field.set(target, value);
+				
+				return;
+			} catch (NoSuchFieldException noSuchFieldException) {
+				// Continua procurando na super classe
+			} catch (IllegalAccessException illegalAccessException) {
+				throw new IllegalStateException(illegalAccessException);
+			}
+		}
+		
+		throw new IllegalArgumentException("Field " + fieldName + " not found in " + target.getClass().getName());
+	}
+}
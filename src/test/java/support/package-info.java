@@ -0,0 +1,4 @@
+/**
+ * Contains the fixtures shared by the tests and the JMH benchmarks. The tests and the benchmarks themselves live in the package of the code they exercise.
+ */
+package support;